@@ -0,0 +1,180 @@
+package com.example.agent;
+
+import java.io.IOException;
+import java.lang.instrument.Instrumentation;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import com.example.model.AnalysisSession;
+
+/**
+ * Java agent that keeps the most recent thread dumps of the JVM it runs
+ * in. Load it at startup with
+ * {@code -javaagent:agent.jar=interval=5s,capacity=120,budget=1%} or attach
+ * it to a running JVM. Arguments are comma separated {@code key=value}
+ * pairs:
+ *
+ * <ul>
+ *   <li>{@code interval} - time between captures, e.g. {@code 500ms},
+ *       {@code 10s} or {@code 1m} (default 10s)</li>
+ *   <li>{@code capacity} - number of dumps kept (default 60)</li>
+ *   <li>{@code budget} - maximum share of time spent capturing, e.g.
+ *       {@code 1%} or {@code 0.01} (default 1%)</li>
+ *   <li>{@code depth} - maximum frames per thread (default all)</li>
+ *   <li>{@code locks} - whether to record held locks (default true)</li>
+ *   <li>{@code exportOnExit} - ZIP archive the buffer is written to when
+ *       the JVM exits</li>
+ * </ul>
+ *
+ * <p>Attaching again with {@code export=PATH} writes the buffer of the
+ * running agent to a ZIP archive, and {@code stop} stops capturing.</p>
+ */
+public final class CaptureAgent {
+    private static CaptureSampler sampler;
+
+    private CaptureAgent() {
+    }
+
+    public static void premain(String args, Instrumentation inst) {
+        start(parse(args));
+    }
+
+    public static void agentmain(String args, Instrumentation inst) throws IOException {
+        Map<String, String> options = parse(args);
+        if (options.containsKey("stop")) {
+            stop();
+        } else if (options.containsKey("export")) {
+            export(Paths.get(options.get("export")));
+        } else {
+            start(options);
+        }
+    }
+
+    /**
+     * Start capturing unless the agent is already running.
+     *
+     * @param options agent arguments as parsed by {@link #parse(String)}
+     * @return the running sampler
+     */
+    public static synchronized CaptureSampler start(Map<String, String> options) {
+        if (sampler != null) {
+            return sampler;
+        }
+        Duration interval = parseDuration(options.getOrDefault("interval", "10s"));
+        int capacity = Integer.parseInt(options.getOrDefault("capacity", "60"));
+        double budget = parseFraction(options.getOrDefault("budget", "1%"));
+        int depth = Integer.parseInt(options.getOrDefault("depth", "-1"));
+        boolean locks = Boolean.parseBoolean(options.getOrDefault("locks", "true"));
+        CaptureSampler started = new CaptureSampler(new ThreadCapture(locks, depth),
+                new DumpRingBuffer(capacity), interval, budget);
+        String exportOnExit = options.get("exportOnExit");
+        if (exportOnExit != null) {
+            Path file = Paths.get(exportOnExit);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    DumpExporter.exportZip(started.getBuffer().snapshot(), file);
+                } catch (IOException e) {
+                    System.err.println("Failed to export thread dumps to " + file + ": " + e.getMessage());
+                }
+            }, "thread-dump-export"));
+        }
+        started.start();
+        sampler = started;
+        return started;
+    }
+
+    /**
+     * Stop capturing. Dumps already captured are discarded.
+     */
+    public static synchronized void stop() {
+        if (sampler != null) {
+            sampler.close();
+            sampler = null;
+        }
+    }
+
+    /**
+     * @return the running sampler, or null if the agent is not running
+     */
+    public static synchronized CaptureSampler sampler() {
+        return sampler;
+    }
+
+    /**
+     * @return session holding the buffered dumps, oldest first; empty if
+     *         the agent is not running
+     */
+    public static AnalysisSession session() {
+        CaptureSampler current = sampler();
+        return current == null ? new AnalysisSession() : current.getBuffer().toSession();
+    }
+
+    /**
+     * Write the buffered dumps to a ZIP archive.
+     */
+    public static void export(Path file) throws IOException {
+        CaptureSampler current = sampler();
+        if (current == null) {
+            throw new IllegalStateException("capture agent is not running");
+        }
+        DumpExporter.exportZip(current.getBuffer().snapshot(), file);
+    }
+
+    /**
+     * Split agent arguments into key/value pairs. A key without a value
+     * maps to an empty string.
+     */
+    static Map<String, String> parse(String args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        if (args == null || args.isBlank()) {
+            return options;
+        }
+        for (String part : args.split(",")) {
+            String trimmed = part.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int eq = trimmed.indexOf('=');
+            if (eq < 0) {
+                options.put(trimmed, "");
+            } else {
+                options.put(trimmed.substring(0, eq).trim(), trimmed.substring(eq + 1).trim());
+            }
+        }
+        return options;
+    }
+
+    /**
+     * Parse a duration such as {@code 250ms}, {@code 5s}, {@code 2m} or a
+     * plain number of seconds.
+     */
+    static Duration parseDuration(String text) {
+        String s = text.trim().toLowerCase(Locale.ROOT);
+        if (s.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(s.substring(0, s.length() - 2)));
+        }
+        if (s.endsWith("s")) {
+            return Duration.ofSeconds(Long.parseLong(s.substring(0, s.length() - 1)));
+        }
+        if (s.endsWith("m")) {
+            return Duration.ofMinutes(Long.parseLong(s.substring(0, s.length() - 1)));
+        }
+        return Duration.ofSeconds(Long.parseLong(s));
+    }
+
+    /**
+     * Parse a fraction written either as a percentage ({@code 1%}) or as a
+     * plain number ({@code 0.01}).
+     */
+    static double parseFraction(String text) {
+        String s = text.trim();
+        if (s.endsWith("%")) {
+            return Double.parseDouble(s.substring(0, s.length() - 1)) / 100;
+        }
+        return Double.parseDouble(s);
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.agent;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.example.model.ThreadDump;
+
+/**
+ * Captures thread dumps periodically into a {@link DumpRingBuffer} while
+ * keeping the cost to the application within a budget.
+ *
+ * <p>The cost of a capture is its wall clock time: taking the stacks
+ * stops every application thread at a safepoint, and the conversion runs
+ * on a CPU the application could otherwise use. The sampler keeps a
+ * moving average of that cost and, whenever the configured interval would
+ * spend more than the budgeted share of time capturing, waits longer
+ * before the next capture. With a budget of 0.01, a JVM whose dumps take
+ * 20 ms to capture is sampled at most every 2 seconds.</p>
+ */
+public final class CaptureSampler implements Closeable {
+    private static final double SMOOTHING = 0.2;
+
+    private final ThreadCapture capture;
+    private final DumpRingBuffer buffer;
+    private final long intervalNanos;
+    private final double budget;
+    private final ScheduledExecutorService executor;
+    private final long startNanos = System.nanoTime();
+
+    private volatile double averageCostNanos;
+    private volatile long maxCostNanos;
+    private volatile long totalCostNanos;
+    private volatile long captures;
+    private volatile long currentDelayNanos;
+
+    /**
+     * @param capture source of dumps
+     * @param buffer where dumps are stored
+     * @param interval time between the starts of two captures
+     * @param budget maximum share of wall clock time spent capturing,
+     *               e.g. 0.01 for 1%
+     */
+    public CaptureSampler(ThreadCapture capture, DumpRingBuffer buffer, Duration interval, double budget) {
+        if (interval.isZero() || interval.isNegative()) {
+            throw new IllegalArgumentException("interval must be positive");
+        }
+        if (!(budget > 0 && budget <= 1)) {
+            throw new IllegalArgumentException("budget must be in (0, 1]");
+        }
+        this.capture = capture;
+        this.buffer = buffer;
+        this.intervalNanos = interval.toNanos();
+        this.budget = budget;
+        this.currentDelayNanos = intervalNanos;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "thread-dump-capture");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Take the first capture immediately and keep capturing in the
+     * background until {@link #close()} is called.
+     */
+    public void start() {
+        executor.execute(this::run);
+    }
+
+    private void run() {
+        long begin = System.nanoTime();
+        try {
+            ThreadDump dump = capture.capture();
+            buffer.add(dump);
+        } catch (RuntimeException | LinkageError e) {
+            // keep sampling; a single failed capture should not stop the agent
+        }
+        long cost = System.nanoTime() - begin;
+        record(cost);
+        if (!executor.isShutdown()) {
+            executor.schedule(this::run, Math.max(0, currentDelayNanos - cost), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void record(long cost) {
+        averageCostNanos = captures == 0 ? cost : averageCostNanos + SMOOTHING * (cost - averageCostNanos);
+        totalCostNanos += cost;
+        maxCostNanos = Math.max(maxCostNanos, cost);
+        currentDelayNanos = nextDelay();
+        // published last, so readers that see the count also see the rest
+        captures++;
+    }
+
+    /**
+     * Time from the start of this capture to the start of the next one.
+     */
+    long nextDelay() {
+        long affordable = (long) (averageCostNanos / budget);
+        return Math.max(intervalNanos, affordable);
+    }
+
+    /**
+     * @return number of captures taken so far
+     */
+    public long getCaptureCount() {
+        return captures;
+    }
+
+    /**
+     * @return moving average of the wall clock time of one capture
+     */
+    public Duration getAverageCost() {
+        return Duration.ofNanos((long) averageCostNanos);
+    }
+
+    /**
+     * @return longest capture so far
+     */
+    public Duration getMaxCost() {
+        return Duration.ofNanos(maxCostNanos);
+    }
+
+    /**
+     * @return interval currently used between captures, at least the
+     *         configured one
+     */
+    public Duration getCurrentInterval() {
+        return Duration.ofNanos(currentDelayNanos);
+    }
+
+    /**
+     * @return share of wall clock time spent capturing since the sampler
+     *         was created
+     */
+    public double getMeasuredOverhead() {
+        long elapsed = System.nanoTime() - startNanos;
+        return elapsed > 0 ? (double) totalCostNanos / elapsed : 0;
+    }
+
+    public DumpRingBuffer getBuffer() {
+        return buffer;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
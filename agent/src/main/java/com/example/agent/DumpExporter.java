@@ -0,0 +1,184 @@
+package com.example.agent;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.format.DateTimeFormatter;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.example.model.LockInfo;
+import com.example.model.StackFrame;
+import com.example.model.ThreadDump;
+import com.example.model.ThreadInfo;
+
+/**
+ * Writes captured dumps in the analyzer's JSON dump format, the one read
+ * by {@code JsonThreadDumpParser}. A series of dumps is exported as a ZIP
+ * archive with one JSON entry per dump, which the CLI and web UI expand
+ * into their dumps.
+ */
+public final class DumpExporter {
+    private static final DateTimeFormatter ENTRY_TIME =
+            DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss.SSS").withZone(ZoneOffset.UTC);
+
+    private DumpExporter() {
+    }
+
+    /**
+     * Export dumps to a ZIP archive, replacing the file atomically where
+     * the file system allows it.
+     *
+     * @param dumps dumps to export, in order
+     * @param file archive to write
+     */
+    public static void exportZip(List<ThreadDump> dumps, Path file) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                writeZip(dumps, out);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Write dumps as a ZIP archive with one JSON entry per dump. Entries
+     * are named after the capture time, so their names sort in time order.
+     */
+    public static void writeZip(List<ThreadDump> dumps, OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        Writer w = new OutputStreamWriter(zip, StandardCharsets.UTF_8);
+        int i = 0;
+        for (ThreadDump dump : dumps) {
+            zip.putNextEntry(new ZipEntry(String.format("dump-%s-%04d.json", ENTRY_TIME.format(dump.getTimestamp()), i++)));
+            writeJson(dump, w);
+            w.flush();
+            zip.closeEntry();
+        }
+        zip.finish();
+    }
+
+    /**
+     * Write one dump as a JSON document.
+     */
+    public static void writeJson(ThreadDump dump, Writer w) throws IOException {
+        w.write("{\"timestamp\":");
+        string(w, dump.getTimestamp().toString());
+        if (dump.getJvmVersion() != null) {
+            w.write(",\"jvmVersion\":");
+            string(w, dump.getJvmVersion());
+        }
+        w.write(",\"jvmUptime\":");
+        w.write(Long.toString(dump.getUptimeMillis()));
+        w.write(",\"threads\":[");
+        boolean firstThread = true;
+        for (ThreadInfo t : dump.getThreads()) {
+            if (!firstThread) {
+                w.write(',');
+            }
+            firstThread = false;
+            w.write("\n{\"id\":");
+            w.write(Long.toString(t.getId()));
+            w.write(",\"name\":");
+            string(w, t.getName());
+            w.write(",\"state\":\"");
+            w.write(t.getState().name());
+            w.write("\",\"priority\":");
+            w.write(Integer.toString(t.getPriority()));
+            w.write(",\"daemon\":");
+            w.write(Boolean.toString(t.isDaemon()));
+            if (t.getCpuTimeNanos() >= 0) {
+                w.write(",\"cpuTimeNanos\":");
+                w.write(Long.toString(t.getCpuTimeNanos()));
+            }
+            w.write(",\"stack\":[");
+            boolean firstFrame = true;
+            for (StackFrame f : t.getStack()) {
+                if (!firstFrame) {
+                    w.write(',');
+                }
+                firstFrame = false;
+                w.write("{\"className\":");
+                string(w, f.getClassName());
+                w.write(",\"methodName\":");
+                string(w, f.getMethodName());
+                w.write(",\"fileName\":");
+                string(w, f.getFileName());
+                w.write(",\"lineNumber\":");
+                w.write(Integer.toString(f.getLineNumber()));
+                w.write('}');
+            }
+            w.write("],\"lockedMonitors\":[");
+            boolean firstLock = true;
+            for (LockInfo l : t.getLockedMonitors()) {
+                if (!firstLock) {
+                    w.write(',');
+                }
+                firstLock = false;
+                lock(w, l);
+            }
+            w.write(']');
+            if (t.getWaitingOn() != null) {
+                w.write(",\"waitingOn\":");
+                lock(w, t.getWaitingOn());
+            }
+            w.write('}');
+        }
+        w.write("]}\n");
+    }
+
+    private static void lock(Writer w, LockInfo l) throws IOException {
+        w.write("{\"className\":");
+        string(w, l.getClassName());
+        w.write(",\"identity\":");
+        string(w, l.getIdentity());
+        w.write('}');
+    }
+
+    private static void string(Writer w, String s) throws IOException {
+        if (s == null) {
+            w.write("null");
+            return;
+        }
+        w.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    w.write("\\\"");
+                    break;
+                case '\\':
+                    w.write("\\\\");
+                    break;
+                case '\n':
+                    w.write("\\n");
+                    break;
+                case '\r':
+                    w.write("\\r");
+                    break;
+                case '\t':
+                    w.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        w.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        w.write(c);
+                    }
+                    break;
+            }
+        }
+        w.write('"');
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.agent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.example.model.AnalysisSession;
+import com.example.model.ThreadDump;
+
+/**
+ * Fixed-size buffer of the most recent thread dumps. Once it is full,
+ * each new dump replaces the oldest one, so memory use is bounded by the
+ * capacity no matter how long the agent runs. All methods are thread safe.
+ */
+public final class DumpRingBuffer {
+    private final ThreadDump[] dumps;
+    private int next;
+    private int size;
+    private long added;
+
+    public DumpRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.dumps = new ThreadDump[capacity];
+    }
+
+    public synchronized void add(ThreadDump dump) {
+        dumps[next] = dump;
+        next = (next + 1) % dumps.length;
+        if (size < dumps.length) {
+            size++;
+        }
+        added++;
+    }
+
+    /**
+     * @return buffered dumps, oldest first
+     */
+    public synchronized List<ThreadDump> snapshot() {
+        List<ThreadDump> result = new ArrayList<>(size);
+        int start = (next - size + dumps.length) % dumps.length;
+        for (int i = 0; i < size; i++) {
+            result.add(dumps[(start + i) % dumps.length]);
+        }
+        return result;
+    }
+
+    /**
+     * @return session holding the buffered dumps, oldest first
+     */
+    public AnalysisSession toSession() {
+        AnalysisSession session = new AnalysisSession();
+        snapshot().forEach(session::addThreadDump);
+        return session;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return dumps.length;
+    }
+
+    /**
+     * @return number of dumps added since the buffer was created, including
+     *         those that have since been overwritten
+     */
+    public synchronized long getAddedCount() {
+        return added;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(dumps, null);
+        next = 0;
+        size = 0;
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.agent;
+
+import java.lang.management.LockInfo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MonitorInfo;
+import java.lang.management.RuntimeMXBean;
+import java.lang.management.ThreadMXBean;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.example.model.StackFrame;
+import com.example.model.StackTraceStore;
+import com.example.model.SymbolInterner;
+import com.example.model.ThreadDump;
+import com.example.model.ThreadInfo;
+
+/**
+ * Takes thread dumps of the running JVM through {@link ThreadMXBean} and
+ * turns them straight into model objects, without going through the text
+ * form of a dump. Stack frames are cached across captures, so a thread
+ * whose stack has not changed costs no new frame objects, and names go
+ * through {@link SymbolInterner} like those of parsed dumps.
+ *
+ * <p>Thread ids are the Java thread ids, not the native ids HotSpot text
+ * dumps are keyed by. Where the JVM supports it, each thread's CPU time is
+ * recorded as well.</p>
+ */
+public final class ThreadCapture {
+    private static final int MAX_CACHED_FRAMES = 16 * 1024;
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
+    private final boolean locks;
+    private final int maxDepth;
+    private final boolean cpuTimes;
+    private final String jvmVersion;
+    private final Map<StackTraceElement, StackFrame> frames = new HashMap<>();
+
+    /**
+     * @param locks whether to record held monitors and synchronizers, which
+     *              makes each capture more expensive
+     * @param maxDepth maximum number of frames per thread, or -1 for all
+     */
+    public ThreadCapture(boolean locks, int maxDepth) {
+        this.locks = locks;
+        this.maxDepth = maxDepth < 0 ? Integer.MAX_VALUE : maxDepth;
+        this.cpuTimes = threads.isThreadCpuTimeSupported() && threads.isThreadCpuTimeEnabled();
+        this.jvmVersion = System.getProperty("java.vm.name") + " (" + System.getProperty("java.vm.version")
+                + " " + System.getProperty("java.vm.info") + ")";
+    }
+
+    /**
+     * Capture all live threads.
+     *
+     * @return dump of the current JVM, timestamped now
+     */
+    public synchronized ThreadDump capture() {
+        java.lang.management.ThreadInfo[] infos = threads.dumpAllThreads(
+                locks && threads.isObjectMonitorUsageSupported(),
+                locks && threads.isSynchronizerUsageSupported(),
+                maxDepth);
+        Instant now = Instant.now();
+        List<ThreadInfo> result = new ArrayList<>(infos.length);
+        for (java.lang.management.ThreadInfo info : infos) {
+            if (info != null) {
+                result.add(convert(info));
+            }
+        }
+        if (frames.size() > MAX_CACHED_FRAMES) {
+            frames.clear();
+        }
+        return new ThreadDump(now, result, null, jvmVersion, runtime.getUptime());
+    }
+
+    private ThreadInfo convert(java.lang.management.ThreadInfo info) {
+        StackTraceElement[] trace = info.getStackTrace();
+        List<StackFrame> stack = new ArrayList<>(trace.length);
+        for (StackTraceElement element : trace) {
+            stack.add(frames.computeIfAbsent(element, ThreadCapture::toFrame));
+        }
+        List<com.example.model.LockInfo> held = new ArrayList<>();
+        for (MonitorInfo monitor : info.getLockedMonitors()) {
+            held.add(toLock(monitor));
+        }
+        for (LockInfo synchronizer : info.getLockedSynchronizers()) {
+            held.add(toLock(synchronizer));
+        }
+        LockInfo blocker = info.getLockInfo();
+        long cpu = cpuTimes ? threads.getThreadCpuTime(info.getThreadId()) : -1;
+        StackTraceStore stacks = StackTraceStore.shared();
+        return new ThreadInfo(info.getThreadId(), SymbolInterner.intern(info.getThreadName()),
+                info.getThreadState(), stacks.isEnabled() ? stacks.intern(stack) : stack, held, blocker == null ? null : toLock(blocker),
+                info.getPriority(), info.isDaemon(), null, cpu, -1);
+    }
+
+    private static StackFrame toFrame(StackTraceElement element) {
+        String file = element.isNativeMethod() ? "Native Method"
+                : element.getFileName() == null ? "Unknown Source" : element.getFileName();
+        return new StackFrame(SymbolInterner.intern(element.getClassName()),
+                SymbolInterner.intern(element.getMethodName()), SymbolInterner.intern(file),
+                element.getLineNumber() < 0 ? -1 : element.getLineNumber());
+    }
+
+    private static com.example.model.LockInfo toLock(LockInfo lock) {
+        return new com.example.model.LockInfo(SymbolInterner.intern(lock.getClassName()),
+                "0x" + Integer.toHexString(lock.getIdentityHashCode()));
+    }
+}
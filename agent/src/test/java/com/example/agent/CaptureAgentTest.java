@@ -0,0 +1,221 @@
+package com.example.agent;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import com.example.analysis.DumpArchive;
+import com.example.model.AnalysisSession;
+import com.example.model.LockInfo;
+import com.example.model.StackFrame;
+import com.example.model.ThreadDump;
+import com.example.model.ThreadInfo;
+import com.example.parser.JsonThreadDumpParser;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CaptureAgentTest {
+    private static ThreadInfo find(ThreadDump dump, String name) {
+        return dump.getThreads().stream().filter(t -> t.getName().equals(name)).findFirst()
+                .orElseThrow(() -> new AssertionError("no thread " + name));
+    }
+
+    private static ThreadDump dump(String label, Instant time) {
+        ThreadInfo t = new ThreadInfo(1, "main \"quoted\"\n", Thread.State.RUNNABLE,
+                List.of(new StackFrame("example.Main", "main", "Main.java", 3)), List.of(), null, 5, false);
+        return new ThreadDump(time, List.of(t), label, "test VM", 10);
+    }
+
+    @Test
+    public void capturesLiveThreadsWithLocks() throws Exception {
+        Object lock = new Object();
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread owner = new Thread(() -> {
+            synchronized (lock) {
+                held.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "lock-owner");
+        owner.start();
+        held.await();
+        Thread waiter = new Thread(() -> {
+            synchronized (lock) {
+                lock.hashCode();
+            }
+        }, "lock-waiter");
+        waiter.start();
+        try {
+            while (waiter.getState() != Thread.State.BLOCKED) {
+                Thread.sleep(5);
+            }
+            ThreadDump dump = new ThreadCapture(true, -1).capture();
+
+            ThreadInfo ownerInfo = find(dump, "lock-owner");
+            ThreadInfo waiterInfo = find(dump, "lock-waiter");
+            assertEquals(owner.getId(), ownerInfo.getId());
+            assertEquals(Thread.State.BLOCKED, waiterInfo.getState());
+            assertNotNull(waiterInfo.getWaitingOn());
+            LockInfo monitor = waiterInfo.getWaitingOn();
+            assertEquals("java.lang.Object", monitor.getClassName());
+            assertTrue(ownerInfo.getLockedMonitors().stream()
+                    .anyMatch(l -> l.getIdentity().equals(monitor.getIdentity())));
+            assertTrue(ownerInfo.isDaemon() == owner.isDaemon());
+            assertFalse(find(dump, Thread.currentThread().getName()).getStack().isEmpty());
+            assertTrue(dump.getUptimeMillis() > 0);
+        } finally {
+            release.countDown();
+            owner.join();
+            waiter.join();
+        }
+    }
+
+    @Test
+    public void limitsStackDepth() {
+        ThreadDump dump = new ThreadCapture(false, 2).capture();
+        for (ThreadInfo t : dump.getThreads()) {
+            assertTrue(t.getStack().size() <= 2);
+            assertTrue(t.getLockedMonitors().isEmpty());
+        }
+    }
+
+    @Test
+    public void ringBufferKeepsNewestDumps() {
+        DumpRingBuffer buffer = new DumpRingBuffer(3);
+        Instant start = Instant.parse("2024-01-01T00:00:00Z");
+        for (int i = 0; i < 5; i++) {
+            buffer.add(dump("d" + i, start.plusSeconds(i)));
+        }
+        assertEquals(3, buffer.size());
+        assertEquals(5, buffer.getAddedCount());
+        List<ThreadDump> dumps = buffer.snapshot();
+        assertEquals(List.of("d2", "d3", "d4"), dumps.stream().map(ThreadDump::getLabel).toList());
+        AnalysisSession session = buffer.toSession();
+        assertEquals(3, session.getThreadDumps().size());
+
+        buffer.clear();
+        assertTrue(buffer.snapshot().isEmpty());
+    }
+
+    @Test
+    public void jsonExportRoundTrips() throws Exception {
+        Instant time = Instant.parse("2024-01-01T00:00:00Z");
+        ThreadInfo t = new ThreadInfo(7, "worker\t1", Thread.State.WAITING,
+                List.of(new StackFrame("java.lang.Object", "wait", "Native Method", -1)),
+                List.of(new LockInfo("example.Lock", "0x1f")), new LockInfo("example.Cond", "0x2a"),
+                5, true, null, 1_500_000, -1);
+        StringWriter out = new StringWriter();
+        DumpExporter.writeJson(new ThreadDump(time, List.of(t), null, "test VM", 42), out);
+
+        ThreadDump parsed = new JsonThreadDumpParser().parse(
+                new ByteArrayInputStream(out.toString().getBytes(StandardCharsets.UTF_8)));
+        assertEquals(time, parsed.getTimestamp());
+        assertEquals("test VM", parsed.getJvmVersion());
+        assertEquals(42, parsed.getUptimeMillis());
+        ThreadInfo back = parsed.getThreads().get(0);
+        assertEquals(7, back.getId());
+        assertEquals("worker\t1", back.getName());
+        assertEquals(Thread.State.WAITING, back.getState());
+        assertTrue(back.isDaemon());
+        assertEquals(1_500_000, back.getCpuTimeNanos());
+        assertEquals(t.getStack(), back.getStack());
+        assertEquals("example.Lock", back.getLockedMonitors().get(0).getClassName());
+        assertEquals("0x1f", back.getLockedMonitors().get(0).getIdentity());
+        assertEquals("example.Cond", back.getWaitingOn().getClassName());
+        assertEquals("0x2a", back.getWaitingOn().getIdentity());
+    }
+
+    @Test
+    public void zipExportIsReadableAsArchive(@TempDir Path dir) throws Exception {
+        DumpRingBuffer buffer = new DumpRingBuffer(4);
+        ThreadCapture capture = new ThreadCapture(true, -1);
+        buffer.add(capture.capture());
+        buffer.add(capture.capture());
+        Path file = dir.resolve("dumps.zip");
+        DumpExporter.exportZip(buffer.snapshot(), file);
+
+        AnalysisSession session;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            session = DumpArchive.read(in, DumpArchive.Order.NAME);
+        }
+        assertEquals(2, session.getThreadDumps().size());
+        List<ThreadDump> captured = buffer.snapshot();
+        for (int i = 0; i < 2; i++) {
+            ThreadDump expected = captured.get(i);
+            ThreadDump actual = session.getThreadDumps().get(i);
+            assertEquals(expected.getTimestamp(), actual.getTimestamp());
+            assertEquals(expected.getThreads().size(), actual.getThreads().size());
+        }
+    }
+
+    @Test
+    public void samplerStretchesIntervalToStayWithinBudget() throws Exception {
+        DumpRingBuffer buffer = new DumpRingBuffer(10);
+        // a budget this small cannot be met at a 1 ms interval
+        try (CaptureSampler sampler = new CaptureSampler(new ThreadCapture(false, -1), buffer,
+                Duration.ofMillis(1), 0.001)) {
+            sampler.start();
+            long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+            while (sampler.getCaptureCount() < 1 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertTrue(sampler.getCaptureCount() >= 1);
+            assertTrue(buffer.size() >= 1);
+            Duration cost = sampler.getAverageCost();
+            assertTrue(sampler.getCurrentInterval().compareTo(cost.multipliedBy(999)) >= 0,
+                    "interval " + sampler.getCurrentInterval() + " for cost " + cost);
+        }
+    }
+
+    @Test
+    public void parsesAgentArguments() {
+        Map<String, String> options = CaptureAgent.parse("interval=500ms, capacity=5,budget=2%,stop");
+        assertEquals("500ms", options.get("interval"));
+        assertEquals("5", options.get("capacity"));
+        assertEquals("", options.get("stop"));
+        assertTrue(CaptureAgent.parse(null).isEmpty());
+
+        assertEquals(Duration.ofMillis(500), CaptureAgent.parseDuration("500ms"));
+        assertEquals(Duration.ofSeconds(10), CaptureAgent.parseDuration("10s"));
+        assertEquals(Duration.ofMinutes(1), CaptureAgent.parseDuration("1m"));
+        assertEquals(Duration.ofSeconds(3), CaptureAgent.parseDuration("3"));
+        assertEquals(0.02, CaptureAgent.parseFraction("2%"), 1e-9);
+        assertEquals(0.005, CaptureAgent.parseFraction("0.005"), 1e-9);
+    }
+
+    @Test
+    public void agentCapturesAndExports(@TempDir Path dir) throws Exception {
+        CaptureSampler sampler = CaptureAgent.start(CaptureAgent.parse("interval=50ms,capacity=3,budget=50%"));
+        try {
+            assertSame(sampler, CaptureAgent.start(Map.of()));
+            long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+            while (sampler.getBuffer().size() < 3 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(3, CaptureAgent.session().getThreadDumps().size());
+            Path file = dir.resolve("agent.zip");
+            CaptureAgent.agentmain("export=" + file, null);
+            assertTrue(Files.size(file) > 0);
+        } finally {
+            CaptureAgent.agentmain("stop", null);
+        }
+        assertNull(CaptureAgent.sampler());
+        assertThrows(IllegalStateException.class, () -> CaptureAgent.export(dir.resolve("none.zip")));
+    }
+}
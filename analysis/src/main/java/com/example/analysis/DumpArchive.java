@@ -0,0 +1,324 @@
+package com.example.analysis;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import com.example.model.AnalysisSession;
+import com.example.model.ThreadDump;
+import com.example.model.ThreadInfo;
+import com.example.parser.ByteBufferInputStream;
+import com.example.parser.Compression;
+import com.example.parser.ParseOptions;
+
+/**
+ * Reads bundles of thread dumps packed as ZIP or tar archives; tar
+ * archives may be compressed with any {@link Compression} format. Entries are streamed out of the archive one after another and
+ * parsed concurrently, each into its own {@link ThreadDump} labelled with
+ * the entry name. At most {@code parallelism + 1} entries are held in
+ * memory at any time, independent of the size of the archive.
+ *
+ * <p>Entries that contain no threads, such as a README in the bundle, are
+ * left out of the result.</p>
+ */
+public final class DumpArchive {
+    private DumpArchive() {}
+
+    /** How the dumps of an archive are ordered in the session. */
+    public enum Order {
+        /** By entry name. */
+        NAME,
+        /**
+         * By the timestamp recorded in each dump, then by entry name.
+         * Dumps without a timestamp come last, in archive order.
+         */
+        TIMESTAMP
+    }
+
+    private static final int PROBE_SIZE = 512;
+
+    /**
+     * Check whether the stream starts with a ZIP or (compressed) tar
+     * archive. The stream must support mark/reset; its position is not
+     * changed.
+     */
+    public static boolean isArchive(InputStream in) throws IOException {
+        in.mark(64 * 1024);
+        try {
+            byte[] head = in.readNBytes(PROBE_SIZE);
+            if (isZip(head, head.length) || TarReader.isHeader(head, head.length)) {
+                return true;
+            }
+            Compression compression = Compression.detect(head, head.length);
+            if (compression == Compression.NONE) {
+                return false;
+            }
+            in.reset();
+            in.mark(64 * 1024);
+            byte[] inflated = compression.decode(new NonClosingStream(in)).readNBytes(PROBE_SIZE);
+            return TarReader.isHeader(inflated, inflated.length);
+        } catch (IOException e) {
+            return false;
+        } finally {
+            in.reset();
+        }
+    }
+
+    /**
+     * Check whether a buffer starts with a ZIP or (compressed) tar
+     * archive. The buffer's position is not modified.
+     */
+    public static boolean isArchive(ByteBuffer buffer) throws IOException {
+        return isArchive(new BufferedInputStream(new ByteBufferInputStream(buffer), PROBE_SIZE * 2));
+    }
+
+    /**
+     * Parse every entry of an archive using one worker per processor.
+     *
+     * @param in archive contents; must support mark/reset
+     * @param order order of the dumps in the returned session
+     * @return session holding one dump per non-empty entry
+     */
+    public static AnalysisSession read(InputStream in, Order order) throws IOException {
+        return read(in, order, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Parse every entry of an archive.
+     *
+     * @param in archive contents; must support mark/reset
+     * @param order order of the dumps in the returned session
+     * @param parallelism maximum number of entries parsed at the same time
+     * @return session holding one dump per non-empty entry
+     */
+    public static AnalysisSession read(InputStream in, Order order, int parallelism) throws IOException {
+        return read(in, order, parallelism, ParseOptions.all());
+    }
+
+    /**
+     * Parse every entry of an archive using one worker per processor,
+     * keeping only what the options ask for.
+     *
+     * @param in archive contents; must support mark/reset
+     * @param order order of the dumps in the returned session
+     * @param options parts of each dump to keep
+     * @return session holding one dump per non-empty entry
+     */
+    public static AnalysisSession read(InputStream in, Order order, ParseOptions options) throws IOException {
+        return read(in, order, Runtime.getRuntime().availableProcessors(), options);
+    }
+
+    /**
+     * Parse every entry of an archive, keeping only what the options ask
+     * for.
+     *
+     * @param in archive contents; must support mark/reset
+     * @param order order of the dumps in the returned session
+     * @param parallelism maximum number of entries parsed at the same time
+     * @param options parts of each dump to keep
+     * @return session holding one dump per non-empty entry
+     */
+    public static AnalysisSession read(InputStream in, Order order, int parallelism, ParseOptions options)
+            throws IOException {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        AnalysisSession session = new AnalysisSession();
+        readDumps(in, order, parallelism, options).forEach(session::addThreadDump);
+        return session;
+    }
+
+    static List<ThreadDump> readDumps(InputStream in, Order order, int parallelism, ParseOptions options)
+            throws IOException {
+        byte[] head = peek(in);
+        Compression compression = Compression.detect(head, head.length);
+        InputStream decoded = null;
+        EntrySource source;
+        if (isZip(head, head.length)) {
+            source = new ZipSource(new ZipInputStream(in));
+        } else if (compression != Compression.NONE) {
+            // stops the decoder thread when reading ends early; the
+            // caller's stream stays open
+            decoded = compression.open(new NonClosingStream(in));
+            source = new TarSource(new TarReader(decoded));
+        } else if (TarReader.isHeader(head, head.length)) {
+            source = new TarSource(new TarReader(in));
+        } else {
+            throw new IOException("Not a ZIP or tar archive");
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "dump-archive-parser");
+            t.setDaemon(true);
+            return t;
+        });
+        Semaphore buffered = new Semaphore(parallelism + 1);
+        List<Future<ThreadDump>> results = new ArrayList<>();
+        try {
+            String name;
+            while ((name = source.nextEntry()) != null) {
+                buffered.acquire();
+                byte[] bytes;
+                try {
+                    bytes = source.entryStream().readAllBytes();
+                } catch (IOException | RuntimeException e) {
+                    buffered.release();
+                    throw e;
+                }
+                String entryName = name;
+                results.add(pool.submit(() -> {
+                    try {
+                        return parseEntry(entryName, bytes, options);
+                    } finally {
+                        buffered.release();
+                    }
+                }));
+            }
+            List<ThreadDump> dumps = new ArrayList<>();
+            for (Future<ThreadDump> result : results) {
+                ThreadDump dump = result.get();
+                if (!dump.getThreads().isEmpty()) {
+                    dumps.add(keepMatching(dump, options));
+                }
+            }
+            Comparator<ThreadDump> byName = Comparator.comparing(ThreadDump::getLabel);
+            // the sort is stable, so dumps without a timestamp keep the
+            // archive order collected above
+            dumps.sort(order == Order.TIMESTAMP
+                    ? Comparator.comparing(DumpArchive::recordedTimestamp,
+                            Comparator.nullsLast(Comparator.<Instant>naturalOrder()))
+                            .thenComparing(d -> d.isTimestampRecorded() ? d.getLabel() : "")
+                    : byName);
+            return dumps;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading archive", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Failed to parse archive entry", cause);
+        } finally {
+            pool.shutdownNow();
+            if (decoded != null) {
+                decoded.close();
+            }
+        }
+    }
+
+    /**
+     * @return the timestamp a dump records, or null if it has none
+     */
+    private static Instant recordedTimestamp(ThreadDump dump) {
+        return dump.isTimestampRecorded() ? dump.getTimestamp() : null;
+    }
+
+    private static ThreadDump parseEntry(String name, byte[] bytes, ParseOptions options) throws IOException {
+        ThreadDump dump;
+        try {
+            // thread filters are applied afterwards, so that a dump without
+            // matching threads is not mistaken for a non-dump entry
+            dump = DumpCache.parse(List.of(ByteBuffer.wrap(bytes)), options.withAllThreads());
+        } catch (IOException e) {
+            throw new IOException("Failed to parse " + name + ": " + e.getMessage(), e);
+        }
+        return dump.withLabel(name);
+    }
+
+    private static ThreadDump keepMatching(ThreadDump dump, ParseOptions options) {
+        List<ThreadInfo> threads = new ArrayList<>();
+        for (ThreadInfo t : dump.getThreads()) {
+            if (options.acceptsState(t.getState()) && options.acceptsName(t.getName())) {
+                threads.add(t);
+            }
+        }
+        if (threads.size() == dump.getThreads().size()) {
+            return dump;
+        }
+        return dump.withThreads(threads);
+    }
+
+    private static byte[] peek(InputStream in) throws IOException {
+        in.mark(PROBE_SIZE);
+        byte[] head = in.readNBytes(PROBE_SIZE);
+        in.reset();
+        return head;
+    }
+
+    private static boolean isZip(byte[] head, int length) {
+        return length >= 4 && head[0] == 'P' && head[1] == 'K' && head[2] == 3 && head[3] == 4;
+    }
+
+    private interface EntrySource {
+        /** Name of the next regular file, or null at the end. */
+        String nextEntry() throws IOException;
+
+        InputStream entryStream();
+    }
+
+    private static final class ZipSource implements EntrySource {
+        private final ZipInputStream zip;
+
+        ZipSource(ZipInputStream zip) {
+            this.zip = zip;
+        }
+
+        @Override
+        public String nextEntry() throws IOException {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (!entry.isDirectory()) {
+                    return entry.getName();
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public InputStream entryStream() {
+            return new NonClosingStream(zip);
+        }
+    }
+
+    private static final class TarSource implements EntrySource {
+        private final TarReader tar;
+
+        TarSource(TarReader tar) {
+            this.tar = tar;
+        }
+
+        @Override
+        public String nextEntry() throws IOException {
+            return tar.nextEntry();
+        }
+
+        @Override
+        public InputStream entryStream() {
+            return tar.entryStream();
+        }
+    }
+
+    private static final class NonClosingStream extends FilterInputStream {
+        NonClosingStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
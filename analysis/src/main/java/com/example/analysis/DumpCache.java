@@ -1,20 +1,35 @@
 package com.example.analysis;
 
-import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.BufferedInputStream;
-import java.nio.file.Files;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
-import java.util.zip.GZIPInputStream;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.HexFormat;
+import java.util.function.Consumer;
 
+import com.example.model.AnalysisSession;
 import com.example.model.ThreadDump;
+import com.example.parser.ByteBufferInputStream;
+import com.example.parser.Compression;
+import com.example.parser.HotSpotParser;
+import com.example.parser.JfrSource;
+import com.example.parser.ParallelHotSpotParser;
+import com.example.parser.ParseOptions;
 import com.example.parser.ParserFactory;
+import com.example.parser.ThreadDumpCollector;
 import com.example.parser.ThreadDumpParser;
+import com.example.parser.ThreadDumpSplitter;
 
 /**
  * Simple in-memory cache for parsed thread dumps.
@@ -23,6 +38,10 @@ public final class DumpCache {
     private DumpCache() {}
 
     private static final int MAX_ENTRIES = 10;
+    private static final int MAX_ARCHIVES = 2;
+    private static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+    /** Size up to which the dumps split out of a log are cached. */
+    private static final long MAX_CACHED_LOG_BYTES = 256L * 1024 * 1024;
     private static final Map<String, ThreadDump> CACHE =
         Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
             @Override
@@ -31,53 +50,315 @@ public final class DumpCache {
             }
         });
 
+    private static final Map<String, List<ThreadDump>> ARCHIVES =
+        Collections.synchronizedMap(new LinkedHashMap<>(4, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<ThreadDump>> e) {
+                return size() > MAX_ARCHIVES;
+            }
+        });
+
     private static String digest(byte[] bytes) throws Exception {
         MessageDigest md = MessageDigest.getInstance("SHA-256");
         byte[] hash = md.digest(bytes);
         return HexFormat.of().formatHex(hash);
     }
 
+    private static String digest(List<ByteBuffer> segments) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        for (ByteBuffer segment : segments) {
+            md.update(segment.duplicate());
+        }
+        return HexFormat.of().formatHex(md.digest());
+    }
+
+    /**
+     * Load a dump from a file. The file is memory-mapped once and both the
+     * cache key and the parse are computed from the same mapping, so the
+     * file is neither read twice nor copied onto the heap as a whole.
+     * Stacks are decoded while parsing, so the cached dump does not refer
+     * to the mapping once the file is truncated, rotated or rewritten.
+     */
     public static ThreadDump load(Path path) throws Exception {
-        byte[] bytes = Files.readAllBytes(path);
-        String key = digest(bytes);
-        ThreadDump dump = CACHE.get(key);
-        if (dump == null) {
-            try (InputStream in = openInput(path)) {
-                ThreadDumpParser parser = ParserFactory.detect(in);
-                dump = parser.parse(in);
+        return load(path, ParseOptions.all());
+    }
+
+    /**
+     * Load a dump from a file, keeping only what the options ask for.
+     * Dumps parsed with different options are cached separately.
+     */
+    public static ThreadDump load(Path path, ParseOptions options) throws Exception {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            List<ByteBuffer> segments = map(channel);
+            String key = key(digest(segments), options);
+            ThreadDump dump = CACHE.get(key);
+            if (dump == null) {
+                dump = parse(segments, options);
+                CACHE.put(key, dump);
             }
-            CACHE.put(key, dump);
+            return dump;
+        }
+    }
+
+    /**
+     * Load a file that is either a single dump or a ZIP or tar archive of
+     * dumps. Archives are streamed from a memory mapping of the file and
+     * their entries parsed concurrently, see {@link DumpArchive}. The most
+     * recently loaded archives are cached as a whole.
+     *
+     * @param path dump or archive file
+     * @param order order of the dumps taken from an archive
+     * @return session with one dump per archive entry, or with the single dump
+     */
+    public static AnalysisSession loadSession(Path path, DumpArchive.Order order) throws Exception {
+        return loadSession(path, order, ParseOptions.all());
+    }
+
+    /**
+     * Load a dump or an archive of dumps, keeping only what the options
+     * ask for.
+     *
+     * @param path dump or archive file
+     * @param order order of the dumps taken from an archive
+     * @param options parts of each dump to keep
+     * @return session with one dump per archive entry, or with the single dump
+     */
+    public static AnalysisSession loadSession(Path path, DumpArchive.Order order, ParseOptions options)
+            throws Exception {
+        return loadSession(path, order, options, null);
+    }
+
+    /**
+     * Load a dump, an archive of dumps, a log holding several dumps or a
+     * JFR recording. Recordings yield one dump per {@code jdk.ThreadDump}
+     * event and, if a sample window is given, one per window of execution
+     * samples, see {@link JfrSource}. The dumps of a log are split out with
+     * a {@link ThreadDumpSplitter} and labelled with their position, from 1.
+     *
+     * @param path dump, archive or recording file
+     * @param order order of the dumps taken from an archive
+     * @param options parts of each dump to keep
+     * @param sampleWindow window for dumps built from JFR execution
+     *        samples, or null to ignore samples
+     * @return session with the dumps found in the file
+     */
+    public static AnalysisSession loadSession(Path path, DumpArchive.Order order, ParseOptions options,
+                                              Duration sampleWindow) throws Exception {
+        AnalysisSession session = new AnalysisSession();
+        forEachDump(path, order, options, sampleWindow, session::addThreadDump);
+        return session;
+    }
+
+    /**
+     * Pass each dump found in a file to a consumer, as
+     * {@link #loadSession(Path, DumpArchive.Order, ParseOptions, Duration)}
+     * would add it to a session. The dumps of a log larger than
+     * {@value #MAX_CACHED_LOG_BYTES} bytes are handed over one at a time
+     * as they are split out and are not cached, so memory use is bounded
+     * by what the consumer keeps rather than by the size of the log.
+     *
+     * @param path dump, archive, log or recording file
+     * @param order order of the dumps taken from an archive
+     * @param options parts of each dump to keep
+     * @param sampleWindow window for dumps built from JFR execution
+     *        samples, or null to ignore samples
+     * @param sink receives the dumps in file order
+     */
+    public static void forEachDump(Path path, DumpArchive.Order order, ParseOptions options,
+                                   Duration sampleWindow, Consumer<ThreadDump> sink) throws Exception {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            List<ByteBuffer> segments = map(channel);
+            String digest = digest(segments);
+            if (JfrSource.isRecording(segments.get(0))) {
+                String key = key(digest, options) + ":jfr:" + sampleWindow;
+                List<ThreadDump> dumps = ARCHIVES.get(key);
+                if (dumps == null) {
+                    dumps = new ArrayList<>(JfrSource.read(path, options, sampleWindow).getThreadDumps());
+                    ARCHIVES.put(key, dumps);
+                }
+                dumps.forEach(sink);
+                return;
+            }
+            if (DumpArchive.isArchive(segments.get(0))) {
+                String key = key(digest, options) + ":" + order;
+                List<ThreadDump> dumps = ARCHIVES.get(key);
+                if (dumps == null) {
+                    dumps = DumpArchive.readDumps(open(segments), order,
+                            Runtime.getRuntime().availableProcessors(), options);
+                    ARCHIVES.put(key, dumps);
+                }
+                dumps.forEach(sink);
+                return;
+            }
+            forEachDump(segments, digest, options, channel.size() <= MAX_CACHED_LOG_BYTES, sink);
         }
-        return dump;
     }
 
     public static ThreadDump load(byte[] bytes) throws Exception {
-        String key = digest(bytes);
+        return load(bytes, ParseOptions.all());
+    }
+
+    /**
+     * Load a dump from memory, keeping only what the options ask for.
+     */
+    public static ThreadDump load(byte[] bytes, ParseOptions options) throws Exception {
+        String key = key(digest(bytes), options);
         ThreadDump dump = CACHE.get(key);
         if (dump == null) {
-            try (InputStream detect = new ByteArrayInputStream(bytes)) {
-                ThreadDumpParser parser = ParserFactory.detect(detect);
-                dump = parser.parse(new ByteArrayInputStream(bytes));
-            }
+            dump = parse(List.of(ByteBuffer.wrap(bytes)), options);
             CACHE.put(key, dump);
         }
         return dump;
     }
 
-    private static InputStream openInput(Path path) throws Exception {
-        InputStream base = Files.newInputStream(path);
-        BufferedInputStream buffered = new BufferedInputStream(base);
-        buffered.mark(2);
-        int b1 = buffered.read();
-        int b2 = buffered.read();
-        buffered.reset();
-        if (b1 == 0x1f && b2 == 0x8b) {
-            return new BufferedInputStream(new GZIPInputStream(buffered));
+    /**
+     * Load what an uploaded file holds: the dumps of a log with several
+     * HotSpot dumps, labelled with their position from 1, or the single
+     * dump of any other file, unlabelled.
+     */
+    public static List<ThreadDump> loadAll(byte[] bytes, ParseOptions options) throws Exception {
+        List<ThreadDump> dumps = new ArrayList<>();
+        forEachDump(List.of(ByteBuffer.wrap(bytes)), digest(bytes), options, true, dumps::add);
+        return dumps;
+    }
+
+    /**
+     * Pass on the dumps of a file that is neither an archive nor a
+     * recording, looking them up by the file's digest first. Otherwise
+     * HotSpot output is split in the same pass that parses it: a single
+     * dump found is passed on as it is, while the dumps of a log are
+     * labelled with their position from 1 and passed on as soon as each
+     * is complete. Only a buffer large enough for a
+     * {@link ParallelHotSpotParser} is scanned for a second dump header
+     * up front, as that parser needs the whole dump at once, and output
+     * without any dump header is parsed again as a single dump.
+     *
+     * @param cacheLog whether the dumps of a log are cached; a single dump
+     *        always is
+     */
+    private static void forEachDump(List<ByteBuffer> segments, String digest, ParseOptions options,
+                                    boolean cacheLog, Consumer<ThreadDump> sink) throws IOException {
+        // apart from load(), which reads a log as one dump
+        String key = key(digest, options) + ":single";
+        ThreadDump single = CACHE.get(key);
+        if (single != null) {
+            sink.accept(single);
+            return;
+        }
+        String logKey = key(digest, options) + ":log";
+        List<ThreadDump> log = ARCHIVES.get(logKey);
+        if (log != null) {
+            log.forEach(sink);
+            return;
+        }
+
+        ByteBuffer first = segments.get(0);
+        Compression compression = Compression.detect(first);
+        if (segments.size() == 1 && compression == Compression.NONE) {
+            ThreadDumpParser parser = ParserFactory.detect(first);
+            if (parser instanceof HotSpotParser || (parser instanceof ParallelHotSpotParser
+                    && ThreadDumpSplitter.isConcatenated(first))) {
+                if (split(new ThreadDumpSplitter(first, options), key, logKey, cacheLog, sink)) {
+                    return;
+                }
+            }
+            ThreadDumpCollector collector = new ThreadDumpCollector();
+            parser.parse(first, options, collector);
+            single = collector.getDump();
+        } else {
+            try (InputStream in = compression.open(open(segments))) {
+                ThreadDumpParser parser = ParserFactory.detect(in);
+                if (!(parser instanceof HotSpotParser)) {
+                    single = parser.parse(in, options);
+                } else if (split(new ThreadDumpSplitter(in, options), key, logKey, cacheLog, sink)) {
+                    return;
+                }
+            }
+            if (single == null) {
+                // HotSpot threads without a dump header, read once more
+                single = parse(segments, options);
+            }
+        }
+        CACHE.put(key, single);
+        sink.accept(single);
+    }
+
+    /**
+     * Split HotSpot output into its dumps and pass them on, caching them
+     * as described for {@link #forEachDump(List, String, ParseOptions, boolean, Consumer)}.
+     *
+     * @return false if the output holds no dump header, in which case
+     *         nothing has been passed on
+     */
+    private static boolean split(ThreadDumpSplitter splitter, String key, String logKey, boolean cacheLog,
+                                 Consumer<ThreadDump> sink) {
+        if (!splitter.hasNext()) {
+            return false;
+        }
+        ThreadDump first = splitter.next();
+        if (!splitter.hasNext()) {
+            CACHE.put(key, first);
+            sink.accept(first);
+            return true;
+        }
+        List<ThreadDump> log = new ArrayList<>();
+        Consumer<ThreadDump> target = cacheLog ? log::add : sink;
+        target.accept(first.withLabel("1"));
+        for (int n = 2; splitter.hasNext(); n++) {
+            target.accept(splitter.next().withLabel(String.valueOf(n)));
+        }
+        if (cacheLog) {
+            ARCHIVES.put(logKey, log);
+            log.forEach(sink);
+        }
+        return true;
+    }
+
+    private static List<ByteBuffer> map(FileChannel channel) throws IOException {
+        List<ByteBuffer> segments = new ArrayList<>();
+        long size = channel.size();
+        long offset = 0;
+        do {
+            long length = Math.min(size - offset, MAX_SEGMENT_SIZE);
+            segments.add(channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+            offset += length;
+        } while (offset < size);
+        return segments;
+    }
+
+    /**
+     * Cache key for a dump: the content digest, qualified by the options
+     * unless they keep everything.
+     */
+    private static String key(String digest, ParseOptions options) {
+        return options.isAll() ? digest : digest + "|" + options.key();
+    }
+
+    static ThreadDump parse(List<ByteBuffer> segments, ParseOptions options) throws IOException {
+        ByteBuffer first = segments.get(0);
+        Compression compression = Compression.detect(first);
+        if (segments.size() == 1 && compression == Compression.NONE) {
+            ThreadDumpParser parser = ParserFactory.detect(first);
+            ThreadDumpCollector collector = new ThreadDumpCollector();
+            parser.parse(first, options, collector);
+            return collector.getDump();
+        }
+        try (InputStream in = compression.open(open(segments))) {
+            ThreadDumpParser parser = ParserFactory.detect(in);
+            return parser.parse(in, options);
+        }
+    }
+
+    private static InputStream open(List<ByteBuffer> segments) {
+        List<InputStream> streams = new ArrayList<>();
+        for (ByteBuffer segment : segments) {
+            streams.add(new ByteBufferInputStream(segment));
         }
-        return buffered;
+        return new BufferedInputStream(new SequenceInputStream(Collections.enumeration(streams)));
     }
 
     public static void clear() {
         CACHE.clear();
+        ARCHIVES.clear();
     }
 }
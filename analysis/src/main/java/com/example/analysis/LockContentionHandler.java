@@ -0,0 +1,42 @@
+package com.example.analysis;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import com.example.model.LockInfo;
+import com.example.model.ThreadInfo;
+import com.example.parser.ThreadDumpHandler;
+
+/**
+ * Streaming counterpart of {@link ThreadDumpAnalyzer#findLockContentionHotspots}.
+ * Only threads that are waiting on a lock are retained; all other threads
+ * are dropped as soon as they have been seen.
+ */
+public class LockContentionHandler implements ThreadDumpHandler {
+    private final Map<String, LockInfo> lockById = new HashMap<>();
+    private final Map<String, List<ThreadInfo>> waiting = new HashMap<>();
+
+    @Override
+    public void onThread(ThreadInfo thread) {
+        LockInfo w = thread.getWaitingOn();
+        if (w != null) {
+            lockById.putIfAbsent(w.getIdentity(), w);
+            waiting.computeIfAbsent(w.getIdentity(), k -> new ArrayList<>()).add(thread);
+        }
+    }
+
+    /**
+     * Get locks with at least {@code minWaiters} waiting threads.
+     *
+     * @param minWaiters minimum number of waiting threads to consider a hotspot
+     * @return map of LockInfo to list of waiting threads
+     */
+    public Map<LockInfo, List<ThreadInfo>> getHotspots(int minWaiters) {
+        return waiting.entrySet().stream()
+                .filter(e -> e.getValue().size() >= minWaiters)
+                .collect(Collectors.toMap(e -> lockById.get(e.getKey()), Map.Entry::getValue));
+    }
+}
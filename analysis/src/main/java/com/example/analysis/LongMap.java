@@ -0,0 +1,109 @@
+package com.example.analysis;
+
+import java.util.Arrays;
+
+/**
+ * Hash map from primitive {@code long} keys, used to match the threads of
+ * two dumps by id. Keys are kept in one array probed linearly and values in
+ * a parallel one, so neither the ids nor the entries are boxed. Only the
+ * operations the analyses need are provided; entries are never removed.
+ *
+ * @param <V> value type; null values are not supported
+ */
+final class LongMap<V> {
+    // 0 marks a free slot, so key 0 is kept aside
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    private V zeroValue;
+
+    /**
+     * @param expectedSize number of keys that fit without resizing
+     */
+    LongMap(int expectedSize) {
+        int capacity = LongSet.tableSize(expectedSize);
+        keys = new long[capacity];
+        values = new Object[capacity];
+    }
+
+    /**
+     * Map a key to a value, replacing any earlier value.
+     *
+     * @return the earlier value, or null
+     */
+    @SuppressWarnings("unchecked")
+    V put(long key, V value) {
+        if (key == 0) {
+            V old = zeroValue;
+            zeroValue = value;
+            if (old == null) {
+                size++;
+            }
+            return old;
+        }
+        int mask = keys.length - 1;
+        int slot = LongSet.hash(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                V old = (V) values[slot];
+                values[slot] = value;
+                return old;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size * 2 > keys.length) {
+            rehash();
+        }
+        return null;
+    }
+
+    /**
+     * @return the value of a key, or null if it is not mapped
+     */
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        if (key == 0) {
+            return zeroValue;
+        }
+        int mask = keys.length - 1;
+        for (int slot = LongSet.hash(key) & mask; keys[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return (V) values[slot];
+            }
+        }
+        return null;
+    }
+
+    boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new Object[keys.length];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = LongSet.hash(oldKeys[i]) & mask;
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LongMap[size=" + size + ", capacity=" + keys.length + "]";
+    }
+}
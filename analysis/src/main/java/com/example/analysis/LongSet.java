@@ -0,0 +1,105 @@
+package com.example.analysis;
+
+/**
+ * Hash set of primitive {@code long}s, the key-only counterpart of
+ * {@link LongMap}.
+ */
+final class LongSet {
+    private static final int MIN_CAPACITY = 16;
+
+    // 0 marks a free slot, so 0 itself is tracked by a flag
+    private long[] keys;
+    private int size;
+    private boolean hasZero;
+
+    /**
+     * @param expectedSize number of values that fit without resizing
+     */
+    LongSet(int expectedSize) {
+        keys = new long[tableSize(expectedSize)];
+    }
+
+    /**
+     * @return true if the value was not in the set yet
+     */
+    boolean add(long value) {
+        if (value == 0) {
+            if (hasZero) {
+                return false;
+            }
+            hasZero = true;
+            size++;
+            return true;
+        }
+        int mask = keys.length - 1;
+        int slot = hash(value) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == value) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = value;
+        if (++size * 2 > keys.length) {
+            rehash();
+        }
+        return true;
+    }
+
+    boolean contains(long value) {
+        if (value == 0) {
+            return hasZero;
+        }
+        int mask = keys.length - 1;
+        for (int slot = hash(value) & mask; keys[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void rehash() {
+        long[] old = keys;
+        keys = new long[old.length * 2];
+        int mask = keys.length - 1;
+        for (long k : old) {
+            if (k != 0) {
+                int slot = hash(k) & mask;
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = k;
+            }
+        }
+    }
+
+    /**
+     * Power of two table size keeping the load at most one half.
+     */
+    static int tableSize(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2 && capacity < (1 << 30)) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Spread a key over the table; thread ids are mostly small and
+     * consecutive, which would otherwise fill one run of slots.
+     */
+    static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return "LongSet[size=" + size + ", capacity=" + keys.length + "]";
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.analysis;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * Reads the CPU time of every thread of a local process from
+ * {@code /proc/<pid>/task/<tid>/stat} on Linux. Task ids are the native
+ * thread ids HotSpot prints as {@code nid=0x...}, which the HotSpot parser
+ * uses as thread ids, so a sample can be joined with a dump of the same
+ * process by id.
+ *
+ * <p>A sample costs one directory listing and one small read per task.
+ * The stat lines are parsed as bytes out of a single reused buffer into
+ * primitive arrays kept from one sample to the next, so sampling a process
+ * with thousands of threads every second creates little garbage. A sampler
+ * is not thread safe.</p>
+ */
+public final class ProcTaskSampler {
+    /** System property holding the kernel clock tick rate ({@code USER_HZ}). */
+    public static final String CLOCK_TICKS_PROPERTY = "threaddump.proc.clockTicks";
+    /** Clock tick rate used by Linux on all common architectures. */
+    public static final int DEFAULT_CLOCK_TICKS = 100;
+
+    // utime and stime are fields 14 and 15 of the stat line; counting
+    // starts after the ')' closing the command name, which is field 2
+    private static final int UTIME_FIELD = 14 - 3;
+
+    private final Path taskDir;
+    private final long nanosPerTick;
+    private ByteBuffer buffer = ByteBuffer.allocate(1024);
+    private long[] tids = new long[256];
+    private long[] cpu = new long[256];
+
+    /**
+     * Sample the threads of a process of this machine.
+     *
+     * @param pid process id
+     */
+    public ProcTaskSampler(long pid) {
+        this(Paths.get("/proc", Long.toString(pid), "task"),
+                Integer.getInteger(CLOCK_TICKS_PROPERTY, DEFAULT_CLOCK_TICKS));
+    }
+
+    /**
+     * @param taskDir directory holding one subdirectory per task, laid out
+     *                like {@code /proc/<pid>/task}
+     * @param clockTicks clock ticks per second used by the stat files
+     */
+    public ProcTaskSampler(Path taskDir, int clockTicks) {
+        if (clockTicks <= 0) {
+            throw new IllegalArgumentException("clock ticks must be positive");
+        }
+        this.taskDir = taskDir;
+        this.nanosPerTick = 1_000_000_000L / clockTicks;
+    }
+
+    /**
+     * Whether the task directory can be read, i.e. the process exists and
+     * the platform has a Linux-style {@code /proc}.
+     */
+    public boolean isAvailable() {
+        return Files.isDirectory(taskDir) && Files.isReadable(taskDir);
+    }
+
+    /**
+     * Read the CPU time of every task. Tasks that exit while the sample is
+     * taken are left out.
+     *
+     * @return the sample
+     * @throws NoSuchFileException if the process does not exist
+     */
+    public TaskCpuSample sample() throws IOException {
+        long nanoTime = System.nanoTime();
+        Instant timestamp = Instant.now();
+        int n = 0;
+        boolean sorted = true;
+        String[] names = taskDir.toFile().list();
+        if (names == null) {
+            throw new NoSuchFileException(taskDir.toString());
+        }
+        for (String name : names) {
+            long tid = parseTid(name);
+            if (tid < 0) {
+                continue;
+            }
+            long ticks = readTicks(taskDir.resolve(name + "/stat"));
+            if (ticks < 0) {
+                continue;
+            }
+            if (n == tids.length) {
+                tids = Arrays.copyOf(tids, n * 2);
+                cpu = Arrays.copyOf(cpu, n * 2);
+            }
+            sorted &= n == 0 || tids[n - 1] < tid;
+            tids[n] = tid;
+            cpu[n] = ticks * nanosPerTick;
+            n++;
+        }
+        if (!sorted) {
+            sortByTid(n);
+        }
+        return new TaskCpuSample(timestamp, nanoTime, Arrays.copyOf(tids, n), Arrays.copyOf(cpu, n));
+    }
+
+    private static long parseTid(String name) {
+        if (name.isEmpty() || name.length() > 18) {
+            return -1;
+        }
+        long tid = 0;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            tid = tid * 10 + (c - '0');
+        }
+        return tid;
+    }
+
+    /**
+     * @return utime plus stime in clock ticks, or -1 if the task is gone or
+     *         its stat line cannot be parsed
+     */
+    private long readTicks(Path stat) throws IOException {
+        buffer.clear();
+        try (FileChannel channel = FileChannel.open(stat, StandardOpenOption.READ)) {
+            while (channel.read(buffer) > 0) {
+                if (!buffer.hasRemaining()) {
+                    ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+                    buffer.flip();
+                    bigger.put(buffer);
+                    buffer = bigger;
+                }
+            }
+        } catch (NoSuchFileException e) {
+            return -1;
+        } catch (IOException e) {
+            // reading the stat file of an exiting task fails with ESRCH
+            if (Files.exists(stat)) {
+                throw e;
+            }
+            return -1;
+        }
+        return parseTicks(buffer.array(), buffer.position());
+    }
+
+    static long parseTicks(byte[] line, int len) {
+        // the command name may itself contain spaces and parentheses
+        int i = len - 1;
+        while (i >= 0 && line[i] != ')') {
+            i--;
+        }
+        if (i < 0) {
+            return -1;
+        }
+        i++;
+        int field = -1;
+        long utime = -1;
+        while (i < len) {
+            while (i < len && line[i] == ' ') {
+                i++;
+            }
+            field++;
+            if (field == UTIME_FIELD || field == UTIME_FIELD + 1) {
+                long value = 0;
+                int start = i;
+                while (i < len && line[i] >= '0' && line[i] <= '9') {
+                    value = value * 10 + (line[i++] - '0');
+                }
+                if (i == start) {
+                    return -1;
+                }
+                if (field == UTIME_FIELD) {
+                    utime = value;
+                } else {
+                    return utime + value;
+                }
+            }
+            while (i < len && line[i] != ' ') {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    private void sortByTid(int n) {
+        // the kernel lists tasks in tid order, so this is rarely needed
+        for (int i = 1; i < n; i++) {
+            long tid = tids[i];
+            long value = cpu[i];
+            int j = i - 1;
+            while (j >= 0 && tids[j] > tid) {
+                tids[j + 1] = tids[j];
+                cpu[j + 1] = cpu[j];
+                j--;
+            }
+            tids[j + 1] = tid;
+            cpu[j + 1] = value;
+        }
+    }
+}
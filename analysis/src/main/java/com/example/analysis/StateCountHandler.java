@@ -0,0 +1,49 @@
+package com.example.analysis;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import com.example.model.ThreadInfo;
+import com.example.model.ThreadTable;
+import com.example.parser.ThreadDumpHandler;
+
+/**
+ * Streaming counterpart of {@link ThreadDumpAnalyzer#computeStateCounts}.
+ * Only the per-state counters are retained, so a dump of any size can be
+ * counted in constant memory while it is parsed.
+ */
+public class StateCountHandler implements ThreadDumpHandler {
+    private static final Thread.State[] STATES = Thread.State.values();
+
+    private final long[] counts = new long[STATES.length];
+
+    @Override
+    public void onThread(ThreadInfo thread) {
+        counts[thread.getState().ordinal()]++;
+    }
+
+    /**
+     * Count every thread of a table from its state column.
+     */
+    void addAll(ThreadTable table) {
+        for (int i = 0, n = table.size(); i < n; i++) {
+            counts[table.getStateOrdinal(i)]++;
+        }
+    }
+
+    /**
+     * Get the counts accumulated so far. States no thread was in are left
+     * out.
+     *
+     * @return map of state to count
+     */
+    public Map<Thread.State, Long> getCounts() {
+        Map<Thread.State, Long> result = new EnumMap<>(Thread.State.class);
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                result.put(STATES[i], counts[i]);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,249 @@
+package com.example.analysis;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal sequential reader for tar archives in ustar, GNU and pax
+ * flavours. Entry data is exposed as a stream bounded to the entry, so an
+ * archive is read front to back without extracting or buffering it. Only
+ * regular files are returned; directories, links and other entry types
+ * are skipped. Long names from GNU {@code L} and pax {@code path} records
+ * are honoured.
+ */
+final class TarReader {
+    private static final int BLOCK = 512;
+
+    private final InputStream in;
+    private final byte[] header = new byte[BLOCK];
+    private long remaining;
+    private long padding;
+
+    TarReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Whether a block is a plausible tar header, judged by its checksum.
+     */
+    static boolean isHeader(byte[] block, int length) {
+        if (length < BLOCK) {
+            return false;
+        }
+        long stored = parseOctal(block, 148, 8);
+        if (stored < 0) {
+            return false;
+        }
+        long sum = 0;
+        for (int i = 0; i < BLOCK; i++) {
+            sum += (i >= 148 && i < 156) ? ' ' : (block[i] & 0xff);
+        }
+        return sum == stored;
+    }
+
+    /**
+     * Advance to the next regular file.
+     *
+     * @return name of the entry, or null at the end of the archive
+     */
+    String nextEntry() throws IOException {
+        skip(remaining + padding);
+        remaining = 0;
+        padding = 0;
+        String longName = null;
+        while (true) {
+            if (!readBlock()) {
+                return null;
+            }
+            if (isZeroBlock()) {
+                return null;
+            }
+            if (!isHeader(header, BLOCK)) {
+                throw new IOException("Corrupt tar header");
+            }
+            long size = parseOctal(header, 124, 12);
+            if (size < 0) {
+                throw new IOException("Corrupt tar entry size");
+            }
+            long pad = (BLOCK - size % BLOCK) % BLOCK;
+            byte type = header[156];
+            if (type == 'L' || type == 'x') {
+                String text = new String(readData(size), StandardCharsets.UTF_8);
+                skip(pad);
+                String name = type == 'L' ? trimNul(text) : paxPath(text);
+                if (name != null) {
+                    longName = name;
+                }
+                continue;
+            }
+            if (type != '0' && type != 0 && type != '7') {
+                skip(size + pad);
+                longName = null;
+                continue;
+            }
+            remaining = size;
+            padding = pad;
+            return longName != null ? longName : headerName();
+        }
+    }
+
+    /**
+     * Stream over the data of the current entry. Closing it does not close
+     * the archive.
+     */
+    InputStream entryStream() {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int b = in.read();
+                if (b >= 0) {
+                    remaining--;
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (remaining <= 0) {
+                    return -1;
+                }
+                int n = in.read(b, off, (int) Math.min(len, remaining));
+                if (n > 0) {
+                    remaining -= n;
+                }
+                return n;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                long skipped = in.skip(Math.min(n, remaining));
+                remaining -= skipped;
+                return skipped;
+            }
+
+            @Override
+            public int available() throws IOException {
+                return (int) Math.min(in.available(), remaining);
+            }
+
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    private String headerName() {
+        String name = cString(header, 0, 100);
+        // ustar splits long paths into a prefix and a name
+        if (header[257] == 'u' && header[258] == 's' && header[259] == 't'
+                && header[260] == 'a' && header[261] == 'r') {
+            String prefix = cString(header, 345, 155);
+            if (!prefix.isEmpty()) {
+                name = prefix + "/" + name;
+            }
+        }
+        return name;
+    }
+
+    private boolean readBlock() throws IOException {
+        int n = in.readNBytes(header, 0, BLOCK);
+        if (n == 0) {
+            return false;
+        }
+        if (n < BLOCK) {
+            throw new IOException("Truncated tar archive");
+        }
+        return true;
+    }
+
+    private boolean isZeroBlock() {
+        for (byte b : header) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] readData(long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Tar metadata entry too large");
+        }
+        byte[] data = in.readNBytes((int) size);
+        if (data.length < size) {
+            throw new IOException("Truncated tar archive");
+        }
+        return data;
+    }
+
+    private void skip(long n) throws IOException {
+        while (n > 0) {
+            long skipped = in.skip(n);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new IOException("Truncated tar archive");
+                }
+                skipped = 1;
+            }
+            n -= skipped;
+        }
+    }
+
+    private static String paxPath(String records) {
+        for (String record : records.split("\n")) {
+            int space = record.indexOf(' ');
+            if (space > 0 && record.startsWith("path=", space + 1)) {
+                return record.substring(space + 6);
+            }
+        }
+        return null;
+    }
+
+    private static String trimNul(String s) {
+        int nul = s.indexOf('\0');
+        return nul >= 0 ? s.substring(0, nul) : s;
+    }
+
+    private static String cString(byte[] buf, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && buf[end] != 0) {
+            end++;
+        }
+        return new String(buf, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parse a NUL or space terminated octal field, or -1 if it is invalid.
+     */
+    private static long parseOctal(byte[] buf, int offset, int length) {
+        long value = 0;
+        int i = offset;
+        int end = offset + length;
+        while (i < end && buf[i] == ' ') {
+            i++;
+        }
+        int digits = 0;
+        for (; i < end; i++) {
+            byte b = buf[i];
+            if (b == 0 || b == ' ') {
+                break;
+            }
+            if (b < '0' || b > '7') {
+                return -1;
+            }
+            value = value * 8 + (b - '0');
+            digits++;
+        }
+        return digits == 0 ? -1 : value;
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.analysis;
+
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * CPU time of every task (native thread) of a process at one point in
+ * time, as read by {@link ProcTaskSampler}. Tasks are held in two parallel
+ * arrays sorted by task id, so looking up a thread costs a binary search
+ * and no boxing.
+ */
+public final class TaskCpuSample {
+    private final Instant timestamp;
+    private final long nanoTime;
+    private final long[] tids;
+    private final long[] cpuNanos;
+
+    /**
+     * @param timestamp wall clock time of the sample
+     * @param nanoTime {@link System#nanoTime()} at the sample, used to
+     *                 measure the time between two samples
+     * @param tids task ids in ascending order
+     * @param cpuNanos user plus system CPU time of each task
+     */
+    public TaskCpuSample(Instant timestamp, long nanoTime, long[] tids, long[] cpuNanos) {
+        if (tids.length != cpuNanos.length) {
+            throw new IllegalArgumentException("tids and cpuNanos differ in length");
+        }
+        this.timestamp = timestamp;
+        this.nanoTime = nanoTime;
+        this.tids = tids;
+        this.cpuNanos = cpuNanos;
+    }
+
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    public long getNanoTime() {
+        return nanoTime;
+    }
+
+    /** Return the number of tasks in the sample. */
+    public int size() {
+        return tids.length;
+    }
+
+    public long getTid(int index) {
+        return tids[index];
+    }
+
+    public long getCpuNanos(int index) {
+        return cpuNanos[index];
+    }
+
+    /**
+     * Return the CPU time of a task, or -1 if the task was not running when
+     * the sample was taken.
+     */
+    public long cpuNanosOf(long tid) {
+        int i = Arrays.binarySearch(tids, tid);
+        return i >= 0 ? cpuNanos[i] : -1;
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.analysis;
+
+import com.example.model.ThreadInfo;
+
+/**
+ * CPU time a thread consumed between two points in time, taken from the
+ * {@code cpu=} and {@code elapsed=} fields of HotSpot thread headers or
+ * from two {@link TaskCpuSample}s.
+ */
+public class ThreadCpuUsage {
+    private final ThreadInfo thread;
+    private final long cpuNanos;
+    private final long wallNanos;
+
+    public ThreadCpuUsage(ThreadInfo thread, long cpuNanos, long wallNanos) {
+        this.thread = thread;
+        this.cpuNanos = cpuNanos;
+        this.wallNanos = wallNanos;
+    }
+
+    /** Return the thread as it appears in the later, or only, dump. */
+    public ThreadInfo getThread() {
+        return thread;
+    }
+
+    /** Return the CPU time used in the interval, in nanoseconds. */
+    public long getCpuNanos() {
+        return cpuNanos;
+    }
+
+    /** Return the wall clock length of the interval, in nanoseconds. */
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    /**
+     * Return the share of one CPU the thread used in the interval,
+     * e.g. 1.0 for a thread that was busy the whole time.
+     */
+    public double getCpuFraction() {
+        return wallNanos > 0 ? (double) cpuNanos / wallNanos : 0;
+    }
+}
@@ -1,6 +1,7 @@
 package com.example.analysis;
 
-import java.util.EnumMap;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -10,15 +11,21 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.Comparator;
-import java.util.function.Function;
 
 import com.example.model.StackFrame;
 
 import com.example.model.ThreadDump;
 import com.example.model.ThreadInfo;
+import com.example.model.ThreadTable;
 import com.example.model.LockInfo;
 
 public class ThreadDumpAnalyzer {
+    /**
+     * Share of one CPU a thread must use between every pair of consecutive
+     * dumps to be reported by {@link #findHighCpuThreads(List)} when the
+     * dumps record CPU times.
+     */
+    public static final double HIGH_CPU_FRACTION = 0.5;
 
     /**
      * Compute the number of threads in each {@link Thread.State} for a thread dump.
@@ -27,11 +34,15 @@ public class ThreadDumpAnalyzer {
      * @return map of state to count
      */
     public Map<Thread.State, Long> computeStateCounts(ThreadDump dump) {
-        Map<Thread.State, Long> counts = new EnumMap<>(Thread.State.class);
+        StateCountHandler handler = new StateCountHandler();
+        if (dump.getTable() != null) {
+            handler.addAll(dump.getTable());
+            return handler.getCounts();
+        }
         for (ThreadInfo info : dump.getThreads()) {
-            counts.merge(info.getState(), 1L, Long::sum);
+            handler.onThread(info);
         }
-        return counts;
+        return handler.getCounts();
     }
 
     /**
@@ -56,8 +67,10 @@ public class ThreadDumpAnalyzer {
      * @return list of detected deadlocks, empty if none
      */
     public List<DeadlockInfo> detectDeadlocks(ThreadDump dump) {
+        // one list for both passes: the graph is keyed by thread identity
+        List<ThreadInfo> threads = dump.getThreads();
         Map<String, ThreadInfo> lockOwners = new HashMap<>();
-        for (ThreadInfo t : dump.getThreads()) {
+        for (ThreadInfo t : threads) {
             for (LockInfo l : t.getLockedMonitors()) {
                 lockOwners.put(l.getIdentity(), t);
             }
@@ -65,7 +78,7 @@ public class ThreadDumpAnalyzer {
 
         Map<ThreadInfo, ThreadInfo> waitFor = new HashMap<>();
         Map<ThreadInfo, LockInfo> waitingLock = new HashMap<>();
-        for (ThreadInfo t : dump.getThreads()) {
+        for (ThreadInfo t : threads) {
             LockInfo w = t.getWaitingOn();
             if (w != null) {
                 ThreadInfo owner = lockOwners.get(w.getIdentity());
@@ -116,19 +129,11 @@ public class ThreadDumpAnalyzer {
      * @return map of LockInfo to list of waiting threads
      */
     public Map<LockInfo, List<ThreadInfo>> findLockContentionHotspots(ThreadDump dump, int minWaiters) {
-        Map<String, LockInfo> lockById = new HashMap<>();
-        Map<String, List<ThreadInfo>> waiting = new HashMap<>();
+        LockContentionHandler handler = new LockContentionHandler();
         for (ThreadInfo t : dump.getThreads()) {
-            LockInfo w = t.getWaitingOn();
-            if (w != null) {
-                lockById.putIfAbsent(w.getIdentity(), w);
-                waiting.computeIfAbsent(w.getIdentity(), k -> new ArrayList<>()).add(t);
-            }
+            handler.onThread(t);
         }
-
-        return waiting.entrySet().stream()
-                .filter(e -> e.getValue().size() >= minWaiters)
-                .collect(Collectors.toMap(e -> lockById.get(e.getKey()), Map.Entry::getValue));
+        return handler.getHotspots(minWaiters);
     }
 
     /**
@@ -151,20 +156,46 @@ public class ThreadDumpAnalyzer {
      * @return ordered map of StackFrame to count
      */
     public Map<StackFrame, Long> computeStackHotspots(ThreadDump dump, int limit) {
-        Map<StackFrame, Long> counts = new HashMap<>();
+        if (dump.getTable() != null) {
+            return computeStackHotspots(dump.getTable(), limit);
+        }
+        // one mutable counter per distinct frame instead of a boxed Long
+        // per occurrence
+        Map<StackFrame, long[]> counts = new HashMap<>();
         for (ThreadInfo t : dump.getThreads()) {
-            for (StackFrame f : t.getStack()) {
-                counts.merge(f, 1L, Long::sum);
+            for (StackFrame frame : t.getStack()) {
+                long[] count = counts.get(frame);
+                if (count == null) {
+                    counts.put(frame, count = new long[1]);
+                }
+                count[0]++;
             }
         }
 
         return counts.entrySet().stream()
-                .sorted(Map.Entry.<StackFrame, Long>comparingByValue(Comparator.reverseOrder()))
+                .sorted(Comparator.comparingLong((Map.Entry<StackFrame, long[]> e) -> e.getValue()[0]).reversed())
                 .limit(limit)
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue,
+                .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue()[0],
                         (a, b) -> a, LinkedHashMap::new));
     }
 
+    private static Map<StackFrame, Long> computeStackHotspots(ThreadTable table, int limit) {
+        long[] counts = new long[table.getFrameCount()];
+        for (int i = 0, n = table.getFrameIdCount(); i < n; i++) {
+            counts[table.getFrameIdAt(i)]++;
+        }
+        Integer[] order = new Integer[counts.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(counts[b], counts[a]));
+        Map<StackFrame, Long> result = new LinkedHashMap<>();
+        for (int i = 0; i < Math.min(limit, order.length); i++) {
+            result.put(table.getFrame(order[i]), counts[order[i]]);
+        }
+        return result;
+    }
+
     /**
      * Convenience method returning the top 5 stack frames.
      */
@@ -182,42 +213,178 @@ public class ThreadDumpAnalyzer {
      * @return map of group key to list of threads in that group
      */
     public Map<String, List<ThreadInfo>> groupSimilarThreads(ThreadDump dump) {
-        Map<String, List<ThreadInfo>> groups = new HashMap<>();
+        if (dump.getTable() != null) {
+            return groupSimilarThreads(dump.getTable(), dump.getThreads());
+        }
+        // interned stacks hash in constant time and mostly compare by
+        // reference, so the key string is only built once per group
+        Map<NamedStack, List<ThreadInfo>> byStack = new HashMap<>();
         for (ThreadInfo t : dump.getThreads()) {
-            String name = t.getName().replaceAll("[-_]?\\d+$", "");
-            String stackSig = t.getStack().stream()
-                    .map(StackFrame::toString)
-                    .collect(Collectors.joining(";"));
-            String key = name + "::" + stackSig;
-            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(t);
+            byStack.computeIfAbsent(new NamedStack(normalizeName(t.getName()), t.getStack()),
+                    k -> new ArrayList<>()).add(t);
+        }
+        Map<StackFrame, String> frameText = new HashMap<>();
+        Map<String, List<ThreadInfo>> groups = new HashMap<>();
+        for (Map.Entry<NamedStack, List<ThreadInfo>> e : byStack.entrySet()) {
+            StringBuilder key = new StringBuilder(e.getKey().name).append("::");
+            boolean first = true;
+            for (StackFrame frame : e.getKey().stack) {
+                if (!first) {
+                    key.append(';');
+                }
+                key.append(frameText.computeIfAbsent(frame, StackFrame::toString));
+                first = false;
+            }
+            mergeGroup(groups, key.toString(), e.getValue());
         }
         return groups;
     }
 
+    private static void mergeGroup(Map<String, List<ThreadInfo>> groups, String key, List<ThreadInfo> threads) {
+        // distinct frames may print alike, which made them one group
+        // when groups were keyed by the printed stack alone
+        groups.merge(key, threads, (a, b) -> {
+            a.addAll(b);
+            return a;
+        });
+    }
+
+    /** Normalized thread name plus stack, the identity of a group. */
+    private static final class NamedStack {
+        final String name;
+        final List<StackFrame> stack;
+        final int hash;
+
+        NamedStack(String name, List<StackFrame> stack) {
+            this.name = name;
+            this.stack = stack;
+            this.hash = 31 * name.hashCode() + stack.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof NamedStack)) {
+                return false;
+            }
+            NamedStack other = (NamedStack) o;
+            return hash == other.hash && name.equals(other.name)
+                    && (stack == other.stack || stack.equals(other.stack));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Groups the rows of a table by normalized name and frame ids, and only
+     * renders the key string once per group rather than once per thread.
+     */
+    private static Map<String, List<ThreadInfo>> groupSimilarThreads(ThreadTable table, List<ThreadInfo> threads) {
+        Map<StackSlice, List<ThreadInfo>> slices = new HashMap<>();
+        for (int i = 0; i < table.size(); i++) {
+            StackSlice slice = new StackSlice(normalizeName(table.getName(i)), table, i);
+            slices.computeIfAbsent(slice, k -> new ArrayList<>()).add(threads.get(i));
+        }
+        // each distinct frame is rendered once, however many stacks hold it
+        String[] frameText = new String[table.getFrameCount()];
+        Map<String, List<ThreadInfo>> groups = new HashMap<>();
+        for (Map.Entry<StackSlice, List<ThreadInfo>> e : slices.entrySet()) {
+            StackSlice slice = e.getKey();
+            StringBuilder key = new StringBuilder(slice.name).append("::");
+            for (int d = 0; d < table.getStackDepth(slice.thread); d++) {
+                if (d > 0) {
+                    key.append(';');
+                }
+                int id = table.getFrameId(slice.thread, d);
+                if (frameText[id] == null) {
+                    frameText[id] = table.getFrame(id).toString();
+                }
+                key.append(frameText[id]);
+            }
+            mergeGroup(groups, key.toString(), e.getValue());
+        }
+        return groups;
+    }
+
+    /** Normalized name plus the stack of one table row, compared by frame id. */
+    private static final class StackSlice {
+        final String name;
+        final ThreadTable table;
+        final int thread;
+        final int hash;
+
+        StackSlice(String name, ThreadTable table, int thread) {
+            this.name = name;
+            this.table = table;
+            this.thread = thread;
+            this.hash = 31 * name.hashCode() + table.stackHash(thread);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof StackSlice)) {
+                return false;
+            }
+            StackSlice other = (StackSlice) o;
+            return hash == other.hash && name.equals(other.name) && table.sameStack(thread, other.thread);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
     /**
      * Compare two thread dumps and identify newly created threads and
      * threads that disappeared.
      *
      * @param previous earlier dump
      * @param current later dump
-     * @return object describing the differences
+     * @return object describing the differences, listing threads in the
+     *         order of their dump
      */
     public ThreadDelta diff(ThreadDump previous, ThreadDump current) {
-        Map<Long, ThreadInfo> prevById = previous.getThreads().stream()
-                .collect(Collectors.toMap(ThreadInfo::getId, Function.identity()));
-
-        Map<Long, ThreadInfo> currById = current.getThreads().stream()
-                .collect(Collectors.toMap(ThreadInfo::getId, Function.identity()));
+        List<ThreadInfo> prevThreads = previous.getThreads();
+        List<ThreadInfo> currThreads = current.getThreads();
+        LongSet prevIds = ids(prevThreads);
+        LongSet currIds = ids(currThreads);
 
-        List<ThreadInfo> newThreads = currById.values().stream()
-                .filter(t -> !prevById.containsKey(t.getId()))
-                .collect(Collectors.toList());
+        List<ThreadInfo> newThreads = new ArrayList<>();
+        for (ThreadInfo t : currThreads) {
+            if (!prevIds.contains(t.getId())) {
+                newThreads.add(t);
+            }
+        }
+        List<ThreadInfo> disappeared = new ArrayList<>();
+        for (ThreadInfo t : prevThreads) {
+            if (!currIds.contains(t.getId())) {
+                disappeared.add(t);
+            }
+        }
+        return new ThreadDelta(newThreads, disappeared);
+    }
 
-        List<ThreadInfo> disappeared = prevById.values().stream()
-                .filter(t -> !currById.containsKey(t.getId()))
-                .collect(Collectors.toList());
+    private static LongSet ids(List<ThreadInfo> threads) {
+        LongSet ids = new LongSet(threads.size());
+        for (ThreadInfo t : threads) {
+            ids.add(t.getId());
+        }
+        return ids;
+    }
 
-        return new ThreadDelta(newThreads, disappeared);
+    /**
+     * Index threads by id. Should a dump list an id twice, the later
+     * thread wins.
+     */
+    private static LongMap<ThreadInfo> byId(List<ThreadInfo> threads) {
+        LongMap<ThreadInfo> byId = new LongMap<>(threads.size());
+        for (ThreadInfo t : threads) {
+            byId.put(t.getId(), t);
+        }
+        return byId;
     }
 
     /**
@@ -230,8 +397,7 @@ public class ThreadDumpAnalyzer {
      * @return map of changed threads to their previous state
      */
     public Map<ThreadInfo, Thread.State> findStateChanges(ThreadDump previous, ThreadDump current) {
-        Map<Long, ThreadInfo> prevById = previous.getThreads().stream()
-                .collect(Collectors.toMap(ThreadInfo::getId, Function.identity()));
+        LongMap<ThreadInfo> prevById = byId(previous.getThreads());
         Map<ThreadInfo, Thread.State> changed = new LinkedHashMap<>();
         for (ThreadInfo t : current.getThreads()) {
             ThreadInfo p = prevById.get(t.getId());
@@ -243,34 +409,174 @@ public class ThreadDumpAnalyzer {
     }
 
     /**
-     * Find threads that are RUNNABLE in every provided dump. Such threads may
-     * be candidates for high CPU usage if they remain runnable across multiple
-     * snapshots.
+     * Compute how much CPU each thread used between two dumps of the same
+     * JVM. Only threads present in both dumps with {@code cpu=} times are
+     * included; a thread is matched by id and name, and a restarted thread
+     * that reuses an id is recognised by its shorter elapsed time. The wall
+     * clock time is taken from the threads' {@code elapsed=} fields, or from
+     * the dump timestamps where those are missing. If neither dump records
+     * its time either, the wall clock time is unknown and given as -1.
+     *
+     * @param before earlier dump
+     * @param after later dump
+     * @return usage per thread, highest CPU time first
+     */
+    public List<ThreadCpuUsage> computeCpuUsage(ThreadDump before, ThreadDump after) {
+        List<ThreadInfo> beforeThreads = before.getThreads();
+        LongMap<ThreadInfo> prevById = new LongMap<>(beforeThreads.size());
+        for (ThreadInfo t : beforeThreads) {
+            if (t.getCpuTimeNanos() >= 0) {
+                prevById.put(t.getId(), t);
+            }
+        }
+        long dumpWall = before.isTimestampRecorded() && after.isTimestampRecorded()
+                ? Duration.between(before.getTimestamp(), after.getTimestamp()).toNanos()
+                : -1;
+        List<ThreadCpuUsage> usage = new ArrayList<>();
+        for (ThreadInfo t : after.getThreads()) {
+            ThreadInfo p = prevById.get(t.getId());
+            if (p == null || t.getCpuTimeNanos() < p.getCpuTimeNanos() || !t.getName().equals(p.getName())) {
+                continue;
+            }
+            long wall = dumpWall;
+            if (t.getElapsedNanos() >= 0 && p.getElapsedNanos() >= 0) {
+                if (t.getElapsedNanos() < p.getElapsedNanos()) {
+                    continue;
+                }
+                wall = t.getElapsedNanos() - p.getElapsedNanos();
+            }
+            usage.add(new ThreadCpuUsage(t, t.getCpuTimeNanos() - p.getCpuTimeNanos(), wall));
+        }
+        usage.sort(Comparator.comparingLong(ThreadCpuUsage::getCpuNanos).reversed());
+        return usage;
+    }
+
+    /**
+     * Compute how much CPU each thread of a dump used between two
+     * {@code /proc} samples of the same process. Threads are matched to
+     * tasks by id, which for HotSpot dumps is the native thread id; threads
+     * missing from either sample are left out.
+     *
+     * @param dump dump taken between the two samples
+     * @param before earlier sample
+     * @param after later sample
+     * @return usage per thread, highest CPU time first
+     */
+    public List<ThreadCpuUsage> computeCpuUsage(ThreadDump dump, TaskCpuSample before, TaskCpuSample after) {
+        long wall = after.getNanoTime() - before.getNanoTime();
+        List<ThreadCpuUsage> usage = new ArrayList<>();
+        for (ThreadInfo t : dump.getThreads()) {
+            long start = before.cpuNanosOf(t.getId());
+            long end = after.cpuNanosOf(t.getId());
+            if (start < 0 || end < start) {
+                continue;
+            }
+            usage.add(new ThreadCpuUsage(t, end - start, wall));
+        }
+        usage.sort(Comparator.comparingLong(ThreadCpuUsage::getCpuNanos).reversed());
+        return usage;
+    }
+
+    /**
+     * Compute the stack frames the CPU time was spent under. Each frame of
+     * a thread's stack is credited with the CPU time the thread used, once
+     * even if it occurs several times in the stack, so the frames at the
+     * top of the result are those most of the CPU time passed through.
+     *
+     * @param usage CPU usage per thread, e.g. from
+     *              {@link #computeCpuUsage(ThreadDump, TaskCpuSample, TaskCpuSample)}
+     * @param limit maximum number of frames to return
+     * @return ordered map of StackFrame to CPU nanoseconds
+     */
+    public Map<StackFrame, Long> computeCpuHotspots(List<ThreadCpuUsage> usage, int limit) {
+        Map<StackFrame, Long> cpu = new HashMap<>();
+        Set<StackFrame> seen = new HashSet<>();
+        for (ThreadCpuUsage u : usage) {
+            if (u.getCpuNanos() <= 0) {
+                continue;
+            }
+            seen.clear();
+            for (StackFrame f : u.getThread().getStack()) {
+                if (seen.add(f)) {
+                    cpu.merge(f, u.getCpuNanos(), Long::sum);
+                }
+            }
+        }
+
+        return cpu.entrySet().stream()
+                .sorted(Map.Entry.<StackFrame, Long>comparingByValue(Comparator.reverseOrder()))
+                .limit(limit)
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue,
+                        (a, b) -> a, LinkedHashMap::new));
+    }
+
+    /**
+     * Find threads that may be using a lot of CPU. When every dump records
+     * per-thread CPU times, these are the threads that used at least
+     * {@link #HIGH_CPU_FRACTION} of a CPU between each pair of consecutive
+     * dumps, whatever their state. Otherwise they are the threads that are
+     * RUNNABLE in every dump, which also matches threads blocked in native
+     * I/O.
      *
      * @param dumps list of thread dumps in chronological order
-     * @return list of ThreadInfo objects present and runnable in all dumps
+     * @return threads as they appear in the first dump
      */
     public List<ThreadInfo> findHighCpuThreads(List<ThreadDump> dumps) {
         if (dumps == null || dumps.size() < 2) {
             return List.of();
         }
+        if (dumps.stream().allMatch(this::hasCpuTimes)) {
+            return findHighCpuThreads(dumps, HIGH_CPU_FRACTION);
+        }
 
-        Map<Long, ThreadInfo> candidates = dumps.get(0).getThreads().stream()
-                .filter(t -> t.getState() == Thread.State.RUNNABLE)
-                .collect(Collectors.toMap(ThreadInfo::getId, Function.identity()));
+        List<ThreadInfo> candidates = new ArrayList<>();
+        for (ThreadInfo t : dumps.get(0).getThreads()) {
+            if (t.getState() == Thread.State.RUNNABLE) {
+                candidates.add(t);
+            }
+        }
+        for (int i = 1; i < dumps.size() && !candidates.isEmpty(); i++) {
+            List<ThreadInfo> threads = dumps.get(i).getThreads();
+            LongSet runnableIds = new LongSet(threads.size());
+            for (ThreadInfo t : threads) {
+                if (t.getState() == Thread.State.RUNNABLE) {
+                    runnableIds.add(t.getId());
+                }
+            }
+            candidates.removeIf(t -> !runnableIds.contains(t.getId()));
+        }
+        return candidates;
+    }
 
-        for (int i = 1; i < dumps.size(); i++) {
-            Set<Long> runnableIds = dumps.get(i).getThreads().stream()
-                    .filter(t -> t.getState() == Thread.State.RUNNABLE)
-                    .map(ThreadInfo::getId)
-                    .collect(Collectors.toSet());
-            candidates.entrySet().removeIf(e -> !runnableIds.contains(e.getKey()));
-            if (candidates.isEmpty()) {
-                break;
+    /**
+     * Find threads that used at least the given share of a CPU between
+     * each pair of consecutive dumps, using the CPU times recorded in the
+     * dumps.
+     *
+     * @param dumps list of thread dumps in chronological order
+     * @param minCpuFraction minimum share of one CPU, e.g. 0.9
+     * @return threads as they appear in the first dump
+     */
+    public List<ThreadInfo> findHighCpuThreads(List<ThreadDump> dumps, double minCpuFraction) {
+        if (dumps == null || dumps.size() < 2) {
+            return List.of();
+        }
+        List<ThreadInfo> candidates = new ArrayList<>(dumps.get(0).getThreads());
+        for (int i = 1; i < dumps.size() && !candidates.isEmpty(); i++) {
+            List<ThreadCpuUsage> usage = computeCpuUsage(dumps.get(i - 1), dumps.get(i));
+            LongSet busy = new LongSet(usage.size());
+            for (ThreadCpuUsage u : usage) {
+                if (u.getCpuFraction() >= minCpuFraction) {
+                    busy.add(u.getThread().getId());
+                }
             }
+            candidates.removeIf(t -> !busy.contains(t.getId()));
         }
+        return candidates;
+    }
 
-        return new ArrayList<>(candidates.values());
+    private boolean hasCpuTimes(ThreadDump dump) {
+        return dump.getThreads().stream().anyMatch(t -> t.getCpuTimeNanos() >= 0);
     }
 
     /**
@@ -292,7 +598,7 @@ public class ThreadDumpAnalyzer {
         for (ThreadDump dump : dumps) {
             Map<String, List<ThreadInfo>> groups = new HashMap<>();
             for (ThreadInfo t : dump.getThreads()) {
-                String name = t.getName().replaceAll("[-_]?\\d+$", "");
+                String name = normalizeName(t.getName());
                 groups.computeIfAbsent(name, k -> new ArrayList<>()).add(t);
             }
 
@@ -320,4 +626,23 @@ public class ThreadDumpAnalyzer {
         }
         return new ArrayList<>(starved);
     }
+
+    /**
+     * Strip a trailing number, and a '-' or '_' before it, from a thread
+     * name, so that "pool-1-thread-7" becomes "pool-1-thread". Equivalent
+     * to removing the regular expression {@code [-_]?\d+$}.
+     */
+    static String normalizeName(String name) {
+        int end = name.length();
+        while (end > 0 && name.charAt(end - 1) >= '0' && name.charAt(end - 1) <= '9') {
+            end--;
+        }
+        if (end == name.length()) {
+            return name;
+        }
+        if (end > 0 && (name.charAt(end - 1) == '-' || name.charAt(end - 1) == '_')) {
+            end--;
+        }
+        return name.substring(0, end);
+    }
 }
@@ -0,0 +1,221 @@
+package com.example.analysis;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.example.model.AnalysisSession;
+import com.example.model.ThreadDump;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DumpArchiveTest {
+    private static String dump(String timestamp, String... threads) {
+        StringBuilder sb = new StringBuilder();
+        if (timestamp != null) {
+            sb.append(timestamp).append('\n');
+        }
+        sb.append("Full thread dump Java HotSpot(TM) 64-Bit Server VM (17.0.1):\n\n");
+        int id = 1;
+        for (String name : threads) {
+            sb.append('"').append(name).append("\" #").append(id).append(" prio=5 os_prio=0 tid=0x")
+              .append(id).append(" nid=0x").append(id).append(" runnable [0x0]\n")
+              .append("   java.lang.Thread.State: RUNNABLE\n")
+              .append("    at example.Main.main(Main.java:1)\n\n");
+            id++;
+        }
+        return sb.toString();
+    }
+
+    private static byte[] zip(String... namesAndContents) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(buffer)) {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                out.putNextEntry(new ZipEntry(namesAndContents[i]));
+                out.write(namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        return buffer.toByteArray();
+    }
+
+    private static byte[] tarGz(String... namesAndContents) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(buffer)) {
+            for (int i = 0; i < namesAndContents.length; i += 2) {
+                byte[] data = namesAndContents[i + 1].getBytes(StandardCharsets.UTF_8);
+                out.write(tarHeader(namesAndContents[i], data.length));
+                out.write(data);
+                out.write(new byte[(512 - data.length % 512) % 512]);
+            }
+            out.write(new byte[1024]);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static byte[] tarHeader(String name, int size) {
+        byte[] header = new byte[512];
+        put(header, 0, name);
+        put(header, 100, "0000644");
+        put(header, 108, "0000000");
+        put(header, 116, "0000000");
+        put(header, 124, String.format("%011o", size));
+        put(header, 136, "00000000000");
+        header[156] = '0';
+        put(header, 257, "ustar");
+        put(header, 263, "00");
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        int sum = 0;
+        for (byte b : header) {
+            sum += b & 0xff;
+        }
+        put(header, 148, String.format("%06o", sum));
+        return header;
+    }
+
+    private static void put(byte[] header, int offset, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, header, offset, bytes.length);
+    }
+
+    private static InputStream stream(byte[] bytes) {
+        return new BufferedInputStream(new ByteArrayInputStream(bytes));
+    }
+
+    @Test
+    public void readsZipEntriesInNameOrder() throws Exception {
+        byte[] archive = zip(
+                "b.txt", dump(null, "worker"),
+                "README", "not a thread dump\n",
+                "a.txt", dump(null, "main", "worker"));
+        InputStream in = stream(archive);
+        assertTrue(DumpArchive.isArchive(in));
+        AnalysisSession session = DumpArchive.read(in, DumpArchive.Order.NAME, 2);
+        List<ThreadDump> dumps = session.getThreadDumps();
+        assertEquals(2, dumps.size());
+        assertEquals("a.txt", dumps.get(0).getLabel());
+        assertEquals(2, dumps.get(0).getThreads().size());
+        assertEquals("b.txt", dumps.get(1).getLabel());
+        assertEquals(1, dumps.get(1).getThreads().size());
+    }
+
+    @Test
+    public void readsTarGzEntriesInTimestampOrder() throws Exception {
+        byte[] archive = tarGz(
+                "dumps/1.txt", dump("2024-01-01 10:00:30", "late"),
+                "dumps/2.txt", dump("2024-01-01 10:00:00", "early"),
+                "dumps/3.txt", dump("2024-01-01 10:00:10", "middle"));
+        InputStream in = stream(archive);
+        assertTrue(DumpArchive.isArchive(in));
+        List<ThreadDump> dumps = DumpArchive.read(in, DumpArchive.Order.TIMESTAMP, 2).getThreadDumps();
+        assertEquals(3, dumps.size());
+        assertEquals("dumps/2.txt", dumps.get(0).getLabel());
+        assertEquals("dumps/3.txt", dumps.get(1).getLabel());
+        assertEquals("dumps/1.txt", dumps.get(2).getLabel());
+        assertEquals("early", dumps.get(0).getThreads().get(0).getName());
+    }
+
+    @Test
+    public void keepsArchiveOrderOfDumpsWithoutTimestamp() throws Exception {
+        byte[] archive = zip(
+                "z.txt", dump(null, "first untimed"),
+                "a.txt", dump("2024-01-01 10:00:30", "late"),
+                "c.txt", dump(null, "second untimed"),
+                "b.txt", dump("2024-01-01 10:00:00", "early"));
+        // the untimed entries are parsed concurrently; their order must
+        // not depend on which finishes first
+        for (int i = 0; i < 20; i++) {
+            List<ThreadDump> dumps = DumpArchive.read(stream(archive), DumpArchive.Order.TIMESTAMP, 4)
+                    .getThreadDumps();
+            assertEquals(List.of("b.txt", "a.txt", "z.txt", "c.txt"),
+                    dumps.stream().map(ThreadDump::getLabel).toList());
+        }
+    }
+
+    @Test
+    public void sortsDumpsRecordedInTheFutureAsTimed() throws Exception {
+        // a remote host whose clock runs ahead
+        byte[] archive = zip(
+                "a.txt", dump(null, "untimed"),
+                "b.txt", dump("2999-01-01 00:00:00", "ahead"),
+                "c.txt", dump("2024-01-01 10:00:00", "early"));
+        List<ThreadDump> dumps = DumpArchive.read(stream(archive), DumpArchive.Order.TIMESTAMP, 2)
+                .getThreadDumps();
+        assertEquals(List.of("c.txt", "b.txt", "a.txt"), dumps.stream().map(ThreadDump::getLabel).toList());
+        assertTrue(dumps.get(1).isTimestampRecorded());
+        assertFalse(dumps.get(2).isTimestampRecorded());
+        assertNotNull(dumps.get(2).getTimestamp());
+    }
+
+    @Test
+    public void plainDumpIsNotAnArchive() throws Exception {
+        assertFalse(DumpArchive.isArchive(stream(dump(null, "main").getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    public void loadSessionExpandsArchiveFiles(@TempDir Path dir) throws Exception {
+        Path archive = dir.resolve("dumps.zip");
+        Files.write(archive, zip("one.txt", dump(null, "main"), "two.txt", dump(null, "main", "worker")));
+        Path plain = dir.resolve("plain.txt");
+        Files.writeString(plain, dump(null, "main"));
+
+        List<ThreadDump> dumps = DumpCache.loadSession(archive, DumpArchive.Order.NAME).getThreadDumps();
+        assertEquals(2, dumps.size());
+        assertEquals("two.txt", dumps.get(1).getLabel());
+        assertEquals(1, DumpCache.loadSession(plain, DumpArchive.Order.NAME).getThreadDumps().size());
+    }
+
+    @Test
+    public void loadSessionSplitsCompressedLogs(@TempDir Path dir) throws Exception {
+        Path log = dir.resolve("catalina.out.gz");
+        String text = "INFO starting\n" + dump(null, "main") + "INFO running\n" + dump(null, "main", "worker");
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(buffer)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        Files.write(log, buffer.toByteArray());
+
+        List<ThreadDump> dumps = DumpCache.loadSession(log, DumpArchive.Order.NAME).getThreadDumps();
+        assertEquals(2, dumps.size());
+        assertEquals("1", dumps.get(0).getLabel());
+        assertEquals(1, dumps.get(0).getThreads().size());
+        assertEquals(2, dumps.get(1).getThreads().size());
+    }
+
+    @Test
+    public void loadSessionReusesCachedSingleDumps(@TempDir Path dir) throws Exception {
+        Path plain = dir.resolve("plain.txt");
+        Files.writeString(plain, dump(null, "main", "worker"));
+        Path compressed = dir.resolve("plain.txt.gz");
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(buffer)) {
+            out.write(dump(null, "main").getBytes(StandardCharsets.UTF_8));
+        }
+        Files.write(compressed, buffer.toByteArray());
+        DumpCache.clear();
+
+        for (Path path : List.of(plain, compressed)) {
+            List<ThreadDump> dumps = DumpCache.loadSession(path, DumpArchive.Order.NAME).getThreadDumps();
+            assertEquals(1, dumps.size());
+            assertNull(dumps.get(0).getLabel());
+            assertSame(dumps.get(0),
+                    DumpCache.loadSession(path, DumpArchive.Order.NAME).getThreadDumps().get(0));
+        }
+        assertEquals(2, DumpCache.loadSession(plain, DumpArchive.Order.NAME).getThreadDumps().get(0)
+                .getThreads().size());
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.analysis;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+public class LongMapTest {
+    @Test
+    public void mapsLongKeysLikeHashMap() {
+        LongMap<String> map = new LongMap<>(0);
+        Map<Long, String> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            // small ids, 0, negative and huge keys all occur in dumps
+            long key = i % 3 == 0 ? random.nextInt(100) - 10 : random.nextLong();
+            String value = "v" + i;
+            assertEquals(expected.put(key, value), map.put(key, value));
+        }
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, String> e : expected.entrySet()) {
+            assertEquals(e.getValue(), map.get(e.getKey()));
+            assertTrue(map.containsKey(e.getKey()));
+        }
+        assertNull(map.get(Long.MIN_VALUE));
+        assertFalse(map.containsKey(-11));
+    }
+
+    @Test
+    public void setsHoldEachValueOnce() {
+        LongSet set = new LongSet(4);
+        Set<Long> expected = new HashSet<>();
+        for (long id = -50; id < 20_000; id += 3) {
+            assertTrue(set.add(id));
+            expected.add(id);
+        }
+        assertFalse(set.add(1));
+        // 0 is not a multiple of the step above
+        assertFalse(set.contains(0));
+        assertTrue(set.add(0));
+        assertFalse(set.add(0));
+        expected.add(0L);
+        assertEquals(expected.size(), set.size());
+        for (long id = -60; id < 20_010; id++) {
+            assertEquals(expected.contains(id), set.contains(id), Long.toString(id));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.analysis;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ProcTaskSamplerTest {
+    private static void task(Path dir, long tid, String comm, long utime, long stime) throws Exception {
+        Path task = Files.createDirectories(dir.resolve(Long.toString(tid)));
+        String stat = tid + " (" + comm + ") S 1 1 1 0 -1 4194624 100 0 0 0 " + utime + " " + stime
+                + " 0 0 20 0 30 0 12345 1000000 200 18446744073709551615 0 0 0 0 0 0 0 0 0 0 0 0 17 0 0 0 0 0 0\n";
+        Files.write(task.resolve("stat"), stat.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void readsUserAndSystemTimePerTask(@TempDir Path dir) throws Exception {
+        task(dir, 4242, "java", 150, 50);
+        task(dir, 17, "C2 CompilerThre", 3, 1);
+        // command names may contain spaces and parentheses
+        task(dir, 900, "pool (1) worker)", 7, 0);
+        Files.createDirectories(dir.resolve("not-a-task"));
+
+        TaskCpuSample sample = new ProcTaskSampler(dir, 100).sample();
+        assertEquals(3, sample.size());
+        assertEquals(17, sample.getTid(0));
+        assertEquals(900, sample.getTid(1));
+        assertEquals(4242, sample.getTid(2));
+        assertEquals(2_000_000_000L, sample.cpuNanosOf(4242));
+        assertEquals(40_000_000L, sample.cpuNanosOf(17));
+        assertEquals(70_000_000L, sample.cpuNanosOf(900));
+        assertEquals(-1, sample.cpuNanosOf(5));
+    }
+
+    @Test
+    public void rejectsMalformedStatLines() {
+        byte[] noComm = "12 S 1 2 3".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(-1, ProcTaskSampler.parseTicks(noComm, noComm.length));
+        byte[] truncated = "12 (java) S 1 1 1 0 -1 0 0 0 0 0 5".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(-1, ProcTaskSampler.parseTicks(truncated, truncated.length));
+    }
+
+    @Test
+    public void samplesOwnProcess() throws Exception {
+        ProcTaskSampler sampler = new ProcTaskSampler(ProcessHandle.current().pid());
+        assumeTrue(sampler.isAvailable() && Files.isDirectory(Paths.get("/proc/thread-self")));
+        long tid = Long.parseLong(Files.readSymbolicLink(Paths.get("/proc/thread-self")).getFileName().toString());
+        long spinUntil = System.nanoTime() + 50_000_000L;
+        long x = 0;
+        while (System.nanoTime() < spinUntil) {
+            x += x * 31 + 1;
+        }
+        TaskCpuSample sample = sampler.sample();
+        assertTrue(sample.size() > 1, "x=" + x);
+        assertTrue(sample.cpuNanosOf(tid) > 0);
+    }
+}
@@ -5,15 +5,23 @@ import static org.junit.jupiter.api.Assertions.*;
 import java.io.InputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
 import java.util.Map;
 import java.util.List;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
+import com.example.model.AnalysisSession;
+import com.example.model.LockInfo;
+import com.example.model.OffHeapStore;
 import com.example.model.ThreadDump;
 import com.example.model.StackFrame;
 import com.example.model.ThreadInfo;
+import com.example.model.ThreadTable;
 import com.example.parser.ParserFactory;
+import com.example.parser.ThreadDumpHandler;
 import com.example.parser.ThreadDumpParser;
 
 import org.junit.jupiter.api.Test;
@@ -51,6 +59,53 @@ public class ThreadDumpAnalyzerTest {
         }
     }
 
+    @Test
+    public void countsStatesWhileStreaming() throws Exception {
+        StateCountHandler counts = new StateCountHandler();
+        LockContentionHandler contention = new LockContentionHandler();
+        try (InputStream in = getClass().getResourceAsStream("/hotspot.txt")) {
+            ThreadDumpParser parser = ParserFactory.detect(in);
+            parser.parse(in, new ThreadDumpHandler() {
+                @Override
+                public void onThread(ThreadInfo thread) {
+                    counts.onThread(thread);
+                    contention.onThread(thread);
+                }
+            });
+        }
+        ThreadDump dump = loadDump("/hotspot.txt");
+        ThreadDumpAnalyzer analyzer = new ThreadDumpAnalyzer();
+        assertEquals(analyzer.computeStateCounts(dump), counts.getCounts());
+        assertEquals(1, contention.getHotspots(1).size());
+    }
+
+    @Test
+    public void loadsMappedAndCompressedFilesThroughCache() throws Exception {
+        byte[] raw;
+        try (InputStream in = getClass().getResourceAsStream("/hotspot.txt")) {
+            raw = in.readAllBytes();
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(buffer)) {
+            out.write(raw);
+        }
+        Path plain = Files.createTempFile("dump", ".txt");
+        Path gz = Files.createTempFile("dump", ".txt.gz");
+        try {
+            Files.write(plain, raw);
+            Files.write(gz, buffer.toByteArray());
+            DumpCache.clear();
+            ThreadDump fromPlain = DumpCache.load(plain);
+            assertEquals(2, fromPlain.getThreads().size());
+            assertEquals("Java HotSpot(TM) 64-Bit Server VM (17.0.1)", fromPlain.getJvmVersion());
+            assertSame(fromPlain, DumpCache.load(raw));
+            assertEquals(2, DumpCache.load(gz).getThreads().size());
+        } finally {
+            Files.deleteIfExists(plain);
+            Files.deleteIfExists(gz);
+        }
+    }
+
     @Test
     public void computesStackHotspots() throws Exception {
         ThreadDump dump = loadDump("/hotspot.txt");
@@ -137,4 +192,188 @@ public class ThreadDumpAnalyzerTest {
         assertEquals(1, pools.size());
         assertEquals("pool-1-thread", pools.get(0));
     }
+
+    private static ThreadInfo timed(long id, String name, Thread.State state, long cpuMillis, long elapsedMillis) {
+        return new ThreadInfo(id, name, state, List.of(), List.of(), null, 5, false, null,
+                cpuMillis * 1_000_000, elapsedMillis * 1_000_000);
+    }
+
+    @Test
+    public void computesCpuUsageBetweenDumps() {
+        ThreadDump before = new ThreadDump(Instant.EPOCH, List.of(
+                timed(1, "spinner", Thread.State.RUNNABLE, 1_000, 10_000),
+                timed(2, "reader", Thread.State.RUNNABLE, 50, 10_000),
+                timed(3, "pool-1", Thread.State.WAITING, 10, 10_000)));
+        ThreadDump after = new ThreadDump(Instant.EPOCH.plusSeconds(5), List.of(
+                timed(1, "spinner", Thread.State.RUNNABLE, 5_500, 15_000),
+                timed(2, "reader", Thread.State.RUNNABLE, 60, 15_000),
+                timed(3, "pool-1", Thread.State.RUNNABLE, 2_000, 1_000)));
+        ThreadDumpAnalyzer analyzer = new ThreadDumpAnalyzer();
+
+        List<ThreadCpuUsage> usage = analyzer.computeCpuUsage(before, after);
+        assertEquals(2, usage.size());
+        assertEquals("spinner", usage.get(0).getThread().getName());
+        assertEquals(4_500_000_000L, usage.get(0).getCpuNanos());
+        assertEquals(0.9, usage.get(0).getCpuFraction(), 1e-9);
+        assertEquals(0.002, usage.get(1).getCpuFraction(), 1e-9);
+
+        List<ThreadInfo> high = analyzer.findHighCpuThreads(List.of(before, after));
+        assertEquals(List.of("spinner"), high.stream().map(ThreadInfo::getName).toList());
+        assertTrue(analyzer.findHighCpuThreads(List.of(before, after), 0.95).isEmpty());
+    }
+
+    @Test
+    public void leavesWallTimeUnknownForUntimedDumps() throws Exception {
+        String header = "Full thread dump OpenJDK 64-Bit Server VM (17.0.1+12 mixed mode):\n\n";
+        String thread = "\"spinner\" #1 prio=5 os_prio=0 cpu=%d.00ms tid=0x1 nid=0x1 runnable [0x0]\n"
+                + "   java.lang.Thread.State: RUNNABLE\n\n";
+        ThreadDumpParser parser = ParserFactory.detect(new ByteArrayInputStream(header.getBytes()));
+        ThreadDump before = parser.parse(new ByteArrayInputStream((header + String.format(thread, 1_000)).getBytes()));
+        ThreadDump after = parser.parse(new ByteArrayInputStream((header + String.format(thread, 5_000)).getBytes()));
+        assertFalse(before.isTimestampRecorded());
+        ThreadDumpAnalyzer analyzer = new ThreadDumpAnalyzer();
+
+        List<ThreadCpuUsage> usage = analyzer.computeCpuUsage(before, after);
+        assertEquals(1, usage.size());
+        assertEquals(4_000_000_000L, usage.get(0).getCpuNanos());
+        assertEquals(-1, usage.get(0).getWallNanos());
+        assertEquals(0.0, usage.get(0).getCpuFraction());
+        assertTrue(analyzer.findHighCpuThreads(List.of(before, after)).isEmpty());
+    }
+
+    @Test
+    public void joinsProcSamplesWithDumpByThreadId() {
+        StackFrame spin = new StackFrame("example.Worker", "spin", "Worker.java", 10);
+        StackFrame run = new StackFrame("java.lang.Thread", "run", "Thread.java", 833);
+        StackFrame read = new StackFrame("sun.nio.ch.SocketDispatcher", "read0", "Native Method", -1);
+        ThreadDump dump = new ThreadDump(Instant.EPOCH, List.of(
+                new ThreadInfo(101, "spinner", Thread.State.RUNNABLE, List.of(spin, spin, run), List.of(), null),
+                new ThreadInfo(102, "reader", Thread.State.RUNNABLE, List.of(read, run), List.of(), null),
+                new ThreadInfo(103, "new-thread", Thread.State.RUNNABLE, List.of(run), List.of(), null)));
+        TaskCpuSample before = new TaskCpuSample(Instant.EPOCH, 0,
+                new long[] {100, 101, 102}, new long[] {5_000_000_000L, 1_000_000_000L, 20_000_000L});
+        TaskCpuSample after = new TaskCpuSample(Instant.EPOCH.plusSeconds(2), 2_000_000_000L,
+                new long[] {100, 101, 102, 103}, new long[] {9_000_000_000L, 2_800_000_000L, 40_000_000L, 10_000_000L});
+        ThreadDumpAnalyzer analyzer = new ThreadDumpAnalyzer();
+
+        List<ThreadCpuUsage> usage = analyzer.computeCpuUsage(dump, before, after);
+        assertEquals(List.of("spinner", "reader"), usage.stream().map(u -> u.getThread().getName()).toList());
+        assertEquals(0.9, usage.get(0).getCpuFraction(), 1e-9);
+        assertEquals(0.01, usage.get(1).getCpuFraction(), 1e-9);
+
+        Map<StackFrame, Long> hotspots = analyzer.computeCpuHotspots(usage, 2);
+        assertEquals(List.of(run, spin), List.copyOf(hotspots.keySet()));
+        assertEquals(1_820_000_000L, hotspots.get(run));
+        // counted once although the frame occurs twice in the stack
+        assertEquals(1_800_000_000L, hotspots.get(spin));
+    }
+
+    @Test
+    public void normalizesNamesLikeTrailingNumberRegex() {
+        for (String name : new String[] {"pool-1-thread-7", "worker_12", "main", "a--12", "42", "-7", "x1y2", ""}) {
+            assertEquals(name.replaceAll("[-_]?\\d+$", ""), ThreadDumpAnalyzer.normalizeName(name), name);
+        }
+    }
+
+    @Test
+    public void columnarDumpsGiveSameResults() throws Exception {
+        ThreadDumpAnalyzer analyzer = new ThreadDumpAnalyzer();
+        for (String resource : new String[] {"/group.txt", "/hotspot.txt", "/deadlock.txt"}) {
+            ThreadDump objects = loadDump(resource);
+            ThreadDump columns = new ThreadDump(objects.getTimestamp(), ThreadTable.of(objects.getThreads()),
+                    null, objects.getJvmVersion(), objects.getUptimeMillis(), objects.getContainers());
+            assertNotNull(columns.getTable());
+            assertEquals(analyzer.computeStateCounts(objects), analyzer.computeStateCounts(columns), resource);
+            assertEquals(Map.copyOf(analyzer.computeStackHotspots(objects, 100)),
+                    Map.copyOf(analyzer.computeStackHotspots(columns, 100)), resource);
+
+            Map<String, List<ThreadInfo>> expected = analyzer.groupSimilarThreads(objects);
+            Map<String, List<ThreadInfo>> actual = analyzer.groupSimilarThreads(columns);
+            assertEquals(expected.keySet(), actual.keySet(), resource);
+            for (String key : expected.keySet()) {
+                assertEquals(expected.get(key).stream().map(ThreadInfo::getId).toList(),
+                        actual.get(key).stream().map(ThreadInfo::getId).toList(), key);
+            }
+            assertEquals(analyzer.detectDeadlocks(objects).size(), analyzer.detectDeadlocks(columns).size(), resource);
+            // threads found by one analysis are the ones a later call returns
+            for (DeadlockInfo deadlock : analyzer.detectDeadlocks(columns)) {
+                System.gc();
+                for (ThreadInfo t : deadlock.getThreads()) {
+                    assertTrue(columns.getThreads().stream().anyMatch(c -> c == t), resource);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void offHeapDumpsGiveSameResults() throws Exception {
+        ThreadDumpAnalyzer analyzer = new ThreadDumpAnalyzer();
+        OffHeapStore store = new OffHeapStore(16L << 20);
+        for (String resource : new String[] {"/group.txt", "/hotspot.txt", "/deadlock.txt"}) {
+            ThreadDump heap = loadDump(resource);
+            ThreadDump offHeap = store.add(heap);
+            assertTrue(offHeap.isOffHeap(), resource);
+            assertEquals(heap.getThreadCount(), offHeap.getThreadCount(), resource);
+            for (int i = 0; i < heap.getThreadCount(); i++) {
+                ThreadInfo expected = heap.getThreads().get(i);
+                ThreadInfo actual = offHeap.getThreads().get(i);
+                assertEquals(expected.getId(), actual.getId());
+                assertEquals(expected.getName(), actual.getName());
+                assertEquals(expected.getState(), actual.getState());
+                assertEquals(expected.getStack(), actual.getStack());
+                assertEquals(expected.getLockedMonitors().stream().map(LockInfo::getIdentity).toList(),
+                        actual.getLockedMonitors().stream().map(LockInfo::getIdentity).toList());
+                assertEquals(expected.getWaitingOn() == null ? null : expected.getWaitingOn().getClassName(),
+                        actual.getWaitingOn() == null ? null : actual.getWaitingOn().getClassName());
+                assertEquals(expected.getPriority(), actual.getPriority());
+                assertEquals(expected.isDaemon(), actual.isDaemon());
+            }
+            assertEquals(analyzer.computeStateCounts(heap), analyzer.computeStateCounts(offHeap), resource);
+            assertEquals(Map.copyOf(analyzer.computeStackHotspots(heap, 100)),
+                    Map.copyOf(analyzer.computeStackHotspots(offHeap, 100)), resource);
+            assertEquals(analyzer.groupSimilarThreads(heap).keySet(),
+                    analyzer.groupSimilarThreads(offHeap).keySet(), resource);
+            assertEquals(analyzer.detectDeadlocks(heap).size(), analyzer.detectDeadlocks(offHeap).size(), resource);
+            // new flyweights over the same records match the earlier ones
+            List<ThreadInfo> recreated = offHeap.withLabel("again").getThreads();
+            assertNotSame(offHeap.getThreads().get(0), recreated.get(0), resource);
+            assertEquals(offHeap.getThreads(), recreated, resource);
+            assertEquals(offHeap.getThreads().get(0).hashCode(), recreated.get(0).hashCode(), resource);
+            assertNotEquals(recreated.get(0), heap.getThreads().get(0), resource);
+        }
+        assertEquals(3, store.getDumpCount());
+        assertEquals(0, store.getRejectedDumps());
+        assertTrue(store.getOffHeapUsed() > 0 && store.getOffHeapReserved() <= store.getMaxBytes());
+
+        OffHeapStore tiny = new OffHeapStore(64);
+        ThreadDump heap = loadDump("/group.txt");
+        assertSame(heap, tiny.add(heap));
+        assertEquals(1, tiny.getRejectedDumps());
+        assertEquals(0, tiny.getOffHeapReserved());
+    }
+
+    @Test
+    public void boundedSessionReusesReleasedOffHeapMemory() throws Exception {
+        ThreadDumpAnalyzer analyzer = new ThreadDumpAnalyzer();
+        ThreadDump heap = loadDump("/group.txt");
+        OffHeapStore store = new OffHeapStore(2L << 20);
+        AnalysisSession session = new AnalysisSession(store, 2);
+        for (int i = 1; i <= 3; i++) {
+            session.addThreadDump(heap.withLabel(String.valueOf(i)));
+        }
+        ThreadDump dropped = store.add(heap);
+        store.release(dropped);
+        long reserved = store.getOffHeapReserved();
+        for (int i = 4; i <= 50; i++) {
+            session.addThreadDump(heap.withLabel(String.valueOf(i)));
+        }
+        assertEquals(0, store.getRejectedDumps());
+        assertEquals(49, store.getReleasedDumps());
+        assertEquals(2, store.getDumpCount());
+        assertEquals(reserved, store.getOffHeapReserved());
+        assertTrue(session.getThreadDumps().stream().allMatch(ThreadDump::isOffHeap));
+        assertEquals(analyzer.computeStateCounts(heap),
+                analyzer.computeStateCounts(session.getLatestDump().orElseThrow()));
+        assertThrows(IllegalStateException.class, dropped::getThreads);
+    }
 }
@@ -1,26 +1,35 @@
 package com.example.cli;
 
-import java.io.BufferedInputStream;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.util.zip.GZIPInputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Locale;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.io.IOException;
 import java.nio.file.Path;
+import java.time.Duration;
 
 import com.example.analysis.ThreadDumpAnalyzer;
 import com.example.analysis.DeadlockInfo;
 import com.example.analysis.ThreadDelta;
+import com.example.analysis.ThreadCpuUsage;
 import com.example.analysis.DumpCache;
+import com.example.analysis.DumpArchive;
+import com.example.analysis.ProcTaskSampler;
+import com.example.analysis.TaskCpuSample;
+import com.example.model.AnalysisSession;
+import com.example.model.OffHeapStore;
 import com.example.model.ThreadDump;
 import com.example.model.ThreadInfo;
 import com.example.model.StackFrame;
+import com.example.parser.DumpFollower;
+import com.example.parser.ParseOptions;
 import com.example.parser.ParserFactory;
 import com.example.parser.ThreadDumpParser;
 
@@ -80,7 +89,7 @@ public class Main implements Runnable {
     @Option(names = "--timeline", description = "Show thread state counts for each dump")
     private boolean timeline = false;
 
-    @Option(names = "--highcpu", description = "Show threads runnable in all provided dumps")
+    @Option(names = "--highcpu", description = "Show threads using at least half a CPU between dumps with cpu= times, else threads runnable in all provided dumps")
     private boolean highCpu = false;
 
     @Option(names = "--starvation", description = "Detect thread pool starvation across dumps")
@@ -95,6 +104,30 @@ public class Main implements Runnable {
     @Option(names = "--list-parsers", description = "List supported dump formats")
     private boolean listParsers = false;
 
+    @Option(names = "--archive-order", paramLabel = "ORDER", description = "Order of dumps read from ZIP or tar archives: NAME or TIMESTAMP", defaultValue = "NAME")
+    private DumpArchive.Order archiveOrder = DumpArchive.Order.NAME;
+
+    @Option(names = "--max-depth", paramLabel = "N", description = "Only keep the top N frames of each stack")
+    private int maxDepth = -1;
+
+    @Option(names = "--jfr-samples", paramLabel = "SECONDS", description = "Also build a dump from the execution samples of each SECONDS window of a JFR recording")
+    private int jfrSampleSeconds = 0;
+
+    @Option(names = "--follow", description = "Watch a growing log file and analyze each thread dump as it is appended")
+    private boolean follow = false;
+
+    @Option(names = "--keep", paramLabel = "N", description = "With --follow, number of most recent dumps kept in memory (default: 2)")
+    private int keep = 2;
+
+    @Option(names = "--proc-pid", paramLabel = "PID", description = "With --follow, read per-thread CPU times of local process PID from /proc and join them with each dump")
+    private long procPid = -1;
+
+    @Option(names = "--off-heap", paramLabel = "MB", description = "Keep the threads of dumps held for --timeline, --diff, --highcpu, --starvation or --follow outside the Java heap, using at most MB megabytes")
+    private long offHeapMegabytes = 0;
+
+    /** Options for reports that only look at thread ids, names and states. */
+    private static final ParseOptions STATES_ONLY = ParseOptions.all().withoutFrames().withoutLocks();
+
     public static void main(String[] args) {
         System.exit(new CommandLine(new Main()).execute(args));
     }
@@ -116,21 +149,67 @@ public class Main implements Runnable {
             return;
         }
 
-        if (timeline) {
-            if (files.size() < 2) {
-                System.err.println("--timeline requires at least two FILE arguments");
+        if (follow) {
+            if (files.size() != 1) {
+                System.err.println("--follow requires exactly one FILE argument");
+                return;
+            }
+            if (keep < 1) {
+                System.err.println("--keep must be at least 1");
+                return;
+            }
+            OffHeapStore store = offHeapStore();
+            AnalysisSession session = new AnalysisSession(store, keep);
+            ProcTaskSampler sampler = procPid > 0 ? new ProcTaskSampler(procPid) : null;
+            if (sampler != null && !sampler.isAvailable()) {
+                System.err.println("Cannot read /proc/" + procPid + "/task; --proc-pid needs a local Linux process");
                 return;
             }
+            try (DumpFollower follower = new DumpFollower(Path.of(files.get(0)))) {
+                TaskCpuSample[] lastSample = {sampler == null ? null : sampler.sample()};
+                int[] received = {0};
+                follower.follow(Duration.ofSeconds(1), dump -> {
+                    // report before adding, which may release the previous dump
+                    ThreadDump previous = session.getLatestDump().orElse(null);
+                    List<ThreadCpuUsage> usage = null;
+                    if (sampler != null) {
+                        try {
+                            TaskCpuSample sample = sampler.sample();
+                            usage = analyzer.computeCpuUsage(dump, lastSample[0], sample);
+                            lastSample[0] = sample;
+                        } catch (IOException e) {
+                            System.err.println("Failed to sample /proc/" + procPid + ": " + e.getMessage());
+                        }
+                    }
+                    reportFollowed(analyzer, ++received[0], dump, previous, usage);
+                    session.addThreadDump(dump);
+                    if (store != null) {
+                        System.err.println(store.report());
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                System.err.println("Failed to follow " + files.get(0) + ": " + e.getMessage());
+            }
+            return;
+        }
+
+        if (timeline) {
             try {
+                List<ThreadDump> dumps = loadAll(STATES_ONLY);
+                if (dumps.size() < 2) {
+                    System.err.println("--timeline requires at least two dumps");
+                    return;
+                }
                 List<Map<Thread.State, Long>> timelineData = new ArrayList<>();
-                for (String path : files) {
-                    ThreadDump dump = DumpCache.load(Path.of(path));
+                for (ThreadDump dump : dumps) {
                     timelineData.add(analyzer.computeStateCounts(dump));
                 }
 
                 if (format == OutputFormat.text) {
-                    for (int i = 0; i < files.size(); i++) {
-                        System.out.println("Dump " + (i + 1) + " (" + getLabel(i, files.get(i)) + "):");
+                    for (int i = 0; i < dumps.size(); i++) {
+                        System.out.println("Dump " + (i + 1) + " (" + dumps.get(i).getLabel() + "):");
                         Map<Thread.State, Long> counts = timelineData.get(i);
                         for (var e : counts.entrySet()) {
                             System.out.printf("  %s: %d%n", e.getKey(), e.getValue());
@@ -139,10 +218,10 @@ public class Main implements Runnable {
                 } else {
                     StringBuilder sb = new StringBuilder();
                     sb.append('[');
-                    for (int i = 0; i < files.size(); i++) {
+                    for (int i = 0; i < dumps.size(); i++) {
                         if (i > 0) sb.append(',');
                         sb.append('{');
-                        sb.append("\"file\": \"").append(getLabel(i, files.get(i)).replace("\"", "\\\"")).append("\", \"counts\": {");
+                        sb.append("\"file\": \"").append(dumps.get(i).getLabel().replace("\"", "\\\"")).append("\", \"counts\": {");
                         boolean first = true;
                         for (var e : timelineData.get(i).entrySet()) {
                             if (!first) sb.append(',');
@@ -161,29 +240,43 @@ public class Main implements Runnable {
         }
 
         if (highCpu) {
-            if (files.size() < 2) {
-                System.err.println("--highcpu requires at least two FILE arguments");
-                return;
-            }
             try {
-                List<ThreadDump> dumps = new ArrayList<>();
-                for (String path : files) {
-                    dumps.add(DumpCache.load(Path.of(path)));
+                // threads burning CPU need not be RUNNABLE in every dump when
+                // the dumps record CPU times, so states are not pushed down
+                List<ThreadDump> dumps = loadAll(STATES_ONLY);
+                if (dumps.size() < 2) {
+                    System.err.println("--highcpu requires at least two dumps");
+                    return;
                 }
                 List<ThreadInfo> high = analyzer.findHighCpuThreads(dumps);
+                Map<Long, ThreadCpuUsage> usage = new HashMap<>();
+                for (ThreadCpuUsage u : analyzer.computeCpuUsage(dumps.get(0), dumps.get(dumps.size() - 1))) {
+                    usage.put(u.getThread().getId(), u);
+                }
                 if (format == OutputFormat.text) {
                     System.out.println("High CPU thread candidates: " + high.size());
                     for (ThreadInfo t : high) {
-                        System.out.printf("  [%d] %s%n", t.getId(), t.getName());
+                        ThreadCpuUsage u = usage.get(t.getId());
+                        if (u != null) {
+                            System.out.printf("  [%d] %s - %.0f%% CPU%n", t.getId(), t.getName(), u.getCpuFraction() * 100);
+                        } else {
+                            System.out.printf("  [%d] %s%n", t.getId(), t.getName());
+                        }
                     }
                 } else {
                     StringBuilder sb = new StringBuilder();
                     sb.append('{').append("\"threads\": [");
                     for (int i = 0; i < high.size(); i++) {
                         ThreadInfo t = high.get(i);
+                        ThreadCpuUsage u = usage.get(t.getId());
                         if (i > 0) sb.append(',');
                         sb.append('{').append("\"id\": ").append(t.getId())
-                          .append(", \"name\": \"").append(t.getName().replace("\"", "\\\"")).append("\"}");
+                          .append(", \"name\": \"").append(t.getName().replace("\"", "\\\"")).append('"');
+                        if (u != null) {
+                            sb.append(", \"cpuMillis\": ").append(u.getCpuNanos() / 1_000_000)
+                              .append(", \"cpuFraction\": ").append(String.format(Locale.ROOT, "%.3f", u.getCpuFraction()));
+                        }
+                        sb.append('}');
                     }
                     sb.append("]}");
                     System.out.println(sb.toString());
@@ -196,10 +289,7 @@ public class Main implements Runnable {
 
         if (starvation) {
             try {
-                List<ThreadDump> dumps = new ArrayList<>();
-                for (String path : files) {
-                    dumps.add(DumpCache.load(Path.of(path)));
-                }
+                List<ThreadDump> dumps = loadAll(STATES_ONLY);
                 List<String> pools = analyzer.detectThreadPoolStarvation(dumps);
                 if (format == OutputFormat.text) {
                     if (pools.isEmpty()) {
@@ -227,13 +317,14 @@ public class Main implements Runnable {
         }
 
         if (diff) {
-            if (files.size() != 2) {
-                System.err.println("--diff requires exactly two FILE arguments");
-                return;
-            }
             try {
-                ThreadDump d1 = DumpCache.load(Path.of(files.get(0)));
-                ThreadDump d2 = DumpCache.load(Path.of(files.get(1)));
+                List<ThreadDump> dumps = loadAll(STATES_ONLY);
+                if (dumps.size() != 2) {
+                    System.err.println("--diff requires exactly two dumps");
+                    return;
+                }
+                ThreadDump d1 = dumps.get(0);
+                ThreadDump d2 = dumps.get(1);
 
                 ThreadDelta delta = analyzer.diff(d1, d2);
                 Map<ThreadInfo, Thread.State> changes = analyzer.findStateChanges(d1, d2);
@@ -256,8 +347,8 @@ public class Main implements Runnable {
                 } else {
                     StringBuilder sb = new StringBuilder();
                     sb.append('{');
-                    sb.append("\"file1\": \"").append(getLabel(0, files.get(0)).replace("\"", "\\\"")).append("\",");
-                    sb.append(" \"file2\": \"").append(getLabel(1, files.get(1)).replace("\"", "\\\"")).append("\",");
+                    sb.append("\"file1\": \"").append(d1.getLabel().replace("\"", "\\\"")).append("\",");
+                    sb.append(" \"file2\": \"").append(d2.getLabel().replace("\"", "\\\"")).append("\",");
                     sb.append(" \"newThreads\": [");
                     for (int i = 0; i < delta.getNewThreads().size(); i++) {
                         ThreadInfo t = delta.getNewThreads().get(i);
@@ -292,140 +383,325 @@ public class Main implements Runnable {
             return;
         }
 
+        ParseOptions options = parseOptions();
         for (int fi = 0; fi < files.size(); fi++) {
             String path = files.get(fi);
             try {
-                ThreadDump dump = DumpCache.load(Path.of(path));
-                dump = new ThreadDump(dump.getTimestamp(), dump.getThreads(), getLabel(fi, path));
+                forEachDump(fi, options, dump -> report(analyzer, dump));
+            } catch (Exception e) {
+                System.err.println("Failed to parse " + path + ": " + e.getMessage());
+            }
+        }
 
-                if (format == OutputFormat.text) {
-                    System.out.println("File: " + getLabel(fi, path));
+        if (open && out != null) {
+            try {
+                if (java.awt.Desktop.isDesktopSupported()) {
+                    java.awt.Desktop.getDesktop().browse(new java.io.File(out).toURI());
+                } else {
+                    System.err.println("--open is not supported on this platform");
                 }
+            } catch (Exception e) {
+                System.err.println("Failed to open " + out + ": " + e.getMessage());
+            }
+        }
+    }
 
-                Map<Thread.State, Long> counts = null;
-                if (features.contains("counts") && !showDeadlocksOnly && filterState == null) {
-                    counts = analyzer.computeStateCounts(dump);
-                }
-                List<DeadlockInfo> deadlocks =
-                        (features.contains("deadlocks") || showDeadlocksOnly)
-                        ? analyzer.detectDeadlocks(dump)
-                        : List.of();
-                Map<StackFrame, Long> hotspots = null;
-                if (features.contains("hotspots") && hotspotLimit > 0 && !showDeadlocksOnly) {
-                    hotspots = analyzer.computeStackHotspots(dump, hotspotLimit);
-                }
+    /**
+     * Print the per-file report for one dump.
+     */
+    private void report(ThreadDumpAnalyzer analyzer, ThreadDump dump) {
+        String name = dump.getLabel();
+        try {
+            if (format == OutputFormat.text) {
+                System.out.println("File: " + name);
+            }
 
-                if (format == OutputFormat.text) {
-                    if (showDeadlocksOnly) {
-                        if (deadlocks.isEmpty()) {
-                            System.out.println("No deadlocks detected");
-                        } else {
-                            int idx = 1;
-                            for (DeadlockInfo dl : deadlocks) {
-                                System.out.println("Deadlock " + idx++ + ":");
-                                for (ThreadInfo t : dl.getThreads()) {
-                                    System.out.printf("  [%d] %s%n", t.getId(), t.getName());
-                                }
-                            }
-                        }
-                    } else if (filterState != null) {
-                        List<ThreadInfo> matches = dump.getThreads().stream()
-                                .filter(t -> t.getState() == filterState)
-                                .collect(Collectors.toList());
-                        System.out.println("Threads in state " + filterState + ": " + matches.size());
-                        for (ThreadInfo t : matches) {
-                            System.out.printf("  [%d] %s%n", t.getId(), t.getName());
-                        }
+            Map<Thread.State, Long> counts = null;
+            if (features.contains("counts") && !showDeadlocksOnly && filterState == null) {
+                counts = analyzer.computeStateCounts(dump);
+            }
+            List<DeadlockInfo> deadlocks =
+                    (features.contains("deadlocks") || showDeadlocksOnly)
+                    ? analyzer.detectDeadlocks(dump)
+                    : List.of();
+            Map<StackFrame, Long> hotspots = null;
+            if (features.contains("hotspots") && hotspotLimit > 0 && !showDeadlocksOnly) {
+                hotspots = analyzer.computeStackHotspots(dump, hotspotLimit);
+            }
+
+            if (format == OutputFormat.text) {
+                if (showDeadlocksOnly) {
+                    if (deadlocks.isEmpty()) {
+                        System.out.println("No deadlocks detected");
                     } else {
-                        if (counts != null) {
-                            for (Map.Entry<Thread.State, Long> e : counts.entrySet()) {
-                                System.out.printf("  %s: %d%n", e.getKey(), e.getValue());
-                            }
-                        }
-                        if (deadlocks != null && !deadlocks.isEmpty()) {
-                            int idx = 1;
-                            for (DeadlockInfo dl : deadlocks) {
-                                System.out.println("Deadlock " + idx++ + ":");
-                                for (ThreadInfo t : dl.getThreads()) {
-                                    System.out.printf("  [%d] %s%n", t.getId(), t.getName());
-                                }
+                        int idx = 1;
+                        for (DeadlockInfo dl : deadlocks) {
+                            System.out.println("Deadlock " + idx++ + ":");
+                            for (ThreadInfo t : dl.getThreads()) {
+                                System.out.printf("  [%d] %s%n", t.getId(), t.getName());
                             }
                         }
                     }
-
-                    if (hotspots != null) {
-                        System.out.println("Top " + hotspotLimit + " stack frames:");
-                        for (Map.Entry<StackFrame, Long> e : hotspots.entrySet()) {
-                            StackFrame f = e.getKey();
-                            System.out.printf("  %s.%s(%s:%d) - %d%n",
-                                    f.getClassName(), f.getMethodName(),
-                                    f.getFileName(), f.getLineNumber(), e.getValue());
-                        }
+                } else if (filterState != null) {
+                    List<ThreadInfo> matches = dump.getThreads().stream()
+                            .filter(t -> t.getState() == filterState)
+                            .collect(Collectors.toList());
+                    System.out.println("Threads in state " + filterState + ": " + matches.size());
+                    for (ThreadInfo t : matches) {
+                        System.out.printf("  [%d] %s%n", t.getId(), t.getName());
                     }
-                } else { // json output
-                    StringBuilder sb = new StringBuilder();
-                    sb.append('{');
-                    sb.append("\"file\": \"").append(getLabel(fi, path).replace("\"", "\\\"")).append("\"");
+                } else {
                     if (counts != null) {
-                        sb.append(", \"counts\": {");
-                        boolean first = true;
-                        for (var e : counts.entrySet()) {
-                            if (!first) sb.append(',');
-                            sb.append('"').append(e.getKey()).append('"').append(':').append(e.getValue());
-                            first = false;
+                        for (Map.Entry<Thread.State, Long> e : counts.entrySet()) {
+                            System.out.printf("  %s: %d%n", e.getKey(), e.getValue());
                         }
-                        sb.append('}');
                     }
                     if (deadlocks != null && !deadlocks.isEmpty()) {
-                        sb.append(", \"deadlocks\": [");
-                        for (int i = 0; i < deadlocks.size(); i++) {
-                            DeadlockInfo dl = deadlocks.get(i);
-                            if (i > 0) sb.append(',');
-                            sb.append('{');
-                            sb.append("\"threads\": [");
-                            for (int j = 0; j < dl.getThreads().size(); j++) {
-                                ThreadInfo t = dl.getThreads().get(j);
-                                if (j > 0) sb.append(',');
-                                sb.append('{').append("\"id\": ").append(t.getId())
-                                      .append(", \"name\": \"").append(t.getName().replace("\"", "\\\"")).append("\"}");
+                        int idx = 1;
+                        for (DeadlockInfo dl : deadlocks) {
+                            System.out.println("Deadlock " + idx++ + ":");
+                            for (ThreadInfo t : dl.getThreads()) {
+                                System.out.printf("  [%d] %s%n", t.getId(), t.getName());
                             }
-                            sb.append(']');
-                            sb.append('}');
                         }
-                        sb.append(']');
                     }
-                    if (hotspots != null) {
-                        sb.append(", \"hotspots\": [");
-                        boolean first = true;
-                        for (var e : hotspots.entrySet()) {
-                            if (!first) sb.append(',');
-                            StackFrame f = e.getKey();
-                            sb.append('{');
-                            sb.append("\"frame\": \"").append(f.toString().replace("\"", "\\\""))
-                              .append("\", \"count\": ").append(e.getValue()).append('}');
-                            first = false;
+                }
+
+                if (hotspots != null) {
+                    System.out.println("Top " + hotspotLimit + " stack frames:");
+                    for (Map.Entry<StackFrame, Long> e : hotspots.entrySet()) {
+                        StackFrame f = e.getKey();
+                        System.out.printf("  %s.%s(%s:%d) - %d%n",
+                                f.getClassName(), f.getMethodName(),
+                                f.getFileName(), f.getLineNumber(), e.getValue());
+                    }
+                }
+            } else { // json output
+                StringBuilder sb = new StringBuilder();
+                sb.append('{');
+                sb.append("\"file\": \"").append(name.replace("\"", "\\\"")).append("\"");
+                if (counts != null) {
+                    sb.append(", \"counts\": {");
+                    boolean first = true;
+                    for (var e : counts.entrySet()) {
+                        if (!first) sb.append(',');
+                        sb.append('"').append(e.getKey()).append('"').append(':').append(e.getValue());
+                        first = false;
+                    }
+                    sb.append('}');
+                }
+                if (deadlocks != null && !deadlocks.isEmpty()) {
+                    sb.append(", \"deadlocks\": [");
+                    for (int i = 0; i < deadlocks.size(); i++) {
+                        DeadlockInfo dl = deadlocks.get(i);
+                        if (i > 0) sb.append(',');
+                        sb.append('{');
+                        sb.append("\"threads\": [");
+                        for (int j = 0; j < dl.getThreads().size(); j++) {
+                            ThreadInfo t = dl.getThreads().get(j);
+                            if (j > 0) sb.append(',');
+                            sb.append('{').append("\"id\": ").append(t.getId())
+                                  .append(", \"name\": \"").append(t.getName().replace("\"", "\\\"")).append("\"}");
                         }
                         sb.append(']');
+                        sb.append('}');
                     }
-                    sb.append('}');
-                    System.out.println(sb.toString());
+                    sb.append(']');
                 }
-            } catch (Exception e) {
-                System.err.println("Failed to parse " + path + ": " + e.getMessage());
+                if (hotspots != null) {
+                    sb.append(", \"hotspots\": [");
+                    boolean first = true;
+                    for (var e : hotspots.entrySet()) {
+                        if (!first) sb.append(',');
+                        StackFrame f = e.getKey();
+                        sb.append('{');
+                        sb.append("\"frame\": \"").append(f.toString().replace("\"", "\\\""))
+                          .append("\", \"count\": ").append(e.getValue()).append('}');
+                        first = false;
+                    }
+                    sb.append(']');
+                }
+                sb.append('}');
+                System.out.println(sb.toString());
             }
+        } catch (Exception e) {
+            System.err.println("Failed to analyze " + name + ": " + e.getMessage());
         }
+    }
 
-        if (open && out != null) {
-            try {
-                if (java.awt.Desktop.isDesktopSupported()) {
-                    java.awt.Desktop.getDesktop().browse(new java.io.File(out).toURI());
-                } else {
-                    System.err.println("--open is not supported on this platform");
+    /**
+     * Print the analysis of a dump taken from a followed log. Only the new
+     * dump and the one before it are examined, so the cost per dump stays
+     * the same however long the log has been followed. When CPU usage from
+     * {@code /proc} is given, high CPU threads are taken from it and the
+     * frames the CPU time was spent under are listed as well.
+     */
+    private void reportFollowed(ThreadDumpAnalyzer analyzer, int number, ThreadDump dump, ThreadDump previous,
+                                List<ThreadCpuUsage> usage) {
+        Map<Thread.State, Long> counts = analyzer.computeStateCounts(dump);
+        List<DeadlockInfo> deadlocks = analyzer.detectDeadlocks(dump);
+        List<ThreadCpuUsage> busy = usage == null ? List.of() : usage.stream()
+                .filter(u -> u.getCpuFraction() >= ThreadDumpAnalyzer.HIGH_CPU_FRACTION)
+                .collect(Collectors.toList());
+        List<ThreadInfo> highCpu;
+        if (usage != null) {
+            highCpu = busy.stream().map(ThreadCpuUsage::getThread).collect(Collectors.toList());
+        } else {
+            highCpu = previous == null ? List.of() : analyzer.findHighCpuThreads(List.of(previous, dump));
+        }
+        Map<StackFrame, Long> cpuHotspots = usage == null || hotspotLimit <= 0
+                ? Map.of()
+                : analyzer.computeCpuHotspots(usage, hotspotLimit);
+        if (format == OutputFormat.text) {
+            System.out.println("Dump " + number + " (" + dump.getTimestamp() + "):");
+            for (Map.Entry<Thread.State, Long> e : counts.entrySet()) {
+                System.out.printf("  %s: %d%n", e.getKey(), e.getValue());
+            }
+            int idx = 1;
+            for (DeadlockInfo dl : deadlocks) {
+                System.out.println("Deadlock " + idx++ + ":");
+                for (ThreadInfo t : dl.getThreads()) {
+                    System.out.printf("  [%d] %s%n", t.getId(), t.getName());
                 }
-            } catch (Exception e) {
-                System.err.println("Failed to open " + out + ": " + e.getMessage());
             }
+            if (usage != null) {
+                if (!busy.isEmpty()) {
+                    System.out.println("High CPU since previous dump:");
+                    for (ThreadCpuUsage u : busy) {
+                        System.out.printf("  [%d] %s - %.0f%% CPU%n", u.getThread().getId(), u.getThread().getName(),
+                                u.getCpuFraction() * 100);
+                    }
+                }
+                if (!cpuHotspots.isEmpty()) {
+                    System.out.println("Top " + cpuHotspots.size() + " stack frames by CPU time:");
+                    for (Map.Entry<StackFrame, Long> e : cpuHotspots.entrySet()) {
+                        System.out.printf("  %s - %d ms%n", e.getKey(), e.getValue() / 1_000_000);
+                    }
+                }
+            } else if (!highCpu.isEmpty()) {
+                System.out.println("Runnable since previous dump:");
+                for (ThreadInfo t : highCpu) {
+                    System.out.printf("  [%d] %s%n", t.getId(), t.getName());
+                }
+            }
+        } else {
+            StringBuilder sb = new StringBuilder();
+            sb.append("{\"dump\": ").append(number)
+              .append(", \"timestamp\": \"").append(dump.getTimestamp()).append("\", \"counts\": {");
+            boolean first = true;
+            for (var e : counts.entrySet()) {
+                if (!first) sb.append(',');
+                sb.append('"').append(e.getKey()).append('"').append(':').append(e.getValue());
+                first = false;
+            }
+            sb.append("}, \"deadlocks\": ").append(deadlocks.size());
+            sb.append(", \"highcpu\": [");
+            for (int i = 0; i < highCpu.size(); i++) {
+                ThreadInfo t = highCpu.get(i);
+                if (i > 0) sb.append(',');
+                sb.append('{').append("\"id\": ").append(t.getId())
+                  .append(", \"name\": \"").append(t.getName().replace("\"", "\\\"")).append('"');
+                if (usage != null) {
+                    ThreadCpuUsage u = busy.get(i);
+                    sb.append(", \"cpuMillis\": ").append(u.getCpuNanos() / 1_000_000)
+                      .append(", \"cpuFraction\": ").append(String.format(Locale.ROOT, "%.3f", u.getCpuFraction()));
+                }
+                sb.append('}');
+            }
+            sb.append(']');
+            if (usage != null) {
+                sb.append(", \"cpuHotspots\": [");
+                int j = 0;
+                for (Map.Entry<StackFrame, Long> e : cpuHotspots.entrySet()) {
+                    if (j++ > 0) sb.append(',');
+                    sb.append("{\"frame\": \"").append(e.getKey().toString().replace("\"", "\\\""))
+                      .append("\", \"cpuMillis\": ").append(e.getValue() / 1_000_000).append('}');
+                }
+                sb.append(']');
+            }
+            sb.append('}');
+            System.out.println(sb.toString());
+        }
+        System.out.flush();
+    }
+
+    /**
+     * Load a FILE argument, expanding ZIP and tar archives into one dump per
+     * entry and JFR recordings into one dump per thread dump event. A dump
+     * read from a plain file is labelled with the {@code --label} given for
+     * the argument, or with the file name; archive entries and recorded
+     * dumps keep {@code file!entry} and {@code file!time}.
+     *
+     * @param index position of the FILE argument
+     */
+    private List<ThreadDump> loadFile(int index, ParseOptions options) throws Exception {
+        List<ThreadDump> dumps = new ArrayList<>();
+        forEachDump(index, options, dumps::add);
+        return dumps;
+    }
+
+    /**
+     * Pass the labelled dumps of a FILE argument on one at a time, as
+     * {@link #loadFile} would return them, so that the dumps of a large
+     * log need not be held together.
+     *
+     * @param index position of the FILE argument
+     */
+    private void forEachDump(int index, ParseOptions options, Consumer<ThreadDump> sink) throws Exception {
+        String path = files.get(index);
+        DumpCache.forEachDump(Path.of(path), archiveOrder, options,
+                jfrSampleSeconds > 0 ? Duration.ofSeconds(jfrSampleSeconds) : null, d -> {
+                    String name = d.getLabel() == null ? getLabel(index, path) : path + "!" + d.getLabel();
+                    sink.accept(d.withLabel(name));
+                });
+    }
+
+    /**
+     * Load every FILE argument. With {@code --off-heap} the dumps are moved
+     * into an off-heap store as they are loaded.
+     */
+    private List<ThreadDump> loadAll(ParseOptions options) throws Exception {
+        OffHeapStore store = offHeapStore();
+        List<ThreadDump> dumps = new ArrayList<>();
+        for (int fi = 0; fi < files.size(); fi++) {
+            for (ThreadDump d : loadFile(fi, options)) {
+                dumps.add(store != null ? store.add(d) : d);
+            }
+        }
+        if (store != null) {
+            System.err.println(store.report());
+        }
+        return dumps;
+    }
+
+    private OffHeapStore offHeapStore() {
+        return offHeapMegabytes > 0 ? new OffHeapStore(offHeapMegabytes << 20) : null;
+    }
+
+    /**
+     * Work out which parts of each dump the per-file report needs, so the
+     * parser can skip the rest: frames only for hotspots, locks only for
+     * deadlocks, and only the filtered state when nothing else looks at
+     * the other threads.
+     */
+    private ParseOptions parseOptions() {
+        // the text report for --filter-state lists matching threads instead of deadlocks
+        boolean deadlocks = showDeadlocksOnly
+                || (features.contains("deadlocks") && (format == OutputFormat.json || filterState == null));
+        boolean hotspots = features.contains("hotspots") && hotspotLimit > 0 && !showDeadlocksOnly;
+        ParseOptions options = ParseOptions.all();
+        if (!hotspots) {
+            options = options.withoutFrames();
+        } else if (maxDepth >= 0) {
+            options = options.withMaxStackDepth(maxDepth);
+        }
+        if (!deadlocks) {
+            options = options.withoutLocks();
         }
+        if (filterState != null && !deadlocks && !hotspots) {
+            options = options.withStates(EnumSet.of(filterState));
+        }
+        return options;
     }
 
     private String getLabel(int index, String path) {
@@ -434,17 +710,4 @@ public class Main implements Runnable {
         }
         return path;
     }
-
-    private InputStream openInput(String path) throws IOException {
-        InputStream base = new FileInputStream(path);
-        BufferedInputStream buffered = new BufferedInputStream(base);
-        buffered.mark(2);
-        int b1 = buffered.read();
-        int b2 = buffered.read();
-        buffered.reset();
-        if (b1 == 0x1f && b2 == 0x8b) {
-            return new BufferedInputStream(new GZIPInputStream(buffered));
-        }
-        return buffered;
-    }
 }
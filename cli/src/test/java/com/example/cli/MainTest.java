@@ -3,12 +3,18 @@ package com.example.cli;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import picocli.CommandLine;
 
@@ -119,4 +125,44 @@ public class MainTest {
         String output = out.toString(StandardCharsets.UTF_8);
         assertFalse(output.contains("Error"));
     }
+
+    @Test
+    public void labelsFollowFileArguments(@TempDir Path dir) throws Exception {
+        byte[] dump = getClass().getResourceAsStream("/hotspot.txt").readAllBytes();
+        Path archive = dir.resolve("dumps.zip");
+        try (OutputStream file = Files.newOutputStream(archive);
+             ZipOutputStream zip = new ZipOutputStream(file)) {
+            for (String entry : new String[] {"one.txt", "two.txt"}) {
+                zip.putNextEntry(new ZipEntry(entry));
+                zip.write(dump);
+                zip.closeEntry();
+            }
+        }
+        Path missing = dir.resolve("missing.txt");
+        String plain = getClass().getResource("/deadlock.txt").getPath();
+        int code = new CommandLine(new Main()).execute("--label", "Archive", "--label", "Missing",
+                "--label", "Plain", archive.toString(), missing.toString(), plain);
+        assertEquals(0, code);
+        String output = out.toString(StandardCharsets.UTF_8);
+        assertTrue(output.contains("File: " + archive + "!one.txt"), output);
+        assertTrue(output.contains("File: " + archive + "!two.txt"), output);
+        assertTrue(output.contains("File: Plain"), output);
+        assertFalse(output.contains("File: Missing"), output);
+    }
+
+    @Test
+    public void splitsLogWithSeveralDumps(@TempDir Path dir) throws Exception {
+        byte[] dump = getClass().getResourceAsStream("/hotspot.txt").readAllBytes();
+        Path log = dir.resolve("catalina.out");
+        try (OutputStream file = Files.newOutputStream(log)) {
+            file.write(dump);
+            file.write("INFO  request handled\n".getBytes(StandardCharsets.UTF_8));
+            file.write(dump);
+        }
+        int code = new CommandLine(new Main()).execute(log.toString());
+        assertEquals(0, code);
+        String output = out.toString(StandardCharsets.UTF_8);
+        assertTrue(output.contains("File: " + log + "!1"), output);
+        assertTrue(output.contains("File: " + log + "!2"), output);
+    }
 }
@@ -11,18 +11,76 @@ import java.util.Optional;
  */
 public class AnalysisSession {
     private final List<ThreadDump> dumps = new ArrayList<>();
+    private final OffHeapStore offHeapStore;
+    private final int capacity;
+
+    public AnalysisSession() {
+        this(null);
+    }
 
     /**
-     * Add a thread dump to this session.
+     * Create a session that moves the threads of every dump added to it
+     * into an off-heap store, as far as the store's budget allows.
+     *
+     * @param offHeapStore store to use, or null to keep dumps on the heap
+     */
+    public AnalysisSession(OffHeapStore offHeapStore) {
+        this(offHeapStore, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Create a session that keeps only the most recent dumps, for example
+     * while following a log that may grow for days. A dump the session
+     * drops is released from the off-heap store, see
+     * {@link OffHeapStore#release}, and must not be read any more; its
+     * memory is reused for the dumps added after it.
+     *
+     * @param offHeapStore store to use, or null to keep dumps on the heap
+     * @param capacity number of dumps kept; older dumps are dropped
+     */
+    public AnalysisSession(OffHeapStore offHeapStore, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.offHeapStore = offHeapStore;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Add a thread dump to this session, dropping the oldest dump if the
+     * session is full. With an off-heap store the session keeps the copy
+     * returned by {@link OffHeapStore#add}, and releases the dropped dump
+     * from the store unless the session still holds it.
      *
      * @param dump thread dump to add
      */
     public void addThreadDump(ThreadDump dump) {
         if (dump != null) {
-            dumps.add(dump);
+            dumps.add(offHeapStore != null ? offHeapStore.add(dump) : dump);
+            if (dumps.size() > capacity) {
+                ThreadDump dropped = dumps.remove(0);
+                if (offHeapStore != null && dropped.isOffHeap()
+                        && dumps.stream().noneMatch(d -> d.getOffHeap() == dropped.getOffHeap())) {
+                    offHeapStore.release(dropped);
+                }
+            }
         }
     }
 
+    /**
+     * @return number of dumps this session keeps
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the store holding the threads of this session, or null
+     */
+    public OffHeapStore getOffHeapStore() {
+        return offHeapStore;
+    }
+
     /**
      * Get an immutable view of all thread dumps.
      *
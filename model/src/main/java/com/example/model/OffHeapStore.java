@@ -0,0 +1,702 @@
+package com.example.model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Keeps the threads of many dumps outside the Java heap. {@link #add}
+ * encodes a dump into direct {@link ByteBuffer}s: every distinct string
+ * and every distinct frame is written once for the whole store, and each
+ * thread becomes a fixed header followed by the ids of its locks' strings
+ * and of its frames. The returned dump reads its threads back through
+ * {@link ThreadInfo} flyweights whose getters decode the record on each
+ * call, so a dump that is not being analysed costs a few dozen bytes of
+ * heap however many threads it has.
+ *
+ * <p>Off-heap memory is reserved in chunks up to a fixed budget. A dump
+ * that does not fit is returned unchanged and stays on the heap. The
+ * strings and frames are shared by all dumps and kept for the life of the
+ * store, while the thread records of each dump get a chunk of their own.
+ * {@link #release} hands that chunk back for later dumps to reuse, so a
+ * long running session that drops old dumps, such as
+ * {@link AnalysisSession#AnalysisSession(OffHeapStore, int)}, keeps moving
+ * new ones off the heap. All memory is freed once the store and all dumps
+ * read from it are garbage collected.</p>
+ *
+ * <p>Adding dumps is serialized; reading them is safe from any number of
+ * threads.</p>
+ */
+public final class OffHeapStore {
+    /** System property holding the default budget in bytes. */
+    public static final String BUDGET_PROPERTY = "threaddump.offHeap.maxBytes";
+    /** Budget used unless the property is set: 256 MiB. */
+    public static final long DEFAULT_BUDGET = 256L << 20;
+
+    private static final int CHUNK_SIZE = 1 << 20;
+    private static final int PAGE_SIZE = 4096;
+    private static final int DECODE_CACHE_SIZE = 4096;
+    private static final Thread.State[] STATES = Thread.State.values();
+
+    // thread record layout
+    static final int ID = 0;
+    static final int CPU = 8;
+    static final int ELAPSED = 16;
+    static final int NAME = 24;
+    static final int CONTAINER = 28;
+    static final int WAIT_CLASS = 32;
+    static final int WAIT_IDENTITY = 36;
+    static final int STATE = 40;
+    static final int PRIORITY = 41;
+    static final int DAEMON = 42;
+    static final int LOCK_COUNT = 44;
+    static final int DEPTH = 48;
+    static final int LOCKS = 52;
+
+    private final long maxBytes;
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+    // chunk receiving strings and frames
+    private ByteBuffer current;
+    private int currentIndex;
+    // chunks given back by released dumps, and slots of dropped ones
+    private int[] freeChunks = new int[16];
+    private int freeCount;
+    private long freeBytes;
+    private int[] emptySlots = new int[16];
+    private int emptyCount;
+    // chunk receiving the records of the dump being added
+    private ByteBuffer records;
+    private int recordsIndex;
+    private long reserved;
+    private long used;
+
+    private long[] symbolAddresses = new long[1024];
+    private int[] symbolHashes = new int[1024];
+    private int[] symbolSlots = new int[2048];
+    private int symbolCount;
+
+    private long[] frameAddresses = new long[1024];
+    private int[] frameHashes = new int[1024];
+    private int[] frameSlots = new int[2048];
+    private int frameCount;
+
+    private final SymbolEntry[] symbolCache = new SymbolEntry[DECODE_CACHE_SIZE];
+    private final FrameEntry[] frameCache = new FrameEntry[DECODE_CACHE_SIZE];
+
+    private boolean exhausted;
+    private int dumpCount;
+    private long threadCount;
+    private int rejectedDumps;
+    private int releasedDumps;
+
+    /**
+     * Create a store with the budget given by {@value #BUDGET_PROPERTY},
+     * or {@link #DEFAULT_BUDGET}.
+     */
+    public OffHeapStore() {
+        this(Long.getLong(BUDGET_PROPERTY, DEFAULT_BUDGET));
+    }
+
+    /**
+     * @param maxBytes most off-heap memory the store may reserve
+     */
+    public OffHeapStore(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Move the threads of a dump into this store.
+     *
+     * @return a dump equal to the given one whose threads are read from
+     *         this store, or the given dump itself if it does not fit in
+     *         the remaining budget
+     */
+    public synchronized ThreadDump add(ThreadDump dump) {
+        if (dump.getOffHeap() != null && dump.getOffHeap().store == this) {
+            return dump;
+        }
+        List<ThreadInfo> threads = dump.getThreads();
+        int n = threads.size();
+        long recordBytes = 8L * n;
+        for (int i = 0; i < n; i++) {
+            ThreadInfo t = threads.get(i);
+            recordBytes += LOCKS + 8L * t.getLockedMonitors().size() + 4L * t.getStack().size();
+        }
+        if (recordChunkSize(recordBytes) < 0) {
+            rejectedDumps++;
+            return dump;
+        }
+        // strings and frames first; entries written for a dump that is
+        // then rejected stay in the dictionary for later dumps
+        exhausted = false;
+        Map<Object, Integer> ids = new IdentityHashMap<>();
+        int[][] frames = new int[n][];
+        int[][] strings = new int[n][];
+        for (int i = 0; i < n && !exhausted; i++) {
+            ThreadInfo t = threads.get(i);
+            List<StackFrame> stack = t.getStack();
+            int[] f = new int[stack.size()];
+            int d = 0;
+            for (StackFrame frame : stack) {
+                f[d++] = frame(frame, ids);
+            }
+            List<LockInfo> locks = t.getLockedMonitors();
+            LockInfo w = t.getWaitingOn();
+            int[] str = new int[4 + 2 * locks.size()];
+            str[0] = symbol(t.getName(), ids);
+            str[1] = symbol(t.getContainer(), ids);
+            str[2] = w == null ? -1 : symbol(w.getClassName(), ids);
+            str[3] = w == null ? -1 : symbol(w.getIdentity(), ids);
+            for (int k = 0; k < locks.size(); k++) {
+                str[4 + 2 * k] = symbol(locks.get(k).getClassName(), ids);
+                str[5 + 2 * k] = symbol(locks.get(k).getIdentity(), ids);
+            }
+            frames[i] = f;
+            strings[i] = str;
+        }
+        long chunkSize = exhausted ? -1 : recordChunkSize(recordBytes);
+        if (chunkSize < 0) {
+            rejectedDumps++;
+            return dump;
+        }
+
+        recordsIndex = takeChunk((int) recordBytes, (int) chunkSize);
+        records = chunks[recordsIndex];
+        long index = allocateRecord((int) (8L * n));
+        ByteBuffer indexBuffer = buffer(index);
+        int indexOffset = offset(index);
+        for (int i = 0; i < n; i++) {
+            ThreadInfo t = threads.get(i);
+            int[] f = frames[i];
+            int[] str = strings[i];
+            long address = allocateRecord(LOCKS + 4 * (str.length - 4) + 4 * f.length);
+            ByteBuffer b = buffer(address);
+            int o = offset(address);
+            b.putLong(o + ID, t.getId());
+            b.putLong(o + CPU, t.getCpuTimeNanos());
+            b.putLong(o + ELAPSED, t.getElapsedNanos());
+            b.putInt(o + NAME, str[0]);
+            b.putInt(o + CONTAINER, str[1]);
+            b.putInt(o + WAIT_CLASS, str[2]);
+            b.putInt(o + WAIT_IDENTITY, str[3]);
+            b.put(o + STATE, (byte) t.getState().ordinal());
+            b.put(o + PRIORITY, (byte) t.getPriority());
+            b.put(o + DAEMON, (byte) (t.isDaemon() ? 1 : 0));
+            b.putInt(o + LOCK_COUNT, (str.length - 4) / 2);
+            b.putInt(o + DEPTH, f.length);
+            int p = o + LOCKS;
+            for (int k = 4; k < str.length; k++, p += 4) {
+                b.putInt(p, str[k]);
+            }
+            for (int id : f) {
+                b.putInt(p, id);
+                p += 4;
+            }
+            indexBuffer.putLong(indexOffset + 8 * i, address);
+        }
+        dumpCount++;
+        threadCount += n;
+        OffHeapDump stored = new OffHeapDump(this, index, n, recordsIndex, recordBytes);
+        records = null;
+        return new ThreadDump(dump.getTimestamp(), dump.isTimestampRecorded(), stored,
+                dump.getLabel(), dump.getJvmVersion(), dump.getUptimeMillis(), dump.getContainers());
+    }
+
+    /**
+     * Give the chunk holding the thread records of a dump back to the
+     * store, to be reused by dumps added later. The dump, and every copy
+     * of it made with {@link ThreadDump#withLabel} and the like, must not
+     * be read afterwards; {@link ThreadDump#getThreads()} then throws
+     * {@link IllegalStateException}, and threads obtained before read
+     * whatever is written over their records. Dumps that are not held by
+     * this store, or were already released, are ignored.
+     *
+     * @param dump dump returned by {@link #add}
+     */
+    public synchronized void release(ThreadDump dump) {
+        OffHeapDump stored = dump.getOffHeap();
+        if (stored == null || stored.store != this || stored.released) {
+            return;
+        }
+        stored.released = true;
+        if (freeCount == freeChunks.length) {
+            freeChunks = Arrays.copyOf(freeChunks, freeCount * 2);
+        }
+        freeChunks[freeCount++] = stored.chunk;
+        freeBytes += chunks[stored.chunk].capacity();
+        used -= stored.bytes;
+        dumpCount--;
+        threadCount -= stored.size();
+        releasedDumps++;
+    }
+
+    /**
+     * Size of the chunk to reserve for records of the given total size:
+     * an eighth more, so that a chunk released by one dump also takes the
+     * next if that has grown a little, rounded up to whole pages.
+     *
+     * @return the size, which is just the records' size when a free chunk
+     *         holds them or little of the budget is left, or -1 if they
+     *         fit in neither
+     */
+    private long recordChunkSize(long bytes) {
+        if (bytes > Integer.MAX_VALUE) {
+            return -1;
+        }
+        if (freeChunk((int) bytes) >= 0) {
+            return bytes;
+        }
+        long size = Math.min((bytes + bytes / 8 + PAGE_SIZE - 1) / PAGE_SIZE * PAGE_SIZE, Integer.MAX_VALUE);
+        size = Math.min(size, maxBytes - reserved + freeBytes);
+        return size >= bytes ? size : -1;
+    }
+
+    /**
+     * @return id of the string, or -1 for null or when the budget is
+     *         exhausted, which also sets {@link #exhausted}
+     */
+    private int symbol(String s, Map<Object, Integer> ids) {
+        if (s == null) {
+            return -1;
+        }
+        Integer known = ids.get(s);
+        if (known != null) {
+            return known;
+        }
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        int hash = s.hashCode();
+        int mask = symbolSlots.length - 1;
+        int slot = mix(hash) & mask;
+        for (int id; (id = symbolSlots[slot] - 1) >= 0; slot = (slot + 1) & mask) {
+            if (symbolHashes[id] == hash && sameBytes(symbolAddresses[id], utf8)) {
+                ids.put(s, id);
+                return id;
+            }
+        }
+        if (!fits(4 + utf8.length)) {
+            exhausted = true;
+            return -1;
+        }
+        long address = allocate(4 + utf8.length);
+        ByteBuffer b = buffer(address);
+        int o = offset(address);
+        b.putInt(o, utf8.length);
+        b.put(o + 4, utf8);
+        int id = symbolCount++;
+        if (id == symbolAddresses.length) {
+            symbolAddresses = Arrays.copyOf(symbolAddresses, id * 2);
+            symbolHashes = Arrays.copyOf(symbolHashes, id * 2);
+        }
+        symbolAddresses[id] = address;
+        symbolHashes[id] = hash;
+        symbolSlots[slot] = id + 1;
+        if (symbolCount * 2 > symbolSlots.length) {
+            symbolSlots = rehash(symbolSlots, symbolHashes, symbolCount);
+        }
+        ids.put(s, id);
+        return id;
+    }
+
+    private boolean sameBytes(long address, byte[] utf8) {
+        ByteBuffer b = buffer(address);
+        int o = offset(address);
+        if (b.getInt(o) != utf8.length) {
+            return false;
+        }
+        for (int i = 0; i < utf8.length; i++) {
+            if (b.get(o + 4 + i) != utf8[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return id of the frame, or -1 when the budget is exhausted
+     */
+    private int frame(StackFrame frame, Map<Object, Integer> ids) {
+        Integer known = ids.get(frame);
+        if (known != null) {
+            return known;
+        }
+        int cls = symbol(frame.getClassName(), ids);
+        int method = symbol(frame.getMethodName(), ids);
+        int file = symbol(frame.getFileName(), ids);
+        if (exhausted) {
+            return -1;
+        }
+        int line = frame.getLineNumber();
+        int hash = ((cls * 31 + method) * 31 + file) * 31 + line;
+        int mask = frameSlots.length - 1;
+        int slot = mix(hash) & mask;
+        for (int id; (id = frameSlots[slot] - 1) >= 0; slot = (slot + 1) & mask) {
+            if (frameHashes[id] == hash) {
+                ByteBuffer b = buffer(frameAddresses[id]);
+                int o = offset(frameAddresses[id]);
+                if (b.getInt(o) == cls && b.getInt(o + 4) == method && b.getInt(o + 8) == file
+                        && b.getInt(o + 12) == line) {
+                    ids.put(frame, id);
+                    return id;
+                }
+            }
+        }
+        if (!fits(16)) {
+            exhausted = true;
+            return -1;
+        }
+        long address = allocate(16);
+        ByteBuffer b = buffer(address);
+        int o = offset(address);
+        b.putInt(o, cls);
+        b.putInt(o + 4, method);
+        b.putInt(o + 8, file);
+        b.putInt(o + 12, line);
+        int id = frameCount++;
+        if (id == frameAddresses.length) {
+            frameAddresses = Arrays.copyOf(frameAddresses, id * 2);
+            frameHashes = Arrays.copyOf(frameHashes, id * 2);
+        }
+        frameAddresses[id] = address;
+        frameHashes[id] = hash;
+        frameSlots[slot] = id + 1;
+        if (frameCount * 2 > frameSlots.length) {
+            frameSlots = rehash(frameSlots, frameHashes, frameCount);
+        }
+        ids.put(frame, id);
+        return id;
+    }
+
+    private static int[] rehash(int[] slots, int[] hashes, int count) {
+        int[] table = new int[slots.length * 2];
+        int mask = table.length - 1;
+        for (int id = 0; id < count; id++) {
+            int slot = mix(hashes[id]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id + 1;
+        }
+        return table;
+    }
+
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private boolean fits(int bytes) {
+        return current != null && current.remaining() >= bytes || freeChunk(bytes) >= 0
+                || reserved - freeBytes + Math.max(CHUNK_SIZE, bytes) <= maxBytes;
+    }
+
+    /**
+     * Reserve bytes for a string or frame in the current chunk, or in
+     * another one if they do not fit, and return their address: the chunk
+     * index in the upper half and the offset in the lower half.
+     */
+    private long allocate(int bytes) {
+        if (current == null || current.remaining() < bytes) {
+            currentIndex = takeChunk(bytes, Math.max(CHUNK_SIZE, bytes));
+            current = chunks[currentIndex];
+        }
+        int offset = current.position();
+        current.position(offset + bytes);
+        used += bytes;
+        return ((long) currentIndex << 32) | offset;
+    }
+
+    /**
+     * Reserve bytes for a thread record of the dump being added, in the
+     * chunk taken for its records.
+     */
+    private long allocateRecord(int bytes) {
+        int offset = records.position();
+        records.position(offset + bytes);
+        used += bytes;
+        return ((long) recordsIndex << 32) | offset;
+    }
+
+    /**
+     * Take the smallest free chunk that holds the given number of bytes.
+     * Failing that, reserve a new chunk of the given size, dropping free
+     * chunks as far as needed to stay within the budget.
+     *
+     * @return index of the chunk, emptied
+     */
+    private int takeChunk(int bytes, int size) {
+        int free = freeChunk(bytes);
+        if (free >= 0) {
+            int index = freeChunks[free];
+            freeChunks[free] = freeChunks[--freeCount];
+            freeBytes -= chunks[index].capacity();
+            chunks[index].clear();
+            return index;
+        }
+        while (freeCount > 0 && reserved + size > maxBytes) {
+            int index = freeChunks[--freeCount];
+            freeBytes -= chunks[index].capacity();
+            reserved -= chunks[index].capacity();
+            chunks[index] = null;
+            if (emptyCount == emptySlots.length) {
+                emptySlots = Arrays.copyOf(emptySlots, emptyCount * 2);
+            }
+            emptySlots[emptyCount++] = index;
+        }
+        ByteBuffer chunk = ByteBuffer.allocateDirect(size);
+        reserved += size;
+        if (emptyCount > 0) {
+            int index = emptySlots[--emptyCount];
+            chunks[index] = chunk;
+            return index;
+        }
+        ByteBuffer[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+        grown[grown.length - 1] = chunk;
+        chunks = grown;
+        return grown.length - 1;
+    }
+
+    /**
+     * @return position in {@link #freeChunks} of the smallest chunk of at
+     *         least the given size, or -1
+     */
+    private int freeChunk(int bytes) {
+        int best = -1;
+        for (int i = 0; i < freeCount; i++) {
+            int capacity = chunks[freeChunks[i]].capacity();
+            if (capacity >= bytes && (best < 0 || capacity < chunks[freeChunks[best]].capacity())) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    ByteBuffer buffer(long address) {
+        return chunks[(int) (address >>> 32)];
+    }
+
+    static int offset(long address) {
+        return (int) address;
+    }
+
+    /**
+     * Decode a string, or return null for id -1.
+     */
+    String symbol(int id) {
+        if (id < 0) {
+            return null;
+        }
+        int slot = id & (DECODE_CACHE_SIZE - 1);
+        SymbolEntry e = symbolCache[slot];
+        if (e != null && e.id == id) {
+            return e.value;
+        }
+        long address;
+        synchronized (this) {
+            address = symbolAddresses[id];
+        }
+        ByteBuffer b = buffer(address);
+        int o = offset(address);
+        byte[] utf8 = new byte[b.getInt(o)];
+        b.get(o + 4, utf8);
+        String value = new String(utf8, StandardCharsets.UTF_8);
+        symbolCache[slot] = new SymbolEntry(id, value);
+        return value;
+    }
+
+    StackFrame frame(int id) {
+        int slot = id & (DECODE_CACHE_SIZE - 1);
+        FrameEntry e = frameCache[slot];
+        if (e != null && e.id == id) {
+            return e.frame;
+        }
+        long address;
+        synchronized (this) {
+            address = frameAddresses[id];
+        }
+        ByteBuffer b = buffer(address);
+        int o = offset(address);
+        StackFrame frame = new StackFrame(symbol(b.getInt(o)), symbol(b.getInt(o + 4)),
+                symbol(b.getInt(o + 8)), b.getInt(o + 12));
+        frameCache[slot] = new FrameEntry(id, frame);
+        return frame;
+    }
+
+    static Thread.State state(int ordinal) {
+        return STATES[ordinal];
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /** Return the off-heap memory reserved so far, in bytes. */
+    public synchronized long getOffHeapReserved() {
+        return reserved;
+    }
+
+    /** Return the part of the reserved memory holding data, in bytes. */
+    public synchronized long getOffHeapUsed() {
+        return used;
+    }
+
+    /**
+     * Return an estimate of the heap used by the store itself: its
+     * dictionary indexes and decode caches. Flyweights created while dumps
+     * are analysed are not included.
+     */
+    public synchronized long getHeapBytes() {
+        long arrays = 8L * (symbolAddresses.length + frameAddresses.length)
+                + 4L * (symbolHashes.length + symbolSlots.length + frameHashes.length + frameSlots.length)
+                + 8L * chunks.length;
+        long caches = 4L * (symbolCache.length + frameCache.length);
+        for (SymbolEntry e : symbolCache) {
+            if (e != null) {
+                caches += 24 + 40 + e.value.length();
+            }
+        }
+        for (FrameEntry e : frameCache) {
+            if (e != null) {
+                caches += 24 + 32;
+            }
+        }
+        // one handle per dump
+        return arrays + caches + 40L * dumpCount;
+    }
+
+    public synchronized int getDumpCount() {
+        return dumpCount;
+    }
+
+    public synchronized long getThreadCount() {
+        return threadCount;
+    }
+
+    public synchronized int getSymbolCount() {
+        return symbolCount;
+    }
+
+    public synchronized int getFrameCount() {
+        return frameCount;
+    }
+
+    /** Return how many dumps were kept on the heap for lack of budget. */
+    public synchronized int getRejectedDumps() {
+        return rejectedDumps;
+    }
+
+    /** Return how many dumps were released, see {@link #release}. */
+    public synchronized int getReleasedDumps() {
+        return releasedDumps;
+    }
+
+    /**
+     * One line summary of heap and off-heap usage.
+     */
+    public synchronized String report() {
+        return String.format("off-heap %.1f MB used, %.1f MB reserved of %.1f MB; heap %.1f MB; "
+                        + "%d dumps, %d threads, %d frames, %d strings, %d dumps kept on heap, %d released",
+                used / 1048576.0, reserved / 1048576.0, maxBytes / 1048576.0, getHeapBytes() / 1048576.0,
+                dumpCount, threadCount, frameCount, symbolCount, rejectedDumps, releasedDumps);
+    }
+
+    @Override
+    public String toString() {
+        return "OffHeapStore[" + report() + "]";
+    }
+
+    private static final class SymbolEntry {
+        final int id;
+        final String value;
+
+        SymbolEntry(int id, String value) {
+            this.id = id;
+            this.value = value;
+        }
+    }
+
+    private static final class FrameEntry {
+        final int id;
+        final StackFrame frame;
+
+        FrameEntry(int id, StackFrame frame) {
+            this.id = id;
+            this.frame = frame;
+        }
+    }
+
+    /**
+     * The threads of one dump: an off-heap array of record addresses, in
+     * the chunk that also holds the records.
+     */
+    static final class OffHeapDump {
+        final OffHeapStore store;
+        private final long index;
+        private final int size;
+        private final int chunk;
+        private final long bytes;
+        private volatile boolean released;
+
+        OffHeapDump(OffHeapStore store, long index, int size, int chunk, long bytes) {
+            this.store = store;
+            this.index = index;
+            this.size = size;
+            this.chunk = chunk;
+            this.bytes = bytes;
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean isReleased() {
+            return released;
+        }
+
+        /**
+         * Create a list of flyweights over the records. Each flyweight is
+         * created on first access and then kept by the list.
+         */
+        List<ThreadInfo> threads() {
+            ThreadInfo[] rows = new ThreadInfo[size];
+            ByteBuffer b = store.buffer(index);
+            int o = offset(index);
+            return new ThreadList(rows, b, o);
+        }
+
+        private final class ThreadList extends AbstractList<ThreadInfo> implements RandomAccess {
+            private final ThreadInfo[] rows;
+            private final ByteBuffer index;
+            private final int offset;
+
+            ThreadList(ThreadInfo[] rows, ByteBuffer index, int offset) {
+                this.rows = rows;
+                this.index = index;
+                this.offset = offset;
+            }
+
+            @Override
+            public ThreadInfo get(int i) {
+                ThreadInfo t = rows[i];
+                if (t == null) {
+                    long address = index.getLong(offset + 8 * i);
+                    t = new OffHeapThreadInfo(store, address);
+                    rows[i] = t;
+                }
+                return t;
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.model;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import static com.example.model.OffHeapStore.CONTAINER;
+import static com.example.model.OffHeapStore.CPU;
+import static com.example.model.OffHeapStore.DAEMON;
+import static com.example.model.OffHeapStore.DEPTH;
+import static com.example.model.OffHeapStore.ELAPSED;
+import static com.example.model.OffHeapStore.ID;
+import static com.example.model.OffHeapStore.LOCKS;
+import static com.example.model.OffHeapStore.LOCK_COUNT;
+import static com.example.model.OffHeapStore.NAME;
+import static com.example.model.OffHeapStore.PRIORITY;
+import static com.example.model.OffHeapStore.STATE;
+import static com.example.model.OffHeapStore.WAIT_CLASS;
+import static com.example.model.OffHeapStore.WAIT_IDENTITY;
+
+/**
+ * Flyweight over a thread record of an {@link OffHeapStore}. It holds no
+ * data of its own; every getter decodes the record, with strings and frames
+ * going through the store's decode caches. Two flyweights over the same
+ * record are equal, so threads found by one analysis still match those of
+ * a later {@link ThreadDump#getThreads()} that created new flyweights.
+ */
+final class OffHeapThreadInfo extends ThreadInfo {
+    private final OffHeapStore store;
+    private final ByteBuffer b;
+    private final int o;
+    private final long address;
+
+    OffHeapThreadInfo(OffHeapStore store, long address) {
+        super(0, null, null, List.of(), null, List.of(), null, 0, false, null, 0, 0);
+        this.store = store;
+        this.b = store.buffer(address);
+        this.o = OffHeapStore.offset(address);
+        this.address = address;
+    }
+
+    @Override
+    public long getId() {
+        return b.getLong(o + ID);
+    }
+
+    @Override
+    public String getName() {
+        return store.symbol(b.getInt(o + NAME));
+    }
+
+    @Override
+    public Thread.State getState() {
+        return OffHeapStore.state(b.get(o + STATE));
+    }
+
+    @Override
+    public List<StackFrame> getStack() {
+        int depth = b.getInt(o + DEPTH);
+        if (depth == 0) {
+            return List.of();
+        }
+        int start = o + LOCKS + 8 * b.getInt(o + LOCK_COUNT);
+        return new Stack(start, depth);
+    }
+
+    @Override
+    public List<LockInfo> getLockedMonitors() {
+        int count = b.getInt(o + LOCK_COUNT);
+        if (count == 0) {
+            return List.of();
+        }
+        LockInfo[] locks = new LockInfo[count];
+        for (int k = 0, p = o + LOCKS; k < count; k++, p += 8) {
+            locks[k] = new LockInfo(store.symbol(b.getInt(p)), store.symbol(b.getInt(p + 4)));
+        }
+        return List.of(locks);
+    }
+
+    @Override
+    public LockInfo getWaitingOn() {
+        int cls = b.getInt(o + WAIT_CLASS);
+        return cls < 0 ? null : new LockInfo(store.symbol(cls), store.symbol(b.getInt(o + WAIT_IDENTITY)));
+    }
+
+    @Override
+    public int getPriority() {
+        return b.get(o + PRIORITY);
+    }
+
+    @Override
+    public boolean isDaemon() {
+        return b.get(o + DAEMON) != 0;
+    }
+
+    @Override
+    public String getContainer() {
+        return store.symbol(b.getInt(o + CONTAINER));
+    }
+
+    @Override
+    public long getCpuTimeNanos() {
+        return b.getLong(o + CPU);
+    }
+
+    @Override
+    public long getElapsedNanos() {
+        return b.getLong(o + ELAPSED);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof OffHeapThreadInfo)) {
+            return false;
+        }
+        OffHeapThreadInfo other = (OffHeapThreadInfo) obj;
+        return store == other.store && address == other.address;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * System.identityHashCode(store) + Long.hashCode(address);
+    }
+
+    private final class Stack extends AbstractList<StackFrame> implements RandomAccess {
+        private final int start;
+        private final int depth;
+
+        Stack(int start, int depth) {
+            this.start = start;
+            this.depth = depth;
+        }
+
+        @Override
+        public StackFrame get(int index) {
+            if (index < 0 || index >= depth) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return store.frame(b.getInt(start + 4 * index));
+        }
+
+        @Override
+        public int size() {
+            return depth;
+        }
+    }
+}
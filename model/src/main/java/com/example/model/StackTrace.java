@@ -0,0 +1,171 @@
+package com.example.model;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Immutable stack interned by a {@link StackTraceStore}. A stack is stored
+ * as its innermost frame plus a link to the stack of its caller, so stacks
+ * that end in the same outer frames, such as every worker of a pool below
+ * {@code ThreadPoolExecutor.runWorker}, share those frames, and identical
+ * stacks are the same object.
+ *
+ * <p>A stack trace is a read-only {@link List} with the innermost frame
+ * first, like every other stack of the model, and compares equal to any
+ * list holding the same frames. Because of the links, indexed access costs
+ * time proportional to the index; walk it with an iterator instead.
+ * {@link #hashCode()} is computed once, and {@link #equals(Object)} stops as
+ * soon as both stacks reach a shared caller, so comparing two interned
+ * stacks is usually a reference comparison.</p>
+ */
+public final class StackTrace extends AbstractList<StackFrame> {
+    static final StackTrace EMPTY = new StackTrace(null, null, 0);
+
+    private final StackFrame frame;
+    private final StackTrace caller;
+    private final int size;
+    private final int hash;
+    private final int id;
+
+    StackTrace(StackFrame frame, StackTrace caller, int id) {
+        this.frame = frame;
+        this.caller = caller;
+        this.id = id;
+        if (caller == null) {
+            this.size = 0;
+            this.hash = 1;
+        } else {
+            // List.hashCode of the frames, derived from the caller's hash:
+            // prepending e to a list of n frames with hash h gives
+            // 31^(n+1) + e * 31^n + h - 31^n
+            int pow = pow31(caller.size);
+            this.size = caller.size + 1;
+            this.hash = 31 * pow + (frame == null ? 0 : frame.hashCode()) * pow + caller.hash - pow;
+        }
+    }
+
+    /**
+     * Return the innermost frame, or null for the empty stack.
+     */
+    public StackFrame getFrame() {
+        return frame;
+    }
+
+    /**
+     * Return the stack without its innermost frame, which is shared with
+     * every other stack having the same callers; null for the empty stack.
+     */
+    public StackTrace getCaller() {
+        return caller;
+    }
+
+    /**
+     * Return the number the store assigned to this stack. Stacks interned
+     * by the same store have the same id exactly when they are the same
+     * object.
+     */
+    public int getId() {
+        return id;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public StackFrame get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        StackTrace t = this;
+        for (int i = 0; i < index; i++) {
+            t = t.caller;
+        }
+        return t.frame;
+    }
+
+    @Override
+    public Iterator<StackFrame> iterator() {
+        return new Iterator<>() {
+            private StackTrace next = StackTrace.this;
+
+            @Override
+            public boolean hasNext() {
+                return next.size > 0;
+            }
+
+            @Override
+            public StackFrame next() {
+                if (next.size == 0) {
+                    throw new NoSuchElementException();
+                }
+                StackFrame f = next.frame;
+                next = next.caller;
+                return f;
+            }
+        };
+    }
+
+    /**
+     * Return the frames from {@code fromIndex} on. A range reaching the
+     * outermost frame is the shared caller stack itself.
+     */
+    @Override
+    public List<StackFrame> subList(int fromIndex, int toIndex) {
+        if (toIndex == size && fromIndex >= 0 && fromIndex <= size) {
+            StackTrace t = this;
+            for (int i = 0; i < fromIndex; i++) {
+                t = t.caller;
+            }
+            return t;
+        }
+        return super.subList(fromIndex, toIndex);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof StackTrace)) {
+            return super.equals(o);
+        }
+        StackTrace a = this;
+        StackTrace b = (StackTrace) o;
+        if (a.hash != b.hash || a.size != b.size) {
+            return false;
+        }
+        // traces from different stores, or from before the store was
+        // cleared, are compared frame by frame until they meet
+        while (a != b) {
+            if (!Objects.equals(a.frame, b.frame)) {
+                return false;
+            }
+            a = a.caller;
+            b = b.caller;
+        }
+        return true;
+    }
+
+    private static int pow31(int n) {
+        int result = 1;
+        int base = 31;
+        while (n > 0) {
+            if ((n & 1) != 0) {
+                result *= base;
+            }
+            base *= base;
+            n >>= 1;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,224 @@
+package com.example.model;
+
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hash-consing store for {@link StackTrace}s. Interning a stack walks it
+ * from the outermost frame inwards through a trie whose nodes are the
+ * stack traces themselves, reusing every suffix seen before, so each
+ * distinct (caller, frame) pair is stored once for all threads and dumps
+ * that go through the store.
+ *
+ * <p>The trie is indexed by one open-addressing table keyed on the caller
+ * and the frame; a lookup that finds its node allocates nothing. The store
+ * holds at most {@code capacity} nodes. When it is full it forgets all of
+ * them and starts over, so memory stays bounded in long running processes;
+ * stacks interned before remain valid, they are just not shared with
+ * stacks interned afterwards.</p>
+ *
+ * <p>A store is safe for use by concurrent parsers. Lookups of nodes that
+ * already exist take no lock: nodes are immutable and only ever added to a
+ * table, so a reader either finds a complete node or none. Only the frames
+ * a stack does not share with any stack interned before, usually few once
+ * a dump is under way, are added under the store's monitor.</p>
+ */
+public final class StackTraceStore {
+    /** System property that sets the capacity of {@link #shared()}. */
+    public static final String CAPACITY_PROPERTY = "threaddump.stackStore.size";
+    /** Capacity of {@link #shared()} unless overridden. */
+    public static final int DEFAULT_CAPACITY = 1 << 18;
+
+    private static final int INITIAL_TABLE_SIZE = 1024;
+
+    private static final StackTraceStore SHARED =
+            new StackTraceStore(Integer.getInteger(CAPACITY_PROPERTY, DEFAULT_CAPACITY));
+
+    private final int capacity;
+    private volatile StackTrace[] table;
+    private int size;
+    private int nextId = 1;
+    private final LongAdder hits = new LongAdder();
+    private long misses;
+    private int resets;
+
+    /**
+     * @param capacity maximum number of nodes kept; 0 disables interning
+     */
+    public StackTraceStore(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity must not be negative");
+        }
+        this.capacity = capacity;
+        this.table = new StackTrace[capacity == 0 ? 0 : INITIAL_TABLE_SIZE];
+    }
+
+    /**
+     * Get the store used by the parsers.
+     */
+    public static StackTraceStore shared() {
+        return SHARED;
+    }
+
+    /**
+     * Whether this store interns stacks at all. Callers holding a disabled
+     * store should keep their stacks as plain lists, which are smaller than
+     * unshared stack traces.
+     */
+    public boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    /**
+     * Return the interned stack trace holding the given frames, innermost
+     * first. A {@link StackTrace} is returned as is.
+     */
+    public StackTrace intern(List<StackFrame> frames) {
+        if (frames instanceof StackTrace) {
+            return (StackTrace) frames;
+        }
+        int n = frames.size();
+        if (n == 0) {
+            return StackTrace.EMPTY;
+        }
+        List<StackFrame> list = frames instanceof RandomAccess ? frames : List.copyOf(frames);
+        StackTrace node = StackTrace.EMPTY;
+        int i = n - 1;
+        StackTrace[] snapshot = table;
+        if (snapshot.length > 0) {
+            for (StackTrace found; i >= 0 && (found = find(snapshot, node, list.get(i))) != null; i--) {
+                node = found;
+            }
+            hits.add(n - 1 - i);
+            if (i < 0) {
+                return node;
+            }
+        }
+        synchronized (this) {
+            if (capacity > 0 && size + i + 1 > capacity) {
+                table = new StackTrace[INITIAL_TABLE_SIZE];
+                size = 0;
+                resets++;
+                // intern the whole stack again so it is shared from now on
+                node = StackTrace.EMPTY;
+                i = n - 1;
+            }
+            for (; i >= 0; i--) {
+                node = child(node, list.get(i));
+            }
+            return node;
+        }
+    }
+
+    /**
+     * Look up a node without locking. A node added concurrently may not be
+     * seen yet, in which case the caller falls back to {@link #child}.
+     */
+    private static StackTrace find(StackTrace[] table, StackTrace caller, StackFrame frame) {
+        int mask = table.length - 1;
+        int slot = hash(caller, frame) & mask;
+        for (StackTrace t = table[slot]; t != null; t = table[slot = (slot + 1) & mask]) {
+            if (t.getCaller() == caller && (t.getFrame() == frame || t.getFrame().equals(frame))) {
+                return t;
+            }
+        }
+        return null;
+    }
+
+    private StackTrace child(StackTrace caller, StackFrame frame) {
+        StackTrace[] table = this.table;
+        if (table.length == 0) {
+            return new StackTrace(frame, caller, nextId());
+        }
+        int mask = table.length - 1;
+        int slot = hash(caller, frame) & mask;
+        for (StackTrace t = table[slot]; t != null; t = table[slot = (slot + 1) & mask]) {
+            if (t.getCaller() == caller && (t.getFrame() == frame || t.getFrame().equals(frame))) {
+                hits.increment();
+                return t;
+            }
+        }
+        misses++;
+        StackTrace node = new StackTrace(frame, caller, nextId());
+        table[slot] = node;
+        if (++size * 2 > table.length) {
+            rehash();
+        }
+        return node;
+    }
+
+    private int nextId() {
+        int id = nextId++;
+        if (nextId < 0) {
+            nextId = 1;
+        }
+        return id;
+    }
+
+    private void rehash() {
+        StackTrace[] old = table;
+        StackTrace[] grown = new StackTrace[old.length * 2];
+        int mask = grown.length - 1;
+        for (StackTrace t : old) {
+            if (t != null) {
+                int slot = hash(t.getCaller(), t.getFrame()) & mask;
+                while (grown[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                grown[slot] = t;
+            }
+        }
+        // readers only ever see a table once it is complete
+        table = grown;
+    }
+
+    private static int hash(StackTrace caller, StackFrame frame) {
+        int h = 31 * caller.getId() + frame.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /** Return the number of nodes currently held. */
+    public synchronized int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /** Return the number of frames that were found already interned. */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /** Return the number of frames that needed a new node. */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /** Return how often the store filled up and started over. */
+    public synchronized int getResets() {
+        return resets;
+    }
+
+    /**
+     * Forget all nodes and reset the statistics. Stack traces already
+     * handed out stay valid.
+     */
+    public synchronized void clear() {
+        table = new StackTrace[capacity == 0 ? 0 : INITIAL_TABLE_SIZE];
+        size = 0;
+        hits.reset();
+        misses = 0;
+        resets = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long shared = hits.sum();
+        long total = shared + misses;
+        return String.format("StackTraceStore[capacity=%d, size=%d, hits=%d, misses=%d, sharedFrames=%.1f%%]",
+                capacity, size, shared, misses, total == 0 ? 0.0 : shared * 100.0 / total);
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.model;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Process-wide interner for the Strings that make up thread dumps: class,
+ * method and file names of stack frames, lock classes and thread names.
+ * Parsers pass every symbol through {@link #intern(String)} so that equal
+ * symbols share one instance across all dumps held in memory, for example
+ * by a cache of recently loaded dumps.
+ *
+ * <p>Entries are only weakly referenced and disappear once no dump uses
+ * them any more. The table is split into independently locked stripes so
+ * that concurrent parsers rarely contend.</p>
+ */
+public final class SymbolInterner {
+    private static final int STRIPES = 16;
+
+    @SuppressWarnings("unchecked")
+    private static final Map<String, WeakReference<String>>[] TABLES =
+            (Map<String, WeakReference<String>>[]) new Map<?, ?>[STRIPES];
+
+    static {
+        for (int i = 0; i < STRIPES; i++) {
+            TABLES[i] = new WeakHashMap<>();
+        }
+    }
+
+    private SymbolInterner() {
+    }
+
+    /**
+     * Get the shared instance equal to {@code value}.
+     *
+     * @param value symbol to intern, may be {@code null}
+     * @return the canonical instance, or {@code null} for {@code null}
+     */
+    public static String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        int h = value.hashCode();
+        Map<String, WeakReference<String>> table = TABLES[(h ^ (h >>> 16)) & (STRIPES - 1)];
+        synchronized (table) {
+            WeakReference<String> ref = table.get(value);
+            String existing = ref != null ? ref.get() : null;
+            if (existing != null) {
+                return existing;
+            }
+            table.put(value, new WeakReference<>(value));
+            return value;
+        }
+    }
+
+    /**
+     * Number of symbols currently interned. Symbols that are no longer
+     * referenced may still be counted until the garbage collector has
+     * cleared them.
+     */
+    public static int size() {
+        int size = 0;
+        for (Map<String, WeakReference<String>> table : TABLES) {
+            synchronized (table) {
+                size += table.size();
+            }
+        }
+        return size;
+    }
+}
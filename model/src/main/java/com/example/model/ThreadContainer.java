@@ -0,0 +1,40 @@
+package com.example.model;
+
+/**
+ * A thread container as reported by {@code jcmd Thread.dump_to_file}:
+ * the root container, a thread pool or executor, or a structured task
+ * scope. Containers form a tree through their parent names; every thread
+ * of a dump taken this way names the container it belongs to.
+ */
+public class ThreadContainer {
+    private final String name;
+    private final String parent;
+    private final long ownerId;
+
+    /**
+     * @param name container name, e.g. {@code java.util.concurrent.ForkJoinPool@1d81eb93}
+     * @param parent name of the enclosing container, or null for the root
+     * @param ownerId id of the thread owning the container, or -1 if none
+     */
+    public ThreadContainer(String name, String parent, long ownerId) {
+        this.name = name;
+        this.parent = parent;
+        this.ownerId = ownerId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getParent() {
+        return parent;
+    }
+
+    public long getOwnerId() {
+        return ownerId;
+    }
+
+    public boolean isRoot() {
+        return parent == null;
+    }
+}
@@ -1,15 +1,38 @@
 package com.example.model;
 
+import java.lang.ref.SoftReference;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+/**
+ * One thread dump of a JVM. Like {@link ThreadInfo}, a dump is immutable
+ * and its getters return unmodifiable lists without copying them.
+ *
+ * <p>Very large dumps may keep their threads in a {@link ThreadTable}
+ * instead of one object per thread. {@link #getThreads()} works the same
+ * for both; analyses that care about footprint can check
+ * {@link #getTable()} and work on the columns.</p>
+ *
+ * <p>A dump returned by {@link OffHeapStore#add} keeps its threads outside
+ * the heap, see {@link #isOffHeap()}.</p>
+ *
+ * <p>Not every dump format records when the dump was taken. Parsers then
+ * stamp the dump with the time it was parsed and mark its timestamp as
+ * not recorded, see {@link #isTimestampRecorded()}.</p>
+ */
 public class ThreadDump {
     private final Instant timestamp;
-    private final List<ThreadInfo> threads;
+    private final boolean timestampRecorded;
+    private volatile List<ThreadInfo> threads;
+    private final ThreadTable table;
+    private final OffHeapStore.OffHeapDump offHeap;
+    private volatile SoftReference<List<ThreadInfo>> offHeapThreads;
     private final String label;
     private final String jvmVersion;
     private final long uptimeMillis;
+    private final List<ThreadContainer> containers;
 
     public ThreadDump(Instant timestamp, List<ThreadInfo> threads) {
         this(timestamp, threads, null, null, -1);
@@ -21,19 +44,161 @@ public class ThreadDump {
 
     public ThreadDump(Instant timestamp, List<ThreadInfo> threads, String label,
                       String jvmVersion, long uptimeMillis) {
+        this(timestamp, threads, label, jvmVersion, uptimeMillis, null);
+    }
+
+    public ThreadDump(Instant timestamp, List<ThreadInfo> threads, String label,
+                      String jvmVersion, long uptimeMillis, List<ThreadContainer> containers) {
+        this(timestamp, timestamp != null, threads == null ? List.of() : List.copyOf(threads), null, null,
+                label, jvmVersion, uptimeMillis, containers == null ? List.of() : List.copyOf(containers));
+    }
+
+    /**
+     * Create a dump whose threads are stored in columns.
+     */
+    public ThreadDump(Instant timestamp, ThreadTable table, String label,
+                      String jvmVersion, long uptimeMillis, List<ThreadContainer> containers) {
+        this(timestamp, timestamp != null, null, table, null, label, jvmVersion, uptimeMillis,
+                containers == null ? List.of() : List.copyOf(containers));
+    }
+
+    /**
+     * Create a dump whose threads are held by an {@link OffHeapStore}.
+     */
+    ThreadDump(Instant timestamp, boolean timestampRecorded, OffHeapStore.OffHeapDump offHeap, String label,
+               String jvmVersion, long uptimeMillis, List<ThreadContainer> containers) {
+        this(timestamp, timestampRecorded, null, null, offHeap, label, jvmVersion, uptimeMillis, containers);
+    }
+
+    /**
+     * @param threads unmodifiable list of threads, or null if {@code table}
+     *                or {@code offHeap} is set
+     * @param containers unmodifiable list of containers
+     */
+    private ThreadDump(Instant timestamp, boolean timestampRecorded, List<ThreadInfo> threads,
+                       ThreadTable table, OffHeapStore.OffHeapDump offHeap, String label, String jvmVersion,
+                       long uptimeMillis, List<ThreadContainer> containers) {
         this.timestamp = timestamp;
-        this.threads = threads == null ? new ArrayList<>() : new ArrayList<>(threads);
+        this.timestampRecorded = timestampRecorded;
+        this.threads = threads;
+        this.table = table;
+        this.offHeap = offHeap;
         this.label = label;
         this.jvmVersion = jvmVersion;
         this.uptimeMillis = uptimeMillis;
+        this.containers = containers;
+    }
+
+    /**
+     * Copy of this dump under a different label. The threads are shared
+     * with this dump, not copied.
+     */
+    public ThreadDump withLabel(String label) {
+        return new ThreadDump(timestamp, timestampRecorded, threads, table, offHeap, label, jvmVersion,
+                uptimeMillis, containers);
     }
 
+    /**
+     * Copy of this dump taken at a different time. The threads are shared
+     * with this dump, not copied.
+     */
+    public ThreadDump withTimestamp(Instant timestamp) {
+        return new ThreadDump(timestamp, timestamp != null, threads, table, offHeap, label, jvmVersion,
+                uptimeMillis, containers);
+    }
+
+    /**
+     * Copy of this dump holding other threads, for example a subset of
+     * this dump's threads. Everything else, including whether the
+     * timestamp was recorded, is kept.
+     */
+    public ThreadDump withThreads(List<ThreadInfo> threads) {
+        return new ThreadDump(timestamp, timestampRecorded, threads == null ? List.of() : List.copyOf(threads),
+                null, null, label, jvmVersion, uptimeMillis, containers);
+    }
+
+    /**
+     * @return the time the dump was taken, or, if the dump does not
+     *         record it, the time it was parsed
+     */
     public Instant getTimestamp() {
         return timestamp;
     }
 
+    /**
+     * Whether {@link #getTimestamp()} is the time recorded in the dump
+     * rather than the time the dump was parsed.
+     */
+    public boolean isTimestampRecorded() {
+        return timestampRecorded;
+    }
+
+    /**
+     * @return unmodifiable list of the threads in the order the dump lists
+     *         them. For a dump stored in a {@link ThreadTable} the threads
+     *         are created on the first call and kept, so they are the same
+     *         objects on every call; analyses that only need the columns
+     *         read {@link #getTable()} and never create them. For a dump
+     *         held off the heap they are flyweights that are only kept
+     *         while memory allows; flyweights over the same thread are
+     *         equal, though not always the same object.
+     */
     public List<ThreadInfo> getThreads() {
-        return new ArrayList<>(threads);
+        List<ThreadInfo> list = threads;
+        if (list == null) {
+            list = offHeap != null ? offHeapThreads() : materialize();
+        }
+        return list;
+    }
+
+    private List<ThreadInfo> offHeapThreads() {
+        if (offHeap.isReleased()) {
+            throw new IllegalStateException("dump was released from its off-heap store");
+        }
+        SoftReference<List<ThreadInfo>> ref = offHeapThreads;
+        List<ThreadInfo> list = ref == null ? null : ref.get();
+        if (list == null) {
+            list = offHeap.threads();
+            offHeapThreads = new SoftReference<>(list);
+        }
+        return list;
+    }
+
+    private synchronized List<ThreadInfo> materialize() {
+        if (threads == null) {
+            ThreadInfo[] rows = new ThreadInfo[table.size()];
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = table.getThread(i);
+            }
+            threads = List.of(rows);
+        }
+        return threads;
+    }
+
+    /**
+     * @return the columns holding the threads, or null if the dump keeps
+     *         one {@link ThreadInfo} per thread
+     */
+    public ThreadTable getTable() {
+        return table;
+    }
+
+    /**
+     * Whether the threads are held by an {@link OffHeapStore}.
+     */
+    public boolean isOffHeap() {
+        return offHeap != null;
+    }
+
+    OffHeapStore.OffHeapDump getOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * Return the number of threads without materializing them.
+     */
+    public int getThreadCount() {
+        return table != null ? table.size() : offHeap != null ? offHeap.size() : threads.size();
     }
 
     public String getLabel() {
@@ -47,4 +212,128 @@ public class ThreadDump {
     public long getUptimeMillis() {
         return uptimeMillis;
     }
+
+    /**
+     * @return unmodifiable list of the thread containers in the order the
+     *         dump lists them; empty for formats without containers
+     */
+    public List<ThreadContainer> getContainers() {
+        return containers;
+    }
+
+    /**
+     * Assembles a {@link ThreadDump} from threads reported one at a time.
+     * {@link #build()} hands the collected lists to the dump without
+     * copying them and resets the builder.
+     */
+    public static final class Builder {
+        private Instant timestamp;
+        private String label;
+        private String jvmVersion;
+        private long uptimeMillis = -1;
+        private List<ThreadInfo> threads = new ArrayList<>();
+        private List<ThreadContainer> containers = new ArrayList<>();
+        private int columnarThreshold = Integer.MAX_VALUE;
+        private ThreadTable.Builder table;
+        private boolean lazyStacks;
+
+        /**
+         * Switch to a {@link ThreadTable} once this many threads have been
+         * added. The threads collected so far are moved into the table and
+         * later ones are added to it directly, so no {@link ThreadInfo} is
+         * retained. A table holds decoded frames, so the dump stays one
+         * object per thread if any thread added before the switch still
+         * has a stack that is only loaded on first access; building the
+         * table would decode every one of them.
+         *
+         * @param minThreads thread count at which to switch
+         */
+        public Builder columnarFrom(int minThreads) {
+            if (minThreads < 0) {
+                throw new IllegalArgumentException("minThreads must not be negative");
+            }
+            this.columnarThreshold = minThreads;
+            return this;
+        }
+
+        /**
+         * @param timestamp time recorded in the dump, or null if the dump
+         *        records none; the dump is then stamped with the time it
+         *        is built
+         */
+        public Builder timestamp(Instant timestamp) {
+            this.timestamp = timestamp;
+            return this;
+        }
+
+        public Builder label(String label) {
+            this.label = label;
+            return this;
+        }
+
+        public Builder jvmVersion(String jvmVersion) {
+            this.jvmVersion = jvmVersion;
+            return this;
+        }
+
+        public Builder uptimeMillis(long uptimeMillis) {
+            this.uptimeMillis = uptimeMillis;
+            return this;
+        }
+
+        public Builder addThread(ThreadInfo thread) {
+            lazyStacks |= !thread.isStackLoaded();
+            if (table != null) {
+                table.add(thread);
+            } else if (threads.size() + 1 >= columnarThreshold && !lazyStacks) {
+                table = new ThreadTable.Builder(threads.size() * 2 + 1);
+                threads.forEach(table::add);
+                threads.clear();
+                table.add(thread);
+            } else {
+                threads.add(thread);
+            }
+            return this;
+        }
+
+        /** Return the number of threads added so far. */
+        public int getThreadCount() {
+            return table != null ? table.size() : threads.size();
+        }
+
+        public Builder addContainer(ThreadContainer container) {
+            containers.add(container);
+            return this;
+        }
+
+        /**
+         * Create the dump and reset this builder to its initial state.
+         */
+        public ThreadDump build() {
+            Instant stamp = timestamp != null ? timestamp : Instant.now();
+            boolean recorded = timestamp != null;
+            ThreadDump dump = table != null
+                    ? new ThreadDump(stamp, recorded, null, table.build(), null, label, jvmVersion, uptimeMillis,
+                            frozen(containers))
+                    : new ThreadDump(stamp, recorded, frozen(threads), null, null, label, jvmVersion,
+                            uptimeMillis, frozen(containers));
+            table = null;
+            lazyStacks = false;
+            if (!threads.isEmpty()) {
+                threads = new ArrayList<>();
+            }
+            if (!containers.isEmpty()) {
+                containers = new ArrayList<>();
+            }
+            timestamp = null;
+            label = null;
+            jvmVersion = null;
+            uptimeMillis = -1;
+            return dump;
+        }
+
+        private static <T> List<T> frozen(List<T> list) {
+            return list.isEmpty() ? List.of() : Collections.unmodifiableList(list);
+        }
+    }
 }
@@ -1,33 +1,116 @@
 package com.example.model;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Supplier;
 
+/**
+ * One thread of a dump. Instances are immutable: the stack and lock lists
+ * passed to a constructor are copied once into unmodifiable lists, and the
+ * getters return those lists without copying, so analyses can walk them as
+ * often as they like without allocating. Parsers that assemble threads
+ * piece by piece use a {@link Builder}, which hands its lists over without
+ * any copy at all. A stack that is a {@link StackTrace} is already
+ * immutable and is kept as it is, sharing its frames with other threads.
+ */
 public class ThreadInfo {
     private final long id;
     private final String name;
     private final Thread.State state;
-    private final List<StackFrame> stack;
+    private volatile List<StackFrame> stack;
+    private Supplier<List<StackFrame>> stackLoader;
     private final List<LockInfo> lockedMonitors;
     private final LockInfo waitingOn;
     private final int priority;
     private final boolean daemon;
+    private final String container;
+    private final long cpuTimeNanos;
+    private final long elapsedNanos;
 
     public ThreadInfo(long id, String name, Thread.State state, List<StackFrame> stack,
                       List<LockInfo> lockedMonitors, LockInfo waitingOn,
                       int priority, boolean daemon) {
+        this(id, name, state, stack, lockedMonitors, waitingOn, priority, daemon, null);
+    }
+
+    /**
+     * Create a thread that belongs to a {@link ThreadContainer}.
+     *
+     * @param container name of the container, or null if unknown
+     */
+    public ThreadInfo(long id, String name, Thread.State state, List<StackFrame> stack,
+                      List<LockInfo> lockedMonitors, LockInfo waitingOn,
+                      int priority, boolean daemon, String container) {
+        this(id, name, state, stack, lockedMonitors, waitingOn, priority, daemon, container, -1, -1);
+    }
+
+    /**
+     * Create a thread with the CPU and wall clock time it has used so far,
+     * as reported by dumps that include them.
+     *
+     * @param cpuTimeNanos CPU time consumed by the thread, or -1 if unknown
+     * @param elapsedNanos time since the thread was started, or -1 if unknown
+     */
+    public ThreadInfo(long id, String name, Thread.State state, List<StackFrame> stack,
+                      List<LockInfo> lockedMonitors, LockInfo waitingOn,
+                      int priority, boolean daemon, String container,
+                      long cpuTimeNanos, long elapsedNanos) {
+        this(id, name, state, stack == null ? List.of() : stack instanceof StackTrace ? stack : List.copyOf(stack), null,
+                lockedMonitors == null ? List.of() : List.copyOf(lockedMonitors), waitingOn,
+                priority, daemon, container, cpuTimeNanos, elapsedNanos);
+    }
+
+    /**
+     * Create a thread whose stack is loaded on first access. Parsers use
+     * this to defer decoding frames that many analyses never look at. The
+     * loader is called at most once, from whichever thread first calls
+     * {@link #getStack()}, and is released afterwards. The thread takes
+     * ownership of the list the loader returns, which must not be modified
+     * afterwards.
+     */
+    public ThreadInfo(long id, String name, Thread.State state, Supplier<List<StackFrame>> stackLoader,
+                      List<LockInfo> lockedMonitors, LockInfo waitingOn,
+                      int priority, boolean daemon) {
+        this(id, name, state, stackLoader, lockedMonitors, waitingOn, priority, daemon, -1, -1);
+    }
+
+    /**
+     * Create a thread with a lazily loaded stack and the CPU and wall clock
+     * time it has used so far.
+     */
+    public ThreadInfo(long id, String name, Thread.State state, Supplier<List<StackFrame>> stackLoader,
+                      List<LockInfo> lockedMonitors, LockInfo waitingOn,
+                      int priority, boolean daemon, long cpuTimeNanos, long elapsedNanos) {
+        this(id, name, state, null, stackLoader,
+                lockedMonitors == null ? List.of() : List.copyOf(lockedMonitors), waitingOn,
+                priority, daemon, null, cpuTimeNanos, elapsedNanos);
+    }
+
+    /**
+     * @param stack unmodifiable stack, or null if {@code stackLoader} is set
+     * @param lockedMonitors unmodifiable list of held locks
+     */
+    ThreadInfo(long id, String name, Thread.State state, List<StackFrame> stack,
+                       Supplier<List<StackFrame>> stackLoader, List<LockInfo> lockedMonitors,
+                       LockInfo waitingOn, int priority, boolean daemon, String container,
+                       long cpuTimeNanos, long elapsedNanos) {
         this.id = id;
         this.name = name;
         this.state = state;
-        this.stack = stack == null ? new ArrayList<>() : new ArrayList<>(stack);
-        this.lockedMonitors = lockedMonitors == null ? new ArrayList<>() : new ArrayList<>(lockedMonitors);
+        this.stack = stack;
+        this.stackLoader = stackLoader;
+        this.lockedMonitors = lockedMonitors;
         this.waitingOn = waitingOn;
         this.priority = priority;
         this.daemon = daemon;
+        this.container = container;
+        this.cpuTimeNanos = cpuTimeNanos;
+        this.elapsedNanos = elapsedNanos;
     }
 
     public ThreadInfo(long id, String name, Thread.State state, List<StackFrame> stack, LockInfo waitingOn) {
-        this(id, name, state, stack, new ArrayList<>(), waitingOn, -1, false);
+        this(id, name, state, stack, List.of(), waitingOn, -1, false);
     }
 
     public ThreadInfo(long id, String name, Thread.State state, List<StackFrame> stack,
@@ -47,12 +130,41 @@ public class ThreadInfo {
         return state;
     }
 
+    /**
+     * @return unmodifiable stack, innermost frame first
+     */
     public List<StackFrame> getStack() {
-        return new ArrayList<>(stack);
+        List<StackFrame> frames = stack;
+        if (frames == null) {
+            frames = loadStack();
+        }
+        return frames;
     }
 
+    /**
+     * Whether the stack has been built, so that {@link #getStack()} does
+     * not decode anything.
+     */
+    boolean isStackLoaded() {
+        return stack != null;
+    }
+
+    private synchronized List<StackFrame> loadStack() {
+        if (stack == null) {
+            List<StackFrame> loaded = stackLoader.get();
+            stack = loaded == null ? List.of()
+                    : loaded instanceof StackTrace ? loaded : Collections.unmodifiableList(loaded);
+            stackLoader = null;
+        }
+        return stack;
+    }
+
+    /**
+     * @return unmodifiable list of the monitors and synchronizers the
+     *         thread holds
+     */
     public List<LockInfo> getLockedMonitors() {
-        return new ArrayList<>(lockedMonitors);
+        return lockedMonitors;
     }
 
     public LockInfo getWaitingOn() {
@@ -66,4 +178,171 @@ public class ThreadInfo {
     public boolean isDaemon() {
         return daemon;
     }
+
+    /**
+     * @return name of the {@link ThreadContainer} this thread belongs to,
+     *         or null if the dump format does not record containers
+     */
+    public String getContainer() {
+        return container;
+    }
+
+    /**
+     * @return CPU time the thread had consumed when the dump was taken, in
+     *         nanoseconds, or -1 if the dump does not record it
+     */
+    public long getCpuTimeNanos() {
+        return cpuTimeNanos;
+    }
+
+    /**
+     * @return time since the thread was started, in nanoseconds, or -1 if
+     *         the dump does not record it
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Assembles a {@link ThreadInfo} field by field. {@link #build()} hands
+     * the collected frames and locks to the new thread without copying them
+     * and resets the builder, so one builder can be reused for every thread
+     * of a dump. Builders are not thread safe.
+     */
+    public static final class Builder {
+        private long id = -1;
+        private String name;
+        private Thread.State state = Thread.State.RUNNABLE;
+        private List<StackFrame> stack = new ArrayList<>();
+        private Supplier<List<StackFrame>> stackLoader;
+        private List<LockInfo> lockedMonitors = new ArrayList<>();
+        private LockInfo waitingOn;
+        private int priority = -1;
+        private boolean daemon;
+        private String container;
+        private long cpuTimeNanos = -1;
+        private long elapsedNanos = -1;
+        private StackTraceStore stackTraces;
+
+        /**
+         * Intern the stacks of the threads built from now on in a store, so
+         * that they share frames with stacks interned before. The setting
+         * is kept across {@link #build()} and {@link #reset()}. Stacks set
+         * with {@link #stackLoader} are left to the loader.
+         *
+         * @param store store to use, or null to keep plain lists
+         */
+        public Builder stackTraces(StackTraceStore store) {
+            this.stackTraces = store != null && store.isEnabled() ? store : null;
+            return this;
+        }
+
+        public Builder id(long id) {
+            this.id = id;
+            return this;
+        }
+
+        public Builder name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        public Builder state(Thread.State state) {
+            this.state = state;
+            return this;
+        }
+
+        /** Append a frame below those added so far. */
+        public Builder addFrame(StackFrame frame) {
+            stack.add(frame);
+            return this;
+        }
+
+        /**
+         * Load the stack on first access instead of using the frames added
+         * with {@link #addFrame}, as with the constructors taking a loader.
+         */
+        public Builder stackLoader(Supplier<List<StackFrame>> stackLoader) {
+            this.stackLoader = stackLoader;
+            return this;
+        }
+
+        public Builder addLockedMonitor(LockInfo lock) {
+            lockedMonitors.add(lock);
+            return this;
+        }
+
+        public Builder waitingOn(LockInfo waitingOn) {
+            this.waitingOn = waitingOn;
+            return this;
+        }
+
+        public Builder priority(int priority) {
+            this.priority = priority;
+            return this;
+        }
+
+        public Builder daemon(boolean daemon) {
+            this.daemon = daemon;
+            return this;
+        }
+
+        public Builder container(String container) {
+            this.container = container;
+            return this;
+        }
+
+        public Builder cpuTimeNanos(long cpuTimeNanos) {
+            this.cpuTimeNanos = cpuTimeNanos;
+            return this;
+        }
+
+        public Builder elapsedNanos(long elapsedNanos) {
+            this.elapsedNanos = elapsedNanos;
+            return this;
+        }
+
+        /**
+         * Create the thread and reset this builder to its initial state.
+         */
+        public ThreadInfo build() {
+            boolean interned = stackLoader == null && stackTraces != null;
+            List<StackFrame> frames = stackLoader != null ? null
+                    : interned ? stackTraces.intern(stack) : frozen(stack);
+            ThreadInfo thread = new ThreadInfo(id, name, state, frames, stackLoader, frozen(lockedMonitors),
+                    waitingOn, priority, daemon, container, cpuTimeNanos, elapsedNanos);
+            // an interned stack no longer refers to the builder's list
+            if (stackLoader == null && !interned && !stack.isEmpty()) {
+                stack = new ArrayList<>();
+            }
+            if (!lockedMonitors.isEmpty()) {
+                lockedMonitors = new ArrayList<>();
+            }
+            reset();
+            return thread;
+        }
+
+        /**
+         * Discard everything set since the last {@link #build()}.
+         */
+        public Builder reset() {
+            id = -1;
+            name = null;
+            state = Thread.State.RUNNABLE;
+            stack.clear();
+            stackLoader = null;
+            lockedMonitors.clear();
+            waitingOn = null;
+            priority = -1;
+            daemon = false;
+            container = null;
+            cpuTimeNanos = -1;
+            elapsedNanos = -1;
+            return this;
+        }
+
+        private static <T> List<T> frozen(List<T> list) {
+            return list.isEmpty() ? List.of() : Collections.unmodifiableList(list);
+        }
+    }
 }
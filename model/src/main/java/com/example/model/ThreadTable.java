@@ -0,0 +1,356 @@
+package com.example.model;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column-oriented storage for the threads of a large dump. Instead of a
+ * {@link ThreadInfo} per thread and a list per stack, each attribute is
+ * held in a primitive array indexed by thread, and stacks are runs of
+ * frame ids in one shared {@code int[]} pointing into a dictionary of the
+ * distinct frames of the dump. Ids take two bytes per frame while the
+ * dictionary holds at most 65536 frames, which is the usual case since
+ * threads of a dump share most of their frames, and four bytes otherwise.
+ * A thread then costs a few dozen bytes plus its frame ids, and analyses
+ * can work on the columns directly.
+ *
+ * <p>A table is immutable. {@link ThreadDump#getTable()} exposes it for
+ * dumps stored this way, while {@link ThreadDump#getThreads()} keeps
+ * working by creating {@link ThreadInfo} objects on first use and keeping
+ * them, so their identity is stable.</p>
+ */
+public final class ThreadTable {
+    private static final Thread.State[] STATES = Thread.State.values();
+
+    private final int size;
+    private final long[] ids;
+    private final String[] names;
+    private final byte[] states;
+    private final byte[] priorities;
+    private final boolean[] daemons;
+    private final long[] cpuTimes;
+    private final long[] elapsedTimes;
+    private final String[] containers;
+    private final int[] stackStarts;
+    // exactly one of these holds the frame ids
+    private final char[] narrowFrameIds;
+    private final int[] frameIds;
+    private final StackFrame[] frames;
+    private final LockInfo[] waitingOn;
+    private final List<LockInfo>[] lockedMonitors;
+
+    private ThreadTable(Builder b) {
+        this.size = b.size;
+        this.ids = Arrays.copyOf(b.ids, size);
+        this.names = Arrays.copyOf(b.names, size);
+        this.states = Arrays.copyOf(b.states, size);
+        this.priorities = Arrays.copyOf(b.priorities, size);
+        this.daemons = Arrays.copyOf(b.daemons, size);
+        this.cpuTimes = Arrays.copyOf(b.cpuTimes, size);
+        this.elapsedTimes = Arrays.copyOf(b.elapsedTimes, size);
+        this.containers = b.hasContainers ? Arrays.copyOf(b.containers, size) : null;
+        this.stackStarts = Arrays.copyOf(b.stackStarts, size + 1);
+        this.frames = b.frames.toArray(new StackFrame[0]);
+        if (frames.length <= Character.MAX_VALUE + 1) {
+            this.narrowFrameIds = new char[b.frameCount];
+            for (int i = 0; i < b.frameCount; i++) {
+                narrowFrameIds[i] = (char) b.frameIds[i];
+            }
+            this.frameIds = null;
+        } else {
+            this.narrowFrameIds = null;
+            this.frameIds = Arrays.copyOf(b.frameIds, b.frameCount);
+        }
+        this.waitingOn = b.hasWaitingOn ? Arrays.copyOf(b.waitingOn, size) : null;
+        this.lockedMonitors = b.hasLocks ? Arrays.copyOf(b.lockedMonitors, size) : null;
+    }
+
+    /**
+     * Build a table holding the given threads.
+     */
+    public static ThreadTable of(List<ThreadInfo> threads) {
+        Builder b = new Builder(threads.size());
+        threads.forEach(b::add);
+        return b.build();
+    }
+
+    /** Return the number of threads. */
+    public int size() {
+        return size;
+    }
+
+    public long getId(int thread) {
+        return ids[thread];
+    }
+
+    public String getName(int thread) {
+        return names[thread];
+    }
+
+    public Thread.State getState(int thread) {
+        return STATES[states[thread]];
+    }
+
+    /** Return the {@link Thread.State} ordinal of a thread. */
+    public int getStateOrdinal(int thread) {
+        return states[thread];
+    }
+
+    public int getPriority(int thread) {
+        return priorities[thread];
+    }
+
+    public boolean isDaemon(int thread) {
+        return daemons[thread];
+    }
+
+    public long getCpuTimeNanos(int thread) {
+        return cpuTimes[thread];
+    }
+
+    public long getElapsedNanos(int thread) {
+        return elapsedTimes[thread];
+    }
+
+    public String getContainer(int thread) {
+        return containers == null ? null : containers[thread];
+    }
+
+    public LockInfo getWaitingOn(int thread) {
+        return waitingOn == null ? null : waitingOn[thread];
+    }
+
+    public List<LockInfo> getLockedMonitors(int thread) {
+        List<LockInfo> locks = lockedMonitors == null ? null : lockedMonitors[thread];
+        return locks == null ? List.of() : locks;
+    }
+
+    /** Return the number of frames in a thread's stack. */
+    public int getStackDepth(int thread) {
+        return stackStarts[thread + 1] - stackStarts[thread];
+    }
+
+    /**
+     * Return the id of a frame of a thread's stack.
+     *
+     * @param thread thread index
+     * @param depth position in the stack, 0 for the innermost frame
+     * @return index into the frame dictionary
+     */
+    public int getFrameId(int thread, int depth) {
+        return frameIdAt(stackStarts[thread] + depth);
+    }
+
+    /**
+     * Return the total number of frame ids, the sum of all stack depths.
+     */
+    public int getFrameIdCount() {
+        return stackStarts[size];
+    }
+
+    /**
+     * Return a frame id by its position in the concatenation of all
+     * stacks, which lets a pass over every frame of the dump skip the
+     * per-thread bookkeeping.
+     *
+     * @param offset position between 0 and {@link #getFrameIdCount()}
+     */
+    public int getFrameIdAt(int offset) {
+        return frameIdAt(offset);
+    }
+
+    private int frameIdAt(int offset) {
+        return narrowFrameIds != null ? narrowFrameIds[offset] : frameIds[offset];
+    }
+
+    /**
+     * Whether two threads have the same stack, compared by frame id.
+     */
+    public boolean sameStack(int thread, int other) {
+        int start = stackStarts[thread];
+        int end = stackStarts[thread + 1];
+        int otherStart = stackStarts[other];
+        int otherEnd = stackStarts[other + 1];
+        return narrowFrameIds != null
+                ? Arrays.equals(narrowFrameIds, start, end, narrowFrameIds, otherStart, otherEnd)
+                : Arrays.equals(frameIds, start, end, frameIds, otherStart, otherEnd);
+    }
+
+    /**
+     * Return a hash of a thread's frame ids consistent with
+     * {@link #sameStack(int, int)}.
+     */
+    public int stackHash(int thread) {
+        int h = 1;
+        for (int i = stackStarts[thread], end = stackStarts[thread + 1]; i < end; i++) {
+            h = 31 * h + frameIdAt(i);
+        }
+        return h;
+    }
+
+    /** Return the number of distinct frames in the dictionary. */
+    public int getFrameCount() {
+        return frames.length;
+    }
+
+    /** Return a frame of the dictionary by id. */
+    public StackFrame getFrame(int frameId) {
+        return frames[frameId];
+    }
+
+    /**
+     * Return a thread's stack as an unmodifiable view on the frame ids.
+     */
+    public List<StackFrame> getStack(int thread) {
+        int start = stackStarts[thread];
+        int end = stackStarts[thread + 1];
+        if (start == end) {
+            return List.of();
+        }
+        return new AbstractList<>() {
+            @Override
+            public StackFrame get(int index) {
+                if (index < 0 || index >= end - start) {
+                    throw new IndexOutOfBoundsException(index);
+                }
+                return frames[frameIdAt(start + index)];
+            }
+
+            @Override
+            public int size() {
+                return end - start;
+            }
+        };
+    }
+
+    /**
+     * Create a {@link ThreadInfo} for one row. Its stack is a view on this
+     * table, so the frames are not copied.
+     */
+    public ThreadInfo getThread(int thread) {
+        return new ThreadInfo(ids[thread], names[thread], getState(thread), getStack(thread), null,
+                getLockedMonitors(thread), getWaitingOn(thread), priorities[thread], daemons[thread],
+                getContainer(thread), cpuTimes[thread], elapsedTimes[thread]);
+    }
+
+    /**
+     * Appends threads row by row. Frames are deduplicated by equality as
+     * they are added.
+     */
+    public static final class Builder {
+        private int size;
+        private long[] ids;
+        private String[] names;
+        private byte[] states;
+        private byte[] priorities;
+        private boolean[] daemons;
+        private long[] cpuTimes;
+        private long[] elapsedTimes;
+        private String[] containers;
+        private boolean hasContainers;
+        private int[] stackStarts;
+        private int[] frameIds = new int[64];
+        private int frameCount;
+        private final List<StackFrame> frames = new ArrayList<>();
+        private final Map<StackFrame, Integer> frameIndex = new HashMap<>();
+        private LockInfo[] waitingOn;
+        private boolean hasWaitingOn;
+        private List<LockInfo>[] lockedMonitors;
+        private boolean hasLocks;
+
+        public Builder() {
+            this(16);
+        }
+
+        /**
+         * @param expectedThreads initial capacity
+         */
+        @SuppressWarnings("unchecked")
+        public Builder(int expectedThreads) {
+            int capacity = Math.max(1, expectedThreads);
+            ids = new long[capacity];
+            names = new String[capacity];
+            states = new byte[capacity];
+            priorities = new byte[capacity];
+            daemons = new boolean[capacity];
+            cpuTimes = new long[capacity];
+            elapsedTimes = new long[capacity];
+            containers = new String[capacity];
+            stackStarts = new int[capacity + 1];
+            waitingOn = new LockInfo[capacity];
+            lockedMonitors = (List<LockInfo>[]) new List<?>[capacity];
+        }
+
+        /** Return the number of threads added so far. */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Append a thread. Its stack is read once and not retained.
+         */
+        public Builder add(ThreadInfo thread) {
+            if (size == ids.length) {
+                grow();
+            }
+            int i = size;
+            ids[i] = thread.getId();
+            names[i] = thread.getName();
+            states[i] = (byte) thread.getState().ordinal();
+            // priorities are 1 to 10, or -1 when unknown
+            priorities[i] = (byte) thread.getPriority();
+            daemons[i] = thread.isDaemon();
+            cpuTimes[i] = thread.getCpuTimeNanos();
+            elapsedTimes[i] = thread.getElapsedNanos();
+            containers[i] = thread.getContainer();
+            hasContainers |= containers[i] != null;
+            waitingOn[i] = thread.getWaitingOn();
+            hasWaitingOn |= waitingOn[i] != null;
+            List<LockInfo> locks = thread.getLockedMonitors();
+            if (!locks.isEmpty()) {
+                lockedMonitors[i] = locks;
+                hasLocks = true;
+            }
+            List<StackFrame> stack = thread.getStack();
+            if (frameCount + stack.size() > frameIds.length) {
+                frameIds = Arrays.copyOf(frameIds, Math.max(frameIds.length * 2, frameCount + stack.size()));
+            }
+            for (StackFrame frame : stack) {
+                Integer id = frameIndex.get(frame);
+                if (id == null) {
+                    id = frames.size();
+                    frames.add(frame);
+                    frameIndex.put(frame, id);
+                }
+                frameIds[frameCount++] = id;
+            }
+            stackStarts[i + 1] = frameCount;
+            size++;
+            return this;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void grow() {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            names = Arrays.copyOf(names, capacity);
+            states = Arrays.copyOf(states, capacity);
+            priorities = Arrays.copyOf(priorities, capacity);
+            daemons = Arrays.copyOf(daemons, capacity);
+            cpuTimes = Arrays.copyOf(cpuTimes, capacity);
+            elapsedTimes = Arrays.copyOf(elapsedTimes, capacity);
+            containers = Arrays.copyOf(containers, capacity);
+            stackStarts = Arrays.copyOf(stackStarts, capacity + 1);
+            waitingOn = Arrays.copyOf(waitingOn, capacity);
+            lockedMonitors = Arrays.copyOf(lockedMonitors, capacity);
+        }
+
+        public ThreadTable build() {
+            return new ThreadTable(this);
+        }
+    }
+}
@@ -4,15 +4,14 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import com.example.model.ThreadDump;
 import com.example.model.ThreadInfo;
 import com.example.model.StackFrame;
+import com.example.model.SymbolInterner;
 
 /**
  * Minimal parser for Android ART thread dumps produced via kill -3 or debugger.
@@ -25,9 +24,9 @@ public class AndroidArtParser implements ThreadDumpParser {
             Pattern.compile("^\\s*at\\s+([\\w.$]+)\\.([\\w$<>]+)\\(([^:]+)(?::(\\d+))?\\)");
 
     @Override
-    public ThreadDump parse(InputStream in) throws IOException {
+    public void parse(InputStream in, ThreadDumpHandler handler) throws IOException {
         BufferedReader reader = new BufferedReader(new InputStreamReader(in));
-        List<ThreadInfo> threads = new ArrayList<>();
+        handler.onDumpStart(new DumpHeader(null, null, -1));
         String line;
         String name = null;
         long id = -1;
@@ -37,10 +36,10 @@ public class AndroidArtParser implements ThreadDumpParser {
             Matcher m = THREAD_HEADER.matcher(line);
             if (m.find()) {
                 if (name != null) {
-                    threads.add(new ThreadInfo(id, name, state, stack, new ArrayList<>(), null, -1, false));
+                    handler.onThread(new ThreadInfo(id, name, state, stack, new ArrayList<>(), null, -1, false));
                     stack = new ArrayList<>();
                 }
-                name = m.group(1);
+                name = SymbolInterner.intern(m.group(1));
                 try {
                     id = Long.parseLong(m.group(2));
                 } catch (NumberFormatException e) {
@@ -76,12 +75,12 @@ public class AndroidArtParser implements ThreadDumpParser {
                         ln = -1;
                     }
                 }
-                stack.add(new StackFrame(cls, method, file, ln));
+                stack.add(new StackFrame(SymbolInterner.intern(cls), SymbolInterner.intern(method), SymbolInterner.intern(file), ln));
             }
         }
         if (name != null) {
-            threads.add(new ThreadInfo(id, name, state, stack, new ArrayList<>(), null, -1, false));
+            handler.onThread(new ThreadInfo(id, name, state, stack, new ArrayList<>(), null, -1, false));
         }
-        return new ThreadDump(Instant.now(), threads, null, null, -1);
+        handler.onDumpEnd();
     }
 }
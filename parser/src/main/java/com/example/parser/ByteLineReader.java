@@ -0,0 +1,119 @@
+package com.example.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads lines from a stream as ranges of raw bytes, without decoding them
+ * to characters. The bytes of the current line are available through
+ * {@link #buffer()}, {@link #start()} and {@link #end()} until the next
+ * call to {@link #nextLine()}. Lines are terminated by {@code \n}; a
+ * trailing {@code \r} is not part of the line. Line breaks are located
+ * with the {@link ByteScanner} selected for this JVM.
+ */
+final class ByteLineReader {
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream in;
+    private final ByteScanner scanner = ByteScanner.get();
+    private byte[] buf;
+    private int pos;
+    private int limit;
+    private int scan;
+    private int lineStart;
+    private int lineEnd;
+    private long discarded;
+    private boolean eof;
+
+    ByteLineReader(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    ByteLineReader(InputStream in, int bufferSize) {
+        this.in = in;
+        this.buf = new byte[bufferSize];
+    }
+
+    /**
+     * Advance to the next line.
+     *
+     * @return false once the end of the stream has been reached
+     * @throws IOException if the stream cannot be read
+     */
+    boolean nextLine() throws IOException {
+        while (true) {
+            int nl = scanner.indexOf(buf, (byte) '\n', scan, limit);
+            if (nl >= 0) {
+                setLine(pos, nl);
+                pos = nl + 1;
+                scan = pos;
+                return true;
+            }
+            scan = limit;
+            if (eof) {
+                if (pos < limit) {
+                    setLine(pos, limit);
+                    pos = limit;
+                    return true;
+                }
+                return false;
+            }
+            fill();
+        }
+    }
+
+    byte[] buffer() {
+        return buf;
+    }
+
+    int start() {
+        return lineStart;
+    }
+
+    int end() {
+        return lineEnd;
+    }
+
+    /**
+     * Offset in the stream of the first byte of the current line.
+     */
+    long lineOffset() {
+        return discarded + lineStart;
+    }
+
+    /**
+     * Offset in the stream just past the current line and its terminator.
+     */
+    long position() {
+        return discarded + pos;
+    }
+
+    private void setLine(int from, int to) {
+        if (to > from && buf[to - 1] == '\r') {
+            to--;
+        }
+        lineStart = from;
+        lineEnd = to;
+    }
+
+    private void fill() throws IOException {
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            discarded += pos;
+            limit -= pos;
+            scan -= pos;
+            pos = 0;
+        }
+        if (limit == buf.length) {
+            byte[] larger = new byte[buf.length * 2];
+            System.arraycopy(buf, 0, larger, 0, limit);
+            buf = larger;
+        }
+        int n = in.read(buf, limit, buf.length - limit);
+        if (n < 0) {
+            eof = true;
+        } else {
+            limit += n;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.parser;
+
+/**
+ * Searches raw byte buffers for single delimiter bytes such as {@code \n}
+ * or {@code "}. This is the innermost loop of the byte based parsers, so
+ * two backends exist: a plain scalar loop, and one built on the
+ * {@code jdk.incubator.vector} API that compares a full SIMD register of
+ * bytes per step. The vector backend is only compiled with the Maven
+ * profile {@code vector}, and used when the incubator module has been
+ * added to the runtime with {@code --add-modules jdk.incubator.vector};
+ * otherwise, or when the system property {@value #BACKEND_PROPERTY} is
+ * set to {@code scalar}, the scalar loop is used.
+ */
+abstract class ByteScanner {
+    /** System property that forces the scalar backend when set to {@code scalar}. */
+    static final String BACKEND_PROPERTY = "threaddump.scanner";
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final ByteScanner SCALAR = new Scalar();
+    private static final ByteScanner DEFAULT = select(System.getProperty(BACKEND_PROPERTY));
+
+    /**
+     * Get the backend selected for this JVM.
+     */
+    static ByteScanner get() {
+        return DEFAULT;
+    }
+
+    /**
+     * Get the scalar backend, which is always available.
+     */
+    static ByteScanner scalar() {
+        return SCALAR;
+    }
+
+    /**
+     * Get the vector backend, or {@code null} if it was not compiled or
+     * the incubator module is not available in this JVM.
+     */
+    static ByteScanner vector() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            return null;
+        }
+        try {
+            return (ByteScanner) Class.forName("com.example.parser.VectorByteScanner")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    private static ByteScanner select(String backend) {
+        if ("scalar".equals(backend)) {
+            return SCALAR;
+        }
+        ByteScanner vector = vector();
+        return vector != null ? vector : SCALAR;
+    }
+
+    /**
+     * Find the first occurrence of a byte.
+     *
+     * @param buf buffer to search
+     * @param b byte to look for
+     * @param from first offset to examine
+     * @param to offset just past the last byte to examine
+     * @return offset of the first match, or -1 if there is none
+     */
+    abstract int indexOf(byte[] buf, byte b, int from, int to);
+
+    /**
+     * Name of the backend, for diagnostics.
+     */
+    abstract String name();
+
+    private static final class Scalar extends ByteScanner {
+        @Override
+        int indexOf(byte[] buf, byte b, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (buf[i] == b) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        String name() {
+            return "scalar";
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.parser;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.GZIPInputStream;
+
+import com.github.luben.zstd.ZstdInputStream;
+import org.tukaani.xz.XZInputStream;
+
+/**
+ * Compression formats recognised by their leading magic bytes. Dumps
+ * rotated by log archivers commonly arrive as gzip, zstd or xz files;
+ * {@link #open(InputStream)} decodes them on a background thread through
+ * a {@link PipelinedInputStream}, so decompression and parsing overlap.
+ * Setting the system property {@value #PIPELINE_PROPERTY} to
+ * {@code false} decodes on the calling thread instead.
+ */
+public enum Compression {
+    /** Not compressed. */
+    NONE,
+    /** gzip, magic {@code 1f 8b}. */
+    GZIP,
+    /** Zstandard, magic {@code 28 b5 2f fd}. */
+    ZSTD,
+    /** xz, magic {@code fd 37 7a 58 5a 00}. */
+    XZ;
+
+    /** System property that disables the background decoding thread when set to {@code false}. */
+    public static final String PIPELINE_PROPERTY = "threaddump.decompress.pipeline";
+
+    private static final int MAGIC_LENGTH = 6;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Detect the format from the first bytes of some data.
+     */
+    public static Compression detect(byte[] head, int length) {
+        if (length >= 2 && (head[0] & 0xff) == 0x1f && (head[1] & 0xff) == 0x8b) {
+            return GZIP;
+        }
+        if (length >= 4 && (head[0] & 0xff) == 0x28 && (head[1] & 0xff) == 0xb5
+                && (head[2] & 0xff) == 0x2f && (head[3] & 0xff) == 0xfd) {
+            return ZSTD;
+        }
+        if (length >= 6 && (head[0] & 0xff) == 0xfd && head[1] == '7' && head[2] == 'z'
+                && head[3] == 'X' && head[4] == 'Z' && head[5] == 0) {
+            return XZ;
+        }
+        return NONE;
+    }
+
+    /**
+     * Detect the format of a buffer. The buffer's position is not modified.
+     */
+    public static Compression detect(ByteBuffer buffer) {
+        byte[] head = new byte[Math.min(MAGIC_LENGTH, buffer.remaining())];
+        buffer.duplicate().get(head);
+        return detect(head, head.length);
+    }
+
+    /**
+     * Detect the format of a stream. The stream must support mark/reset;
+     * its position is not changed.
+     */
+    public static Compression detect(InputStream in) throws IOException {
+        in.mark(MAGIC_LENGTH);
+        byte[] head = in.readNBytes(MAGIC_LENGTH);
+        in.reset();
+        return detect(head, head.length);
+    }
+
+    /**
+     * Wrap a stream in a decoder for this format that runs on the calling
+     * thread. {@link #NONE} returns the stream unchanged.
+     */
+    public InputStream decode(InputStream in) throws IOException {
+        switch (this) {
+            case GZIP:
+                return new GZIPInputStream(in, BUFFER_SIZE);
+            case ZSTD:
+                return new ZstdInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+            case XZ:
+                return new XZInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+            default:
+                return in;
+        }
+    }
+
+    /**
+     * Open the decoded contents of a stream in this format. Unless
+     * pipelining is disabled, the decoder runs on its own thread. The
+     * result supports mark/reset, so it can be handed to
+     * {@link ParserFactory#detect(InputStream)}. {@link #NONE} returns the
+     * stream unchanged.
+     */
+    public InputStream open(InputStream in) throws IOException {
+        if (this == NONE) {
+            return in;
+        }
+        InputStream decoded = decode(in);
+        if (!"false".equals(System.getProperty(PIPELINE_PROPERTY))) {
+            decoded = new PipelinedInputStream(decoded);
+        }
+        return new BufferedInputStream(decoded, BUFFER_SIZE);
+    }
+}
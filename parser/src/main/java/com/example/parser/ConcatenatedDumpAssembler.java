@@ -0,0 +1,235 @@
+package com.example.parser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.example.model.ThreadDump;
+
+/**
+ * Finds HotSpot thread dumps in a log that mixes any number of them with
+ * other output, as produced by sending {@code kill -3} to a process that
+ * writes to stdout. Lines are pushed one at a time; each dump is reported
+ * as soon as it is complete, so only the dump currently being assembled
+ * is held in memory.
+ *
+ * <p>A dump starts at a line beginning with {@code Full thread dump} and
+ * ends at the {@code JNI global refs} line HotSpot prints after the last
+ * thread, at the start of the next dump, or at {@link #finish()}. Lines
+ * that cannot belong to a dump, such as application output written while
+ * the dump was printed, are skipped. Indented lines following such a line
+ * are held back until the dump is seen to go on, at a blank line, a thread
+ * header, a section or the trailer; a dump cut short without the trailer
+ * is thus not extended by the log output that follows, such as the
+ * {@code at} lines of an exception. The timestamp line printed right
+ * before the header, if present, becomes the dump's timestamp.</p>
+ */
+final class ConcatenatedDumpAssembler {
+    private static final byte[] FULL_DUMP = "Full thread dump".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FULL_JAVA_DUMP = "Full Java thread dump".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] JNI_REFS = "JNI global ref".getBytes(StandardCharsets.US_ASCII);
+    // lines HotSpot prints between the threads that are not thread lines
+    private static final byte[][] DUMP_SECTIONS = {
+            ascii("Threads class SMR info:"), ascii("_java_thread_list="), ascii("0x"), ascii("}"),
+            ascii("Found one Java-level deadlock"), ascii("Java stack information for the threads"),
+            ascii("="), ascii("Found ")};
+
+    private final Consumer<ThreadDump> sink;
+    private final ParseOptions options;
+    private final ByteBuffer source;
+    private ThreadDumpCollector collector;
+    private HotSpotThreadAssembler assembler;
+    private Instant previousLineTime;
+    // indented lines seen since the last line that could not belong to the dump
+    private final List<byte[]> held = new ArrayList<>();
+    private int[] heldOffsets = new int[8];
+    private boolean interrupted;
+
+    ConcatenatedDumpAssembler(Consumer<ThreadDump> sink) {
+        this(sink, ParseOptions.all());
+    }
+
+    /**
+     * @param options parts of each dump to keep
+     */
+    ConcatenatedDumpAssembler(Consumer<ThreadDump> sink, ParseOptions options) {
+        this(sink, options, null);
+    }
+
+    /**
+     * @param options parts of each dump to keep
+     * @param source buffer the lines are read from, whose threads then get
+     *               a {@link LazyStack}, or null to build every stack
+     *               immediately
+     */
+    ConcatenatedDumpAssembler(Consumer<ThreadDump> sink, ParseOptions options, ByteBuffer source) {
+        this.sink = sink;
+        this.options = options;
+        this.source = source;
+    }
+
+    /**
+     * Process the next line of the log.
+     *
+     * @param buf buffer holding the line
+     * @param from offset of the first byte of the line
+     * @param to offset just past the last byte, excluding the terminator
+     */
+    void accept(byte[] buf, int from, int to) {
+        accept(buf, from, to, -1);
+    }
+
+    /**
+     * Process the next line of the log, which starts at {@code offset} in
+     * the source buffer given at construction.
+     */
+    void accept(byte[] buf, int from, int to, int offset) {
+        if (startsDump(buf, from, to)) {
+            finish();
+            DumpHeader parsed = HotSpotParser.parseHeader(
+                    new String(buf, from, to - from, StandardCharsets.UTF_8));
+            Instant timestamp = previousLineTime != null ? previousLineTime : parsed.getTimestamp();
+            collector = new ThreadDumpCollector();
+            collector.onDumpStart(new DumpHeader(timestamp, parsed.getJvmVersion(), parsed.getUptimeMillis()));
+            assembler = new HotSpotThreadAssembler(collector, FrameCache.shared(), source, options);
+            previousLineTime = null;
+            return;
+        }
+        if (assembler != null) {
+            if (startsWith(buf, from, to, JNI_REFS)) {
+                resume();
+                finish();
+                return;
+            }
+            if (isDumpLine(buf, from, to)) {
+                if (interrupted && (buf[from] == ' ' || buf[from] == '\t')) {
+                    if (held.size() == heldOffsets.length) {
+                        heldOffsets = Arrays.copyOf(heldOffsets, held.size() * 2);
+                    }
+                    heldOffsets[held.size()] = offset;
+                    held.add(Arrays.copyOfRange(buf, from, to));
+                    return;
+                }
+                resume();
+                assembler.accept(buf, from, to, offset);
+                return;
+            }
+            // output of the process written in between, or after a dump cut short
+            interrupted = true;
+        }
+        previousLineTime = HotSpotParser.parseTimestamp(buf, from, to);
+    }
+
+    /**
+     * Pass the lines held back since the dump was interrupted on to the
+     * dump, now that it is known to go on.
+     */
+    private void resume() {
+        for (int i = 0; i < held.size(); i++) {
+            byte[] line = held.get(i);
+            assembler.accept(line, 0, line.length, heldOffsets[i]);
+        }
+        held.clear();
+        interrupted = false;
+    }
+
+    /**
+     * Whether a line is the header line that starts a dump.
+     */
+    static boolean startsDump(byte[] buf, int from, int to) {
+        return startsWith(buf, from, to, FULL_DUMP) || startsWith(buf, from, to, FULL_JAVA_DUMP);
+    }
+
+    /**
+     * Whether a line can be part of a dump: a blank line, a thread header,
+     * an indented state, frame or lock line, or one of the sections HotSpot
+     * prints before and after the threads.
+     */
+    private static boolean isDumpLine(byte[] buf, int from, int to) {
+        if (from == to || buf[from] == '"' || buf[from] == ' ' || buf[from] == '\t' || buf[from] == '\r') {
+            return true;
+        }
+        for (byte[] section : DUMP_SECTIONS) {
+            if (startsWith(buf, from, to, section)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Count the lines of a buffer that start a dump, stopping at a limit.
+     *
+     * @param buf log contents between position and limit, left unchanged
+     * @param max count at which to stop scanning
+     */
+    static int countDumps(ByteBuffer buf, int max) {
+        int count = 0;
+        boolean lineStart = true;
+        for (int i = buf.position(), end = buf.limit(); i < end && count < max; i++) {
+            if (lineStart && (startsWith(buf, i, FULL_DUMP) || startsWith(buf, i, FULL_JAVA_DUMP))) {
+                count++;
+            }
+            lineStart = buf.get(i) == '\n';
+        }
+        return count;
+    }
+
+    /**
+     * Report the dump currently being assembled, if any. Lines held back
+     * after an interruption are dropped, as nothing showed that the dump
+     * went on.
+     */
+    void finish() {
+        held.clear();
+        interrupted = false;
+        if (assembler == null) {
+            return;
+        }
+        assembler.finish();
+        collector.onDumpEnd();
+        ThreadDump dump = collector.getDump();
+        assembler = null;
+        collector = null;
+        sink.accept(dump);
+    }
+
+    /**
+     * Whether a dump has been started and not yet reported.
+     */
+    boolean inDump() {
+        return assembler != null;
+    }
+
+    private static boolean startsWith(ByteBuffer buf, int at, byte[] prefix) {
+        if (buf.limit() - at < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buf.get(at + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static boolean startsWith(byte[] buf, int from, int to, byte[] prefix) {
+        if (to - from < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buf[from + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.parser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.example.model.ThreadDump;
+
+/**
+ * Follows a growing log file, in the manner of {@code tail -f}, and
+ * reports each HotSpot thread dump once it has been completely appended.
+ * A dump counts as complete when its {@code JNI global refs} trailer or
+ * the header of the next dump has been written.
+ *
+ * <p>The follower remembers the offset up to which it has read and only
+ * ever reads bytes past it; a trailing partial line is kept in memory
+ * until the rest of it arrives. If the file shrinks or is replaced, as
+ * happens on log rotation, it is read again from the start.</p>
+ *
+ * <pre>
+ * try (DumpFollower follower = new DumpFollower(Path.of("catalina.out"))) {
+ *     follower.follow(Duration.ofSeconds(1), session::addThreadDump);
+ * }
+ * </pre>
+ */
+public class DumpFollower implements Closeable {
+    private static final int READ_SIZE = 64 * 1024;
+    /** A dump still open after the file has been idle this long is reported anyway. */
+    private static final long IDLE_FLUSH_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private final Path path;
+    private final ByteScanner scanner = ByteScanner.get();
+    private final List<ThreadDump> ready = new ArrayList<>();
+    private ConcatenatedDumpAssembler assembler = new ConcatenatedDumpAssembler(ready::add);
+    private Object fileKey;
+    private long offset;
+    private byte[] buf = new byte[READ_SIZE];
+    private int len;
+    private volatile boolean closed;
+    private volatile WatchService watcher;
+
+    /**
+     * Follow a file from its beginning. The file does not need to exist
+     * yet.
+     *
+     * @param path log file to follow
+     */
+    public DumpFollower(Path path) {
+        this.path = Objects.requireNonNull(path, "path");
+    }
+
+    /**
+     * Skip everything currently in the file, so that only dumps appended
+     * from now on are reported.
+     */
+    public void seekToEnd() throws IOException {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            fileKey = attrs.fileKey();
+            offset = attrs.size();
+        } catch (NoSuchFileException e) {
+            offset = 0;
+        }
+        len = 0;
+        ready.clear();
+        assembler = new ConcatenatedDumpAssembler(ready::add);
+    }
+
+    /**
+     * Byte offset up to which the file has been read.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Read whatever has been appended since the last call.
+     *
+     * @return dumps completed by the new data, in file order
+     */
+    public List<ThreadDump> poll() throws IOException {
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return List.of();
+        }
+        Object key = attrs.fileKey();
+        if (attrs.size() < offset || (fileKey != null && key != null && !fileKey.equals(key))) {
+            // truncated or rotated: start over on the new contents
+            offset = 0;
+            len = 0;
+            assembler = new ConcatenatedDumpAssembler(ready::add);
+        }
+        fileKey = key;
+        if (attrs.size() > offset) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                while (true) {
+                    if (len == buf.length) {
+                        buf = Arrays.copyOf(buf, buf.length * 2);
+                    }
+                    int n = channel.read(ByteBuffer.wrap(buf, len, Math.min(buf.length - len, READ_SIZE)), offset);
+                    if (n <= 0) {
+                        break;
+                    }
+                    offset += n;
+                    len += n;
+                    consumeLines();
+                }
+            }
+        }
+        return drain();
+    }
+
+    /**
+     * Report the dump currently being assembled, even if its trailer has
+     * not been seen yet.
+     *
+     * @return the flushed dump, if one was open
+     */
+    public List<ThreadDump> flush() {
+        assembler.finish();
+        return drain();
+    }
+
+    /**
+     * Poll the file until this follower is closed or the calling thread is
+     * interrupted, passing every completed dump to the sink. File system
+     * change notifications are used to wake up early where available; the
+     * interval bounds how long a change can go unnoticed otherwise.
+     *
+     * @param interval maximum time between two polls
+     * @param sink receiver of completed dumps
+     */
+    public void follow(Duration interval, Consumer<ThreadDump> sink) throws IOException, InterruptedException {
+        WatchService ws = openWatcher();
+        long lastGrowth = System.nanoTime();
+        try {
+            while (!closed) {
+                long before = offset;
+                poll().forEach(sink);
+                if (offset != before) {
+                    lastGrowth = System.nanoTime();
+                } else if (assembler.inDump() && System.nanoTime() - lastGrowth >= IDLE_FLUSH_NANOS) {
+                    flush().forEach(sink);
+                }
+                await(ws, interval);
+            }
+        } catch (ClosedWatchServiceException e) {
+            // closed from another thread
+        } finally {
+            if (ws != null) {
+                ws.close();
+            }
+        }
+    }
+
+    private WatchService openWatcher() {
+        Path dir = path.toAbsolutePath().getParent();
+        if (dir == null) {
+            return null;
+        }
+        WatchService ws = null;
+        try {
+            ws = dir.getFileSystem().newWatchService();
+            dir.register(ws, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+            watcher = ws;
+            return ws;
+        } catch (IOException | UnsupportedOperationException e) {
+            if (ws != null) {
+                try {
+                    ws.close();
+                } catch (IOException ignored) {
+                    // falling back to plain polling
+                }
+            }
+            return null;
+        }
+    }
+
+    private static void await(WatchService ws, Duration interval) throws InterruptedException {
+        if (ws == null) {
+            Thread.sleep(interval.toMillis());
+            return;
+        }
+        WatchKey key = ws.poll(interval.toMillis(), TimeUnit.MILLISECONDS);
+        if (key != null) {
+            // events for other files in the directory only cause a cheap extra poll
+            key.pollEvents();
+            key.reset();
+        }
+    }
+
+    private void consumeLines() {
+        int start = 0;
+        int nl;
+        while ((nl = scanner.indexOf(buf, (byte) '\n', start, len)) >= 0) {
+            int end = nl;
+            if (end > start && buf[end - 1] == '\r') {
+                end--;
+            }
+            assembler.accept(buf, start, end);
+            start = nl + 1;
+        }
+        if (start > 0) {
+            System.arraycopy(buf, start, buf, 0, len - start);
+            len -= start;
+        }
+    }
+
+    private List<ThreadDump> drain() {
+        if (ready.isEmpty()) {
+            return List.of();
+        }
+        List<ThreadDump> dumps = new ArrayList<>(ready);
+        ready.clear();
+        return dumps;
+    }
+
+    /**
+     * Stop a running {@link #follow} call.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        WatchService ws = watcher;
+        if (ws != null) {
+            ws.close();
+        }
+    }
+}
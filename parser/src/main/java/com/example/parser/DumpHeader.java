@@ -0,0 +1,37 @@
+package com.example.parser;
+
+import java.time.Instant;
+
+/**
+ * Metadata describing a thread dump as a whole, reported to a
+ * {@link ThreadDumpHandler} before the dump's threads.
+ */
+public class DumpHeader {
+    private final Instant timestamp;
+    private final String jvmVersion;
+    private final long uptimeMillis;
+
+    /**
+     * @param timestamp time recorded in the dump, or null if it records none
+     */
+    public DumpHeader(Instant timestamp, String jvmVersion, long uptimeMillis) {
+        this.timestamp = timestamp;
+        this.jvmVersion = jvmVersion;
+        this.uptimeMillis = uptimeMillis;
+    }
+
+    /**
+     * @return the time recorded in the dump, or null if it records none
+     */
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    public String getJvmVersion() {
+        return jvmVersion;
+    }
+
+    public long getUptimeMillis() {
+        return uptimeMillis;
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.parser;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.example.model.StackFrame;
+
+/**
+ * Bounded cache from the raw text of a stack frame line, such as
+ * {@code at org.apache.tomcat.util.net.NioEndpoint$Poller.run(NioEndpoint.java:709)},
+ * to the {@link StackFrame} parsed from it. The same frame usually occurs
+ * in many threads of a dump and in every dump of a series, so a hit skips
+ * tokenizing the line and returns a shared instance.
+ *
+ * <p>The cache is direct-mapped: each line hashes to exactly one slot and
+ * a newer line simply replaces the older one, so the memory used is fixed
+ * by the capacity. Slots hold immutable entries, which makes the cache
+ * safe to share between concurrently running parsers without locking.</p>
+ */
+public final class FrameCache {
+    /** System property that sets the capacity of {@link #shared()}. */
+    public static final String CAPACITY_PROPERTY = "threaddump.frameCache.size";
+    /** Capacity of {@link #shared()} unless overridden. */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private static final FrameCache SHARED =
+            new FrameCache(Integer.getInteger(CAPACITY_PROPERTY, DEFAULT_CAPACITY));
+
+    private final Entry[] entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param capacity number of slots, rounded up to a power of two; 0
+     *                 disables caching
+     */
+    public FrameCache(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity must not be negative");
+        }
+        entries = new Entry[capacity == 0 ? 0 : Integer.highestOneBit(Math.max(1, capacity - 1)) << 1];
+    }
+
+    /**
+     * Get the cache used by the HotSpot style parsers.
+     */
+    public static FrameCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Look up the frame for a line.
+     *
+     * @param buf buffer holding the line
+     * @param from offset of the first byte of the frame text
+     * @param to offset just past the last byte
+     * @return the cached frame, or {@code null} if the line is not cached
+     */
+    StackFrame get(byte[] buf, int from, int to) {
+        if (entries.length == 0) {
+            return null;
+        }
+        int hash = hash(buf, from, to);
+        Entry e = entries[hash & (entries.length - 1)];
+        if (e != null && e.hash == hash && Arrays.equals(e.key, 0, e.key.length, buf, from, to)) {
+            hits.increment();
+            return e.frame;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Remember the frame parsed from a line, replacing whatever occupied
+     * its slot.
+     */
+    void put(byte[] buf, int from, int to, StackFrame frame) {
+        if (entries.length == 0) {
+            return;
+        }
+        int hash = hash(buf, from, to);
+        entries[hash & (entries.length - 1)] = new Entry(Arrays.copyOfRange(buf, from, to), hash, frame);
+    }
+
+    public int getCapacity() {
+        return entries.length;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Fraction of lookups that were hits, or 0 before the first lookup.
+     */
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * Drop all entries and reset the statistics.
+     */
+    public void clear() {
+        Arrays.fill(entries, null);
+        hits.reset();
+        misses.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("FrameCache[capacity=%d, hits=%d, misses=%d, hitRate=%.1f%%]",
+                getCapacity(), getHits(), getMisses(), getHitRate() * 100);
+    }
+
+    private static int hash(byte[] buf, int from, int to) {
+        int h = 1;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + buf[i];
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static final class Entry {
+        final byte[] key;
+        final int hash;
+        final StackFrame frame;
+
+        Entry(byte[] key, int hash, StackFrame frame) {
+            this.key = key;
+            this.hash = hash;
+            this.frame = frame;
+        }
+    }
+}
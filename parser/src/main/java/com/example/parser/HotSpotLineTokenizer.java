@@ -0,0 +1,498 @@
+package com.example.parser;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Hand-written tokenizer for the thread section of HotSpot style dumps.
+ * A line is classified once from its first non-blank bytes and the
+ * interesting fields are then extracted by index scanning over the raw
+ * bytes. The line itself is never decoded; only the extracted names are
+ * turned into Strings through a {@link SymbolTable}, so a class or file
+ * name that occurs thousands of times is decoded once.
+ *
+ * <p>The accepted syntax mirrors the regular expressions previously used
+ * by {@link HotSpotParser}:</p>
+ * <pre>
+ * "name" ... prio=5 ... nid=0x1a ...          thread header
+ *   (optionally with cpu=12.34ms elapsed=56.78s, JDK 11 and later)
+ *    java.lang.Thread.State: RUNNABLE          state line
+ *    at pkg.Class.method(File.java:12)         stack frame
+ *    - waiting to lock &lt;0x1&gt; (a pkg.Lock)      monitor being acquired
+ *    - parking to wait for  &lt;0x1&gt; (a pkg.Lock) parked on a synchronizer
+ *    - locked &lt;0x1&gt; (a pkg.Lock)              monitor held
+ * </pre>
+ * The tokenizer is reusable: the fields of the most recently classified
+ * line are exposed through the getters until the next call to
+ * {@link #classify(byte[], int, int)}.
+ */
+final class HotSpotLineTokenizer {
+
+    enum LineType {
+        THREAD_HEADER,
+        STATE,
+        FRAME,
+        WAITING_TO_LOCK,
+        PARKING,
+        LOCKED,
+        OTHER
+    }
+
+    private static final byte[] STATE_PREFIX = ascii("java.lang.Thread");
+    private static final byte[] STATE_SUFFIX = ascii("State: ");
+    private static final byte[] FRAME_PREFIX = ascii("at ");
+    private static final byte[] WAITING_TO_LOCK = ascii("waiting to lock <");
+    private static final byte[] PARKING = ascii("parking to wait for");
+    private static final byte[] LOCKED = ascii("locked <");
+    private static final byte[] NID = ascii("nid=0x");
+    private static final byte[] PRIO = ascii("prio=");
+    private static final byte[] DAEMON = ascii(" daemon ");
+    private static final byte[] CPU = ascii(" cpu=");
+    private static final byte[] ELAPSED = ascii(" elapsed=");
+
+    private final SymbolTable symbols;
+
+    private String threadName;
+    private long nativeId;
+    private int priority;
+    private boolean daemon;
+    private long cpuTimeNanos;
+    private long elapsedNanos;
+    private String stateName;
+    private String className;
+    private String methodName;
+    private String fileName;
+    private int lineNumber;
+    private String lockIdentity;
+    private String lockClassName;
+
+    HotSpotLineTokenizer() {
+        this(new SymbolTable());
+    }
+
+    HotSpotLineTokenizer(SymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
+    /**
+     * Classify a line and extract its fields.
+     *
+     * @param buf buffer holding the line
+     * @param from offset of the first byte of the line
+     * @param to offset just past the last byte, excluding the terminator
+     * @return type of the line, {@link LineType#OTHER} if it is not recognized
+     */
+    LineType classify(byte[] buf, int from, int to) {
+        if (from < to && buf[from] == '"') {
+            return parseHeader(buf, from, to) ? LineType.THREAD_HEADER : LineType.OTHER;
+        }
+        int start = from;
+        while (start < to && isSpace(buf[start])) {
+            start++;
+        }
+        if (start == to) {
+            return LineType.OTHER;
+        }
+        byte c = buf[start];
+        if (c == 'j') {
+            return parseState(buf, start, to) ? LineType.STATE : LineType.OTHER;
+        }
+        if (c == 'a') {
+            return parseFrame(buf, start, to) ? LineType.FRAME : LineType.OTHER;
+        }
+        if (c == '-') {
+            return parseLockLine(buf, start, to);
+        }
+        return LineType.OTHER;
+    }
+
+    /**
+     * Find where the text of a stack frame line starts, without parsing it.
+     *
+     * @return offset of the {@code at } prefix after leading whitespace, or
+     *         -1 if the line cannot be a frame
+     */
+    static int frameStart(byte[] buf, int from, int to) {
+        int start = from;
+        while (start < to && isSpace(buf[start])) {
+            start++;
+        }
+        return startsWith(buf, start, to, FRAME_PREFIX) ? start : -1;
+    }
+
+    String getThreadName() {
+        return threadName;
+    }
+
+    long getNativeId() {
+        return nativeId;
+    }
+
+    int getPriority() {
+        return priority;
+    }
+
+    boolean isDaemon() {
+        return daemon;
+    }
+
+    /**
+     * @return the header's {@code cpu=} value in nanoseconds, or -1
+     */
+    long getCpuTimeNanos() {
+        return cpuTimeNanos;
+    }
+
+    /**
+     * @return the header's {@code elapsed=} value in nanoseconds, or -1
+     */
+    long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    String getStateName() {
+        return stateName;
+    }
+
+    String getClassName() {
+        return className;
+    }
+
+    String getMethodName() {
+        return methodName;
+    }
+
+    String getFileName() {
+        return fileName;
+    }
+
+    int getLineNumber() {
+        return lineNumber;
+    }
+
+    String getLockIdentity() {
+        return lockIdentity;
+    }
+
+    String getLockClassName() {
+        return lockClassName;
+    }
+
+    private boolean parseHeader(byte[] buf, int from, int to) {
+        int close = indexOf(buf, (byte) '"', from + 1, to);
+        if (close <= from + 1) {
+            return false;
+        }
+        threadName = symbols.get(buf, from + 1, close);
+        nativeId = parseHexAfter(buf, from, to, NID);
+        priority = parseIntAfter(buf, from, to, PRIO);
+        daemon = indexOf(buf, from, to, DAEMON) >= 0;
+        cpuTimeNanos = parseDurationAfter(buf, from, to, CPU);
+        elapsedNanos = parseDurationAfter(buf, from, to, ELAPSED);
+        return true;
+    }
+
+    private boolean parseState(byte[] buf, int start, int to) {
+        if (!startsWith(buf, start, to, STATE_PREFIX)) {
+            return false;
+        }
+        // any single character separates "Thread" and "State"
+        int pos = start + STATE_PREFIX.length + 1;
+        if (!startsWith(buf, pos, to, STATE_SUFFIX)) {
+            return false;
+        }
+        pos += STATE_SUFFIX.length;
+        int end = pos;
+        while (end < to && !isSpace(buf[end])) {
+            end++;
+        }
+        if (end == pos) {
+            return false;
+        }
+        stateName = symbols.get(buf, pos, end);
+        return true;
+    }
+
+    private boolean parseFrame(byte[] buf, int start, int to) {
+        if (!startsWith(buf, start, to, FRAME_PREFIX)) {
+            return false;
+        }
+        int nameStart = start + FRAME_PREFIX.length;
+        int lastDot = -1;
+        int open = nameStart;
+        while (open < to && isNameChar(buf[open])) {
+            if (buf[open] == '.') {
+                lastDot = open;
+            }
+            open++;
+        }
+        // class and method must both be non-empty, and only the method part
+        // (after the last dot) may contain angle brackets as in <init>
+        if (open == to || buf[open] != '(' || lastDot <= nameStart
+                || lastDot == open - 1 || hasAngle(buf, nameStart, lastDot)) {
+            return false;
+        }
+        int fileStart = open + 1;
+        int colon = indexOf(buf, (byte) ':', fileStart, to);
+        int fileEnd;
+        int ln = -1;
+        if (colon >= 0) {
+            int digitsEnd = colon + 1;
+            while (digitsEnd < to && isDigit(buf[digitsEnd])) {
+                digitsEnd++;
+            }
+            if (colon > fileStart && digitsEnd > colon + 1 && digitsEnd < to
+                    && buf[digitsEnd] == ')') {
+                fileEnd = colon;
+                ln = parseInt(buf, colon + 1, digitsEnd);
+            } else {
+                fileEnd = lastIndexOf(buf, (byte) ')', fileStart + 1, colon);
+            }
+        } else {
+            fileEnd = lastIndexOf(buf, (byte) ')', fileStart + 1, to);
+        }
+        if (fileEnd < 0) {
+            return false;
+        }
+        className = symbols.get(buf, nameStart, lastDot);
+        methodName = symbols.get(buf, lastDot + 1, open);
+        fileName = symbols.get(buf, fileStart, fileEnd);
+        lineNumber = ln;
+        return true;
+    }
+
+    private LineType parseLockLine(byte[] buf, int start, int to) {
+        int pos = start + 1;
+        int afterDash = pos;
+        while (pos < to && isSpace(buf[pos])) {
+            pos++;
+        }
+        if (pos == afterDash) {
+            return LineType.OTHER;
+        }
+        LineType type;
+        if (startsWith(buf, pos, to, WAITING_TO_LOCK)) {
+            type = LineType.WAITING_TO_LOCK;
+            pos += WAITING_TO_LOCK.length;
+        } else if (startsWith(buf, pos, to, LOCKED)) {
+            type = LineType.LOCKED;
+            pos += LOCKED.length;
+        } else if (startsWith(buf, pos, to, PARKING)) {
+            type = LineType.PARKING;
+            pos += PARKING.length;
+            int ws = pos;
+            while (pos < to && isSpace(buf[pos])) {
+                pos++;
+            }
+            if (pos == ws || pos == to || buf[pos] != '<') {
+                return LineType.OTHER;
+            }
+            pos++;
+        } else {
+            return LineType.OTHER;
+        }
+        int gt = indexOf(buf, (byte) '>', pos, to);
+        if (gt <= pos || gt + 2 >= to || buf[gt + 1] != ' ' || buf[gt + 2] != '(') {
+            return LineType.OTHER;
+        }
+        int clsStart = gt + 3;
+        int paren = indexOf(buf, (byte) ')', clsStart, to);
+        if (paren <= clsStart) {
+            return LineType.OTHER;
+        }
+        lockIdentity = symbols.get(buf, pos, gt);
+        lockClassName = symbols.get(buf, clsStart, paren);
+        return type;
+    }
+
+    private static boolean hasAngle(byte[] buf, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] == '<' || buf[i] == '>') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean startsWith(byte[] buf, int pos, int to, byte[] prefix) {
+        if (pos < 0 || to - pos < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buf[pos + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] buf, byte b, int from, int to) {
+        return ByteScanner.get().indexOf(buf, b, from, to);
+    }
+
+    private static int indexOf(byte[] buf, int from, int to, byte[] key) {
+        for (int i = from; i <= to - key.length; i++) {
+            if (startsWith(buf, i, to, key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(byte[] buf, byte b, int from, int to) {
+        for (int i = to - 1; i >= from; i--) {
+            if (buf[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parse the first run of hex digits following {@code key}, or -1 if the
+     * key never appears with digits after it or the value overflows.
+     */
+    private static long parseHexAfter(byte[] buf, int from, int to, byte[] key) {
+        while (true) {
+            int idx = indexOf(buf, from, to, key);
+            if (idx < 0) {
+                return -1;
+            }
+            int pos = idx + key.length;
+            long value = 0;
+            int digits = 0;
+            boolean overflow = false;
+            while (pos < to) {
+                int d = hexDigit(buf[pos]);
+                if (d < 0) {
+                    break;
+                }
+                if ((value >>> 59) != 0) {
+                    overflow = true;
+                }
+                value = (value << 4) | d;
+                digits++;
+                pos++;
+            }
+            if (digits > 0) {
+                return overflow ? -1 : value;
+            }
+            from = idx + 1;
+        }
+    }
+
+    private static int parseIntAfter(byte[] buf, int from, int to, byte[] key) {
+        while (true) {
+            int idx = indexOf(buf, from, to, key);
+            if (idx < 0) {
+                return -1;
+            }
+            int pos = idx + key.length;
+            int end = pos;
+            while (end < to && isDigit(buf[end])) {
+                end++;
+            }
+            if (end > pos) {
+                return parseInt(buf, pos, end);
+            }
+            from = idx + 1;
+        }
+    }
+
+    /**
+     * Parse a decimal duration with a unit suffix following {@code key},
+     * such as {@code 12.34ms} or {@code 56.78s}, into nanoseconds.
+     *
+     * @return the duration, or -1 if the key is missing or the value is
+     *         malformed
+     */
+    private static long parseDurationAfter(byte[] buf, int from, int to, byte[] key) {
+        int idx = indexOf(buf, from, to, key);
+        if (idx < 0) {
+            return -1;
+        }
+        int pos = idx + key.length;
+        long whole = 0;
+        int start = pos;
+        while (pos < to && isDigit(buf[pos]) && pos - start < 15) {
+            whole = whole * 10 + (buf[pos++] - '0');
+        }
+        if (pos == start) {
+            return -1;
+        }
+        long fraction = 0;
+        long scale = 1;
+        if (pos < to && buf[pos] == '.') {
+            pos++;
+            while (pos < to && isDigit(buf[pos])) {
+                if (scale < 1_000_000_000L) {
+                    fraction = fraction * 10 + (buf[pos] - '0');
+                    scale *= 10;
+                }
+                pos++;
+            }
+        }
+        long unit;
+        if (pos + 1 < to && buf[pos] == 'm' && buf[pos + 1] == 's') {
+            unit = 1_000_000L;
+        } else if (pos + 1 < to && buf[pos] == 'u' && buf[pos + 1] == 's') {
+            unit = 1_000L;
+        } else if (pos + 1 < to && buf[pos] == 'n' && buf[pos + 1] == 's') {
+            unit = 1L;
+        } else if (pos < to && buf[pos] == 's') {
+            unit = 1_000_000_000L;
+        } else {
+            return -1;
+        }
+        if (whole > Long.MAX_VALUE / unit - 1) {
+            return -1;
+        }
+        return whole * unit + fraction * unit / scale;
+    }
+
+    /**
+     * Parse a run of ASCII digits, returning -1 on overflow like the
+     * previous {@code Integer.parseInt} based code did.
+     */
+    private static int parseInt(byte[] buf, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            value = value * 10 + (buf[i] - '0');
+            if (value > Integer.MAX_VALUE) {
+                return -1;
+            }
+        }
+        return (int) value;
+    }
+
+    private static boolean isDigit(byte c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int hexDigit(byte c) {
+        if (isDigit(c)) {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    /** Characters accepted in a qualified method name: {@code [\w.$<>]}. */
+    private static boolean isNameChar(byte c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || isDigit(c)
+                || c == '_' || c == '.' || c == '$' || c == '<' || c == '>';
+    }
+
+    /** Whitespace as matched by {@code \s} in the previous patterns. */
+    private static boolean isSpace(byte c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
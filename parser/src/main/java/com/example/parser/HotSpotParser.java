@@ -1,46 +1,147 @@
 package com.example.parser;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.List;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import com.example.model.ThreadDump;
-import com.example.model.ThreadInfo;
-import com.example.model.StackFrame;
-import com.example.model.LockInfo;
-
 public class HotSpotParser implements ThreadDumpParser {
-    private static final Pattern THREAD_HEADER =
-            Pattern.compile("^\"([^\"]+)\".*");
-    private static final Pattern PRIORITY = Pattern.compile("prio=(\\d+)");
-    private static final Pattern NID = Pattern.compile("nid=0x([0-9a-fA-F]+)");
-    private static final Pattern STATE_LINE =
-            Pattern.compile("^\\s*java\\.lang\\.Thread.State: (\\S+)");
-    private static final Pattern FRAME_LINE =
-            Pattern.compile("^\\s*at ([\\w.$]+)\\.([\\w$<>]+)\\(([^:]+)(?::(\\d+))?\\)");
-    private static final Pattern WAITING_LINE =
-            Pattern.compile("-\\s+waiting to lock <([^>]+)> \\(([^)]+)\\)");
-    private static final Pattern PARKING_LINE =
-            Pattern.compile("-\\s+parking to wait for\\s+<([^>]+)> \\(([^)]+)\\)");
-    private static final Pattern LOCKED_LINE =
-            Pattern.compile("-\\s+locked <([^>]+)> \\(([^)]+)\\)");
     private static final Pattern HEADER_LINE =
             Pattern.compile("^Full thread dump (.*):");
     private static final Pattern UPTIME_LINE =
             Pattern.compile("VM uptime:?\\s*(\\d+(?:\\.\\d+)?)\\s*secs", Pattern.CASE_INSENSITIVE);
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final int TIMESTAMP_LENGTH = 19;
+    /** jcmd prints the pid and jstack a timestamp before the header. */
+    private static final int MAX_PREAMBLE_LINES = 2;
+
+    @Override
+    public void parse(InputStream in, ThreadDumpHandler handler) throws IOException {
+        parse(in, ParseOptions.all(), handler);
+    }
 
     @Override
-    public ThreadDump parse(InputStream in) throws IOException {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(in));
-        List<ThreadInfo> threads = new ArrayList<>();
+    public void parse(InputStream in, ParseOptions options, ThreadDumpHandler handler) throws IOException {
+        ByteLineReader reader = new ByteLineReader(in);
+
+        handler.onDumpStart(readHeader(reader));
+
+        HotSpotThreadAssembler assembler = new HotSpotThreadAssembler(handler, FrameCache.shared(), null, options);
+        while (reader.nextLine()) {
+            assembler.accept(reader.buffer(), reader.start(), reader.end());
+        }
+        assembler.finish();
+
+        handler.onDumpEnd();
+    }
+
+    @Override
+    public void parse(ByteBuffer buffer, ThreadDumpHandler handler) throws IOException {
+        parse(buffer, ParseOptions.all(), handler);
+    }
+
+    /**
+     * Parse a dump held in a buffer. For a heap buffer stack frames are
+     * not decoded here; each thread keeps the byte range of its frames and
+     * decodes them on the first call to
+     * {@link com.example.model.ThreadInfo#getStack()}, unless lazy stacks
+     * are disabled with {@code -Dthreaddump.lazyStacks=false}. Direct and
+     * mapped buffers are decoded in full, as their contents may change
+     * once parsing has returned.
+     */
+    @Override
+    public void parse(ByteBuffer buffer, ParseOptions options, ThreadDumpHandler handler) throws IOException {
+        if (!LazyStack.usable(buffer, options)) {
+            parse(new ByteBufferInputStream(buffer), options, handler);
+            return;
+        }
+        ByteBuffer source = buffer.duplicate();
+        int base = source.position();
+        ByteLineReader reader = new ByteLineReader(new ByteBufferInputStream(source));
+
+        handler.onDumpStart(readHeader(reader));
+
+        HotSpotThreadAssembler assembler = new HotSpotThreadAssembler(handler, FrameCache.shared(), source, options);
+        while (reader.nextLine()) {
+            assembler.accept(reader.buffer(), reader.start(), reader.end(), base + (int) reader.lineOffset());
+        }
+        assembler.finish();
+
+        handler.onDumpEnd();
+    }
+
+    /**
+     * Consume the header of a dump, including the pid and timestamp lines
+     * that jcmd and jstack print before it.
+     *
+     * @param reader reader positioned at the start of the dump
+     * @return header with the timestamp, JVM version and uptime if present
+     */
+    static DumpHeader readHeader(ByteLineReader reader) throws IOException {
+        String firstLine = null;
+        Instant timestamp = null;
+        for (int i = 0; i <= MAX_PREAMBLE_LINES && reader.nextLine(); i++) {
+            byte[] buf = reader.buffer();
+            Instant t = parseTimestamp(buf, reader.start(), reader.end());
+            if (t != null) {
+                timestamp = t;
+            } else if (!isPidLine(buf, reader.start(), reader.end()) || i == MAX_PREAMBLE_LINES) {
+                firstLine = new String(buf, reader.start(), reader.end() - reader.start(), StandardCharsets.UTF_8);
+                break;
+            }
+        }
+        DumpHeader header = parseHeader(firstLine);
+        if (timestamp != null) {
+            header = new DumpHeader(timestamp, header.getJvmVersion(), header.getUptimeMillis());
+        }
+        return header;
+    }
+
+    /**
+     * Parse a {@code yyyy-MM-dd HH:mm:ss} line as printed by jstack and
+     * {@code kill -3} before the header, in the local time zone.
+     *
+     * @return the timestamp, or null if the line is not a timestamp
+     */
+    static Instant parseTimestamp(byte[] buf, int from, int to) {
+        if (to - from != TIMESTAMP_LENGTH || buf[from] < '0' || buf[from] > '9') {
+            return null;
+        }
+        try {
+            String text = new String(buf, from, TIMESTAMP_LENGTH, StandardCharsets.US_ASCII);
+            return LocalDateTime.parse(text, TIMESTAMP).atZone(ZoneId.systemDefault()).toInstant();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
 
-        String line = reader.readLine();
+    /** Whether a line is the {@code <pid>:} line jcmd prints first. */
+    private static boolean isPidLine(byte[] buf, int from, int to) {
+        if (to - from < 2 || buf[to - 1] != ':') {
+            return false;
+        }
+        for (int i = from; i < to - 1; i++) {
+            if (buf[i] < '0' || buf[i] > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Extract the dump metadata from the first line of a dump.
+     *
+     * @param line first line, or null for an empty dump
+     * @return header with the JVM version and uptime if present
+     */
+    static DumpHeader parseHeader(String line) {
         String jvmVersion = null;
         long uptime = -1;
         if (line != null) {
@@ -58,107 +159,6 @@ public class HotSpotParser implements ThreadDumpParser {
                 }
             }
         }
-
-        String currentName = null;
-        long currentId = -1;
-        int currentPrio = -1;
-        boolean currentDaemon = false;
-        Thread.State currentState = Thread.State.NEW;
-        List<StackFrame> currentStack = new ArrayList<>();
-        List<LockInfo> currentLocked = new ArrayList<>();
-        LockInfo waitingOn = null;
-
-        while ((line = reader.readLine()) != null) {
-            Matcher header = THREAD_HEADER.matcher(line);
-            if (header.find()) {
-                if (currentName != null) {
-                    threads.add(new ThreadInfo(currentId, currentName, currentState,
-                            currentStack, currentLocked, waitingOn, currentPrio, currentDaemon));
-                    currentStack = new ArrayList<>();
-                    currentLocked = new ArrayList<>();
-                    waitingOn = null;
-                }
-                currentName = header.group(1);
-                Matcher nidM = NID.matcher(line);
-                if (nidM.find()) {
-                    try {
-                        currentId = Long.parseLong(nidM.group(1), 16);
-                    } catch (NumberFormatException e) {
-                        currentId = -1;
-                    }
-                } else {
-                    currentId = -1;
-                }
-                Matcher prioM = PRIORITY.matcher(line);
-                if (prioM.find()) {
-                    try {
-                        currentPrio = Integer.parseInt(prioM.group(1));
-                    } catch (NumberFormatException e) {
-                        currentPrio = -1;
-                    }
-                } else {
-                    currentPrio = -1;
-                }
-                currentDaemon = line.contains(" daemon ");
-                currentState = Thread.State.NEW;
-                continue;
-            }
-
-            if (currentName == null) {
-                continue;
-            }
-
-            Matcher state = STATE_LINE.matcher(line);
-            if (state.find()) {
-                try {
-                    currentState = Thread.State.valueOf(state.group(1));
-                } catch (IllegalArgumentException ex) {
-                    currentState = Thread.State.RUNNABLE;
-                }
-                continue;
-            }
-
-            Matcher frame = FRAME_LINE.matcher(line.trim());
-            if (frame.find()) {
-                String cls = frame.group(1);
-                String method = frame.group(2);
-                String file = frame.group(3);
-                int ln = -1;
-                if (frame.group(4) != null) {
-                    try {
-                        ln = Integer.parseInt(frame.group(4));
-                    } catch (NumberFormatException e) {
-                        ln = -1;
-                    }
-                }
-                currentStack.add(new StackFrame(cls, method, file, ln));
-                continue;
-            }
-
-            Matcher wait = WAITING_LINE.matcher(line.trim());
-            if (wait.find()) {
-                waitingOn = new LockInfo(wait.group(2), wait.group(1));
-                continue;
-            }
-
-            Matcher park = PARKING_LINE.matcher(line.trim());
-            if (park.find()) {
-                waitingOn = new LockInfo(park.group(2), park.group(1));
-                continue;
-            }
-
-            Matcher locked = LOCKED_LINE.matcher(line.trim());
-            if (locked.find()) {
-                currentLocked.add(new LockInfo(locked.group(2), locked.group(1)));
-                continue;
-            }
-        }
-
-        if (currentName != null) {
-            threads.add(new ThreadInfo(currentId, currentName, currentState, currentStack,
-                    currentLocked, waitingOn, currentPrio, currentDaemon));
-        }
-
-        return new ThreadDump(Instant.now(), threads, null, jvmVersion, uptime);
+        return new DumpHeader(null, jvmVersion, uptime);
     }
 }
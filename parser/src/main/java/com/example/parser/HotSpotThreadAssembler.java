@@ -0,0 +1,190 @@
+package com.example.parser;
+
+import java.nio.ByteBuffer;
+import com.example.model.LockInfo;
+import com.example.model.StackFrame;
+import com.example.model.StackTraceStore;
+import com.example.model.ThreadInfo;
+
+/**
+ * Builds {@link ThreadInfo} objects from the thread section of a HotSpot
+ * style dump, one raw line at a time. A thread is reported to the handler
+ * as soon as the header of the next thread is seen or {@link #finish()}
+ * is called. Lines before the first thread header are ignored. Frame
+ * lines are looked up in a {@link FrameCache} before being tokenized, and
+ * finished stacks are interned in the shared {@link StackTraceStore}.
+ *
+ * <p>When constructed with the buffer the lines come from, frame lines
+ * are not tokenized at all; each thread gets a {@link LazyStack} over the
+ * byte range of its frames instead.</p>
+ *
+ * <p>{@link ParseOptions} are applied as lines arrive: frame and lock
+ * lines that are not wanted are skipped before tokenizing, and once a
+ * thread's name or state rules it out, its remaining lines are skipped
+ * with a one byte check until the next thread header.</p>
+ */
+final class HotSpotThreadAssembler {
+    private final HotSpotLineTokenizer tokenizer = new HotSpotLineTokenizer();
+    private final ThreadDumpHandler handler;
+    private final FrameCache frames;
+    private final ByteBuffer source;
+    private final ParseOptions options;
+    private final int maxDepth;
+
+    private final StackTraceStore stackTraces = StackTraceStore.shared();
+    private final ThreadInfo.Builder thread = new ThreadInfo.Builder().stackTraces(stackTraces);
+    private String currentName;
+    private Thread.State currentState = Thread.State.NEW;
+    private int stackFrom = -1;
+    private int stackTo;
+    private int depth;
+    private boolean dropped;
+
+    HotSpotThreadAssembler(ThreadDumpHandler handler) {
+        this(handler, FrameCache.shared());
+    }
+
+    HotSpotThreadAssembler(ThreadDumpHandler handler, FrameCache frames) {
+        this(handler, frames, null, ParseOptions.all());
+    }
+
+    /**
+     * @param source buffer the lines are read from, or null to build every
+     *               stack immediately
+     * @param options parts of each thread to keep
+     */
+    HotSpotThreadAssembler(ThreadDumpHandler handler, FrameCache frames, ByteBuffer source, ParseOptions options) {
+        this.handler = handler;
+        this.frames = frames;
+        this.source = source;
+        this.options = options;
+        int max = options.getMaxStackDepth();
+        this.maxDepth = max < 0 ? Integer.MAX_VALUE : max;
+    }
+
+    /**
+     * Process the next line of the dump, which starts at {@code offset} in
+     * the source buffer given at construction.
+     */
+    void accept(byte[] buf, int from, int to, int offset) {
+        if (source != null && currentName != null && !dropped
+                && HotSpotLineTokenizer.frameStart(buf, from, to) >= 0) {
+            if (depth < maxDepth) {
+                if (stackFrom < 0) {
+                    stackFrom = offset;
+                }
+                stackTo = offset + (to - from);
+                depth++;
+            }
+            return;
+        }
+        accept(buf, from, to);
+    }
+
+    /**
+     * Process the next line of the dump.
+     *
+     * @param buf buffer holding the line
+     * @param from offset of the first byte of the line
+     * @param to offset just past the last byte, excluding the terminator
+     */
+    void accept(byte[] buf, int from, int to) {
+        if (dropped && (from == to || buf[from] != '"')) {
+            return;
+        }
+        int frameStart = currentName == null ? -1 : HotSpotLineTokenizer.frameStart(buf, from, to);
+        if (frameStart >= 0) {
+            if (depth >= maxDepth) {
+                return;
+            }
+            StackFrame cached = frames.get(buf, frameStart, to);
+            if (cached != null) {
+                thread.addFrame(cached);
+                depth++;
+                return;
+            }
+        } else if (!options.includesLocks() && currentName != null && isLockLine(buf, from, to)) {
+            return;
+        }
+
+        HotSpotLineTokenizer.LineType type = tokenizer.classify(buf, from, to);
+        if (type == HotSpotLineTokenizer.LineType.THREAD_HEADER) {
+            finish();
+            currentName = tokenizer.getThreadName();
+            currentState = Thread.State.NEW;
+            thread.id(tokenizer.getNativeId())
+                    .name(currentName)
+                    .priority(tokenizer.getPriority())
+                    .daemon(tokenizer.isDaemon())
+                    .cpuTimeNanos(tokenizer.getCpuTimeNanos())
+                    .elapsedNanos(tokenizer.getElapsedNanos());
+            dropped = !options.acceptsName(currentName);
+            return;
+        }
+
+        if (currentName == null) {
+            return;
+        }
+
+        switch (type) {
+            case STATE:
+                try {
+                    currentState = Thread.State.valueOf(tokenizer.getStateName());
+                } catch (IllegalArgumentException ex) {
+                    currentState = Thread.State.RUNNABLE;
+                }
+                dropped = !options.acceptsState(currentState);
+                break;
+            case FRAME:
+                StackFrame frame = new StackFrame(tokenizer.getClassName(), tokenizer.getMethodName(),
+                        tokenizer.getFileName(), tokenizer.getLineNumber());
+                frames.put(buf, frameStart, to, frame);
+                thread.addFrame(frame);
+                depth++;
+                break;
+            case WAITING_TO_LOCK:
+            case PARKING:
+                thread.waitingOn(new LockInfo(tokenizer.getLockClassName(), tokenizer.getLockIdentity()));
+                break;
+            case LOCKED:
+                thread.addLockedMonitor(new LockInfo(tokenizer.getLockClassName(), tokenizer.getLockIdentity()));
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Report the thread currently being assembled, if any.
+     */
+    void finish() {
+        if (currentName == null) {
+            return;
+        }
+        if (dropped || !options.acceptsState(currentState)) {
+            // filtered out by the options
+            thread.reset();
+        } else {
+            if (stackFrom >= 0) {
+                thread.stackLoader(new LazyStack(source, stackFrom, stackTo, frames, stackTraces));
+            }
+            handler.onThread(thread.state(currentState).build());
+        }
+        currentName = null;
+        stackFrom = -1;
+        depth = 0;
+        dropped = false;
+    }
+
+    /**
+     * Whether a line inside a thread block is one of the {@code - locked},
+     * {@code - waiting to lock} or {@code - parking to wait for} lines.
+     */
+    private static boolean isLockLine(byte[] buf, int from, int to) {
+        int i = from;
+        while (i < to && (buf[i] == ' ' || buf[i] == '\t')) {
+            i++;
+        }
+        return i + 1 < to && buf[i] == '-' && buf[i + 1] == ' ';
+    }
+}
@@ -0,0 +1,360 @@
+package com.example.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.example.model.StackFrame;
+import com.example.model.ThreadContainer;
+import com.example.model.ThreadInfo;
+
+/**
+ * Parser for the JSON written by {@code jcmd <pid> Thread.dump_to_file
+ * -format=json} since JDK 21. Threads in this format are grouped into
+ * thread containers (the root container, thread pools, executors and task
+ * scopes), which are reported to the handler before their threads, and
+ * every thread records the container it belongs to.
+ *
+ * <pre>
+ * {"threadDump": {"processId": "1", "time": "...", "runtimeVersion": "21+35",
+ *   "threadContainers": [
+ *     {"container": "&lt;root&gt;", "parent": null, "owner": null,
+ *      "threads": [{"tid": "1", "name": "main", "stack": ["Main.main(Main.java:5)"]}]}]}}
+ * </pre>
+ *
+ * <p>The document is read with a {@link JsonReader} and each thread is
+ * passed on as soon as it has been read, so a dump with a million virtual
+ * threads is parsed in memory bounded by the largest thread, not by the
+ * dump. Thread ids are read without being added to the symbol table, and
+ * frames are decoded once per distinct frame text.</p>
+ *
+ * <p>JDK 21 does not record thread states; they are taken from a
+ * {@code state} field where a later JDK writes one and otherwise inferred
+ * from the top frame, so that parked and sleeping threads are not reported
+ * as {@code RUNNABLE}.</p>
+ */
+public class JcmdJsonParser implements ThreadDumpParser {
+    @Override
+    public void parse(InputStream in, ThreadDumpHandler handler) throws IOException {
+        parse(in, ParseOptions.all(), handler);
+    }
+
+    @Override
+    public void parse(ByteBuffer buffer, ParseOptions options, ThreadDumpHandler handler) throws IOException {
+        parse(new ByteBufferInputStream(buffer), options, handler);
+    }
+
+    @Override
+    public void parse(InputStream in, ParseOptions options, ThreadDumpHandler handler) throws IOException {
+        JsonReader reader = new JsonReader(in);
+        Reader r = new Reader(reader, options, handler);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("threadDump".equals(reader.nextName()) && reader.peek() == JsonReader.Token.BEGIN_OBJECT) {
+                r.readDump();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        reader.endDocument();
+        r.finish();
+    }
+
+    /**
+     * State of one parse. The dump is started when {@code threadContainers}
+     * begins, with whatever header fields have been read by then; header
+     * fields written after the containers are ignored. Threads read before
+     * their container's name are held back until the container ends, so
+     * that the handler sees the container first.
+     */
+    private static final class Reader {
+        private final JsonReader reader;
+        private final ParseOptions options;
+        private final ThreadDumpHandler handler;
+        private final SymbolTable symbols = new SymbolTable();
+        private final Map<String, StackFrame> frames = new HashMap<>();
+        private Instant timestamp;
+        private String jvmVersion;
+        private boolean started;
+
+        Reader(JsonReader reader, ParseOptions options, ThreadDumpHandler handler) {
+            this.reader = reader;
+            this.options = options;
+            this.handler = handler;
+        }
+
+        void readDump() throws IOException {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "time":
+                        timestamp = parseTimestamp(reader.nextText(symbols));
+                        break;
+                    case "runtimeVersion":
+                        jvmVersion = reader.nextText(symbols);
+                        break;
+                    case "threadContainers":
+                        if (reader.peek() != JsonReader.Token.BEGIN_ARRAY) {
+                            reader.skipValue();
+                            break;
+                        }
+                        start();
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            if (reader.peek() == JsonReader.Token.BEGIN_OBJECT) {
+                                readContainer();
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endArray();
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+        }
+
+        void finish() {
+            start();
+            handler.onDumpEnd();
+        }
+
+        private void start() {
+            if (started) {
+                return;
+            }
+            started = true;
+            handler.onDumpStart(new DumpHeader(timestamp, jvmVersion, -1));
+        }
+
+        private void readContainer() throws IOException {
+            String name = null;
+            String parent = null;
+            long owner = -1;
+            List<ThreadInfo> early = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "container":
+                        name = reader.nextText(symbols);
+                        break;
+                    case "parent":
+                        parent = nullableText();
+                        break;
+                    case "owner":
+                        owner = reader.nextId();
+                        break;
+                    case "threads":
+                        if (reader.peek() != JsonReader.Token.BEGIN_ARRAY) {
+                            reader.skipValue();
+                            break;
+                        }
+                        if (name != null) {
+                            handler.onContainer(new ThreadContainer(name, parent, owner));
+                        } else {
+                            early = new ArrayList<>();
+                        }
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            if (reader.peek() != JsonReader.Token.BEGIN_OBJECT) {
+                                reader.skipValue();
+                                continue;
+                            }
+                            ThreadInfo thread = readThread(name);
+                            if (thread == null) {
+                                continue;
+                            }
+                            if (early != null) {
+                                early.add(thread);
+                            } else {
+                                handler.onThread(thread);
+                            }
+                        }
+                        reader.endArray();
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+            if (early != null) {
+                // the container name followed its threads
+                handler.onContainer(new ThreadContainer(name, parent, owner));
+                for (ThreadInfo thread : early) {
+                    handler.onThread(new ThreadInfo(thread.getId(), thread.getName(), thread.getState(), thread.getStack(),
+                            thread.getLockedMonitors(), thread.getWaitingOn(), -1, false, name));
+                }
+            }
+        }
+
+        private ThreadInfo readThread(String container) throws IOException {
+            long id = -1;
+            String name = "";
+            Thread.State state = null;
+            List<StackFrame> stack = new ArrayList<>();
+            StackFrame top = null;
+            int maxDepth = options.getMaxStackDepth();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "tid":
+                        id = reader.nextId();
+                        break;
+                    case "name":
+                        name = String.valueOf(reader.nextText(symbols));
+                        break;
+                    case "state":
+                        state = parseState(reader.nextText(symbols));
+                        break;
+                    case "stack":
+                        if (reader.peek() != JsonReader.Token.BEGIN_ARRAY) {
+                            reader.skipValue();
+                            break;
+                        }
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            if (reader.peek() != JsonReader.Token.STRING
+                                    || (top != null && maxDepth >= 0 && stack.size() >= maxDepth)) {
+                                reader.skipValue();
+                                continue;
+                            }
+                            StackFrame frame = frame(reader.nextString(symbols));
+                            if (top == null) {
+                                top = frame;
+                            }
+                            if (maxDepth < 0 || stack.size() < maxDepth) {
+                                stack.add(frame);
+                            }
+                        }
+                        reader.endArray();
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+            if (state == null) {
+                state = inferState(top);
+            }
+            if (!options.acceptsState(state) || !options.acceptsName(name)) {
+                return null;
+            }
+            return new ThreadInfo(id, name, state, stack, List.of(), null, -1, false, container);
+        }
+
+        private String nullableText() throws IOException {
+            if (reader.peek() == JsonReader.Token.NULL) {
+                reader.nextNull();
+                return null;
+            }
+            return reader.nextText(symbols);
+        }
+
+        private StackFrame frame(String text) {
+            StackFrame frame = frames.get(text);
+            if (frame == null) {
+                frame = parseFrame(text);
+                frames.put(text, frame);
+            }
+            return frame;
+        }
+    }
+
+    /**
+     * Parse a frame in {@link StackTraceElement#toString()} form, such as
+     * {@code java.base/java.lang.Thread.run(Thread.java:1583)} or
+     * {@code app//com.example.Foo$$Lambda/0x0000000801001000.run(Unknown Source)}.
+     * The class loader and module prefix is dropped.
+     */
+    static StackFrame parseFrame(String text) {
+        int paren = text.indexOf('(');
+        String head = paren < 0 ? text : text.substring(0, paren);
+        int start = 0;
+        for (int slash = head.indexOf('/'); slash >= 0; slash = head.indexOf('/', slash + 1)) {
+            if (head.startsWith("0x", slash + 1)) {
+                // hidden class suffix, part of the class name
+                break;
+            }
+            start = slash + 1;
+        }
+        int dot = head.lastIndexOf('.');
+        String cls = dot > start ? head.substring(start, dot) : "?";
+        String method = dot > start ? head.substring(dot + 1) : head.substring(start);
+        String file = "?";
+        int line = -1;
+        int close = text.lastIndexOf(')');
+        if (paren >= 0 && close > paren) {
+            file = text.substring(paren + 1, close);
+            int colon = file.lastIndexOf(':');
+            if (colon > 0) {
+                try {
+                    line = Integer.parseInt(file.substring(colon + 1));
+                    file = file.substring(0, colon);
+                } catch (NumberFormatException e) {
+                    // not a line number, keep the whole text as file name
+                }
+            }
+        }
+        return new StackFrame(cls, method, file, line);
+    }
+
+    /**
+     * Guess the state of a thread from the frame it is executing.
+     */
+    static Thread.State inferState(StackFrame top) {
+        if (top == null) {
+            return Thread.State.RUNNABLE;
+        }
+        String cls = top.getClassName();
+        String method = top.getMethodName();
+        if ("java.lang.Thread".equals(cls) || "java.lang.VirtualThread".equals(cls)) {
+            if (method.startsWith("sleep") || "parkNanos".equals(method)) {
+                return Thread.State.TIMED_WAITING;
+            }
+            if (method.startsWith("park")) {
+                return Thread.State.WAITING;
+            }
+        }
+        if ("jdk.internal.misc.Unsafe".equals(cls) && "park".equals(method)) {
+            return Thread.State.WAITING;
+        }
+        if ("java.lang.Object".equals(cls) && method.startsWith("wait")) {
+            return Thread.State.WAITING;
+        }
+        return Thread.State.RUNNABLE;
+    }
+
+    private static Thread.State parseState(String text) {
+        if (text == null) {
+            return null;
+        }
+        try {
+            return Thread.State.valueOf(text);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static Instant parseTimestamp(String text) {
+        if (text == null) {
+            return null;
+        }
+        try {
+            return Instant.parse(text);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import com.example.model.AnalysisSession;
+import com.example.model.StackFrame;
+import com.example.model.SymbolInterner;
+import com.example.model.ThreadDump;
+import com.example.model.ThreadInfo;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Reads thread dumps out of a Java Flight Recorder recording. Every
+ * {@code jdk.ThreadDump} event holds the text of a complete HotSpot dump
+ * and becomes one {@link ThreadDump}, timestamped with the time of the
+ * event and labelled with it. Events are read one at a time with
+ * {@link RecordingFile}, so a recording covering hours is processed
+ * without loading it as a whole.
+ *
+ * <p>Optionally, {@code jdk.ExecutionSample} and
+ * {@code jdk.NativeMethodSample} events are turned into additional dumps:
+ * samples are grouped into windows of a fixed length, and each window
+ * yields a dump holding the last sampled stack of every thread seen in it.
+ * Sampled threads were running when sampled, so they are reported as
+ * {@code RUNNABLE}. Windows are kept until the end of the recording,
+ * as samples are not written in time order.</p>
+ */
+public final class JfrSource {
+    static final String THREAD_DUMP_EVENT = "jdk.ThreadDump";
+    static final String EXECUTION_SAMPLE_EVENT = "jdk.ExecutionSample";
+    static final String NATIVE_SAMPLE_EVENT = "jdk.NativeMethodSample";
+
+    private static final byte[] MAGIC = {'F', 'L', 'R', 0};
+
+    private JfrSource() {
+    }
+
+    /**
+     * Whether a buffer starts with the magic bytes of a JFR recording.
+     * The buffer's position is not modified.
+     */
+    public static boolean isRecording(ByteBuffer buffer) {
+        if (buffer.remaining() < MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buffer.get(buffer.position() + i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read the {@code jdk.ThreadDump} events of a recording.
+     *
+     * @param recording JFR file
+     * @return session with one dump per event, in time order
+     */
+    public static AnalysisSession read(Path recording) throws IOException {
+        return read(recording, ParseOptions.all(), null);
+    }
+
+    /**
+     * Read the dumps of a recording, optionally adding dumps synthesized
+     * from execution samples.
+     *
+     * @param recording JFR file
+     * @param options parts of each dump to keep
+     * @param sampleWindow length of the windows samples are grouped into,
+     *        or null to ignore samples
+     * @return session with all dumps in time order
+     */
+    public static AnalysisSession read(Path recording, ParseOptions options, Duration sampleWindow)
+            throws IOException {
+        List<ThreadDump> dumps = new ArrayList<>();
+        read(recording, options, sampleWindow, dumps::add);
+        dumps.sort(Comparator.comparing(ThreadDump::getTimestamp));
+        AnalysisSession session = new AnalysisSession();
+        dumps.forEach(session::addThreadDump);
+        return session;
+    }
+
+    /**
+     * Stream the dumps of a recording to a sink. Dumps from
+     * {@code jdk.ThreadDump} events are passed on as they are read, in
+     * file order; dumps synthesized from samples follow once the whole
+     * recording has been read.
+     *
+     * @param recording JFR file
+     * @param options parts of each dump to keep
+     * @param sampleWindow length of the windows samples are grouped into,
+     *        or null to ignore samples
+     * @param sink receiver of the dumps
+     */
+    public static void read(Path recording, ParseOptions options, Duration sampleWindow,
+                            Consumer<ThreadDump> sink) throws IOException {
+        if (sampleWindow != null && (sampleWindow.isZero() || sampleWindow.isNegative())) {
+            throw new IllegalArgumentException("sample window must be positive");
+        }
+        long windowNanos = sampleWindow == null ? 0 : sampleWindow.toNanos();
+        TreeMap<Long, Map<Long, ThreadInfo>> windows = new TreeMap<>();
+        try (RecordingFile file = new RecordingFile(recording)) {
+            while (file.hasMoreEvents()) {
+                RecordedEvent event = file.readEvent();
+                String type = event.getEventType().getName();
+                if (THREAD_DUMP_EVENT.equals(type)) {
+                    ThreadDump dump = parseDumpEvent(event, options);
+                    if (dump != null) {
+                        sink.accept(dump);
+                    }
+                } else if (windowNanos > 0
+                        && (EXECUTION_SAMPLE_EVENT.equals(type) || NATIVE_SAMPLE_EVENT.equals(type))) {
+                    addSample(event, options, windowNanos, windows);
+                }
+            }
+        }
+        for (Map.Entry<Long, Map<Long, ThreadInfo>> window : windows.entrySet()) {
+            Instant start = Instant.EPOCH.plusNanos(window.getKey() * windowNanos);
+            sink.accept(new ThreadDump(start, new ArrayList<>(window.getValue().values()),
+                    "samples " + start, null, -1));
+        }
+    }
+
+    private static ThreadDump parseDumpEvent(RecordedEvent event, ParseOptions options) throws IOException {
+        String text = event.hasField("result") ? event.getString("result") : null;
+        if (text == null || text.isEmpty()) {
+            return null;
+        }
+        ThreadDump dump = new HotSpotParser().parse(
+                new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), options);
+        Instant time = event.getStartTime();
+        return dump.withTimestamp(time).withLabel(time.toString());
+    }
+
+    private static void addSample(RecordedEvent event, ParseOptions options, long windowNanos,
+                                  TreeMap<Long, Map<Long, ThreadInfo>> windows) {
+        RecordedThread thread = event.getThread("sampledThread");
+        if (thread == null) {
+            return;
+        }
+        // HotSpot dumps identify threads by nid, the OS thread id, so the
+        // sampled threads use it too and match those of jdk.ThreadDump events
+        long id = thread.getOSThreadId();
+        String name = thread.getJavaName();
+        if (name == null) {
+            // a thread that never ran Java code
+            name = thread.getOSName();
+        }
+        name = SymbolInterner.intern(name);
+        if (!options.acceptsState(Thread.State.RUNNABLE) || !options.acceptsName(name)) {
+            return;
+        }
+        List<StackFrame> stack = new ArrayList<>();
+        RecordedStackTrace trace = event.getStackTrace();
+        int maxDepth = options.getMaxStackDepth();
+        if (trace != null) {
+            for (RecordedFrame frame : trace.getFrames()) {
+                if (maxDepth >= 0 && stack.size() >= maxDepth) {
+                    break;
+                }
+                if (frame.isJavaFrame()) {
+                    stack.add(toStackFrame(frame));
+                }
+            }
+        }
+        Instant time = event.getStartTime();
+        long nanos = time.getEpochSecond() * 1_000_000_000L + time.getNano();
+        windows.computeIfAbsent(Math.floorDiv(nanos, windowNanos), k -> new LinkedHashMap<>())
+                .put(id, new ThreadInfo(id, name, Thread.State.RUNNABLE, stack, List.of(), null, -1, false));
+    }
+
+    private static StackFrame toStackFrame(RecordedFrame frame) {
+        String cls = SymbolInterner.intern(frame.getMethod().getType().getName());
+        String method = SymbolInterner.intern(frame.getMethod().getName());
+        // recordings do not carry source file names
+        String file = "Native".equals(frame.getType()) ? "Native Method" : "Unknown Source";
+        return new StackFrame(cls, method, file, frame.getLineNumber());
+    }
+}
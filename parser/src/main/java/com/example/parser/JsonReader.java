@@ -0,0 +1,568 @@
+package com.example.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.example.model.SymbolInterner;
+
+/**
+ * Minimal pull-based JSON reader working directly on UTF-8 bytes. Values
+ * are read one token at a time, so a document of any size can be walked
+ * while only the current token is held in memory. Strings without escape
+ * sequences are resolved through a {@link SymbolTable}, so repeated keys
+ * and values such as class names are decoded once.
+ *
+ * <p>Syntax errors are reported as {@link IOException}s whose message
+ * starts with {@code Invalid JSON}.</p>
+ */
+final class JsonReader {
+
+    enum Token {
+        BEGIN_OBJECT,
+        END_OBJECT,
+        BEGIN_ARRAY,
+        END_ARRAY,
+        NAME,
+        STRING,
+        NUMBER,
+        BOOLEAN,
+        NULL,
+        END_DOCUMENT
+    }
+
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_ARRAY = 2;
+    private static final int NONEMPTY_ARRAY = 3;
+    private static final int EMPTY_OBJECT = 4;
+    private static final int DANGLING_NAME = 5;
+    private static final int NONEMPTY_OBJECT = 6;
+
+    private final InputStream in;
+    private final SymbolTable names = new SymbolTable(64);
+    private byte[] buf = new byte[64 * 1024];
+    private int pos;
+    private int limit;
+    private long consumed;
+
+    private int[] scopes = new int[32];
+    private int depth = 1;
+    private Token peeked;
+
+    private byte[] scratch = new byte[64];
+    private int scratchLength;
+
+    JsonReader(InputStream in) {
+        this.in = in;
+        scopes[0] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * Get the type of the next token without consuming it.
+     */
+    Token peek() throws IOException {
+        if (peeked != null) {
+            return peeked;
+        }
+        int scope = scopes[depth - 1];
+        int c;
+        switch (scope) {
+            case EMPTY_ARRAY:
+                scopes[depth - 1] = NONEMPTY_ARRAY;
+                c = nextNonWhitespace();
+                if (c == ']') {
+                    return peeked = Token.END_ARRAY;
+                }
+                return peeked = value(c);
+            case NONEMPTY_ARRAY:
+                c = nextNonWhitespace();
+                if (c == ']') {
+                    return peeked = Token.END_ARRAY;
+                }
+                if (c != ',') {
+                    throw syntaxError("expected ',' or ']'");
+                }
+                return peeked = value(nextNonWhitespace());
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                c = nextNonWhitespace();
+                if (c == '}') {
+                    return peeked = Token.END_OBJECT;
+                }
+                if (scope == NONEMPTY_OBJECT) {
+                    if (c != ',') {
+                        throw syntaxError("expected ',' or '}'");
+                    }
+                    c = nextNonWhitespace();
+                }
+                if (c != '"') {
+                    throw syntaxError("expected a name");
+                }
+                scopes[depth - 1] = DANGLING_NAME;
+                return peeked = Token.NAME;
+            case DANGLING_NAME:
+                if (nextNonWhitespace() != ':') {
+                    throw syntaxError("expected ':'");
+                }
+                scopes[depth - 1] = NONEMPTY_OBJECT;
+                return peeked = value(nextNonWhitespace());
+            case EMPTY_DOCUMENT:
+                scopes[depth - 1] = NONEMPTY_DOCUMENT;
+                return peeked = value(nextNonWhitespace());
+            default:
+                c = nextNonWhitespaceOrEof();
+                if (c >= 0) {
+                    throw syntaxError("unexpected data after the document");
+                }
+                return peeked = Token.END_DOCUMENT;
+        }
+    }
+
+    /**
+     * Whether the current array or object has more elements.
+     */
+    boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        depth--;
+    }
+
+    void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        depth--;
+    }
+
+    /**
+     * Check that nothing but whitespace follows the top-level value.
+     */
+    void endDocument() throws IOException {
+        expect(Token.END_DOCUMENT);
+    }
+
+    /**
+     * Read the name of the next member of the current object.
+     */
+    String nextName() throws IOException {
+        expect(Token.NAME);
+        return readString(names);
+    }
+
+    /**
+     * Read a string value, resolving it through {@code symbols}.
+     */
+    String nextString(SymbolTable symbols) throws IOException {
+        expect(Token.STRING);
+        return readString(symbols);
+    }
+
+    /**
+     * Read a number value, truncating any fraction.
+     */
+    long nextLong() throws IOException {
+        expect(Token.NUMBER);
+        readLiteral();
+        return scratchToLong();
+    }
+
+    /**
+     * Read a number, or a string holding a decimal number as some formats
+     * write ids, without adding the string to any symbol table. Other
+     * values are skipped.
+     *
+     * @return the value, or -1 if it is not a number
+     */
+    long nextId() throws IOException {
+        switch (peek()) {
+            case NUMBER:
+                return nextLong();
+            case STRING:
+                peeked = null;
+                scratchLength = 0;
+                while (true) {
+                    if (pos == limit && !fill()) {
+                        throw syntaxError("unterminated string");
+                    }
+                    byte b = buf[pos++];
+                    if (b == '"') {
+                        break;
+                    }
+                    if (b == '\\') {
+                        // not part of a number; keep the closing quote from ending the scan
+                        if (pos == limit && !fill()) {
+                            throw syntaxError("unterminated string");
+                        }
+                        b = buf[pos++];
+                    }
+                    append(b);
+                }
+                if (scratchLength == 0 || scratchLength > 18) {
+                    return -1;
+                }
+                for (int i = 0; i < scratchLength; i++) {
+                    if (scratch[i] < '0' || scratch[i] > '9') {
+                        return -1;
+                    }
+                }
+                return scratchToLong();
+            default:
+                skipValue();
+                return -1;
+        }
+    }
+
+    private long scratchToLong() throws IOException {
+        int i = 0;
+        boolean negative = scratchLength > 0 && scratch[0] == '-';
+        if (negative) {
+            i++;
+        }
+        if (scratchLength > i && scratchLength - i <= 18) {
+            long value = 0;
+            for (; i < scratchLength; i++) {
+                byte b = scratch[i];
+                if (b < '0' || b > '9') {
+                    break;
+                }
+                value = value * 10 + (b - '0');
+            }
+            if (i == scratchLength) {
+                return negative ? -value : value;
+            }
+        }
+        String text = new String(scratch, 0, scratchLength, StandardCharsets.US_ASCII);
+        try {
+            return (long) Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            throw syntaxError("invalid number " + text);
+        }
+    }
+
+    boolean nextBoolean() throws IOException {
+        expect(Token.BOOLEAN);
+        readLiteral();
+        if (literalEquals("true")) {
+            return true;
+        }
+        if (literalEquals("false")) {
+            return false;
+        }
+        throw syntaxError("invalid literal");
+    }
+
+    void nextNull() throws IOException {
+        expect(Token.NULL);
+        readLiteral();
+        if (!literalEquals("null")) {
+            throw syntaxError("invalid literal");
+        }
+    }
+
+    /**
+     * Read a string, number, boolean or null value as text; compound values
+     * are skipped and {@code null} is returned.
+     */
+    String nextText(SymbolTable symbols) throws IOException {
+        switch (peek()) {
+            case STRING:
+                return nextString(symbols);
+            case NUMBER:
+            case BOOLEAN:
+            case NULL:
+                peeked = null;
+                readLiteral();
+                return symbols.get(scratch, 0, scratchLength);
+            default:
+                skipValue();
+                return null;
+        }
+    }
+
+    /**
+     * Skip the next value, including everything nested in it.
+     */
+    void skipValue() throws IOException {
+        int open = 0;
+        do {
+            switch (peek()) {
+                case BEGIN_OBJECT:
+                    beginObject();
+                    open++;
+                    break;
+                case BEGIN_ARRAY:
+                    beginArray();
+                    open++;
+                    break;
+                case END_OBJECT:
+                    endObject();
+                    open--;
+                    break;
+                case END_ARRAY:
+                    endArray();
+                    open--;
+                    break;
+                case NAME:
+                case STRING:
+                    peeked = null;
+                    skipString();
+                    break;
+                case NUMBER:
+                case BOOLEAN:
+                case NULL:
+                    peeked = null;
+                    readLiteral();
+                    break;
+                default:
+                    throw syntaxError("unexpected end of document");
+            }
+        } while (open > 0);
+    }
+
+    private void expect(Token token) throws IOException {
+        Token actual = peek();
+        if (actual != token) {
+            throw syntaxError("expected " + token + " but was " + actual);
+        }
+        peeked = null;
+    }
+
+    private void push(int scope) {
+        if (depth == scopes.length) {
+            scopes = Arrays.copyOf(scopes, depth * 2);
+        }
+        scopes[depth++] = scope;
+    }
+
+    private Token value(int c) throws IOException {
+        switch (c) {
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '[':
+                return Token.BEGIN_ARRAY;
+            case '"':
+                return Token.STRING;
+            case 't':
+            case 'f':
+                pos--;
+                return Token.BOOLEAN;
+            case 'n':
+                pos--;
+                return Token.NULL;
+            default:
+                if (c == '-' || c >= '0' && c <= '9') {
+                    pos--;
+                    return Token.NUMBER;
+                }
+                throw syntaxError(c < 0 ? "unexpected end of document" : "unexpected character");
+        }
+    }
+
+    /**
+     * Read the rest of a string whose opening quote has been consumed.
+     */
+    private String readString(SymbolTable symbols) throws IOException {
+        int start = pos;
+        while (pos < limit) {
+            byte b = buf[pos];
+            if (b == '"') {
+                String s = symbols.get(buf, start, pos);
+                pos++;
+                return s;
+            }
+            if (b == '\\') {
+                break;
+            }
+            pos++;
+        }
+        scratchLength = 0;
+        append(buf, start, pos - start);
+        StringBuilder escaped = null;
+        while (true) {
+            if (pos == limit && !fill()) {
+                throw syntaxError("unterminated string");
+            }
+            byte b = buf[pos++];
+            if (b == '"') {
+                break;
+            }
+            if (b != '\\') {
+                append(b);
+                continue;
+            }
+            if (pos == limit && !fill()) {
+                throw syntaxError("unterminated string");
+            }
+            byte e = buf[pos++];
+            switch (e) {
+                case '"':
+                case '\\':
+                case '/':
+                    append(e);
+                    break;
+                case 'b':
+                    append((byte) '\b');
+                    break;
+                case 'f':
+                    append((byte) '\f');
+                    break;
+                case 'n':
+                    append((byte) '\n');
+                    break;
+                case 'r':
+                    append((byte) '\r');
+                    break;
+                case 't':
+                    append((byte) '\t');
+                    break;
+                case 'u':
+                    // decode what we have so far so that surrogate pairs
+                    // split over two escapes are joined correctly
+                    if (escaped == null) {
+                        escaped = new StringBuilder();
+                    }
+                    escaped.append(new String(scratch, 0, scratchLength, StandardCharsets.UTF_8));
+                    scratchLength = 0;
+                    escaped.append(readUnicodeEscape());
+                    break;
+                default:
+                    throw syntaxError("invalid escape sequence");
+            }
+        }
+        if (escaped == null) {
+            return symbols.get(scratch, 0, scratchLength);
+        }
+        escaped.append(new String(scratch, 0, scratchLength, StandardCharsets.UTF_8));
+        return SymbolInterner.intern(escaped.toString());
+    }
+
+    private char readUnicodeEscape() throws IOException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            if (pos == limit && !fill()) {
+                throw syntaxError("unterminated string");
+            }
+            int d = Character.digit(buf[pos++], 16);
+            if (d < 0) {
+                throw syntaxError("invalid unicode escape");
+            }
+            value = value << 4 | d;
+        }
+        return (char) value;
+    }
+
+    private void skipString() throws IOException {
+        while (true) {
+            if (pos == limit && !fill()) {
+                throw syntaxError("unterminated string");
+            }
+            byte b = buf[pos++];
+            if (b == '"') {
+                return;
+            }
+            if (b == '\\') {
+                if (pos == limit && !fill()) {
+                    throw syntaxError("unterminated string");
+                }
+                pos++;
+            }
+        }
+    }
+
+    /**
+     * Read a number or literal into the scratch buffer.
+     */
+    private void readLiteral() throws IOException {
+        scratchLength = 0;
+        while (pos < limit || fill()) {
+            byte b = buf[pos];
+            if (b == ',' || b == '}' || b == ']' || b == ':' || isWhitespace(b)) {
+                break;
+            }
+            append(b);
+            pos++;
+        }
+        if (scratchLength == 0) {
+            throw syntaxError("expected a value");
+        }
+    }
+
+    private boolean literalEquals(String literal) {
+        if (scratchLength != literal.length()) {
+            return false;
+        }
+        for (int i = 0; i < scratchLength; i++) {
+            if (scratch[i] != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        int c = nextNonWhitespaceOrEof();
+        if (c < 0) {
+            throw syntaxError("unexpected end of document");
+        }
+        return c;
+    }
+
+    private int nextNonWhitespaceOrEof() throws IOException {
+        while (pos < limit || fill()) {
+            byte b = buf[pos++];
+            if (!isWhitespace(b)) {
+                return b & 0xFF;
+            }
+        }
+        return -1;
+    }
+
+    private boolean fill() throws IOException {
+        consumed += pos;
+        limit = 0;
+        pos = 0;
+        int n = in.read(buf, 0, buf.length);
+        if (n <= 0) {
+            return false;
+        }
+        limit = n;
+        return true;
+    }
+
+    private void append(byte b) {
+        if (scratchLength == scratch.length) {
+            scratch = Arrays.copyOf(scratch, scratchLength * 2);
+        }
+        scratch[scratchLength++] = b;
+    }
+
+    private void append(byte[] src, int from, int length) {
+        if (scratchLength + length > scratch.length) {
+            scratch = Arrays.copyOf(scratch, Math.max(scratch.length * 2, scratchLength + length));
+        }
+        System.arraycopy(src, from, scratch, scratchLength, length);
+        scratchLength += length;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException("Invalid JSON: " + message + " at offset " + (consumed + pos));
+    }
+}
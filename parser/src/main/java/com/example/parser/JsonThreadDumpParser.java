@@ -2,121 +2,228 @@ package com.example.parser;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.List;
+import java.time.format.DateTimeParseException;
 
-import com.example.model.ThreadDump;
 import com.example.model.ThreadInfo;
 import com.example.model.StackFrame;
+import com.example.model.StackTraceStore;
 import com.example.model.LockInfo;
 
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
-import org.json.simple.parser.ParseException;
-
+/**
+ * Parser for the JSON export format. The document is walked with a
+ * {@link JsonReader} and each entry of {@code "threads"} is turned into a
+ * {@link ThreadInfo} as soon as it has been read, so no document tree is
+ * built.
+ *
+ * <p>The header fields {@code timestamp}, {@code jvmVersion} and
+ * {@code jvmUptime} are normally written before {@code threads}. The dump
+ * is started when {@code threads} begins with the fields read so far;
+ * fields that are missing or only follow the threads are left at their
+ * defaults, so threads are never held back.</p>
+ *
+ * <p>Threads may carry the optional {@code cpuTimeNanos} and
+ * {@code elapsedNanos} fields, which dumps captured in process record
+ * where the JVM measures them.</p>
+ */
 public class JsonThreadDumpParser implements ThreadDumpParser {
     @Override
-    public ThreadDump parse(InputStream in) throws IOException {
-        JSONParser parser = new JSONParser();
-        try {
-            JSONObject root = (JSONObject) parser.parse(new InputStreamReader(in, StandardCharsets.UTF_8));
-            Instant ts = Instant.now();
-            String jvmVersion = null;
-            long uptime = -1;
-            Object tsVal = root.get("timestamp");
-            if (tsVal instanceof String) {
-                try {
-                    ts = Instant.parse((String) tsVal);
-                } catch (Exception e) {
-                    // ignore and use current time
-                }
-            }
-            Object verVal = root.get("jvmVersion");
-            if (verVal instanceof String) {
-                jvmVersion = (String) verVal;
-            }
-            Object upVal = root.get("jvmUptime");
-            if (upVal instanceof Number) {
-                uptime = ((Number) upVal).longValue();
-            }
+    public void parse(InputStream in, ThreadDumpHandler handler) throws IOException {
+        JsonReader reader = new JsonReader(in);
+        SymbolTable symbols = new SymbolTable();
+        Instant ts = null;
+        String jvmVersion = null;
+        long uptime = -1;
+        boolean started = false;
+        ThreadInfo.Builder builder = new ThreadInfo.Builder().stackTraces(StackTraceStore.shared());
 
-            List<ThreadInfo> threads = new ArrayList<>();
-            Object arrObj = root.get("threads");
-            if (arrObj instanceof JSONArray) {
-                JSONArray arr = (JSONArray) arrObj;
-                for (Object o : arr) {
-                    if (!(o instanceof JSONObject)) continue;
-                    JSONObject t = (JSONObject) o;
-                    long id = -1;
-                    Object idObj = t.get("id");
-                    if (idObj instanceof Number) {
-                        id = ((Number) idObj).longValue();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "timestamp":
+                    ts = parseTimestamp(reader, symbols);
+                    break;
+                case "jvmVersion":
+                    jvmVersion = reader.peek() == JsonReader.Token.STRING ? reader.nextString(symbols) : skip(reader, null);
+                    break;
+                case "jvmUptime":
+                    uptime = reader.peek() == JsonReader.Token.NUMBER ? reader.nextLong() : skip(reader, -1L);
+                    break;
+                case "threads":
+                    if (reader.peek() != JsonReader.Token.BEGIN_ARRAY) {
+                        reader.skipValue();
+                        break;
+                    }
+                    if (!started) {
+                        handler.onDumpStart(new DumpHeader(ts, jvmVersion, uptime));
+                        started = true;
                     }
-                    int prio = -1;
-                    Object prioObj = t.get("priority");
-                    if (prioObj instanceof Number) {
-                        prio = ((Number) prioObj).intValue();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        if (reader.peek() != JsonReader.Token.BEGIN_OBJECT) {
+                            reader.skipValue();
+                            continue;
+                        }
+                        handler.onThread(readThread(reader, symbols, builder));
                     }
-                    boolean daemonFlag = Boolean.TRUE.equals(t.get("daemon"));
-                    String name = String.valueOf(t.getOrDefault("name", "unknown"));
-                    String stateStr = String.valueOf(t.getOrDefault("state", "RUNNABLE"));
-                    Thread.State state;
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        reader.endDocument();
+
+        if (!started) {
+            handler.onDumpStart(new DumpHeader(ts, jvmVersion, uptime));
+        }
+        handler.onDumpEnd();
+    }
+
+    private static Instant parseTimestamp(JsonReader reader, SymbolTable symbols) throws IOException {
+        if (reader.peek() != JsonReader.Token.STRING) {
+            reader.skipValue();
+            return null;
+        }
+        try {
+            return Instant.parse(reader.nextString(symbols));
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static ThreadInfo readThread(JsonReader reader, SymbolTable symbols, ThreadInfo.Builder thread)
+            throws IOException {
+        thread.name("unknown");
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    thread.id(reader.peek() == JsonReader.Token.NUMBER ? reader.nextLong() : skip(reader, -1L));
+                    break;
+                case "priority":
+                    thread.priority(reader.peek() == JsonReader.Token.NUMBER ? (int) reader.nextLong() : skip(reader, -1));
+                    break;
+                case "daemon":
+                    thread.daemon(reader.peek() == JsonReader.Token.BOOLEAN ? reader.nextBoolean() : skip(reader, false));
+                    break;
+                case "cpuTimeNanos":
+                    thread.cpuTimeNanos(reader.peek() == JsonReader.Token.NUMBER ? reader.nextLong() : skip(reader, -1L));
+                    break;
+                case "elapsedNanos":
+                    thread.elapsedNanos(reader.peek() == JsonReader.Token.NUMBER ? reader.nextLong() : skip(reader, -1L));
+                    break;
+                case "name":
+                    thread.name(String.valueOf(reader.nextText(symbols)));
+                    break;
+                case "state":
                     try {
-                        state = Thread.State.valueOf(stateStr);
+                        thread.state(Thread.State.valueOf(String.valueOf(reader.nextText(symbols))));
                     } catch (IllegalArgumentException ex) {
-                        state = Thread.State.RUNNABLE;
+                        thread.state(Thread.State.RUNNABLE);
                     }
-
-                    List<StackFrame> stack = new ArrayList<>();
-                    Object stackObj = t.get("stack");
-                    if (stackObj instanceof JSONArray) {
-                        for (Object fo : (JSONArray) stackObj) {
-                            if (!(fo instanceof JSONObject)) continue;
-                            JSONObject f = (JSONObject) fo;
-                            String cls = String.valueOf(f.getOrDefault("className", "?"));
-                            String method = String.valueOf(f.getOrDefault("methodName", "?"));
-                            String file = String.valueOf(f.getOrDefault("fileName", "?"));
-                            int line = -1;
-                            Object lineObj = f.get("lineNumber");
-                            if (lineObj instanceof Number) {
-                                line = ((Number) lineObj).intValue();
-                            }
-                            stack.add(new StackFrame(cls, method, file, line));
+                    break;
+                case "stack":
+                    if (reader.peek() != JsonReader.Token.BEGIN_ARRAY) {
+                        reader.skipValue();
+                        break;
+                    }
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        if (reader.peek() == JsonReader.Token.BEGIN_OBJECT) {
+                            thread.addFrame(readFrame(reader, symbols));
+                        } else {
+                            reader.skipValue();
                         }
                     }
-
-                    List<LockInfo> locked = new ArrayList<>();
-                    Object lockedObj = t.get("lockedMonitors");
-                    if (lockedObj instanceof JSONArray) {
-                        for (Object lo : (JSONArray) lockedObj) {
-                            if (!(lo instanceof JSONObject)) continue;
-                            JSONObject l = (JSONObject) lo;
-                            String cls = String.valueOf(l.getOrDefault("className", "?"));
-                            String ident = String.valueOf(l.getOrDefault("identity", "?"));
-                            locked.add(new LockInfo(cls, ident));
+                    reader.endArray();
+                    break;
+                case "lockedMonitors":
+                    if (reader.peek() != JsonReader.Token.BEGIN_ARRAY) {
+                        reader.skipValue();
+                        break;
+                    }
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        if (reader.peek() == JsonReader.Token.BEGIN_OBJECT) {
+                            thread.addLockedMonitor(readLock(reader, symbols));
+                        } else {
+                            reader.skipValue();
                         }
                     }
-
-                    LockInfo waiting = null;
-                    Object waitObj = t.get("waitingOn");
-                    if (waitObj instanceof JSONObject) {
-                        JSONObject w = (JSONObject) waitObj;
-                        String cls = String.valueOf(w.getOrDefault("className", "?"));
-                        String ident = String.valueOf(w.getOrDefault("identity", "?"));
-                        waiting = new LockInfo(cls, ident);
+                    reader.endArray();
+                    break;
+                case "waitingOn":
+                    if (reader.peek() == JsonReader.Token.BEGIN_OBJECT) {
+                        thread.waitingOn(readLock(reader, symbols));
+                    } else {
+                        reader.skipValue();
                     }
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return thread.build();
+    }
 
-                    threads.add(new ThreadInfo(id, name, state, stack, locked, waiting, prio, daemonFlag));
-                }
+    private static StackFrame readFrame(JsonReader reader, SymbolTable symbols) throws IOException {
+        String cls = "?";
+        String method = "?";
+        String file = "?";
+        int line = -1;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "className":
+                    cls = String.valueOf(reader.nextText(symbols));
+                    break;
+                case "methodName":
+                    method = String.valueOf(reader.nextText(symbols));
+                    break;
+                case "fileName":
+                    file = String.valueOf(reader.nextText(symbols));
+                    break;
+                case "lineNumber":
+                    line = reader.peek() == JsonReader.Token.NUMBER ? (int) reader.nextLong() : skip(reader, -1);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
             }
+        }
+        reader.endObject();
+        return new StackFrame(cls, method, file, line);
+    }
 
-            return new ThreadDump(ts, threads, null, jvmVersion, uptime);
-        } catch (ParseException e) {
-            throw new IOException("Invalid JSON", e);
+    private static LockInfo readLock(JsonReader reader, SymbolTable symbols) throws IOException {
+        String cls = "?";
+        String ident = "?";
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "className":
+                    cls = String.valueOf(reader.nextText(symbols));
+                    break;
+                case "identity":
+                    ident = String.valueOf(reader.nextText(symbols));
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
         }
+        reader.endObject();
+        return new LockInfo(cls, ident);
+    }
+
+    private static <T> T skip(JsonReader reader, T fallback) throws IOException {
+        reader.skipValue();
+        return fallback;
     }
 }
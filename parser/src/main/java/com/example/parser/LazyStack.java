@@ -0,0 +1,91 @@
+package com.example.parser;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import com.example.model.StackFrame;
+import com.example.model.StackTraceStore;
+
+/**
+ * Stack of a HotSpot thread left as a range of raw lines in the buffer
+ * the dump was parsed from. The frames are tokenized only when the stack
+ * is first requested; lock lines inside the range are skipped, as they
+ * were already turned into {@link com.example.model.LockInfo} objects
+ * during parsing.
+ *
+ * <p>Lazy stacks are used when a dump is parsed from a heap
+ * {@link ByteBuffer}, which stays reachable for as long as one of its
+ * threads still has an unloaded stack. Direct buffers, in particular
+ * memory-mapped files that may be truncated or rewritten after parsing,
+ * get their stacks built up front, as does every buffer when the system
+ * property {@value #LAZY_PROPERTY} is set to {@code false}.</p>
+ */
+final class LazyStack implements Supplier<List<StackFrame>> {
+    /** System property that disables lazy stacks when set to {@code false}. */
+    static final String LAZY_PROPERTY = "threaddump.lazyStacks";
+
+    private static final boolean ENABLED = !"false".equals(System.getProperty(LAZY_PROPERTY));
+
+    private final ByteBuffer source;
+    private final int from;
+    private final int to;
+    private final FrameCache frames;
+    private final StackTraceStore stackTraces;
+
+    /**
+     * @param source buffer holding the dump
+     * @param from absolute offset of the first frame line
+     * @param to absolute offset just past the last frame line
+     * @param frames cache consulted before tokenizing a frame
+     * @param stackTraces store the loaded stack is interned in
+     */
+    LazyStack(ByteBuffer source, int from, int to, FrameCache frames, StackTraceStore stackTraces) {
+        this.source = source;
+        this.from = from;
+        this.to = to;
+        this.frames = frames;
+        this.stackTraces = stackTraces;
+    }
+
+    /**
+     * Whether parsers should defer building the stacks of a dump held in
+     * a buffer: only if lazy stacks are enabled in this JVM, frames are
+     * wanted and the bytes live in a heap array the dump can keep.
+     */
+    static boolean usable(ByteBuffer buffer, ParseOptions options) {
+        return ENABLED && options.includesFrames() && buffer.hasArray();
+    }
+
+    @Override
+    public List<StackFrame> get() {
+        byte[] buf = new byte[to - from];
+        source.get(from, buf);
+        HotSpotLineTokenizer tokenizer = new HotSpotLineTokenizer();
+        List<StackFrame> stack = new ArrayList<>();
+        int start = 0;
+        while (start < buf.length) {
+            int nl = ByteScanner.get().indexOf(buf, (byte) '\n', start, buf.length);
+            int next = nl < 0 ? buf.length : nl + 1;
+            int end = nl < 0 ? buf.length : nl;
+            if (end > start && buf[end - 1] == '\r') {
+                end--;
+            }
+            int frameStart = HotSpotLineTokenizer.frameStart(buf, start, end);
+            if (frameStart >= 0) {
+                StackFrame frame = frames.get(buf, frameStart, end);
+                if (frame == null && tokenizer.classify(buf, start, end) == HotSpotLineTokenizer.LineType.FRAME) {
+                    frame = new StackFrame(tokenizer.getClassName(), tokenizer.getMethodName(),
+                            tokenizer.getFileName(), tokenizer.getLineNumber());
+                    frames.put(buf, frameStart, end, frame);
+                }
+                if (frame != null) {
+                    stack.add(frame);
+                }
+            }
+            start = next;
+        }
+        return stackTraces.isEnabled() ? stackTraces.intern(stack) : stack;
+    }
+}
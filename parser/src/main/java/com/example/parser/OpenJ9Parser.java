@@ -4,15 +4,14 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import com.example.model.ThreadDump;
 import com.example.model.ThreadInfo;
 import com.example.model.StackFrame;
+import com.example.model.SymbolInterner;
 import com.example.model.LockInfo;
 
 public class OpenJ9Parser implements ThreadDumpParser {
@@ -24,9 +23,9 @@ public class OpenJ9Parser implements ThreadDumpParser {
             Pattern.compile("^4XESTACKTRACE\\s+at ([^.(]+)\\.([^.(]+)\\(([^:]+)(?::(\\d+))?\\)");
 
     @Override
-    public ThreadDump parse(InputStream in) throws IOException {
+    public void parse(InputStream in, ThreadDumpHandler handler) throws IOException {
         BufferedReader reader = new BufferedReader(new InputStreamReader(in));
-        List<ThreadInfo> threads = new ArrayList<>();
+        handler.onDumpStart(new DumpHeader(null, null, -1));
 
         String line;
         String currentName = null;
@@ -42,13 +41,13 @@ public class OpenJ9Parser implements ThreadDumpParser {
             Matcher header = THREAD_HEADER.matcher(line);
             if (header.find()) {
                 if (currentName != null) {
-                    threads.add(new ThreadInfo(currentId, currentName, currentState,
+                    handler.onThread(new ThreadInfo(currentId, currentName, currentState,
                             currentStack, currentLocked, waitingOn, currentPrio, currentDaemon));
                     currentStack = new ArrayList<>();
                     currentLocked = new ArrayList<>();
                     waitingOn = null;
                 }
-                currentName = header.group(1);
+                currentName = SymbolInterner.intern(header.group(1));
                 currentState = mapState(header.group(2));
                 currentId = -1;
                 currentPrio = -1;
@@ -83,15 +82,15 @@ public class OpenJ9Parser implements ThreadDumpParser {
                         ln = -1;
                     }
                 }
-                currentStack.add(new StackFrame(cls, method, file, ln));
+                currentStack.add(new StackFrame(SymbolInterner.intern(cls), SymbolInterner.intern(method), SymbolInterner.intern(file), ln));
             }
         }
 
         if (currentName != null) {
-            threads.add(new ThreadInfo(currentId, currentName, currentState, currentStack, currentLocked, waitingOn, currentPrio, currentDaemon));
+            handler.onThread(new ThreadInfo(currentId, currentName, currentState, currentStack, currentLocked, waitingOn, currentPrio, currentDaemon));
         }
 
-        return new ThreadDump(Instant.now(), threads, null, null, -1);
+        handler.onDumpEnd();
     }
 
     private Thread.State mapState(String code) {
@@ -0,0 +1,186 @@
+package com.example.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import com.example.model.ThreadInfo;
+
+/**
+ * HotSpot parser that splits a single large dump into chunks at thread
+ * header boundaries and parses the chunks concurrently on a
+ * {@link ForkJoinPool}. Threads are reported to the handler in their
+ * original order, and the dump header is parsed once up front,
+ * so the result is the same as with {@link HotSpotParser}.
+ *
+ * <p>The whole dump has to be addressable for splitting. Parsing from a
+ * {@link ByteBuffer}, such as a memory-mapped file, is therefore
+ * preferred; an {@link InputStream} is read fully into memory first.</p>
+ */
+public class ParallelHotSpotParser implements ThreadDumpParser {
+    /** Default target size of a chunk in bytes. */
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private final int chunkSize;
+    private final int parallelism;
+
+    /**
+     * Create a parser using {@link #DEFAULT_CHUNK_SIZE} and one worker per
+     * available processor.
+     */
+    public ParallelHotSpotParser() {
+        this(DEFAULT_CHUNK_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param chunkSize target size of a chunk in bytes; a chunk is extended
+     *                  up to the next thread header
+     * @param parallelism maximum number of chunks parsed at the same time
+     */
+    public ParallelHotSpotParser(int chunkSize, int parallelism) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    @Override
+    public void parse(InputStream in, ThreadDumpHandler handler) throws IOException {
+        parse(ByteBuffer.wrap(in.readAllBytes()), ParseOptions.all(), handler);
+    }
+
+    @Override
+    public void parse(InputStream in, ParseOptions options, ThreadDumpHandler handler) throws IOException {
+        parse(ByteBuffer.wrap(in.readAllBytes()), options, handler);
+    }
+
+    @Override
+    public void parse(ByteBuffer buffer, ThreadDumpHandler handler) throws IOException {
+        parse(buffer, ParseOptions.all(), handler);
+    }
+
+    @Override
+    public void parse(ByteBuffer buffer, ParseOptions options, ThreadDumpHandler handler) throws IOException {
+        int start = buffer.position();
+        int limit = buffer.limit();
+        ByteLineReader headerReader = new ByteLineReader(new ByteBufferInputStream(buffer));
+        handler.onDumpStart(HotSpotParser.readHeader(headerReader));
+        int bodyStart = (int) (start + headerReader.position());
+
+        List<int[]> chunks = split(buffer, bodyStart, limit);
+        // lazy stacks keep reading from this view after parse returns
+        ByteBuffer source = buffer.duplicate();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<Future<List<ThreadInfo>>> results = new ArrayList<>();
+            for (int[] chunk : chunks) {
+                results.add(pool.submit(() -> parseChunk(source, chunk[0], chunk[1], options)));
+            }
+            for (Future<List<ThreadInfo>> result : results) {
+                for (ThreadInfo thread : result.get()) {
+                    handler.onThread(thread);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            throw new IOException("Failed to parse chunk", cause);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        handler.onDumpEnd();
+    }
+
+    /**
+     * Split {@code [from, to)} into ranges of roughly {@link #chunkSize}
+     * bytes, each ending right before a line that starts a thread header.
+     */
+    private List<int[]> split(ByteBuffer buffer, int from, int to) {
+        List<int[]> chunks = new ArrayList<>();
+        int chunkStart = from;
+        while (chunkStart < to) {
+            int boundary = nextHeader(buffer, (int) Math.min((long) chunkStart + chunkSize, to), to);
+            chunks.add(new int[] {chunkStart, boundary});
+            chunkStart = boundary;
+        }
+        return chunks;
+    }
+
+    /**
+     * Find the start of the first line at or after {@code from} that looks
+     * like a thread header, i.e. starts with a quoted, non-empty name.
+     */
+    private static int nextHeader(ByteBuffer buffer, int from, int to) {
+        int pos = from;
+        while (pos < to) {
+            int nl = indexOf(buffer, (byte) '\n', pos, to);
+            if (nl < 0) {
+                return to;
+            }
+            int line = nl + 1;
+            if (line < to && buffer.get(line) == '"') {
+                int close = line + 1;
+                while (close < to && buffer.get(close) != '"' && buffer.get(close) != '\n') {
+                    close++;
+                }
+                if (close < to && buffer.get(close) == '"' && close > line + 1) {
+                    return line;
+                }
+            }
+            pos = line;
+        }
+        return to;
+    }
+
+    private static List<ThreadInfo> parseChunk(ByteBuffer buffer, int from, int to, ParseOptions options) {
+        List<ThreadInfo> threads = new ArrayList<>();
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(to).position(from);
+        ByteLineReader reader = new ByteLineReader(new ByteBufferInputStream(slice));
+        boolean lazy = LazyStack.usable(buffer, options);
+        HotSpotThreadAssembler assembler =
+                new HotSpotThreadAssembler(threads::add, FrameCache.shared(), lazy ? buffer : null, options);
+        try {
+            while (reader.nextLine()) {
+                assembler.accept(reader.buffer(), reader.start(), reader.end(), from + (int) reader.lineOffset());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        assembler.finish();
+        return threads;
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
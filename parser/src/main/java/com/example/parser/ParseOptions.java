@@ -0,0 +1,239 @@
+package com.example.parser;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import com.example.model.LockInfo;
+import com.example.model.StackFrame;
+import com.example.model.ThreadContainer;
+import com.example.model.ThreadInfo;
+
+/**
+ * Describes which parts of a dump a caller actually needs, so that a
+ * parser can avoid building the rest. Options can leave out stack frames
+ * or lock information, cap the number of frames kept per thread, and drop
+ * threads whose state or name does not match.
+ *
+ * <p>Instances are immutable; each {@code with...} method returns a
+ * modified copy. {@link #all()} keeps everything and is what the plain
+ * {@code parse} methods use. The HotSpot parsers apply the options while
+ * reading, skipping frame and lock lines and whole thread blocks without
+ * tokenizing them; other parsers parse as usual and the options are
+ * applied to each thread before it reaches the handler.</p>
+ */
+public final class ParseOptions {
+    private static final ParseOptions ALL = new ParseOptions(true, -1, true, null, null);
+
+    private final boolean frames;
+    private final int maxStackDepth;
+    private final boolean locks;
+    private final Set<Thread.State> states;
+    private final Pattern namePattern;
+
+    private ParseOptions(boolean frames, int maxStackDepth, boolean locks,
+                         Set<Thread.State> states, Pattern namePattern) {
+        this.frames = frames;
+        this.maxStackDepth = maxStackDepth;
+        this.locks = locks;
+        this.states = states;
+        this.namePattern = namePattern;
+    }
+
+    /**
+     * Options that keep every thread with all of its frames and locks.
+     */
+    public static ParseOptions all() {
+        return ALL;
+    }
+
+    /**
+     * Leave out stack frames; every thread gets an empty stack.
+     */
+    public ParseOptions withoutFrames() {
+        return new ParseOptions(false, maxStackDepth, locks, states, namePattern);
+    }
+
+    /**
+     * Keep at most the top {@code depth} frames of each stack.
+     *
+     * @param depth maximum number of frames, or -1 for no limit
+     */
+    public ParseOptions withMaxStackDepth(int depth) {
+        if (depth < -1) {
+            throw new IllegalArgumentException("depth must be -1 or non-negative");
+        }
+        return new ParseOptions(frames, depth, locks, states, namePattern);
+    }
+
+    /**
+     * Leave out held monitors and the lock a thread is waiting on.
+     */
+    public ParseOptions withoutLocks() {
+        return new ParseOptions(frames, maxStackDepth, false, states, namePattern);
+    }
+
+    /**
+     * Keep only threads in one of the given states.
+     */
+    public ParseOptions withStates(Set<Thread.State> states) {
+        EnumSet<Thread.State> copy = EnumSet.noneOf(Thread.State.class);
+        copy.addAll(states);
+        return new ParseOptions(frames, maxStackDepth, locks, copy, namePattern);
+    }
+
+    /**
+     * Keep only threads whose whole name matches a regular expression.
+     */
+    public ParseOptions withNamePattern(Pattern pattern) {
+        return new ParseOptions(frames, maxStackDepth, locks, states, Objects.requireNonNull(pattern));
+    }
+
+    /**
+     * Keep every thread, regardless of state or name, while still leaving
+     * out frames and locks as before.
+     */
+    public ParseOptions withAllThreads() {
+        return new ParseOptions(frames, maxStackDepth, locks, null, null);
+    }
+
+    public boolean includesFrames() {
+        return frames && maxStackDepth != 0;
+    }
+
+    /**
+     * @return maximum number of frames kept per thread, or -1 for no limit
+     */
+    public int getMaxStackDepth() {
+        return frames ? maxStackDepth : 0;
+    }
+
+    public boolean includesLocks() {
+        return locks;
+    }
+
+    /**
+     * Whether every thread is kept in full, i.e. these options change
+     * nothing.
+     */
+    public boolean isAll() {
+        return frames && maxStackDepth < 0 && locks && states == null && namePattern == null;
+    }
+
+    /**
+     * Whether a thread in the given state is kept.
+     */
+    public boolean acceptsState(Thread.State state) {
+        return states == null || states.contains(state);
+    }
+
+    /**
+     * Whether a thread with the given name is kept.
+     */
+    public boolean acceptsName(String name) {
+        return namePattern == null || (name != null && namePattern.matcher(name).matches());
+    }
+
+    /**
+     * Apply these options to a thread that was parsed in full.
+     *
+     * @return the thread trimmed to what the options keep, or null if the
+     *         thread is dropped
+     */
+    public ThreadInfo apply(ThreadInfo thread) {
+        if (isAll()) {
+            return thread;
+        }
+        if (!acceptsState(thread.getState()) || !acceptsName(thread.getName())) {
+            return null;
+        }
+        if (includesFrames() && maxStackDepth < 0 && locks) {
+            return thread;
+        }
+        List<StackFrame> stack = List.of();
+        if (includesFrames()) {
+            stack = thread.getStack();
+            if (maxStackDepth >= 0 && stack.size() > maxStackDepth) {
+                // walked with an iterator, which is cheap for interned stacks too
+                List<StackFrame> top = new ArrayList<>(maxStackDepth);
+                for (StackFrame frame : stack) {
+                    if (top.size() == maxStackDepth) {
+                        break;
+                    }
+                    top.add(frame);
+                }
+                stack = top;
+            }
+        }
+        List<LockInfo> locked = locks ? thread.getLockedMonitors() : List.of();
+        LockInfo waitingOn = locks ? thread.getWaitingOn() : null;
+        return new ThreadInfo(thread.getId(), thread.getName(), thread.getState(), stack,
+                locked, waitingOn, thread.getPriority(), thread.isDaemon(), thread.getContainer(),
+                thread.getCpuTimeNanos(), thread.getElapsedNanos());
+    }
+
+    /**
+     * Wrap a handler so that it only receives threads as trimmed by
+     * {@link #apply(ThreadInfo)}.
+     */
+    public ThreadDumpHandler filter(ThreadDumpHandler handler) {
+        if (isAll()) {
+            return handler;
+        }
+        return new ThreadDumpHandler() {
+            @Override
+            public void onDumpStart(DumpHeader header) {
+                handler.onDumpStart(header);
+            }
+
+            @Override
+            public void onContainer(ThreadContainer container) {
+                handler.onContainer(container);
+            }
+
+            @Override
+            public void onThread(ThreadInfo thread) {
+                ThreadInfo kept = apply(thread);
+                if (kept != null) {
+                    handler.onThread(kept);
+                }
+            }
+
+            @Override
+            public void onDumpEnd() {
+                handler.onDumpEnd();
+            }
+        };
+    }
+
+    /**
+     * Stable text form of these options, suitable as part of a cache key.
+     * Equal options produce equal keys.
+     */
+    public String key() {
+        if (isAll()) {
+            return "all";
+        }
+        return "depth=" + getMaxStackDepth() + ",locks=" + locks
+                + ",states=" + (states == null ? "*" : states)
+                + ",name=" + (namePattern == null ? "*" : namePattern.pattern());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ParseOptions && key().equals(((ParseOptions) o).key());
+    }
+
+    @Override
+    public int hashCode() {
+        return key().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "ParseOptions[" + key() + "]";
+    }
+}
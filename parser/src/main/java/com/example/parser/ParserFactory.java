@@ -4,16 +4,28 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import com.example.model.ThreadDump;
 
 public final class ParserFactory {
     private ParserFactory() {}
 
+    /**
+     * System property giving the size in bytes from which a HotSpot dump
+     * in a buffer is parsed by a {@link ParallelHotSpotParser}.
+     */
+    public static final String PARALLEL_PROPERTY = "threaddump.parallel.minBytes";
+    public static final int DEFAULT_PARALLEL_BYTES = 16 * 1024 * 1024;
+
     private static final String[] SUPPORTED_FORMATS = {
             "HotSpot",
             "hs_err_pid",
             "OpenJ9",
             "Android ART",
-            "JSON"
+            "JSON",
+            "JDK 21 JSON (jcmd Thread.dump_to_file)"
     };
 
     /**
@@ -34,7 +46,68 @@ public final class ParserFactory {
             sb.append(line).append('\n');
         }
         in.reset();
-        String header = sb.toString();
+        return detect(sb.toString());
+    }
+
+    /**
+     * Choose a parser by looking at the first lines of a buffer. The
+     * buffer's position is not modified. A HotSpot dump of at least
+     * {@value #DEFAULT_PARALLEL_BYTES} bytes, or the size given by the
+     * system property {@value #PARALLEL_PROPERTY}, gets a
+     * {@link ParallelHotSpotParser} if more than one processor is available.
+     *
+     * @param buffer dump contents
+     * @return parser for the detected format
+     */
+    public static ThreadDumpParser detect(ByteBuffer buffer) {
+        ByteBuffer head = buffer.duplicate();
+        byte[] bytes = new byte[Math.min(head.remaining(), 8192)];
+        head.get(bytes);
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        int end = -1;
+        for (int i = 0; i < 10; i++) {
+            int nl = text.indexOf('\n', end + 1);
+            if (nl < 0) {
+                end = text.length() - 1;
+                break;
+            }
+            end = nl;
+        }
+        ThreadDumpParser parser = detect(text.substring(0, end + 1));
+        if (parser instanceof HotSpotParser && Runtime.getRuntime().availableProcessors() > 1
+                && buffer.remaining() >= Integer.getInteger(PARALLEL_PROPERTY, DEFAULT_PARALLEL_BYTES)) {
+            return new ParallelHotSpotParser();
+        }
+        return parser;
+    }
+
+    /**
+     * Detect the format of a stream and parse it, keeping only what the
+     * options ask for. The stream must support mark/reset.
+     *
+     * @param in dump contents
+     * @param options parts of the dump to keep
+     * @return parsed dump
+     */
+    public static ThreadDump parse(InputStream in, ParseOptions options) throws IOException {
+        return detect(in).parse(in, options);
+    }
+
+    /**
+     * Detect the format of a buffer and parse it, keeping only what the
+     * options ask for. The buffer's position is not modified.
+     *
+     * @param buffer dump contents
+     * @param options parts of the dump to keep
+     * @return parsed dump
+     */
+    public static ThreadDump parse(ByteBuffer buffer, ParseOptions options) throws IOException {
+        ThreadDumpCollector collector = new ThreadDumpCollector();
+        detect(buffer).parse(buffer, options, collector);
+        return collector.getDump();
+    }
+
+    private static ThreadDumpParser detect(String header) {
         if (header.contains("Full thread dump") || header.contains("Full Java thread dump")) {
             return new HotSpotParser();
         }
@@ -48,6 +121,9 @@ public final class ParserFactory {
             return new AndroidArtParser();
         }
         if (header.trim().startsWith("{")) {
+            if (header.contains("\"threadDump\"")) {
+                return new JcmdJsonParser();
+            }
             return new JsonThreadDumpParser();
         }
         // default to HotSpot parser
@@ -0,0 +1,162 @@
+package com.example.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads a source stream on a background thread and hands the data to the
+ * consumer in fixed size chunks through a bounded queue. Wrapping a
+ * decompressing stream in this class lets inflation run ahead of parsing
+ * instead of the parser stalling every time the decoder needs to fill its
+ * buffer.
+ *
+ * <p>Exactly {@code depth + 1} chunk buffers are allocated, so the reader
+ * can get at most {@code depth} chunks ahead of the consumer. Buffers are
+ * recycled once the consumer is done with them. An exception thrown by
+ * the source is rethrown to the consumer as an {@link IOException} when
+ * it reaches the point of failure; an {@link Error}, such as running out
+ * of memory while decoding, is rethrown as it is.</p>
+ */
+public final class PipelinedInputStream extends InputStream {
+    /** Default chunk size in bytes. */
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    /** Default number of chunks that may be queued ahead of the consumer. */
+    public static final int DEFAULT_DEPTH = 4;
+
+    private static final Chunk END = new Chunk(null, -1, null);
+
+    private final BlockingQueue<Chunk> filled;
+    private final BlockingQueue<byte[]> free;
+    private final Thread producer;
+    private Chunk current;
+    private int pos;
+    private volatile boolean closed;
+
+    /**
+     * Start reading a source with the default chunk size and depth.
+     *
+     * @param source stream to read; closed when it is exhausted or when
+     *               this stream is closed
+     */
+    public PipelinedInputStream(InputStream source) {
+        this(source, DEFAULT_CHUNK_SIZE, DEFAULT_DEPTH);
+    }
+
+    /**
+     * Start reading a source.
+     *
+     * @param source stream to read; closed when it is exhausted or when
+     *               this stream is closed
+     * @param chunkSize size of each chunk in bytes
+     * @param depth number of chunks that may be queued ahead of the consumer
+     */
+    public PipelinedInputStream(InputStream source, int chunkSize, int depth) {
+        if (chunkSize <= 0 || depth <= 0) {
+            throw new IllegalArgumentException("chunkSize and depth must be positive");
+        }
+        // one buffer more than the depth for the consumer, one queue slot
+        // more than the buffers for the end marker, so put never blocks
+        this.filled = new ArrayBlockingQueue<>(depth + 2);
+        this.free = new ArrayBlockingQueue<>(depth + 1);
+        for (int i = 0; i < depth + 1; i++) {
+            free.add(new byte[chunkSize]);
+        }
+        this.producer = new Thread(() -> produce(source), "dump-decompressor");
+        producer.setDaemon(true);
+        producer.start();
+    }
+
+    private void produce(InputStream source) {
+        try (source) {
+            while (!closed) {
+                byte[] buf = free.take();
+                int n = source.readNBytes(buf, 0, buf.length);
+                if (n == 0) {
+                    break;
+                }
+                filled.put(new Chunk(buf, n, null));
+            }
+            filled.put(END);
+        } catch (InterruptedException e) {
+            // closed by the consumer
+        } catch (Throwable e) {
+            // anything else, Errors included, must reach the consumer
+            // instead of leaving it waiting for a chunk that never comes
+            filled.offer(new Chunk(null, -1, e));
+        }
+    }
+
+    private boolean advance() throws IOException {
+        if (current != null && current.data != null) {
+            free.offer(current.data);
+        }
+        try {
+            current = filled.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for input", e);
+        }
+        pos = 0;
+        if (current.error != null) {
+            Throwable error = current.error;
+            current = END;
+            if (error instanceof Error) {
+                throw (Error) error;
+            }
+            throw new IOException(error.getMessage(), error);
+        }
+        return current != END;
+    }
+
+    @Override
+    public int read() throws IOException {
+        while (current == null || pos >= current.length) {
+            if (current == END || !advance()) {
+                return -1;
+            }
+        }
+        return current.data[pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (current == null || pos >= current.length) {
+            if (current == END || !advance()) {
+                return -1;
+            }
+        }
+        int n = Math.min(len, current.length - pos);
+        System.arraycopy(current.data, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return current == null || current == END ? 0 : current.length - pos;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        producer.interrupt();
+        current = END;
+    }
+
+    private static final class Chunk {
+        final byte[] data;
+        final int length;
+        final Throwable error;
+
+        Chunk(byte[] data, int length, Throwable error) {
+            this.data = data;
+            this.length = length;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.parser;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.example.model.SymbolInterner;
+
+/**
+ * Maps byte ranges to Strings so that a symbol occurring many times in a
+ * dump, such as a class or file name, is decoded only once and every
+ * occurrence shares the same String instance. Bytes are decoded as UTF-8,
+ * and newly decoded symbols go through {@link SymbolInterner} so that they
+ * are also shared with other dumps in memory. Instances are not thread
+ * safe and are meant to live for one parse.
+ */
+final class SymbolTable {
+    private byte[][] keys;
+    private String[] values;
+    private int[] hashes;
+    private int size;
+
+    SymbolTable() {
+        this(1024);
+    }
+
+    SymbolTable(int initialCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(16, initialCapacity) - 1) << 1;
+        keys = new byte[capacity][];
+        values = new String[capacity];
+        hashes = new int[capacity];
+    }
+
+    /**
+     * Get the String for the given bytes, decoding them on first use.
+     *
+     * @param buf buffer holding the symbol
+     * @param from start offset, inclusive
+     * @param to end offset, exclusive
+     * @return shared String instance for these bytes
+     */
+    String get(byte[] buf, int from, int to) {
+        int hash = hash(buf, from, to);
+        int mask = keys.length - 1;
+        int i = hash & mask;
+        while (keys[i] != null) {
+            if (hashes[i] == hash && Arrays.equals(keys[i], 0, keys[i].length, buf, from, to)) {
+                return values[i];
+            }
+            i = (i + 1) & mask;
+        }
+        String value = SymbolInterner.intern(new String(buf, from, to - from, StandardCharsets.UTF_8));
+        keys[i] = Arrays.copyOfRange(buf, from, to);
+        values[i] = value;
+        hashes[i] = hash;
+        if (++size * 2 > keys.length) {
+            resize();
+        }
+        return value;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void resize() {
+        byte[][] oldKeys = keys;
+        String[] oldValues = values;
+        int[] oldHashes = hashes;
+        keys = new byte[oldKeys.length * 2][];
+        values = new String[oldKeys.length * 2];
+        hashes = new int[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] == null) {
+                continue;
+            }
+            int i = oldHashes[j] & mask;
+            while (keys[i] != null) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+            hashes[i] = oldHashes[j];
+        }
+    }
+
+    private static int hash(byte[] buf, int from, int to) {
+        int h = 1;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + buf[i];
+        }
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.parser;
+
+
+import com.example.model.ThreadContainer;
+import com.example.model.ThreadDump;
+import com.example.model.ThreadInfo;
+
+/**
+ * Handler that collects all reported threads into a {@link ThreadDump}.
+ * This is what {@link ThreadDumpParser#parse(java.io.InputStream)} uses.
+ *
+ * <p>Dumps with at least {@value #DEFAULT_COLUMNAR_THREADS} threads, or the
+ * number given by the system property {@value #COLUMNAR_PROPERTY}, are
+ * stored in a {@link com.example.model.ThreadTable}, unless their stacks
+ * are still to be decoded on first access.</p>
+ */
+public class ThreadDumpCollector implements ThreadDumpHandler {
+    /** System property holding the thread count at which dumps are stored in columns. */
+    public static final String COLUMNAR_PROPERTY = "threaddump.columnar.minThreads";
+    public static final int DEFAULT_COLUMNAR_THREADS = 10_000;
+
+    private final ThreadDump.Builder dump = new ThreadDump.Builder()
+            .columnarFrom(Integer.getInteger(COLUMNAR_PROPERTY, DEFAULT_COLUMNAR_THREADS));
+    private DumpHeader header = new DumpHeader(null, null, -1);
+    private ThreadDump built;
+
+    @Override
+    public void onDumpStart(DumpHeader header) {
+        this.header = header;
+        built = null;
+    }
+
+    @Override
+    public void onThread(ThreadInfo thread) {
+        reopen().addThread(thread);
+    }
+
+    @Override
+    public void onContainer(ThreadContainer container) {
+        reopen().addContainer(container);
+    }
+
+    /**
+     * Build a dump from everything reported so far. The collected threads
+     * are handed to the dump without copying; calling this again without
+     * further callbacks returns the same dump.
+     *
+     * @return collected thread dump
+     */
+    public ThreadDump getDump() {
+        if (built == null) {
+            built = dump.timestamp(header.getTimestamp())
+                    .jvmVersion(header.getJvmVersion())
+                    .uptimeMillis(header.getUptimeMillis())
+                    .build();
+        }
+        return built;
+    }
+
+    /**
+     * Move the threads of an already built dump back into the builder, so
+     * that threads reported after {@link #getDump()} are added to them.
+     */
+    private ThreadDump.Builder reopen() {
+        if (built != null) {
+            built.getThreads().forEach(dump::addThread);
+            built.getContainers().forEach(dump::addContainer);
+            built = null;
+        }
+        return dump;
+    }
+}
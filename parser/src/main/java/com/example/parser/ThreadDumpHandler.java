@@ -0,0 +1,45 @@
+package com.example.parser;
+
+import com.example.model.ThreadContainer;
+import com.example.model.ThreadInfo;
+
+/**
+ * Receives the contents of a thread dump while it is being parsed.
+ * Parsers call {@link #onDumpStart(DumpHeader)} once, then
+ * {@link #onThread(ThreadInfo)} as soon as each thread block is complete,
+ * and finally {@link #onDumpEnd()}. Handlers that do not retain the
+ * threads they receive can therefore analyze a dump in constant memory.
+ */
+public interface ThreadDumpHandler {
+
+    /**
+     * Called once before any thread is reported.
+     *
+     * @param header dump level metadata
+     */
+    default void onDumpStart(DumpHeader header) {
+    }
+
+    /**
+     * Called for every thread in the order it appears in the dump.
+     *
+     * @param thread parsed thread
+     */
+    void onThread(ThreadInfo thread);
+
+    /**
+     * Called for formats that group threads into containers, before the
+     * first thread of the container is reported. Containers arrive in the
+     * order the dump lists them, which for jcmd is parents first.
+     *
+     * @param container container metadata
+     */
+    default void onContainer(ThreadContainer container) {
+    }
+
+    /**
+     * Called once after the last thread has been reported.
+     */
+    default void onDumpEnd() {
+    }
+}
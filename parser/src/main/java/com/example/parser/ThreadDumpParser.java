@@ -2,9 +2,72 @@ package com.example.parser;
 
 import java.io.InputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import com.example.model.ThreadDump;
 
 public interface ThreadDumpParser {
-    ThreadDump parse(InputStream in) throws IOException;
+
+    /**
+     * Parse a dump and push its contents to the given handler as each
+     * thread block is completed, without collecting the whole dump.
+     *
+     * @param in dump contents
+     * @param handler receiver of the parsed threads
+     * @throws IOException if the input cannot be read or parsed
+     */
+    void parse(InputStream in, ThreadDumpHandler handler) throws IOException;
+
+    default ThreadDump parse(InputStream in) throws IOException {
+        ThreadDumpCollector collector = new ThreadDumpCollector();
+        parse(in, collector);
+        return collector.getDump();
+    }
+
+    /**
+     * Parse a dump held in a buffer, for example a memory-mapped file.
+     * The bytes between the buffer's position and limit are parsed; the
+     * buffer's position is not modified.
+     *
+     * @param buffer dump contents
+     * @param handler receiver of the parsed threads
+     * @throws IOException if the dump cannot be parsed
+     */
+    default void parse(ByteBuffer buffer, ThreadDumpHandler handler) throws IOException {
+        parse(new ByteBufferInputStream(buffer), handler);
+    }
+
+    /**
+     * Parse a dump, keeping only what the options ask for. The default
+     * implementation parses everything and trims each thread before it
+     * reaches the handler; parsers that can skip work while reading
+     * override this.
+     *
+     * @param in dump contents
+     * @param options parts of the dump to keep
+     * @param handler receiver of the parsed threads
+     * @throws IOException if the input cannot be read or parsed
+     */
+    default void parse(InputStream in, ParseOptions options, ThreadDumpHandler handler) throws IOException {
+        parse(in, options.filter(handler));
+    }
+
+    /**
+     * Parse a dump held in a buffer, keeping only what the options ask
+     * for. The buffer's position is not modified.
+     *
+     * @param buffer dump contents
+     * @param options parts of the dump to keep
+     * @param handler receiver of the parsed threads
+     * @throws IOException if the dump cannot be parsed
+     */
+    default void parse(ByteBuffer buffer, ParseOptions options, ThreadDumpHandler handler) throws IOException {
+        parse(buffer, options.filter(handler));
+    }
+
+    default ThreadDump parse(InputStream in, ParseOptions options) throws IOException {
+        ThreadDumpCollector collector = new ThreadDumpCollector();
+        parse(in, options, collector);
+        return collector.getDump();
+    }
 }
@@ -0,0 +1,149 @@
+package com.example.parser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.example.model.ThreadDump;
+
+/**
+ * Lazily splits a log containing many concatenated HotSpot thread dumps,
+ * for example a {@code catalina.out} that received several {@code kill -3}
+ * signals, into one {@link ThreadDump} per dump. Input is only read as
+ * far as needed to produce the next dump, so memory use is bounded by the
+ * largest single dump rather than by the size of the log.
+ *
+ * <pre>
+ * try (ThreadDumpSplitter splitter = new ThreadDumpSplitter(in)) {
+ *     splitter.stream().forEach(session::addThreadDump);
+ * }
+ * </pre>
+ *
+ * Read errors are reported as {@link UncheckedIOException}.
+ */
+public class ThreadDumpSplitter implements Iterator<ThreadDump>, Closeable {
+    private final InputStream in;
+    private final ByteLineReader reader;
+    private final Deque<ThreadDump> ready = new ArrayDeque<>();
+    private final ConcatenatedDumpAssembler assembler;
+    private final int base;
+    private boolean eof;
+
+    public ThreadDumpSplitter(InputStream in) {
+        this(in, ParseOptions.all());
+    }
+
+    /**
+     * @param options parts of each dump to keep
+     */
+    public ThreadDumpSplitter(InputStream in, ParseOptions options) {
+        this.in = in;
+        this.reader = new ByteLineReader(in);
+        this.assembler = new ConcatenatedDumpAssembler(ready::add, options);
+        this.base = 0;
+    }
+
+    /**
+     * Split a log held in a buffer. As with
+     * {@link HotSpotParser#parse(ByteBuffer, ParseOptions, ThreadDumpHandler)},
+     * the stacks of a heap buffer are left to be decoded on first access.
+     *
+     * @param log log contents between position and limit, left unchanged
+     * @param options parts of each dump to keep
+     */
+    public ThreadDumpSplitter(ByteBuffer log, ParseOptions options) {
+        ByteBuffer source = log.duplicate();
+        this.in = new ByteBufferInputStream(source);
+        this.reader = new ByteLineReader(in);
+        this.assembler = new ConcatenatedDumpAssembler(ready::add, options,
+                LazyStack.usable(log, options) ? source : null);
+        this.base = source.position();
+    }
+
+    /**
+     * Whether a log holds more than one HotSpot dump. Only the start of
+     * each line is looked at, and scanning stops at the second dump.
+     *
+     * @param log uncompressed log contents between position and limit,
+     *            left unchanged
+     */
+    public static boolean isConcatenated(ByteBuffer log) {
+        return ConcatenatedDumpAssembler.countDumps(log, 2) >= 2;
+    }
+
+    /**
+     * Whether a stream holds more than one HotSpot dump. Lines are read
+     * until the second dump starts or the stream ends; the stream is not
+     * closed.
+     *
+     * @param log uncompressed log contents
+     */
+    public static boolean isConcatenated(InputStream log) throws IOException {
+        ByteLineReader reader = new ByteLineReader(log);
+        int count = 0;
+        while (count < 2 && reader.nextLine()) {
+            if (ConcatenatedDumpAssembler.startsDump(reader.buffer(), reader.start(), reader.end())) {
+                count++;
+            }
+        }
+        return count >= 2;
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            while (ready.isEmpty() && !eof) {
+                if (reader.nextLine()) {
+                    assembler.accept(reader.buffer(), reader.start(), reader.end(), base + (int) reader.lineOffset());
+                } else {
+                    eof = true;
+                    assembler.finish();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return !ready.isEmpty();
+    }
+
+    @Override
+    public ThreadDump next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return ready.poll();
+    }
+
+    /**
+     * Get the remaining dumps as a sequential, lazily evaluated stream.
+     * Closing the stream closes the underlying input.
+     *
+     * @return stream of dumps in the order they appear in the log
+     */
+    public Stream<ThreadDump> stream() {
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    try {
+                        close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.parser;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link ByteScanner} that compares {@link ByteVector#SPECIES_PREFERRED}
+ * bytes at a time. Only loaded through {@link ByteScanner#vector()} once
+ * the {@code jdk.incubator.vector} module is known to be present.
+ */
+final class VectorByteScanner extends ByteScanner {
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    @Override
+    int indexOf(byte[] buf, byte b, int from, int to) {
+        int i = from;
+        int bound = from + SPECIES.loopBound(to - from);
+        for (; i < bound; i += SPECIES.length()) {
+            VectorMask<Byte> match = ByteVector.fromArray(SPECIES, buf, i).eq(b);
+            if (match.anyTrue()) {
+                return i + match.firstTrue();
+            }
+        }
+        for (; i < to; i++) {
+            if (buf[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    String name() {
+        return "vector(" + SPECIES.vectorBitSize() + ")";
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.parser;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compares the {@link ByteScanner} backends on a generated HotSpot dump of
+ * 20,000 threads, for the newline scan alone and for a full parse. Not
+ * part of the regular test run; start it with
+ *
+ * <pre>
+ * mvn -Pvector -pl parser test -Dtest=ByteScannerBenchmark
+ * </pre>
+ *
+ * Without the {@code vector} profile only the scalar backend is measured.
+ * Each measurement is repeated and the last runs are printed, so the JIT
+ * has settled by then.
+ */
+public class ByteScannerBenchmark {
+    private static final int THREADS = 20_000;
+    private static final int RUNS = 15;
+    private static final int REPORTED = 5;
+
+    private static byte[] dump() {
+        StringBuilder sb = new StringBuilder("Full thread dump OpenJDK 64-Bit Server VM (17.0.1+12 mixed mode):\n\n");
+        for (int i = 0; i < THREADS; i++) {
+            sb.append("\"worker-").append(i).append("\" #").append(i + 10)
+              .append(" daemon prio=5 os_prio=0 cpu=12.50ms elapsed=300.10s tid=0x00007f").append(i)
+              .append(" nid=0x").append(Integer.toHexString(i + 100)).append(" waiting on condition [0x0]\n")
+              .append("   java.lang.Thread.State: WAITING (parking)\n");
+            for (int d = 0; d < 25; d++) {
+                sb.append("\tat com.example.service.Layer").append(d).append(".handle(Layer")
+                  .append(d).append(".java:").append(40 + d).append(")\n");
+            }
+            sb.append("\n");
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void compareBackends() throws Exception {
+        byte[] data = dump();
+        System.out.printf(Locale.ROOT, "%d MB, %d threads%n", data.length >> 20, THREADS);
+        measure("scalar", ByteScanner.scalar(), data);
+        ByteScanner vector = ByteScanner.vector();
+        if (vector != null) {
+            measure(vector.name(), vector, data);
+        }
+        int threads = 0;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            threads = new HotSpotParser().parse(new ByteArrayInputStream(data)).getThreads().size();
+            if (run >= RUNS - REPORTED) {
+                report("full parse, " + ByteScanner.get().name(), data.length, System.nanoTime() - start);
+            }
+        }
+        assertEquals(THREADS, threads);
+    }
+
+    private static void measure(String name, ByteScanner scanner, byte[] data) {
+        int lines = 0;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            lines = 0;
+            for (int pos = 0, nl; (nl = scanner.indexOf(data, (byte) '\n', pos, data.length)) >= 0; pos = nl + 1) {
+                lines++;
+            }
+            if (run >= RUNS - REPORTED) {
+                report("newline scan, " + name, data.length, System.nanoTime() - start);
+            }
+        }
+        assertTrue(lines > THREADS);
+    }
+
+    private static void report(String what, long bytes, long nanos) {
+        System.out.printf(Locale.ROOT, "%-30s %8.1f MB/s%n", what, bytes / 1e6 / (nanos / 1e9));
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.parser;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class ByteScannerTest {
+    @Test
+    public void vectorBackendMatchesScalar() {
+        ByteScanner vector = ByteScanner.vector();
+        assumeTrue(vector != null, "needs mvn -Pvector");
+        ByteScanner scalar = ByteScanner.scalar();
+
+        Random random = new Random(42);
+        byte[] buf = new byte[300];
+        for (int i = 0; i < buf.length; i++) {
+            // sparse delimiters so that matches fall in the vector loop and the tail
+            buf[i] = random.nextInt(40) == 0 ? (byte) '\n' : (byte) ('a' + random.nextInt(26));
+        }
+        buf[buf.length - 1] = '"';
+        for (int from = 0; from < buf.length; from += 7) {
+            for (int to = from; to <= buf.length; to += 5) {
+                assertEquals(scalar.indexOf(buf, (byte) '\n', from, to), vector.indexOf(buf, (byte) '\n', from, to));
+                assertEquals(scalar.indexOf(buf, (byte) '"', from, to), vector.indexOf(buf, (byte) '"', from, to));
+            }
+        }
+        assertEquals(-1, vector.indexOf(buf, (byte) 'X', 0, buf.length));
+    }
+}
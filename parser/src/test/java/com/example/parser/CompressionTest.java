@@ -0,0 +1,104 @@
+package com.example.parser;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import com.example.model.ThreadDump;
+import com.github.luben.zstd.ZstdOutputStream;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+public class CompressionTest {
+    private static final String DUMP =
+            "Full thread dump OpenJDK 64-Bit Server VM (17.0.1+12 mixed mode):\n" +
+            "\n" +
+            "\"main\" #1 prio=5 os_prio=0 tid=0x1 nid=0x1 runnable [0x0]\n" +
+            "   java.lang.Thread.State: RUNNABLE\n" +
+            "\tat com.example.Main.main(Main.java:10)\n" +
+            "\n";
+
+    private interface Encoder {
+        OutputStream wrap(OutputStream out) throws IOException;
+    }
+
+    private static byte[] encode(Encoder encoder, byte[] data) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (OutputStream out = encoder.wrap(buffer)) {
+            out.write(data);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static ThreadDump parse(byte[] bytes) throws IOException {
+        InputStream raw = new BufferedInputStream(new ByteArrayInputStream(bytes));
+        try (InputStream in = Compression.detect(raw).open(raw)) {
+            return ParserFactory.detect(in).parse(in);
+        }
+    }
+
+    @Test
+    public void detectsAndDecodesEachFormat() throws Exception {
+        byte[] plain = DUMP.getBytes(StandardCharsets.UTF_8);
+        byte[] gzip = encode(GZIPOutputStream::new, plain);
+        byte[] zstd = encode(ZstdOutputStream::new, plain);
+        byte[] xz = encode(out -> new XZOutputStream(out, new LZMA2Options()), plain);
+
+        assertEquals(Compression.NONE, Compression.detect(ByteBuffer.wrap(plain)));
+        assertEquals(Compression.GZIP, Compression.detect(ByteBuffer.wrap(gzip)));
+        assertEquals(Compression.ZSTD, Compression.detect(ByteBuffer.wrap(zstd)));
+        assertEquals(Compression.XZ, Compression.detect(ByteBuffer.wrap(xz)));
+
+        for (byte[] bytes : new byte[][] {plain, gzip, zstd, xz}) {
+            ThreadDump dump = parse(bytes);
+            assertEquals(1, dump.getThreads().size());
+            assertEquals("main", dump.getThreads().get(0).getName());
+        }
+    }
+
+    @Test
+    public void pipelinePreservesLargeInput() throws Exception {
+        byte[] data = new byte[1_000_003];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31 + (i >>> 9));
+        }
+        try (InputStream in = new PipelinedInputStream(new ByteArrayInputStream(data), 4096, 2)) {
+            assertTrue(Arrays.equals(data, in.readAllBytes()));
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void pipelineRethrowsDecoderErrors() throws Exception {
+        byte[] gzip = encode(GZIPOutputStream::new, DUMP.repeat(1000).getBytes(StandardCharsets.UTF_8));
+        byte[] truncated = Arrays.copyOf(gzip, gzip.length / 2);
+        InputStream raw = new BufferedInputStream(new ByteArrayInputStream(truncated));
+        try (InputStream in = Compression.GZIP.open(raw)) {
+            assertThrows(IOException.class, in::readAllBytes);
+        }
+    }
+
+    @Test
+    public void pipelineRethrowsDecoderFailures() throws Exception {
+        InputStream failing = new InputStream() {
+            @Override
+            public int read() {
+                throw new StackOverflowError("decoder");
+            }
+        };
+        try (InputStream in = new PipelinedInputStream(failing)) {
+            assertThrows(StackOverflowError.class, in::read);
+        }
+    }
+}
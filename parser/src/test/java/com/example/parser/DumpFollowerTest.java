@@ -0,0 +1,78 @@
+package com.example.parser;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import com.example.model.ThreadDump;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DumpFollowerTest {
+    private static final String DUMP =
+            "Full thread dump OpenJDK 64-Bit Server VM (17.0.1+12 mixed mode):\n" +
+            "\n" +
+            "\"main\" #1 prio=5 os_prio=0 tid=0x1 nid=0x1 runnable [0x0]\n" +
+            "   java.lang.Thread.State: RUNNABLE\n" +
+            "\tat com.example.Main.main(Main.java:10)\n" +
+            "\n" +
+            "\"worker\" #2 prio=5 os_prio=0 tid=0x2 nid=0x2 waiting on condition [0x0]\n" +
+            "   java.lang.Thread.State: WAITING (parking)\n" +
+            "\tat jdk.internal.misc.Unsafe.park(java.base@17.0.1/Native Method)\n" +
+            "\n" +
+            "JNI global refs: 10, weak refs: 0\n";
+
+    private static void append(Path file, String text) throws Exception {
+        Files.writeString(file, text, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    @Test
+    public void reportsDumpsOnceTheyAreComplete(@TempDir Path dir) throws Exception {
+        Path log = dir.resolve("catalina.out");
+        DumpFollower follower = new DumpFollower(log);
+        assertTrue(follower.poll().isEmpty());
+
+        int split = DUMP.indexOf("Main.java");
+        append(log, "INFO starting\n" + DUMP.substring(0, split));
+        assertTrue(follower.poll().isEmpty());
+        assertEquals(Files.size(log), follower.getOffset());
+
+        append(log, DUMP.substring(split) + "INFO still running\n");
+        List<ThreadDump> dumps = follower.poll();
+        assertEquals(1, dumps.size());
+        assertEquals(2, dumps.get(0).getThreads().size());
+        assertEquals("main", dumps.get(0).getThreads().get(0).getName());
+        assertTrue(follower.poll().isEmpty());
+
+        append(log, DUMP + DUMP);
+        assertEquals(2, follower.poll().size());
+        assertEquals(Files.size(log), follower.getOffset());
+    }
+
+    @Test
+    public void restartsAfterTruncationAndSkipsExistingContent(@TempDir Path dir) throws Exception {
+        Path log = dir.resolve("app.log");
+        append(log, DUMP + DUMP);
+        DumpFollower follower = new DumpFollower(log);
+        follower.seekToEnd();
+        assertTrue(follower.poll().isEmpty());
+
+        Files.writeString(log, DUMP, StandardCharsets.UTF_8, StandardOpenOption.TRUNCATE_EXISTING);
+        assertEquals(1, follower.poll().size());
+    }
+
+    @Test
+    public void flushReportsDumpWithoutTrailer(@TempDir Path dir) throws Exception {
+        Path log = dir.resolve("app.log");
+        append(log, DUMP.substring(0, DUMP.indexOf("JNI global refs")));
+        DumpFollower follower = new DumpFollower(log);
+        assertTrue(follower.poll().isEmpty());
+        assertEquals(1, follower.flush().size());
+        assertTrue(follower.flush().isEmpty());
+    }
+}
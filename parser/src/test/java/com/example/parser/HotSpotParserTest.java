@@ -0,0 +1,312 @@
+package com.example.parser;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import com.example.model.StackFrame;
+import com.example.model.StackTrace;
+import com.example.model.StackTraceStore;
+import com.example.model.ThreadDump;
+import com.example.model.ThreadInfo;
+
+import org.junit.jupiter.api.Test;
+
+public class HotSpotParserTest {
+    private static final String DUMP =
+            "Full thread dump OpenJDK 64-Bit Server VM (17.0.1+12 mixed mode):\n" +
+            "\n" +
+            "\"http-nio-8080-exec-1\" #31 daemon prio=5 os_prio=0 tid=0x00007f0a nid=0x1f2b waiting on condition  [0x0]\n" +
+            "   java.lang.Thread.State: TIMED_WAITING (parking)\n" +
+            "\tat jdk.internal.misc.Unsafe.park(java.base@17.0.1/Native Method)\n" +
+            "\t- parking to wait for  <0x00000000c1> (a java.util.concurrent.locks.AbstractQueuedSynchronizer$ConditionObject)\n" +
+            "\tat com.example.Foo.<init>(Foo.java:12)\n" +
+            "\tat com.example.Foo$$Lambda$14/0x0000000800c02a00.run(Unknown Source)\n" +
+            "\t- locked <0x00000000c2> (a java.lang.Object)\n" +
+            "\tat java.lang.Thread.run(Thread.java:833)\n" +
+            "\n" +
+            "\"\" #1 nid=0x5\n" +
+            "\"VM Thread\" os_prio=0 tid=0x1 nid=0xzz runnable\n";
+
+    private ThreadDump parse(String text) throws Exception {
+        return new HotSpotParser().parse(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void extractsHeaderFramesAndLocks() throws Exception {
+        ThreadDump dump = parse(DUMP);
+        assertEquals("OpenJDK 64-Bit Server VM (17.0.1+12 mixed mode)", dump.getJvmVersion());
+        assertEquals(2, dump.getThreads().size());
+
+        ThreadInfo worker = dump.getThreads().get(0);
+        assertEquals("http-nio-8080-exec-1", worker.getName());
+        assertEquals(0x1f2b, worker.getId());
+        assertEquals(5, worker.getPriority());
+        assertTrue(worker.isDaemon());
+        assertEquals(Thread.State.TIMED_WAITING, worker.getState());
+        assertEquals(3, worker.getStack().size());
+        assertEquals(new StackFrame("jdk.internal.misc.Unsafe", "park", "java.base@17.0.1/Native Method", -1),
+                worker.getStack().get(0));
+        assertEquals(new StackFrame("com.example.Foo", "<init>", "Foo.java", 12), worker.getStack().get(1));
+        assertEquals("0x00000000c1", worker.getWaitingOn().getIdentity());
+        assertEquals(1, worker.getLockedMonitors().size());
+        assertEquals("a java.lang.Object", worker.getLockedMonitors().get(0).getClassName());
+    }
+
+    @Test
+    public void modelListsAreSharedAndUnmodifiable() throws Exception {
+        ThreadDump dump = parse(DUMP);
+        assertSame(dump.getThreads(), dump.getThreads());
+        ThreadInfo worker = dump.getThreads().get(0);
+        assertSame(worker.getStack(), worker.getStack());
+        assertSame(worker.getLockedMonitors(), worker.getLockedMonitors());
+        assertThrows(UnsupportedOperationException.class, () -> dump.getThreads().clear());
+        assertThrows(UnsupportedOperationException.class, () -> worker.getStack().remove(0));
+        assertThrows(UnsupportedOperationException.class, () -> worker.getLockedMonitors().clear());
+        // the builder reused for the next thread must not leak into this one
+        assertEquals(3, worker.getStack().size());
+        assertEquals(1, worker.getLockedMonitors().size());
+        assertTrue(dump.getThreads().get(1).getLockedMonitors().isEmpty());
+    }
+
+    @Test
+    public void storesLargeDumpsInColumns() throws Exception {
+        ThreadDumpCollector collector;
+        ThreadDumpCollector lazyCollector;
+        System.setProperty(ThreadDumpCollector.COLUMNAR_PROPERTY, "2");
+        try {
+            collector = new ThreadDumpCollector();
+            lazyCollector = new ThreadDumpCollector();
+        } finally {
+            System.clearProperty(ThreadDumpCollector.COLUMNAR_PROPERTY);
+        }
+        new HotSpotParser().parse(new ByteArrayInputStream(DUMP.getBytes(StandardCharsets.UTF_8)), collector);
+        ThreadDump dump = collector.getDump();
+        ThreadDump objects = parse(DUMP);
+        assertNull(objects.getTable());
+        // building a table would decode the stacks a buffer leaves for later
+        new HotSpotParser().parse(ByteBuffer.wrap(DUMP.getBytes(StandardCharsets.UTF_8)), lazyCollector);
+        assertNull(lazyCollector.getDump().getTable());
+        assertEquals(2, dump.getTable().size());
+        assertEquals(2, dump.getThreadCount());
+
+        ThreadInfo worker = dump.getThreads().get(0);
+        ThreadInfo expected = objects.getThreads().get(0);
+        assertSame(worker, dump.getThreads().get(0));
+        assertEquals(expected.getId(), worker.getId());
+        assertEquals(expected.getName(), worker.getName());
+        assertEquals(expected.getState(), worker.getState());
+        assertEquals(expected.getPriority(), worker.getPriority());
+        assertTrue(worker.isDaemon());
+        assertEquals(expected.getStack(), worker.getStack());
+        assertEquals("0x00000000c1", worker.getWaitingOn().getIdentity());
+        assertEquals(1, worker.getLockedMonitors().size());
+        assertThrows(UnsupportedOperationException.class, () -> worker.getStack().remove(0));
+        assertTrue(dump.getThreads().get(1).getStack().isEmpty());
+        assertSame(dump.getTable(), dump.withLabel("x").getTable());
+    }
+
+    @Test
+    public void internsStacksAcrossThreadsAndDumps() throws Exception {
+        String pool = "Full thread dump OpenJDK 64-Bit Server VM (17.0.1+12 mixed mode):\n\n" +
+                "\"pool-1-thread-1\" #1 prio=5 nid=0x1 waiting on condition\n" +
+                "\tat jdk.internal.misc.Unsafe.park(java.base@17.0.1/Native Method)\n" +
+                "\tat java.util.concurrent.ThreadPoolExecutor.runWorker(ThreadPoolExecutor.java:1136)\n" +
+                "\tat java.lang.Thread.run(Thread.java:833)\n" +
+                "\"pool-1-thread-2\" #2 prio=5 nid=0x2 waiting on condition\n" +
+                "\tat jdk.internal.misc.Unsafe.park(java.base@17.0.1/Native Method)\n" +
+                "\tat java.util.concurrent.ThreadPoolExecutor.runWorker(ThreadPoolExecutor.java:1136)\n" +
+                "\tat java.lang.Thread.run(Thread.java:833)\n" +
+                "\"pool-1-thread-3\" #3 prio=5 nid=0x3 runnable\n" +
+                "\tat com.example.Task.call(Task.java:7)\n" +
+                "\tat java.util.concurrent.ThreadPoolExecutor.runWorker(ThreadPoolExecutor.java:1136)\n" +
+                "\tat java.lang.Thread.run(Thread.java:833)\n";
+        ThreadDump first = parse(pool);
+        ThreadDump second = parse(pool);
+        List<StackFrame> idle = first.getThreads().get(0).getStack();
+        List<StackFrame> busy = first.getThreads().get(2).getStack();
+        assertTrue(idle instanceof StackTrace);
+        assertSame(idle, first.getThreads().get(1).getStack());
+        assertSame(idle, second.getThreads().get(0).getStack());
+        // the two stacks differ only in their top frame
+        assertSame(idle.subList(1, 3), busy.subList(1, 3));
+        assertNotSame(idle, busy);
+
+        List<StackFrame> copy = new ArrayList<>(idle);
+        assertEquals(copy, idle);
+        assertEquals(idle, copy);
+        assertEquals(copy.hashCode(), idle.hashCode());
+        assertEquals(copy.subList(1, 3).hashCode(), busy.subList(1, 3).hashCode());
+        assertNotEquals(idle, busy);
+        assertEquals("park", idle.get(0).getMethodName());
+        assertEquals("run", idle.get(2).getMethodName());
+
+        // stacks from another store are still equal by content
+        StackTrace other = new StackTraceStore(16).intern(copy);
+        assertNotSame(idle, other);
+        assertEquals(idle, other);
+        assertEquals(other, idle);
+    }
+
+    @Test
+    public void toleratesMalformedHeaders() throws Exception {
+        ThreadInfo vm = parse(DUMP).getThreads().get(1);
+        assertEquals("VM Thread", vm.getName());
+        assertEquals(-1, vm.getId());
+        assertEquals(Thread.State.NEW, vm.getState());
+    }
+
+    @Test
+    public void parsesRawBytesAndSharesSymbols() throws Exception {
+        String text = DUMP + "\"w\u00f6rker\" #2 prio=5 nid=0x2 runnable\r\n" +
+                "\tat java.lang.Thread.run(Thread.java:833)\r\n";
+        ThreadDumpCollector collector = new ThreadDumpCollector();
+        new HotSpotParser().parse(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)), collector);
+        ThreadDump dump = collector.getDump();
+        assertEquals(3, dump.getThreads().size());
+
+        ThreadInfo last = dump.getThreads().get(2);
+        assertEquals("w\u00f6rker", last.getName());
+        StackFrame run = last.getStack().get(0);
+        assertEquals(new StackFrame("java.lang.Thread", "run", "Thread.java", 833), run);
+        assertSame(dump.getThreads().get(0).getStack().get(2).getClassName(), run.getClassName());
+    }
+
+    @Test
+    public void repeatedFrameLinesShareOneCachedFrame() {
+        String dump = "\"a\" nid=0x1\n\tat com.example.Pool.take(Pool.java:40)\n\tat java.lang.Thread.run(Thread.java:833)\n"
+                + "\"b\" nid=0x2\n\tat com.example.Pool.take(Pool.java:40)\n\tat java.lang.Thread.run(Thread.java:833)\n";
+        byte[] bytes = dump.getBytes(StandardCharsets.UTF_8);
+        FrameCache cache = new FrameCache(16);
+        ThreadDumpCollector collector = new ThreadDumpCollector();
+        HotSpotThreadAssembler assembler = new HotSpotThreadAssembler(collector, cache);
+        int start = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == '\n') {
+                assembler.accept(bytes, start, i);
+                start = i + 1;
+            }
+        }
+        assembler.finish();
+
+        ThreadInfo a = collector.getDump().getThreads().get(0);
+        ThreadInfo b = collector.getDump().getThreads().get(1);
+        assertEquals(new StackFrame("com.example.Pool", "take", "Pool.java", 40), b.getStack().get(0));
+        assertSame(a.getStack().get(0), b.getStack().get(0));
+        assertSame(a.getStack().get(1), b.getStack().get(1));
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(0.5, cache.getHitRate());
+    }
+
+    @Test
+    public void symbolsAreSharedAcrossDumps() throws Exception {
+        ThreadDump first = new HotSpotParser().parse(new ByteArrayInputStream(DUMP.getBytes(StandardCharsets.UTF_8)));
+        ThreadDump second = new HotSpotParser().parse(new ByteArrayInputStream(DUMP.getBytes(StandardCharsets.UTF_8)));
+        ThreadInfo a = first.getThreads().get(0);
+        ThreadInfo b = second.getThreads().get(0);
+        // frames are shared by the frame cache anyway; thread names and lock
+        // classes come from each parse's own symbol table and are only the
+        // same instance if the interner made them so
+        assertNotSame(a, b);
+        assertSame(a.getName(), b.getName());
+        assertSame(a.getWaitingOn().getClassName(), b.getWaitingOn().getClassName());
+    }
+
+    @Test
+    public void skipsJcmdPreambleAndReadsTimestamp() throws Exception {
+        ThreadDump dump = parse("12345:\n2024-03-05 14:15:16\n" + DUMP);
+        assertEquals("OpenJDK 64-Bit Server VM (17.0.1+12 mixed mode)", dump.getJvmVersion());
+        assertEquals(LocalDateTime.of(2024, 3, 5, 14, 15, 16)
+                .atZone(ZoneId.systemDefault()).toInstant(), dump.getTimestamp());
+        assertEquals(2, dump.getThreads().size());
+    }
+
+    @Test
+    public void buffersDecodeStacksOnFirstAccess() throws Exception {
+        ByteBuffer buffer = ByteBuffer.wrap(("junk before\n" + DUMP).getBytes(StandardCharsets.UTF_8));
+        buffer.position("junk before\n".length());
+        ThreadDumpCollector collector = new ThreadDumpCollector();
+        new HotSpotParser().parse(buffer, collector);
+        ThreadDump lazy = collector.getDump();
+        ThreadDump eager = parse(DUMP);
+
+        ThreadInfo worker = lazy.getThreads().get(0);
+        assertEquals("0x00000000c1", worker.getWaitingOn().getIdentity());
+        assertEquals(1, worker.getLockedMonitors().size());
+        assertEquals(eager.getThreads().get(0).getStack(), worker.getStack());
+        assertEquals(worker.getStack(), worker.getStack());
+        assertTrue(lazy.getThreads().get(1).getStack().isEmpty());
+    }
+
+    @Test
+    public void directBuffersDecodeStacksWhileParsing() throws Exception {
+        byte[] bytes = DUMP.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+        ThreadDumpCollector collector = new ThreadDumpCollector();
+        new HotSpotParser().parse(buffer, collector);
+        // a mapped file may change or vanish once parsing has returned
+        buffer.clear().put(new byte[bytes.length]);
+
+        assertEquals(parse(DUMP).getThreads().get(0).getStack(), collector.getDump().getThreads().get(0).getStack());
+    }
+
+    @Test
+    public void optionsTrimStacksLocksAndThreads() throws Exception {
+        byte[] bytes = DUMP.getBytes(StandardCharsets.UTF_8);
+        ParseOptions shallow = ParseOptions.all().withMaxStackDepth(2).withoutLocks();
+        ParseOptions waiting = ParseOptions.all().withoutFrames()
+                .withStates(EnumSet.of(Thread.State.TIMED_WAITING));
+        for (boolean buffered : new boolean[] {false, true}) {
+            ThreadDump trimmed = parse(bytes, shallow, buffered);
+            assertEquals(2, trimmed.getThreads().size());
+            ThreadInfo worker = trimmed.getThreads().get(0);
+            assertEquals(parse(DUMP).getThreads().get(0).getStack().subList(0, 2), worker.getStack());
+            assertNull(worker.getWaitingOn());
+            assertTrue(worker.getLockedMonitors().isEmpty());
+
+            ThreadDump filtered = parse(bytes, waiting, buffered);
+            assertEquals(1, filtered.getThreads().size());
+            assertEquals("http-nio-8080-exec-1", filtered.getThreads().get(0).getName());
+            assertTrue(filtered.getThreads().get(0).getStack().isEmpty());
+            assertEquals(1, filtered.getThreads().get(0).getLockedMonitors().size());
+
+            ThreadDump named = parse(bytes, ParseOptions.all().withNamePattern(Pattern.compile("VM.*")), buffered);
+            assertEquals(1, named.getThreads().size());
+            assertEquals("VM Thread", named.getThreads().get(0).getName());
+        }
+    }
+
+    private static ThreadDump parse(byte[] bytes, ParseOptions options, boolean buffered) throws Exception {
+        if (!buffered) {
+            return new HotSpotParser().parse(new ByteArrayInputStream(bytes), options);
+        }
+        ThreadDumpCollector collector = new ThreadDumpCollector();
+        new HotSpotParser().parse(ByteBuffer.wrap(bytes), options, collector);
+        return collector.getDump();
+    }
+
+    @Test
+    public void readsCpuAndElapsedTimes() throws Exception {
+        ThreadDump dump = parse("Full thread dump OpenJDK 64-Bit Server VM (17.0.9+9 mixed mode):\n\n"
+                + "\"main\" #1 prio=5 os_prio=0 cpu=82.24ms elapsed=3.51s tid=0x1 nid=0x13af runnable [0x0]\n"
+                + "   java.lang.Thread.State: RUNNABLE\n\n"
+                + "\"VM Thread\" os_prio=0 cpu=1234.5ms elapsed=120s tid=0x2 nid=0x13b0 runnable\n\n"
+                + "\"old\" #2 prio=5 os_prio=0 tid=0x3 nid=0x13b1 waiting on condition [0x0]\n");
+        ThreadInfo main = dump.getThreads().get(0);
+        assertEquals(82_240_000L, main.getCpuTimeNanos());
+        assertEquals(3_510_000_000L, main.getElapsedNanos());
+        assertEquals(1_234_500_000L, dump.getThreads().get(1).getCpuTimeNanos());
+        assertEquals(120_000_000_000L, dump.getThreads().get(1).getElapsedNanos());
+        assertEquals(-1, dump.getThreads().get(2).getCpuTimeNanos());
+        assertEquals(-1, dump.getThreads().get(2).getElapsedNanos());
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.parser;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.EnumSet;
+import java.util.List;
+
+import com.example.model.StackFrame;
+import com.example.model.ThreadContainer;
+import com.example.model.ThreadDump;
+import com.example.model.ThreadInfo;
+
+import org.junit.jupiter.api.Test;
+
+public class JcmdJsonParserTest {
+    private ThreadDump parseSample(ParseOptions options) throws Exception {
+        try (InputStream in = new BufferedInputStream(getClass().getResourceAsStream("/jcmd-thread-dump.json"))) {
+            assertTrue(ParserFactory.detect(in) instanceof JcmdJsonParser);
+            return ParserFactory.parse(in, options);
+        }
+    }
+
+    @Test
+    public void keepsContainerHierarchy() throws Exception {
+        ThreadDump dump = parseSample(ParseOptions.all());
+        assertEquals("21.0.2+13-LTS", dump.getJvmVersion());
+        assertEquals(Instant.parse("2024-02-12T09:41:07.512334Z"), dump.getTimestamp());
+
+        List<ThreadContainer> containers = dump.getContainers();
+        assertEquals(4, containers.size());
+        assertTrue(containers.get(0).isRoot());
+        assertEquals("<root>", containers.get(1).getParent());
+        ThreadContainer scope = containers.get(3);
+        assertEquals("java.util.concurrent.ThreadPerTaskExecutor@3b9a45b3", scope.getParent());
+        assertEquals(32, scope.getOwnerId());
+
+        List<ThreadInfo> threads = dump.getThreads();
+        assertEquals(5, threads.size());
+        assertEquals("<root>", threads.get(0).getContainer());
+        assertEquals("java.util.concurrent.ForkJoinPool@5f184fc6", threads.get(2).getContainer());
+        assertEquals(31, threads.get(3).getId());
+        assertEquals("", threads.get(3).getName());
+    }
+
+    @Test
+    public void decodesFramesAndInfersStates() throws Exception {
+        List<ThreadInfo> threads = parseSample(ParseOptions.all()).getThreads();
+        assertEquals(Thread.State.WAITING, threads.get(0).getState());
+        assertEquals(Thread.State.RUNNABLE, threads.get(2).getState());
+        assertEquals(Thread.State.TIMED_WAITING, threads.get(3).getState());
+        assertEquals(Thread.State.WAITING, threads.get(4).getState());
+
+        assertEquals(new StackFrame("com.example.Server", "main", "Server.java", 42),
+                threads.get(0).getStack().get(3));
+        assertEquals(new StackFrame("java.lang.Object", "wait0", "Native Method", -1),
+                threads.get(0).getStack().get(0));
+        assertEquals(new StackFrame("com.example.Handler$$Lambda/0x000001f0010c8a40", "run", "Unknown Source", -1),
+                threads.get(3).getStack().get(4));
+        assertSame(threads.get(3).getStack().get(5), threads.get(4).getStack().get(3));
+    }
+
+    @Test
+    public void appliesParseOptions() throws Exception {
+        ThreadDump dump = parseSample(ParseOptions.all().withoutFrames()
+                .withStates(EnumSet.of(Thread.State.WAITING, Thread.State.TIMED_WAITING)));
+        assertEquals(3, dump.getThreads().size());
+        assertTrue(dump.getThreads().get(1).getStack().isEmpty());
+        assertEquals(Thread.State.TIMED_WAITING, dump.getThreads().get(1).getState());
+        assertEquals(4, dump.getContainers().size());
+
+        ThreadDump shallow = parseSample(ParseOptions.all().withMaxStackDepth(1));
+        assertEquals(1, shallow.getThreads().get(3).getStack().size());
+    }
+
+    @Test
+    public void readsStateWrittenByNewerJdks() throws Exception {
+        String json = "{\"threadDump\": {\"threadContainers\": [{\"threads\": ["
+                + "{\"tid\": 5, \"name\": \"w\", \"state\": \"BLOCKED\", \"virtual\": true, \"stack\": []}],"
+                + " \"container\": \"<root>\", \"parent\": null}],"
+                + " \"time\": \"2024-01-01T00:00:00Z\", \"runtimeVersion\": \"25\"}}";
+        ThreadDump dump = new JcmdJsonParser().parse(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+        // the dump starts with the containers, the header fields after them come too late
+        assertNull(dump.getJvmVersion());
+        ThreadInfo thread = dump.getThreads().get(0);
+        assertEquals(Thread.State.BLOCKED, thread.getState());
+        assertEquals(5, thread.getId());
+        assertEquals("<root>", thread.getContainer());
+        assertEquals(1, dump.getContainers().size());
+    }
+
+    @Test
+    public void streamsThreadsWithoutCompleteHeader() throws Exception {
+        StringBuilder json = new StringBuilder("{\"threadDump\": {\"processId\": \"1\", \"threadContainers\": ["
+                + "{\"container\": \"<root>\", \"parent\": null, \"threads\": [");
+        for (int i = 0; i < 5000; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"tid\": \"").append(i)
+                    .append("\", \"name\": \"virtual-").append(i).append("\", \"stack\": []}");
+        }
+        json.append("]}]}}");
+        byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+        long[] readAtFirstThread = {-1};
+        int[] threads = {0};
+        CountingStream in = new CountingStream(bytes);
+        new JcmdJsonParser().parse(in, new ThreadDumpHandler() {
+            @Override
+            public void onThread(ThreadInfo thread) {
+                if (threads[0]++ == 0) {
+                    readAtFirstThread[0] = in.count;
+                }
+            }
+        });
+        assertEquals(5000, threads[0]);
+        // no "time" or "runtimeVersion", yet threads arrive before the end of the document
+        assertTrue(readAtFirstThread[0] < bytes.length, readAtFirstThread[0] + " of " + bytes.length);
+    }
+
+    private static final class CountingStream extends ByteArrayInputStream {
+        long count;
+
+        CountingStream(byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.parser;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import com.example.model.ThreadDump;
+import com.example.model.ThreadInfo;
+
+import org.junit.jupiter.api.Test;
+
+public class JfrSourceTest {
+    /**
+     * A two second recording of a JVM whose thread {@code fixture-spinner}
+     * kept calling {@code Spinner.spin()}, with {@code jdk.ThreadDump}
+     * every 700 ms and {@code jdk.ExecutionSample} every 20 ms enabled.
+     */
+    private static Path recording() throws Exception {
+        return Path.of(JfrSourceTest.class.getResource("/recording.jfr").toURI());
+    }
+
+    @Test
+    public void readsThreadDumpEventsAndSamples() throws Exception {
+        Path file = recording();
+        assertTrue(JfrSource.isRecording(ByteBuffer.wrap(Files.readAllBytes(file))));
+
+        List<ThreadDump> dumps = JfrSource.read(file).getThreadDumps();
+        assertEquals(3, dumps.size());
+        for (ThreadDump dump : dumps) {
+            assertEquals(dump.getTimestamp().toString(), dump.getLabel());
+            ThreadInfo spinner = dump.getThreads().stream()
+                    .filter(t -> t.getName().equals("fixture-spinner"))
+                    .findFirst().orElseThrow();
+            assertTrue(spinner.isDaemon());
+        }
+        for (int i = 1; i < dumps.size(); i++) {
+            assertTrue(dumps.get(i).getTimestamp().isAfter(dumps.get(i - 1).getTimestamp()));
+        }
+
+        List<ThreadDump> withSamples = JfrSource.read(file, ParseOptions.all().withMaxStackDepth(1),
+                Duration.ofSeconds(10)).getThreadDumps();
+        assertEquals(4, withSamples.size());
+        List<ThreadInfo> sampled = withSamples.stream()
+                .filter(d -> d.getLabel().startsWith("samples "))
+                .flatMap(d -> d.getThreads().stream())
+                .toList();
+        assertFalse(sampled.isEmpty());
+        for (ThreadInfo t : sampled) {
+            assertEquals("fixture-spinner", t.getName());
+            assertEquals(Thread.State.RUNNABLE, t.getState());
+            assertEquals(1, t.getStack().size());
+            assertEquals("Spinner", t.getStack().get(0).getClassName());
+            assertEquals("spin", t.getStack().get(0).getMethodName());
+        }
+        // sampled threads carry the nid the dumps identify them by
+        long nid = dumps.get(0).getThreads().stream()
+                .filter(t -> t.getName().equals("fixture-spinner"))
+                .findFirst().orElseThrow().getId();
+        assertEquals(nid, sampled.get(0).getId());
+    }
+
+    @Test
+    public void rejectsPlainText() {
+        assertFalse(JfrSource.isRecording(ByteBuffer.wrap("Full thread dump".getBytes())));
+    }
+}
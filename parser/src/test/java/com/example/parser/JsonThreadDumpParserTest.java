@@ -2,9 +2,14 @@ package com.example.parser;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 
 import com.example.model.ThreadDump;
+import com.example.model.ThreadInfo;
 
 import org.junit.jupiter.api.Test;
 
@@ -22,6 +27,89 @@ public class JsonThreadDumpParserTest {
             assertTrue(dump.getThreads().get(0).isDaemon());
             assertEquals("OpenJDK 17", dump.getJvmVersion());
             assertEquals(12345L, dump.getUptimeMillis());
+            assertEquals(Instant.parse("2024-01-01T00:00:00Z"), dump.getTimestamp());
+            assertEquals("Main.java", dump.getThreads().get(0).getStack().get(0).getFileName());
+            assertEquals(1, dump.getThreads().get(0).getStack().get(0).getLineNumber());
+            assertEquals("0x1", dump.getThreads().get(0).getLockedMonitors().get(0).getIdentity());
+            assertEquals("java.lang.Object", dump.getThreads().get(1).getWaitingOn().getClassName());
+        }
+    }
+
+    @Test
+    public void ignoresHeaderWrittenAfterThreads() throws Exception {
+        String json = "{\"threads\": [{\"id\": 7, \"name\": \"tab\\there \\ud83d\\ude00\", \"extra\": {\"a\": [1, 2.5e3, null, true]},"
+                + " \"state\": \"BOGUS\", \"stack\": [{\"className\": \"x.Y\", \"lineNumber\": 3.0}]}, 42],"
+                + " \"jvmUptime\": -1, \"jvmVersion\": \"OpenJDK 21\", \"timestamp\": \"2024-05-06T07:08:09Z\"}";
+        ThreadDump dump = new JsonThreadDumpParser().parse(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+        // the dump starts with the threads, so the header comes too late
+        assertNull(dump.getJvmVersion());
+        assertNotEquals(Instant.parse("2024-05-06T07:08:09Z"), dump.getTimestamp());
+        assertEquals(1, dump.getThreads().size());
+        ThreadInfo t = dump.getThreads().get(0);
+        assertEquals(7, t.getId());
+        assertEquals("tab\there \ud83d\ude00", t.getName());
+        assertEquals(Thread.State.RUNNABLE, t.getState());
+        assertEquals(-1, t.getPriority());
+        assertEquals("x.Y", t.getStack().get(0).getClassName());
+        assertEquals("?", t.getStack().get(0).getMethodName());
+        assertEquals(3, t.getStack().get(0).getLineNumber());
+    }
+
+    @Test
+    public void rejectsMalformedJson() {
+        for (String json : new String[] {"", "[]", "{\"threads\": [", "{\"a\" 1}", "{} x"}) {
+            assertThrows(IOException.class,
+                    () -> new JsonThreadDumpParser().parse(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8))),
+                    json);
+        }
+    }
+
+    @Test
+    public void streamsThreadsWithoutCompleteHeader() throws Exception {
+        StringBuilder json = new StringBuilder("{\"timestamp\": \"2024-01-01T00:00:00Z\", \"threads\": [");
+        for (int i = 0; i < 5000; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"id\": ").append(i)
+                    .append(", \"name\": \"worker-").append(i).append("\", \"state\": \"WAITING\"}");
+        }
+        json.append("]}");
+        byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+        long[] readAtFirstThread = {-1};
+        int[] threads = {0};
+        Instant[] timestamp = {null};
+        CountingStream in = new CountingStream(bytes);
+        new JsonThreadDumpParser().parse(in, new ThreadDumpHandler() {
+            @Override
+            public void onDumpStart(DumpHeader header) {
+                timestamp[0] = header.getTimestamp();
+            }
+
+            @Override
+            public void onThread(ThreadInfo thread) {
+                if (threads[0]++ == 0) {
+                    readAtFirstThread[0] = in.count;
+                }
+            }
+        });
+        assertEquals(5000, threads[0]);
+        assertEquals(Instant.parse("2024-01-01T00:00:00Z"), timestamp[0]);
+        // no jvmVersion or jvmUptime, yet threads arrive before the end of the document
+        assertTrue(readAtFirstThread[0] < bytes.length, readAtFirstThread[0] + " of " + bytes.length);
+    }
+
+    private static final class CountingStream extends ByteArrayInputStream {
+        long count;
+
+        CountingStream(byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
         }
     }
 }
@@ -0,0 +1,111 @@
+package com.example.parser;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.example.model.StackFrame;
+import com.example.model.StackTrace;
+import com.example.model.StackTraceStore;
+import com.example.model.ThreadDump;
+import com.example.model.ThreadInfo;
+
+import org.junit.jupiter.api.Test;
+
+public class ParallelHotSpotParserTest {
+    private static String dump(int threads) {
+        StringBuilder sb = new StringBuilder("Full thread dump OpenJDK 64-Bit Server VM (17.0.1):\n\n");
+        for (int i = 0; i < threads; i++) {
+            sb.append('"').append("worker-").append(i).append("\" #").append(i)
+              .append(" prio=5 nid=0x").append(Integer.toHexString(i)).append(" waiting\n");
+            sb.append("   java.lang.Thread.State: ").append(i % 2 == 0 ? "RUNNABLE" : "WAITING").append('\n');
+            for (int f = 0; f <= i % 4; f++) {
+                sb.append("\tat example.Worker.step").append(f).append("(Worker.java:").append(f + 1).append(")\n");
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void matchesSequentialParserForAnyChunkSize() throws Exception {
+        byte[] bytes = dump(50).getBytes(StandardCharsets.UTF_8);
+        ThreadDump expected = new HotSpotParser().parse(new ByteArrayInputStream(bytes));
+        for (int chunkSize : new int[] {1, 64, 1000, bytes.length * 2}) {
+            ThreadDumpCollector collector = new ThreadDumpCollector();
+            new ParallelHotSpotParser(chunkSize, 3).parse(ByteBuffer.wrap(bytes), collector);
+            ThreadDump actual = collector.getDump();
+            assertEquals(expected.getJvmVersion(), actual.getJvmVersion());
+            List<ThreadInfo> exp = expected.getThreads();
+            List<ThreadInfo> act = actual.getThreads();
+            assertEquals(exp.size(), act.size());
+            for (int i = 0; i < exp.size(); i++) {
+                assertEquals(exp.get(i).getName(), act.get(i).getName());
+                assertEquals(exp.get(i).getId(), act.get(i).getId());
+                assertEquals(exp.get(i).getState(), act.get(i).getState());
+                assertEquals(exp.get(i).getStack(), act.get(i).getStack());
+            }
+        }
+    }
+
+    @Test
+    public void chosenForLargeHotSpotBuffers() {
+        ByteBuffer small = ByteBuffer.wrap(dump(2).getBytes(StandardCharsets.UTF_8));
+        ByteBuffer large = ByteBuffer.wrap(dump(50).getBytes(StandardCharsets.UTF_8));
+        System.setProperty(ParserFactory.PARALLEL_PROPERTY, String.valueOf(large.remaining()));
+        try {
+            assertInstanceOf(HotSpotParser.class, ParserFactory.detect(small));
+            assertEquals(Runtime.getRuntime().availableProcessors() > 1,
+                    ParserFactory.detect(large) instanceof ParallelHotSpotParser);
+        } finally {
+            System.clearProperty(ParserFactory.PARALLEL_PROPERTY);
+        }
+    }
+
+    @Test
+    public void concurrentShardsInternToTheSameStacks() throws Exception {
+        StackTraceStore store = new StackTraceStore(1 << 16);
+        List<List<StackFrame>> stacks = new ArrayList<>();
+        for (int s = 0; s < 64; s++) {
+            List<StackFrame> stack = new ArrayList<>();
+            for (int d = 0; d < 1 + s % 8; d++) {
+                stack.add(new StackFrame("example.Worker", "step" + (d + s % 3), "Worker.java", d + 1));
+            }
+            stack.add(new StackFrame("java.lang.Thread", "run", "Thread.java", 833));
+            stacks.add(stack);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<StackTrace>>> shards = new ArrayList<>();
+            for (int shard = 0; shard < 8; shard++) {
+                shards.add(pool.submit(() -> {
+                    List<StackTrace> interned = new ArrayList<>();
+                    for (int round = 0; round < 50; round++) {
+                        for (List<StackFrame> stack : stacks) {
+                            interned.add(store.intern(new ArrayList<>(stack)));
+                        }
+                    }
+                    return interned;
+                }));
+            }
+            List<StackTrace> first = shards.get(0).get();
+            for (Future<List<StackTrace>> shard : shards) {
+                List<StackTrace> interned = shard.get();
+                for (int i = 0; i < interned.size(); i++) {
+                    assertSame(first.get(i % stacks.size()), interned.get(i));
+                    assertEquals(stacks.get(i % stacks.size()), interned.get(i));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(store.size(), store.getMisses());
+    }
+}
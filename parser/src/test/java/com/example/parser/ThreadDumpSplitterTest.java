@@ -0,0 +1,194 @@
+package com.example.parser;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.example.model.StackFrame;
+import com.example.model.ThreadDump;
+import com.example.model.ThreadInfo;
+
+import org.junit.jupiter.api.Test;
+
+public class ThreadDumpSplitterTest {
+    private static final String LOG = String.join("\n",
+            "INFO  starting application",
+            "2024-03-01 10:00:00",
+            "Full thread dump OpenJDK 64-Bit Server VM (17.0.1 mixed mode):",
+            "",
+            "\"main\" #1 prio=5 os_prio=0 nid=0x1 runnable",
+            "   java.lang.Thread.State: RUNNABLE",
+            "\tat example.Main.run(Main.java:10)",
+            "",
+            "\"worker\" #2 daemon prio=5 os_prio=0 nid=0x2 waiting on condition",
+            "   java.lang.Thread.State: WAITING",
+            "",
+            "JNI global refs: 12, weak refs: 0",
+            "",
+            "Heap",
+            " garbage-first heap   total 262144K, used 1024K",
+            "INFO  \"quoted\" log line that is not a thread",
+            "2024-03-01 10:00:05",
+            "Full thread dump OpenJDK 64-Bit Server VM (17.0.1 mixed mode):",
+            "",
+            "\"main\" #1 prio=5 os_prio=0 nid=0x1 waiting on condition",
+            "   java.lang.Thread.State: TIMED_WAITING",
+            "\tat java.lang.Thread.sleep(Native Method)",
+            "",
+            "Full thread dump OpenJDK 64-Bit Server VM (17.0.1 mixed mode):",
+            "",
+            "\"main\" #1 prio=5 os_prio=0 nid=0x1 runnable",
+            "   java.lang.Thread.State: RUNNABLE",
+            "");
+
+    private static final String INTERLEAVED = String.join("\n",
+            "Full thread dump OpenJDK 64-Bit Server VM (17.0.1 mixed mode):",
+            "",
+            "\"main\" #1 prio=5 os_prio=0 nid=0x1 runnable",
+            "   java.lang.Thread.State: RUNNABLE",
+            "\tat example.Main.poll(Main.java:12)",
+            "INFO  request served in 12 ms",
+            "\tat example.Main.run(Main.java:10)",
+            "\t- locked <0x00000000d5f1a2b0> (a java.lang.Object)",
+            "",
+            "WARN  pool nearly exhausted",
+            "\"worker\" #2 daemon prio=5 os_prio=0 nid=0x2 waiting on condition",
+            "   java.lang.Thread.State: WAITING",
+            "",
+            "\"sender\" #3 daemon prio=5 os_prio=0 nid=0x3 runnable",
+            "INFO  batch sent",
+            "   java.lang.Thread.State: RUNNABLE",
+            "",
+            "JNI global refs: 12, weak refs: 0",
+            "");
+
+    @Test
+    public void splitsConcatenatedDumps() throws Exception {
+        List<ThreadDump> dumps;
+        try (ThreadDumpSplitter splitter = new ThreadDumpSplitter(
+                new ByteArrayInputStream(LOG.getBytes(StandardCharsets.UTF_8)))) {
+            dumps = splitter.stream().collect(Collectors.toList());
+        }
+        assertEquals(3, dumps.size());
+
+        ThreadDump first = dumps.get(0);
+        assertEquals("OpenJDK 64-Bit Server VM (17.0.1 mixed mode)", first.getJvmVersion());
+        assertEquals(LocalDateTime.of(2024, 3, 1, 10, 0, 0).atZone(ZoneId.systemDefault()).toInstant(),
+                first.getTimestamp());
+        assertEquals(List.of("main", "worker"),
+                first.getThreads().stream().map(t -> t.getName()).collect(Collectors.toList()));
+        assertEquals(1, first.getThreads().get(0).getStack().size());
+
+        ThreadDump second = dumps.get(1);
+        assertEquals(1, second.getThreads().size());
+        assertEquals(Thread.State.TIMED_WAITING, second.getThreads().get(0).getState());
+        assertTrue(second.getTimestamp().isAfter(first.getTimestamp()));
+
+        assertEquals(Thread.State.RUNNABLE, dumps.get(2).getThreads().get(0).getState());
+    }
+
+    @Test
+    public void readsOnlyAsFarAsTheNextDump() {
+        ThreadDumpSplitter splitter = new ThreadDumpSplitter(
+                new ByteArrayInputStream(LOG.getBytes(StandardCharsets.UTF_8)));
+        assertTrue(splitter.hasNext());
+        assertEquals(2, splitter.next().getThreads().size());
+        assertTrue(splitter.hasNext());
+        splitter.next();
+        splitter.next();
+        assertFalse(splitter.hasNext());
+    }
+
+    @Test
+    public void keepsLogOutputOutOfDumpWithoutTrailer() {
+        String log = String.join("\n",
+                "2024-03-01 10:00:00",
+                "Full thread dump OpenJDK 64-Bit Server VM (17.0.1 mixed mode):",
+                "",
+                "\"main\" #1 prio=5 os_prio=0 nid=0x1 runnable",
+                "   java.lang.Thread.State: RUNNABLE",
+                "\tat example.Main.run(Main.java:10)",
+                "",
+                "ERROR request failed",
+                "java.lang.IllegalStateException: closed",
+                "\tat example.Pool.take(Pool.java:42)",
+                "2024-03-01 10:00:05",
+                "Full thread dump OpenJDK 64-Bit Server VM (17.0.1 mixed mode):",
+                "",
+                "\"main\" #1 prio=5 os_prio=0 nid=0x1 waiting on condition",
+                "   java.lang.Thread.State: TIMED_WAITING",
+                "\tat java.lang.Thread.sleep(Native Method)",
+                "INFO  done",
+                "\tat example.Other.frame(Other.java:1)",
+                "");
+        List<ThreadDump> dumps = new ArrayList<>();
+        new ThreadDumpSplitter(new ByteArrayInputStream(log.getBytes(StandardCharsets.UTF_8)))
+                .forEachRemaining(dumps::add);
+        assertEquals(2, dumps.size());
+
+        List<StackFrame> first = dumps.get(0).getThreads().get(0).getStack();
+        assertEquals(List.of("run"), first.stream().map(StackFrame::getMethodName).collect(Collectors.toList()));
+        List<StackFrame> second = dumps.get(1).getThreads().get(0).getStack();
+        assertEquals(List.of("sleep"), second.stream().map(StackFrame::getMethodName).collect(Collectors.toList()));
+        assertEquals(LocalDateTime.of(2024, 3, 1, 10, 0, 5).atZone(ZoneId.systemDefault()).toInstant(),
+                dumps.get(1).getTimestamp());
+    }
+
+    @Test
+    public void skipsLogLinesInterleavedWithDump() {
+        List<ThreadDump> dumps = new ArrayList<>();
+        new ThreadDumpSplitter(new ByteArrayInputStream(INTERLEAVED.getBytes(StandardCharsets.UTF_8)))
+                .forEachRemaining(dumps::add);
+        assertInterleavedDump(dumps);
+    }
+
+    @Test
+    public void splitsBuffersWithLazyStacks() {
+        ByteBuffer buffer = ByteBuffer.wrap(("INFO starting\n" + INTERLEAVED).getBytes(StandardCharsets.UTF_8));
+        List<ThreadDump> dumps = new ArrayList<>();
+        new ThreadDumpSplitter(buffer, ParseOptions.all()).forEachRemaining(dumps::add);
+        assertEquals(0, buffer.position());
+        assertInterleavedDump(dumps);
+    }
+
+    private static void assertInterleavedDump(List<ThreadDump> dumps) {
+        assertEquals(1, dumps.size());
+
+        List<ThreadInfo> threads = dumps.get(0).getThreads();
+        assertEquals(List.of("main", "worker", "sender"),
+                threads.stream().map(ThreadInfo::getName).collect(Collectors.toList()));
+        assertEquals(List.of("poll", "run"),
+                threads.get(0).getStack().stream().map(StackFrame::getMethodName).collect(Collectors.toList()));
+        assertEquals(1, threads.get(0).getLockedMonitors().size());
+        assertEquals(Thread.State.RUNNABLE, threads.get(2).getState());
+    }
+
+    @Test
+    public void detectsConcatenatedLogs() {
+        assertTrue(ThreadDumpSplitter.isConcatenated(ByteBuffer.wrap(LOG.getBytes(StandardCharsets.UTF_8))));
+        String single = LOG.substring(0, LOG.indexOf("2024-03-01 10:00:05"));
+        assertFalse(ThreadDumpSplitter.isConcatenated(ByteBuffer.wrap(single.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    public void detectsConcatenatedStreams() throws Exception {
+        assertTrue(ThreadDumpSplitter.isConcatenated(new ByteArrayInputStream(LOG.getBytes(StandardCharsets.UTF_8))));
+        String single = LOG.substring(0, LOG.indexOf("2024-03-01 10:00:05"));
+        assertFalse(ThreadDumpSplitter.isConcatenated(
+                new ByteArrayInputStream(single.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    public void logWithoutDumpsYieldsNothing() {
+        ThreadDumpSplitter splitter = new ThreadDumpSplitter(
+                new ByteArrayInputStream("just\nsome\nlog lines\n".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(splitter.hasNext());
+    }
+}
@@ -8,6 +8,7 @@ import java.util.Deque;
 import java.util.ArrayDeque;
 
 import com.example.analysis.DumpCache;
+import com.example.analysis.DumpArchive;
 
 import javax.servlet.MultipartConfigElement;
 import javax.servlet.http.Part;
@@ -19,6 +20,7 @@ import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
 
+import com.example.parser.ParseOptions;
 import com.example.parser.ParserFactory;
 import com.example.parser.ThreadDumpParser;
 import com.example.model.ThreadDump;
@@ -88,6 +90,8 @@ public class WebServer {
     }
 
     static class UploadServlet extends HttpServlet {
+        /** The upload page only shows state counts, diffs and CPU candidates. */
+        private static final ParseOptions UPLOAD_OPTIONS = ParseOptions.all().withoutFrames().withoutLocks();
 
         @Override
         protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws javax.servlet.ServletException, java.io.IOException {
@@ -100,12 +104,24 @@ public class WebServer {
             for (Part part : req.getParts()) {
                 if ("textdump".equals(part.getName()) && part.getSize() > 0) {
                     byte[] bytes = part.getInputStream().readAllBytes();
-                    parsed.add(handleDump(bytes, "pasted dump", w));
-                    names.add("pasted dump");
+                    for (ThreadDump dump : handleDump(bytes, "pasted dump", w)) {
+                        parsed.add(dump);
+                        names.add(dump.getLabel());
+                    }
                 } else if ("dump".equals(part.getName()) && part.getSize() > 0) {
-                    byte[] bytes = part.getInputStream().readAllBytes();
-                    parsed.add(handleFileDump(bytes, part.getSubmittedFileName(), w));
-                    names.add(part.getSubmittedFileName());
+                    InputStream in = new java.io.BufferedInputStream(part.getInputStream());
+                    if (DumpArchive.isArchive(in)) {
+                        for (ThreadDump dump : handleArchive(in, part.getSubmittedFileName(), w)) {
+                            parsed.add(dump);
+                            names.add(dump.getLabel());
+                        }
+                        continue;
+                    }
+                    byte[] bytes = in.readAllBytes();
+                    for (ThreadDump dump : handleFileDump(bytes, part.getSubmittedFileName(), w)) {
+                        parsed.add(dump);
+                        names.add(dump.getLabel());
+                    }
                 }
             }
             if (parsed.isEmpty()) {
@@ -132,10 +148,10 @@ public class WebServer {
             w.println("</body></html>");
         }
 
-        private ThreadDump handleFileDump(byte[] bytes, String name, PrintWriter w) throws java.io.IOException {
+        private java.util.List<ThreadDump> handleFileDump(byte[] bytes, String name, PrintWriter w)
+                throws java.io.IOException {
             try {
-                ThreadDump dump = getOrParse(bytes);
-                writeCounts(name, dump, w);
+                java.util.List<ThreadDump> dumps = getOrParse(bytes, name, w);
                 synchronized (RECENT_FILES) {
                     RECENT_FILES.remove(name);
                     RECENT_FILES.addFirst(name);
@@ -143,26 +159,51 @@ public class WebServer {
                         RECENT_FILES.removeLast();
                     }
                 }
-                return dump;
+                return dumps;
+            } catch (Exception e) {
+                w.println("<p>Error: " + e.getMessage() + "</p>");
+                return java.util.List.of();
+            }
+        }
+
+        private java.util.List<ThreadDump> handleArchive(InputStream in, String name, PrintWriter w) {
+            java.util.List<ThreadDump> dumps = new java.util.ArrayList<>();
+            try {
+                for (ThreadDump d : DumpArchive.read(in, DumpArchive.Order.NAME, UPLOAD_OPTIONS).getThreadDumps()) {
+                    String label = name + "!" + d.getLabel();
+                    ThreadDump dump = d.withLabel(label);
+                    writeCounts(label, dump, w);
+                    dumps.add(dump);
+                }
             } catch (Exception e) {
                 w.println("<p>Error: " + e.getMessage() + "</p>");
-                return null;
             }
+            return dumps;
         }
 
-        private ThreadDump handleDump(byte[] bytes, String displayName, PrintWriter w) throws java.io.IOException {
+        private java.util.List<ThreadDump> handleDump(byte[] bytes, String displayName, PrintWriter w)
+                throws java.io.IOException {
             try {
-                ThreadDump dump = getOrParse(bytes);
-                writeCounts(displayName, dump, w);
-                return dump;
+                return getOrParse(bytes, displayName, w);
             } catch (Exception e) {
                 w.println("<p>Error: " + e.getMessage() + "</p>");
-                return null;
+                return java.util.List.of();
             }
         }
 
-        private ThreadDump getOrParse(byte[] bytes) throws Exception {
-            return DumpCache.load(bytes);
+        /**
+         * Parse an upload and write its state counts. A log holding several
+         * dumps yields one per dump, labelled {@code name!N}.
+         */
+        private java.util.List<ThreadDump> getOrParse(byte[] bytes, String name, PrintWriter w) throws Exception {
+            java.util.List<ThreadDump> dumps = new java.util.ArrayList<>();
+            for (ThreadDump d : DumpCache.loadAll(bytes, UPLOAD_OPTIONS)) {
+                String label = d.getLabel() == null ? name : name + "!" + d.getLabel();
+                ThreadDump dump = d.withLabel(label);
+                writeCounts(label, dump, w);
+                dumps.add(dump);
+            }
+            return dumps;
         }
 
         private void writeCounts(String title, ThreadDump dump, PrintWriter w) {